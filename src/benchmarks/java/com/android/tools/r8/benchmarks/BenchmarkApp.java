@@ -0,0 +1,98 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.benchmarks;
+
+import com.android.tools.r8.dex.ApplicationReader;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.Timing;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Applications from third_party used as benchmark inputs.
+ *
+ * <p>The files are downloaded by the downloadDeps gradle task. Paths are relative to the root of
+ * the checkout, which is the working directory of the benchmarks task.
+ */
+public enum BenchmarkApp {
+  GMSCORE_V9(
+      "third_party/gmscore/gmscore_v9/",
+      "GmsCore_prod_alldpi_release_all_locales_deploy.jar",
+      "noshrink_x86_GmsCore_prod_alldpi_release_unsigned.apk",
+      "GmsCore_prod_alldpi_release_all_locales_proguard.map",
+      "GmsCore_prod_alldpi_release_all_locales_proguard.config"),
+  YOUTUBE_12_17(
+      "third_party/youtube/youtube.android_12.17/",
+      "YouTubeRelease_deploy.jar",
+      "YouTubeRelease_unsigned.apk",
+      "YouTubeRelease_proguard.map",
+      "YouTubeRelease_proguard.config");
+
+  private static final Path ANDROID_JAR = Paths.get("third_party/android_jar/lib-v25/android.jar");
+
+  private final String directory;
+  private final String deployJar;
+  private final String apk;
+  private final String proguardMap;
+  private final String proguardConfig;
+
+  BenchmarkApp(
+      String directory, String deployJar, String apk, String proguardMap, String proguardConfig) {
+    this.directory = directory;
+    this.deployJar = deployJar;
+    this.apk = apk;
+    this.proguardMap = proguardMap;
+    this.proguardConfig = proguardConfig;
+  }
+
+  /** Java bytecode of the application. */
+  public Path getDeployJar() {
+    return Paths.get(directory, deployJar);
+  }
+
+  /** Dex code of the application. */
+  public Path getApk() {
+    return Paths.get(directory, apk);
+  }
+
+  public Path getProguardMap() {
+    return Paths.get(directory, proguardMap);
+  }
+
+  public Path getProguardConfig() {
+    return Paths.get(directory, proguardConfig);
+  }
+
+  public static Path getAndroidJar() {
+    return ANDROID_JAR;
+  }
+
+  /** Read the Java bytecode of the application with the Android library. */
+  public DexApplication readDeployJar(InternalOptions options)
+      throws IOException, ExecutionException {
+    AndroidApp app = AndroidApp.builder()
+        .addProgramFiles(getDeployJar())
+        .addLibraryFiles(getAndroidJar())
+        .build();
+    return read(app, options);
+  }
+
+  /** Read the dex code of the application with the Android library. */
+  public DexApplication readApk(InternalOptions options) throws IOException, ExecutionException {
+    AndroidApp app = AndroidApp.builder()
+        .addProgramFiles(getApk())
+        .addLibraryFiles(getAndroidJar())
+        .build();
+    return read(app, options);
+  }
+
+  private static DexApplication read(AndroidApp app, InternalOptions options)
+      throws IOException, ExecutionException {
+    return new ApplicationReader(app, options, new Timing("benchmark")).read();
+  }
+}
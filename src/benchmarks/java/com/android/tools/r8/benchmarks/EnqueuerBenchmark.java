@@ -0,0 +1,67 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.benchmarks;
+
+import com.android.tools.r8.graph.AppInfoWithSubtyping;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.shaking.Enqueuer;
+import com.android.tools.r8.shaking.ProguardConfigurationParser;
+import com.android.tools.r8.shaking.RootSetBuilder;
+import com.android.tools.r8.shaking.RootSetBuilder.RootSet;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.android.tools.r8.utils.Timing;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Enqueuer.traceApplication with the Proguard keep rules of the application. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EnqueuerBenchmark {
+
+  @Param
+  public BenchmarkApp app;
+
+  private ExecutorService executor;
+  private AppInfoWithSubtyping appInfo;
+  private RootSet rootSet;
+
+  @Setup
+  public void setup() throws Exception {
+    InternalOptions options = new InternalOptions();
+    executor = ThreadUtils.getExecutorService(options);
+    DexApplication application = app.readDeployJar(options);
+    appInfo = new AppInfoWithSubtyping(application);
+    ProguardConfigurationParser parser = new ProguardConfigurationParser(options.itemFactory);
+    parser.parse(app.getProguardConfig());
+    rootSet = new RootSetBuilder(application, appInfo, parser.getConfig().getRules())
+        .run(executor);
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Benchmark
+  public Object traceApplication() throws Exception {
+    return new Enqueuer(appInfo).traceApplication(rootSet, executor, new Timing("benchmark"));
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.benchmarks;
+
+import com.android.tools.r8.dex.ApplicationWriter;
+import com.android.tools.r8.dex.Constants;
+import com.android.tools.r8.graph.AppInfo;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.naming.NamingLens;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.ThreadUtils;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing the dex files of the application. This measures FileWriter.generate through
+ * ApplicationWriter, including the distribution of the classes into dex files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FileWriterBenchmark {
+
+  @Param
+  public BenchmarkApp app;
+
+  private ExecutorService executor;
+  private InternalOptions options;
+  private DexApplication application;
+
+  @Setup
+  public void setup() {
+    executor = ThreadUtils.getExecutorService(new InternalOptions());
+  }
+
+  // Writing updates the application, so read a fresh copy for every invocation.
+  @Setup(Level.Invocation)
+  public void read() throws Exception {
+    options = new InternalOptions();
+    // Allow native multidex.
+    options.minApiLevel = Constants.ANDROID_L_API;
+    application = app.readApk(options);
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Benchmark
+  public AndroidApp write() throws Exception {
+    return new ApplicationWriter(
+            application,
+            new AppInfo(application),
+            options,
+            null,
+            null,
+            NamingLens.getIdentityLens(),
+            null)
+        .write(null, executor);
+  }
+}
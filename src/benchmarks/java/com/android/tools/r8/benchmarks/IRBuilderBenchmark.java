@@ -0,0 +1,50 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.benchmarks;
+
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.utils.InternalOptions;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Building the IR from Java bytecode, i.e., JarSourceCode and IRBuilder, for all methods. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class IRBuilderBenchmark {
+
+  @Param
+  public BenchmarkApp app;
+
+  private InternalOptions options;
+  private List<DexEncodedMethod> methods;
+
+  @Setup
+  public void setup() throws Exception {
+    options = new InternalOptions();
+    methods = new MethodBatches(app.readDeployJar(options), options).getMethods();
+  }
+
+  @Benchmark
+  public void buildIR(Blackhole blackhole) {
+    for (DexEncodedMethod method : methods) {
+      blackhole.consume(method.buildIR(options));
+    }
+  }
+}
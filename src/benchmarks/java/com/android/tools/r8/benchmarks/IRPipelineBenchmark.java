@@ -0,0 +1,85 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.benchmarks;
+
+import com.android.tools.r8.graph.AppInfo;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.optimize.CodeRewriter;
+import com.android.tools.r8.ir.optimize.DeadCodeRemover;
+import com.android.tools.r8.utils.InternalOptions;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Building the IR of a method followed by the method local optimizations, reported per method.
+ *
+ * <p>This exercises the instruction lists and use lists of the IR, the allocation of which is
+ * reported when running with the gc profiler, {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class IRPipelineBenchmark {
+
+  private static final int METHODS_PER_INVOCATION = 1000;
+
+  @Param
+  public BenchmarkApp app;
+
+  private InternalOptions options;
+  private CodeRewriter codeRewriter;
+  private List<DexEncodedMethod> methods;
+  private int next = 0;
+
+  @Setup
+  public void setup() throws Exception {
+    options = new InternalOptions();
+    DexApplication application = app.readDeployJar(options);
+    codeRewriter = new CodeRewriter(new AppInfo(application), Collections.emptySet());
+    methods = new MethodBatches(application, options).getMethods();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(METHODS_PER_INVOCATION)
+  public void buildAndOptimize(Blackhole blackhole) {
+    for (int i = 0; i < METHODS_PER_INVOCATION; i++) {
+      IRCode code = methods.get(next).buildIR(options);
+      next = (next + 1) % methods.size();
+      if (code == null) {
+        continue;
+      }
+      codeRewriter.removeCastChains(code);
+      codeRewriter.rewriteLongCompareAndRequireNonNull(code, options);
+      codeRewriter.commonSubexpressionElimination(code);
+      codeRewriter.simplifyArrayConstruction(code);
+      codeRewriter.rewriteMoveResult(code);
+      codeRewriter.splitRangeInvokeConstants(code);
+      codeRewriter.foldConstants(code);
+      codeRewriter.rewriteSwitch(code);
+      codeRewriter.simplifyIf(code);
+      DeadCodeRemover.removeDeadCode(code, codeRewriter, options);
+      codeRewriter.shortenLiveRanges(code);
+      blackhole.consume(code);
+    }
+  }
+}
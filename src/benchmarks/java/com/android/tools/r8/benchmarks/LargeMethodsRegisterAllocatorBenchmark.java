@@ -0,0 +1,84 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.benchmarks;
+
+import com.android.tools.r8.graph.AppInfo;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.optimize.CodeRewriter;
+import com.android.tools.r8.ir.optimize.DeadCodeRemover;
+import com.android.tools.r8.ir.regalloc.LinearScanRegisterAllocator;
+import com.android.tools.r8.utils.InternalOptions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * LinearScanRegisterAllocator.allocateRegisters on the largest methods of an application.
+ *
+ * <p>Large methods have many live intervals with many ranges and uses, and most of them need
+ * spilling, which splits the intervals repeatedly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LargeMethodsRegisterAllocatorBenchmark {
+
+  @Param
+  public BenchmarkApp app;
+
+  @Param("100")
+  public int methodCount;
+
+  private InternalOptions options;
+  private CodeRewriter codeRewriter;
+  private List<DexEncodedMethod> methods;
+  private List<IRCode> code;
+
+  @Setup
+  public void setup() throws Exception {
+    options = new InternalOptions();
+    DexApplication application = app.readDeployJar(options);
+    codeRewriter = new CodeRewriter(new AppInfo(application), Collections.emptySet());
+    methods = new MethodBatches(application, options).getLargestMethods(methodCount);
+  }
+
+  // Register allocation changes the IR, so build it again for every invocation.
+  @Setup(Level.Invocation)
+  public void buildIR() {
+    code = new ArrayList<>(methods.size());
+    for (DexEncodedMethod method : methods) {
+      IRCode methodCode = method.buildIR(options);
+      DeadCodeRemover.removeDeadCode(methodCode, codeRewriter, options);
+      code.add(methodCode);
+    }
+  }
+
+  @Benchmark
+  public void allocateRegisters(Blackhole blackhole) {
+    for (IRCode methodCode : code) {
+      LinearScanRegisterAllocator allocator = new LinearScanRegisterAllocator(methodCode, options);
+      allocator.allocateRegisters(options.debug);
+      blackhole.consume(allocator.registersUsed());
+    }
+  }
+}
@@ -0,0 +1,81 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.benchmarks;
+
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexProgramClass;
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.utils.InternalOptions;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the IR of the methods of an application in batches of a fixed size.
+ *
+ * <p>Benchmarks of passes that destructively update the IR need fresh IR for every invocation.
+ * Building the IR of a large application at once does not fit in memory, so the benchmarks work
+ * on one batch at a time and cycle through all methods of the application over the iterations.
+ */
+class MethodBatches {
+
+  private final List<DexEncodedMethod> methods = new ArrayList<>();
+  private final InternalOptions options;
+  private int next = 0;
+
+  MethodBatches(DexApplication application, InternalOptions options) {
+    this.options = options;
+    for (DexProgramClass clazz : application.classes()) {
+      for (DexEncodedMethod method : clazz.allMethodsSorted()) {
+        if (method.getCode() != null) {
+          methods.add(method);
+        }
+      }
+    }
+  }
+
+  List<DexEncodedMethod> getMethods() {
+    return methods;
+  }
+
+  /**
+   * Returns the methods with the most IR instructions, largest first.
+   */
+  List<DexEncodedMethod> getLargestMethods(int count) {
+    Map<DexEncodedMethod, Integer> sizes = new IdentityHashMap<>();
+    for (DexEncodedMethod method : methods) {
+      IRCode code = method.buildIR(options);
+      if (code != null) {
+        sizes.put(method, numberOfInstructions(code));
+      }
+    }
+    List<DexEncodedMethod> largest = new ArrayList<>(sizes.keySet());
+    largest.sort(Comparator.comparing(sizes::get, Comparator.reverseOrder()));
+    return new ArrayList<>(largest.subList(0, Math.min(count, largest.size())));
+  }
+
+  private static int numberOfInstructions(IRCode code) {
+    int instructions = 0;
+    for (BasicBlock block : code.blocks) {
+      instructions += block.getInstructions().size();
+    }
+    return instructions;
+  }
+
+  List<IRCode> nextBatch(int size) {
+    List<IRCode> batch = new ArrayList<>(size);
+    for (int i = 0; i < size && i < methods.size(); i++) {
+      IRCode code = methods.get(next).buildIR(options);
+      next = (next + 1) % methods.size();
+      if (code != null) {
+        batch.add(code);
+      }
+    }
+    return batch;
+  }
+}
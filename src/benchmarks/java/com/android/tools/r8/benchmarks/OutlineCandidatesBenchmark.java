@@ -0,0 +1,95 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.benchmarks;
+
+import com.android.tools.r8.graph.AppInfo;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.optimize.Outliner;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.ThreadUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Collecting the outlining candidates of the first round of IR processing from several threads.
+ *
+ * <p>The IR is built once, as collecting the candidates does not change it. Comparing the results
+ * for the different thread counts shows how the collection scales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class OutlineCandidatesBenchmark {
+
+  @Param
+  public BenchmarkApp app;
+
+  @Param({"1", "2", "4", "8", "16"})
+  public int threads;
+
+  @Param("20000")
+  public int methodCount;
+
+  private ExecutorService executor;
+  private AppInfo appInfo;
+  private InternalOptions options;
+  private final List<DexEncodedMethod> methods = new ArrayList<>();
+  private final List<IRCode> code = new ArrayList<>();
+
+  @Setup
+  public void setup() throws Exception {
+    options = new InternalOptions();
+    executor = ThreadUtils.getExecutorService(threads);
+    DexApplication application = app.readDeployJar(options);
+    appInfo = new AppInfo(application);
+    for (DexEncodedMethod method : new MethodBatches(application, options).getMethods()) {
+      if (methods.size() == methodCount) {
+        break;
+      }
+      IRCode methodCode = method.buildIR(options);
+      if (methodCode != null) {
+        methods.add(method);
+        code.add(methodCode);
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Benchmark
+  public Outliner identifyCandidates() throws Exception {
+    Outliner outliner = new Outliner(appInfo, options);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < methods.size(); i++) {
+      DexEncodedMethod method = methods.get(i);
+      IRCode methodCode = code.get(i);
+      futures.add(executor.submit(() -> outliner.identifyCandidates(methodCode, method)));
+    }
+    ThreadUtils.awaitFutures(futures);
+    return outliner;
+  }
+}
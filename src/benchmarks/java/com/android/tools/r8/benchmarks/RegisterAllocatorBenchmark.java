@@ -0,0 +1,74 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.benchmarks;
+
+import com.android.tools.r8.graph.AppInfo;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.optimize.CodeRewriter;
+import com.android.tools.r8.ir.optimize.DeadCodeRemover;
+import com.android.tools.r8.ir.regalloc.LinearScanRegisterAllocator;
+import com.android.tools.r8.utils.InternalOptions;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** LinearScanRegisterAllocator.allocateRegisters on batches of methods. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RegisterAllocatorBenchmark {
+
+  @Param
+  public BenchmarkApp app;
+
+  @Param("2000")
+  public int batchSize;
+
+  private InternalOptions options;
+  private CodeRewriter codeRewriter;
+  private MethodBatches batches;
+  private List<IRCode> batch;
+
+  @Setup
+  public void setup() throws Exception {
+    options = new InternalOptions();
+    DexApplication application = app.readDeployJar(options);
+    codeRewriter = new CodeRewriter(new AppInfo(application), Collections.emptySet());
+    batches = new MethodBatches(application, options);
+  }
+
+  @Setup(Level.Invocation)
+  public void buildBatch() {
+    batch = batches.nextBatch(batchSize);
+    for (IRCode code : batch) {
+      DeadCodeRemover.removeDeadCode(code, codeRewriter, options);
+    }
+  }
+
+  @Benchmark
+  public void allocateRegisters(Blackhole blackhole) {
+    for (IRCode code : batch) {
+      LinearScanRegisterAllocator allocator = new LinearScanRegisterAllocator(code, options);
+      allocator.allocateRegisters(options.debug);
+      blackhole.consume(allocator.registersUsed());
+    }
+  }
+}
@@ -0,0 +1,66 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.benchmarks;
+
+import com.android.tools.r8.graph.AppInfoWithSubtyping;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexProgramClass;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.utils.InternalOptions;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Computing the subtypes of all types of the application with the Android library, and iterating
+ * the subtypes of all program classes.
+ *
+ * <p>The memory allocated for the subtype index is reported when running with the gc profiler,
+ * {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SubtypingBenchmark {
+
+  @Param
+  public BenchmarkApp app;
+
+  private DexApplication application;
+  private AppInfoWithSubtyping appInfo;
+
+  @Setup
+  public void setup() throws Exception {
+    application = app.readDeployJar(new InternalOptions());
+    appInfo = new AppInfoWithSubtyping(application);
+  }
+
+  @Benchmark
+  public Object computeSubtypes() {
+    return new AppInfoWithSubtyping(application);
+  }
+
+  @Benchmark
+  public int iterateSubtypes() {
+    int count = 0;
+    for (DexProgramClass clazz : application.classes()) {
+      for (DexType subtype : appInfo.subtypes(clazz.type)) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
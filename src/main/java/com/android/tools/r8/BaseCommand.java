@@ -22,6 +22,7 @@ abstract class BaseCommand {
   private final OutputMode outputMode;
   private final CompilationMode mode;
   private final int minApiLevel;
+  private final Path timingsOutput;
 
   BaseCommand(boolean printHelp, boolean printVersion) {
     this.printHelp = printHelp;
@@ -32,6 +33,7 @@ abstract class BaseCommand {
     this.outputMode = OutputMode.Indexed;
     this.mode = null;
     this.minApiLevel = 0;
+    this.timingsOutput = null;
   }
 
   BaseCommand(
@@ -40,6 +42,16 @@ abstract class BaseCommand {
       OutputMode outputMode,
       CompilationMode mode,
       int minApiLevel) {
+    this(app, outputPath, outputMode, mode, minApiLevel, null);
+  }
+
+  BaseCommand(
+      AndroidApp app,
+      Path outputPath,
+      OutputMode outputMode,
+      CompilationMode mode,
+      int minApiLevel,
+      Path timingsOutput) {
     assert app != null;
     assert mode != null;
     assert minApiLevel > 0;
@@ -48,6 +60,7 @@ abstract class BaseCommand {
     this.outputMode = outputMode;
     this.mode = mode;
     this.minApiLevel = minApiLevel;
+    this.timingsOutput = timingsOutput;
     // Print options are not set.
     printHelp = false;
     printVersion = false;
@@ -85,6 +98,10 @@ abstract class BaseCommand {
     return outputMode;
   }
 
+  public Path getTimingsOutput() {
+    return timingsOutput;
+  }
+
   abstract static class Builder<C extends BaseCommand, B extends Builder<C, B>> {
 
     private boolean printHelp = false;
@@ -94,6 +111,7 @@ abstract class BaseCommand {
     private OutputMode outputMode = OutputMode.Indexed;
     private CompilationMode mode;
     private int minApiLevel = Constants.DEFAULT_ANDROID_API;
+    private Path timingsOutput = null;
 
     // Internal flag used by CompatDx to ignore dex files in archives.
     protected boolean ignoreDexInArchive = false;
@@ -211,6 +229,20 @@ abstract class BaseCommand {
       return self();
     }
 
+    /** Get the timings output path. Null if not set. */
+    public Path getTimingsOutput() {
+      return timingsOutput;
+    }
+
+    /**
+     * Set a file for writing timings of the compilation phases to, in the Chrome trace event
+     * format.
+     */
+    public B setTimingsOutput(Path timingsOutput) {
+      this.timingsOutput = timingsOutput;
+      return self();
+    }
+
     /** Get the minimum API level (aka SDK version). */
     public int getMinApiLevel() {
       return minApiLevel;
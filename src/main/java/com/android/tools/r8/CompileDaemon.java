@@ -0,0 +1,321 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8;
+
+import static com.android.tools.r8.utils.FileUtils.isArchive;
+
+import com.android.tools.r8.shaking.ProguardRuleParserException;
+import com.android.tools.r8.utils.PreloadedClassFileProvider;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Long-lived compiler process serving D8 and R8 compile requests.
+ *
+ * <p>Requests are read one per line, either from standard input or from connections to a local
+ * socket. A request is the tool name followed by the usual command line arguments of that tool,
+ * separated by whitespace:
+ *
+ * <pre>
+ *   d8 --release --output out.zip --lib android.jar input.jar
+ *   r8 --pg-conf proguard.cfg --lib android.jar --output out.zip input.jar
+ * </pre>
+ *
+ * Each request is answered by a single line, either {@code OK} or {@code ERROR: <message>}.
+ * Requests are compiled concurrently, also when sent over the same connection, and the responses
+ * are written in the order of the requests. The request {@code quit} stops the daemon once the
+ * pending requests are answered. On a socket it must be followed by the token given with
+ * {@code --quit-token}, and it is refused if the daemon was started without one.
+ *
+ * <p>Every request is compiled with its own {@code DexItemFactory}. What is shared between
+ * requests is the JIT-compiled compiler, the thread pool and an immutable snapshot of the content
+ * of every library archive passed with {@code --lib}, so android.jar is unzipped only once. A
+ * snapshot is re-read if the archive's modification time or size changes.
+ */
+public final class CompileDaemon {
+
+  static final String USAGE_MESSAGE = String.join("\n", ImmutableList.of(
+      "Usage: compiledaemon [options]",
+      " where options are:",
+      "  --port <port>           # Serve requests on the loopback <port> instead of stdin.",
+      "  --threads <n>           # Number of compilation threads.",
+      "  --quit-token <token>    # Token socket clients must pass to quit the daemon.",
+      "  --help                  # Print this message."));
+
+  private static final String QUIT = "quit";
+  private static final String OK = "OK";
+  private static final String ERROR = "ERROR: ";
+
+  private static final class LibrarySnapshot {
+    final FileTime lastModified;
+    final long size;
+    final ClassFileResourceProvider provider;
+
+    LibrarySnapshot(FileTime lastModified, long size, ClassFileResourceProvider provider) {
+      this.lastModified = lastModified;
+      this.size = size;
+      this.provider = provider;
+    }
+  }
+
+  // Marks the end of the responses of a connection.
+  private static final Future<String> END_OF_RESPONSES = CompletableFuture.completedFuture(null);
+
+  private final ExecutorService executor;
+  // Runs the requests and the connections. Their threads mostly wait for the compilation threads.
+  private final ExecutorService requestExecutor = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setNameFormat("compile-daemon-%d").setDaemon(true).build());
+  private final Map<Path, LibrarySnapshot> librarySnapshots = new HashMap<>();
+
+  CompileDaemon(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Serve requests from {@code in}, writing responses to {@code out}, until {@code quit} or the
+   * end of the input. Returns true if the daemon was asked to quit.
+   *
+   * <p>If {@code quitToken} is not null, {@code quit} must be followed by that token. If
+   * {@code allowQuit} is false, {@code quit} is always refused.
+   */
+  boolean serve(BufferedReader in, PrintStream out, boolean allowQuit, String quitToken)
+      throws IOException {
+    BlockingQueue<Future<String>> responses = new LinkedBlockingQueue<>();
+    Future<?> writer = requestExecutor.submit(() -> writeResponses(responses, out));
+    boolean quit = false;
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty()) {
+          continue;
+        }
+        if (line.equals(QUIT) || line.startsWith(QUIT + " ")) {
+          String error = checkQuit(line.substring(QUIT.length()).trim(), allowQuit, quitToken);
+          if (error == null) {
+            quit = true;
+            break;
+          }
+          responses.add(CompletableFuture.completedFuture(ERROR + error));
+          continue;
+        }
+        String request = line;
+        responses.add(requestExecutor.submit(() -> handleRequest(request)));
+      }
+    } finally {
+      responses.add(END_OF_RESPONSES);
+      try {
+        writer.get();
+      } catch (InterruptedException | ExecutionException e) {
+        throw new RuntimeException("Failed to write responses.", e);
+      }
+    }
+    return quit;
+  }
+
+  private static String checkQuit(String token, boolean allowQuit, String quitToken) {
+    if (!allowQuit) {
+      return "The daemon cannot be stopped from this connection.";
+    }
+    if (quitToken != null && !MessageDigest.isEqual(
+        token.getBytes(StandardCharsets.UTF_8), quitToken.getBytes(StandardCharsets.UTF_8))) {
+      return "Invalid quit token.";
+    }
+    return null;
+  }
+
+  private static void writeResponses(BlockingQueue<Future<String>> responses, PrintStream out) {
+    try {
+      while (true) {
+        String response = responses.take().get();
+        if (response == null) {
+          return;
+        }
+        out.println(response);
+        out.flush();
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      throw new RuntimeException("Failed to write responses.", e);
+    }
+  }
+
+  String handleRequest(String request) {
+    List<String> words = new ArrayList<>();
+    for (String word : request.split("\\s+")) {
+      if (!word.isEmpty()) {
+        words.add(word);
+      }
+    }
+    String tool = words.get(0);
+    List<String> args = words.subList(1, words.size());
+    try {
+      if (tool.equals("d8")) {
+        runD8(args);
+      } else if (tool.equals("r8")) {
+        runR8(args);
+      } else {
+        return ERROR + "Unknown tool: " + tool;
+      }
+      return OK;
+    } catch (CompilationException | ProguardRuleParserException e) {
+      return ERROR + e.getMessage();
+    } catch (IOException e) {
+      return ERROR + "Failed to read or write application files: " + e.getMessage();
+    } catch (Throwable e) {
+      // Report any failure, including errors such as running out of memory, to the client.
+      Throwable cause = e instanceof RuntimeException && e.getCause() != null ? e.getCause() : e;
+      return ERROR + "Compilation failed with an internal error: " + cause;
+    }
+  }
+
+  private void runD8(List<String> args) throws IOException, CompilationException {
+    List<ClassFileResourceProvider> libraries = new ArrayList<>();
+    D8Command.Builder builder = D8Command.parse(extractLibraries(args, libraries));
+    libraries.forEach(builder::addLibraryResourceProvider);
+    if (builder.getOutputPath() == null) {
+      builder.setOutputPath(Paths.get("."));
+    }
+    D8.runAndWrite(builder.build(), executor);
+  }
+
+  private void runR8(List<String> args)
+      throws IOException, CompilationException, ProguardRuleParserException {
+    List<ClassFileResourceProvider> libraries = new ArrayList<>();
+    R8Command.Builder builder = R8Command.parse(extractLibraries(args, libraries));
+    libraries.forEach(builder::addLibraryResourceProvider);
+    if (builder.getOutputPath() == null) {
+      builder.setOutputPath(Paths.get("."));
+    }
+    R8.runAndWrite(builder.build(), executor);
+  }
+
+  // Replaces '--lib <archive>' arguments by snapshots of the archive content.
+  private String[] extractLibraries(List<String> args, List<ClassFileResourceProvider> libraries)
+      throws IOException {
+    List<String> remaining = new ArrayList<>(args.size());
+    for (int i = 0; i < args.size(); i++) {
+      String arg = args.get(i);
+      if (arg.equals("--lib") && i + 1 < args.size() && isArchive(Paths.get(args.get(i + 1)))) {
+        libraries.add(getLibrarySnapshot(Paths.get(args.get(++i))));
+      } else {
+        remaining.add(arg);
+      }
+    }
+    return remaining.toArray(new String[remaining.size()]);
+  }
+
+  private synchronized ClassFileResourceProvider getLibrarySnapshot(Path archive)
+      throws IOException {
+    Path key = archive.toAbsolutePath().normalize();
+    FileTime lastModified = Files.getLastModifiedTime(key);
+    long size = Files.size(key);
+    LibrarySnapshot snapshot = librarySnapshots.get(key);
+    if (snapshot == null
+        || !snapshot.lastModified.equals(lastModified)
+        || snapshot.size != size) {
+      snapshot = new LibrarySnapshot(
+          lastModified, size, PreloadedClassFileProvider.fromArchive(key));
+      librarySnapshots.put(key, snapshot);
+    }
+    return snapshot.provider;
+  }
+
+  private void serveSocket(int port, String quitToken) throws IOException {
+    try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+      while (!server.isClosed()) {
+        Socket socket;
+        try {
+          socket = server.accept();
+        } catch (SocketException e) {
+          if (server.isClosed()) {
+            // A client asked the daemon to quit.
+            return;
+          }
+          throw e;
+        }
+        requestExecutor.execute(() -> serveConnection(socket, server, quitToken));
+      }
+    }
+  }
+
+  private void serveConnection(Socket socket, ServerSocket server, String quitToken) {
+    try (Socket connection = socket;
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+        PrintStream out = new PrintStream(connection.getOutputStream(), true, "UTF-8")) {
+      if (serve(in, out, quitToken != null, quitToken)) {
+        server.close();
+      }
+    } catch (IOException e) {
+      System.err.println("Failed to serve connection: " + e.getMessage());
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = -1;
+    int threads = -1;
+    String quitToken = null;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i].trim();
+      if (arg.equals("--port")) {
+        port = Integer.parseInt(args[++i]);
+      } else if (arg.equals("--threads")) {
+        threads = Integer.parseInt(args[++i]);
+      } else if (arg.equals("--quit-token")) {
+        quitToken = args[++i];
+      } else {
+        System.out.println(USAGE_MESSAGE);
+        return;
+      }
+    }
+    if (threads < 0) {
+      // Same heuristic as ThreadUtils.getExecutorService(InternalOptions).
+      threads = Integer.max(Integer.min(Runtime.getRuntime().availableProcessors(), 16) / 2, 1);
+    }
+    ExecutorService executor = ThreadUtils.getExecutorService(threads);
+    CompileDaemon daemon = new CompileDaemon(executor);
+    try {
+      if (port >= 0) {
+        daemon.serveSocket(port, quitToken);
+      } else {
+        // Responses own standard output; diagnostics printed by the compilers go to stderr.
+        PrintStream out = System.out;
+        System.setOut(System.err);
+        // The client owning standard input may always stop the daemon.
+        daemon.serve(
+            new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), out,
+            true, null);
+      }
+    } finally {
+      daemon.requestExecutor.shutdown();
+      executor.shutdown();
+    }
+  }
+}
@@ -17,6 +17,7 @@ import com.android.tools.r8.ir.conversion.IRConverter;
 import com.android.tools.r8.naming.NamingLens;
 import com.android.tools.r8.utils.AndroidApp;
 import com.android.tools.r8.utils.CfgPrinter;
+import com.android.tools.r8.utils.DexOutputSink;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.ThreadUtils;
 import com.android.tools.r8.utils.Timing;
@@ -99,6 +100,19 @@ public final class D8 {
     return output;
   }
 
+  /**
+   * Compiles and streams each dex file to the output path of the command as it is written, instead
+   * of returning the dex files in memory.
+   */
+  static void runAndWrite(D8Command command, ExecutorService executor) throws IOException {
+    InternalOptions options = command.getInternalOptions();
+    try (DexOutputSink sink =
+        DexOutputSink.create(command.getOutputPath(), command.getOutputMode())) {
+      options.dexOutputSink = sink;
+      runForTesting(command.getInputApp(), options, executor);
+    }
+  }
+
   private static void run(String[] args) throws IOException, CompilationException {
     D8Command.Builder builder = D8Command.parse(args);
     if (builder.getOutputPath() == null) {
@@ -113,7 +127,12 @@ public final class D8 {
       System.out.println("D8 " + VERSION);
       return;
     }
-    run(command);
+    ExecutorService executor = ThreadUtils.getExecutorService(command.getInternalOptions());
+    try {
+      runAndWrite(command, executor);
+    } finally {
+      executor.shutdown();
+    }
   }
 
   /** Command-line entry to D8. */
@@ -165,17 +184,23 @@ public final class D8 {
         .put("min-api", options.minApiLevel);
   }
 
-  private static CompilationResult runForTesting(
+  static CompilationResult runForTesting(
       AndroidApp inputApp, InternalOptions options, ExecutorService executor) throws IOException {
+    Timing timing = new Timing("DX timer");
     try {
       assert !inputApp.hasPackageDistribution();
 
+      if (options.dexCacheDirectory != null && !options.hasMethodsFilter()) {
+        // Replace class file inputs by their cached dex code, compiling and caching the misses.
+        inputApp = new DexCache(options.dexCacheDirectory, options, VERSION)
+            .rewriteInputs(inputApp, executor);
+      }
+
       // Disable global optimizations.
       options.skipMinification = true;
       options.inlineAccessors = false;
       options.outline.enabled = false;
 
-      Timing timing = new Timing("DX timer");
       DexApplication app = new ApplicationReader(inputApp, options, timing).read(executor);
       AppInfo appInfo = new AppInfo(app);
       app = optimize(app, appInfo, options, timing, executor);
@@ -204,6 +229,10 @@ public final class D8 {
         throw (CompilationError) e.getCause();
       }
       throw new RuntimeException(e.getMessage(), e.getCause());
+    } finally {
+      if (options.timingsOutput != null) {
+        timing.writeTraceOrReport(options.timingsOutput);
+      }
     }
   }
 
@@ -35,6 +35,7 @@ public class D8Command extends BaseCommand {
   public static class Builder extends BaseCommand.Builder<D8Command, Builder> {
 
     private boolean intermediate = false;
+    private Path dexCacheDirectory = null;
 
     protected Builder() {
       super(CompilationMode.DEBUG);
@@ -66,6 +67,14 @@ public class D8Command extends BaseCommand {
       return self();
     }
 
+    /**
+     * Set a directory for caching the dex code of individual class files across compilations.
+     */
+    public Builder setDexCacheDirectory(Path directory) {
+      this.dexCacheDirectory = directory;
+      return self();
+    }
+
     @Override
     Builder self() {
       return this;
@@ -95,7 +104,9 @@ public class D8Command extends BaseCommand {
           getOutputMode(),
           getMode(),
           getMinApiLevel(),
-          intermediate);
+          intermediate,
+          dexCacheDirectory,
+          getTimingsOutput());
     }
   }
 
@@ -114,10 +125,14 @@ public class D8Command extends BaseCommand {
       "                          # merging.",
       "  --file-per-class        # Produce a separate dex file per class",
       "  --main-dex-list <file>  # List of classes to place in the primary dex file.",
+      "  --dex-cache <dir>       # Cache the dex code of unchanged class files in <dir>.",
+      "  --timings <file>        # Write timings of the compilation phases to <file>",
+      "                          # in the Chrome trace event format.",
       "  --version               # Print the version of d8.",
       "  --help                  # Print this message."));
 
   private boolean intermediate = false;
+  private Path dexCacheDirectory = null;
 
   public static Builder builder() {
     return new Builder();
@@ -172,6 +187,10 @@ public class D8Command extends BaseCommand {
           builder.setMinApiLevel(Integer.valueOf(args[++i]));
         } else if (arg.equals("--intermediate")) {
           builder.setIntermediate(true);
+        } else if (arg.equals("--dex-cache")) {
+          builder.setDexCacheDirectory(Paths.get(args[++i]));
+        } else if (arg.equals("--timings")) {
+          builder.setTimingsOutput(Paths.get(args[++i]));
         } else {
           if (arg.startsWith("--")) {
             throw new CompilationException("Unknown option: " + arg);
@@ -191,15 +210,22 @@ public class D8Command extends BaseCommand {
       OutputMode outputMode,
       CompilationMode mode,
       int minApiLevel,
-      boolean intermediate) {
-    super(inputApp, outputPath, outputMode, mode, minApiLevel);
+      boolean intermediate,
+      Path dexCacheDirectory,
+      Path timingsOutput) {
+    super(inputApp, outputPath, outputMode, mode, minApiLevel, timingsOutput);
     this.intermediate = intermediate;
+    this.dexCacheDirectory = dexCacheDirectory;
   }
 
   private D8Command(boolean printHelp, boolean printVersion) {
     super(printHelp, printVersion);
   }
 
+  public Path getDexCacheDirectory() {
+    return dexCacheDirectory;
+  }
+
   @Override
   InternalOptions getInternalOptions() {
     InternalOptions internal = new InternalOptions(new DexItemFactory());
@@ -222,6 +248,8 @@ public class D8Command extends BaseCommand {
     assert internal.outline.enabled;
     internal.outline.enabled = false;
     internal.outputMode = getOutputMode();
+    internal.dexCacheDirectory = dexCacheDirectory;
+    internal.timingsOutput = getTimingsOutput();
     return internal;
   }
 }
@@ -0,0 +1,310 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8;
+
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.PreloadedClassFileProvider;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+
+/**
+ * Persistent on-disk cache of per-class dex files for incremental D8 builds.
+ *
+ * <p>Each Java class file input is keyed by a digest of its content together with the options
+ * that influence the generated code (min-api, debug mode and desugaring). On a cache hit the
+ * class file input is replaced by the cached dex file, which D8 merges without building IR. On a
+ * miss the class is compiled on its own, exactly like an incremental D8 build would do, and the
+ * resulting dex file is stored in the cache. Synthesized lambda classes are part of the per-class
+ * dex file and are collapsed when merging.
+ *
+ * <p>Desugaring looks up the definitions of the types a class references, e.g., the default
+ * methods of the interfaces it implements or the accessibility of method reference targets. The
+ * key therefore also covers the content of every type the class references, and of all their
+ * supertypes, whether they come from the program, the classpath or the library.
+ */
+final class DexCache {
+
+  private static final String DEX_EXTENSION = ".dex";
+
+  private final Path directory;
+  private final InternalOptions options;
+  private final String optionsKey;
+
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+
+  DexCache(Path directory, InternalOptions options, String version) {
+    this.directory = directory;
+    this.options = options;
+    this.optionsKey = computeOptionsKey(options, version);
+  }
+
+  private static String computeOptionsKey(InternalOptions options, String version) {
+    return String.join(":",
+        version,
+        Integer.toString(options.minApiLevel),
+        Boolean.toString(options.debug),
+        options.interfaceMethodDesugaring.name(),
+        options.tryWithResourcesDesugaring.name());
+  }
+
+  public int getHits() {
+    return hits.get();
+  }
+
+  public int getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Returns an application where every Java class file input has been replaced by its cached dex
+   * file, compiling and caching the classes not yet in the cache.
+   */
+  AndroidApp rewriteInputs(AndroidApp inputApp, ExecutorService executor)
+      throws IOException, ExecutionException {
+    List<Resource> classResources = inputApp.getClassProgramResources();
+    if (classResources.isEmpty()) {
+      return inputApp;
+    }
+    List<byte[]> classFiles = new ArrayList<>(classResources.size());
+    Map<String, byte[]> programClasses = new HashMap<>();
+    PreloadedClassFileProvider.Builder classpathBuilder = PreloadedClassFileProvider.builder();
+    for (Resource resource : classResources) {
+      byte[] bytes;
+      try (InputStream input = resource.getStream()) {
+        bytes = ByteStreams.toByteArray(input);
+      }
+      String descriptor = getDescriptor(new ClassReader(bytes).getClassName());
+      classFiles.add(bytes);
+      programClasses.put(descriptor, bytes);
+      classpathBuilder.addResource(descriptor, bytes);
+    }
+    // The program classes are the classpath when compiling each class in isolation.
+    ClassFileResourceProvider programClasspath = classpathBuilder.build();
+    TypeDigests typeDigests = new TypeDigests(programClasses,
+        Iterables.concat(
+            inputApp.getClasspathResourceProviders(), inputApp.getLibraryResourceProviders()));
+
+    List<Future<byte[]>> futures = new ArrayList<>(classFiles.size());
+    for (byte[] classFile : classFiles) {
+      futures.add(executor.submit(() -> {
+        Path cached = getCacheFile(classFile, typeDigests);
+        if (Files.exists(cached)) {
+          hits.incrementAndGet();
+          return Files.readAllBytes(cached);
+        }
+        misses.incrementAndGet();
+        byte[] dex = compile(inputApp, classFile, programClasspath);
+        store(cached, dex);
+        return dex;
+      }));
+    }
+    List<Resource> dexResources = new ArrayList<>(inputApp.getDexProgramResources());
+    for (byte[] dex : ThreadUtils.awaitFutures(futures)) {
+      dexResources.add(Resource.fromBytes(Resource.Kind.DEX, dex));
+    }
+    return AndroidApp.builder(inputApp)
+        .clearProgramResources()
+        .addProgramResources(dexResources)
+        .build();
+  }
+
+  private byte[] compile(AndroidApp inputApp, byte[] classFile,
+      ClassFileResourceProvider programClasspath) throws IOException {
+    AndroidApp.Builder builder = AndroidApp.builder();
+    builder.addClassProgramData(classFile);
+    builder.addClasspathResourceProvider(programClasspath);
+    inputApp.getClasspathResourceProviders().forEach(builder::addClasspathResourceProvider);
+    inputApp.getLibraryResourceProviders().forEach(builder::addLibraryResourceProvider);
+    // The misses are compiled in parallel, so each of them runs on a single thread.
+    CompilationResult result = D8.runForTesting(builder.build(), createOptions());
+    List<Resource> output = result.androidApp.getDexProgramResources();
+    assert output.size() == 1;
+    try (InputStream input = output.get(0).getStream()) {
+      return ByteStreams.toByteArray(input);
+    }
+  }
+
+  private InternalOptions createOptions() {
+    InternalOptions internal = new InternalOptions(new DexItemFactory());
+    internal.numberOfThreads = 1;
+    internal.debug = options.debug;
+    internal.minimalMainDex = options.minimalMainDex;
+    internal.minApiLevel = options.minApiLevel;
+    internal.intermediate = true;
+    internal.skipMinification = true;
+    internal.useTreeShaking = false;
+    internal.interfaceMethodDesugaring = options.interfaceMethodDesugaring;
+    internal.tryWithResourcesDesugaring = options.tryWithResourcesDesugaring;
+    internal.inlineAccessors = false;
+    internal.removeSwitchMaps = false;
+    internal.outline.enabled = false;
+    return internal;
+  }
+
+  private void store(Path cached, byte[] dex) throws IOException {
+    Files.createDirectories(cached.getParent());
+    // Write to a temporary file first so that concurrent builds never observe partial entries.
+    Path temporary = Files.createTempFile(cached.getParent(), "tmp", DEX_EXTENSION);
+    try {
+      Files.write(temporary, dex);
+      Files.move(temporary, cached, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  private Path getCacheFile(byte[] classFile, TypeDigests typeDigests) throws IOException {
+    ClassReader reader = new ClassReader(classFile);
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putString(optionsKey, StandardCharsets.UTF_8);
+    hasher.putBytes(classFile);
+    String self = getDescriptor(reader.getClassName());
+    for (Map.Entry<String, HashCode> dependency
+        : typeDigests.getDependencies(self, getReferencedTypes(reader)).entrySet()) {
+      hasher.putString(dependency.getKey(), StandardCharsets.UTF_8);
+      hasher.putBytes(dependency.getValue().asBytes());
+    }
+    String key = hasher.hash().toString();
+    return directory.resolve(key.substring(0, 2)).resolve(key + DEX_EXTENSION);
+  }
+
+  private static Set<String> getReferencedTypes(ClassReader reader) {
+    Set<String> types = new HashSet<>();
+    Remapper collector = new Remapper() {
+      @Override
+      public String map(String internalName) {
+        types.add(getDescriptor(internalName));
+        return internalName;
+      }
+    };
+    reader.accept(new ClassRemapper(new ClassVisitor(Opcodes.ASM5) {}, collector),
+        ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    return types;
+  }
+
+  private static String getDescriptor(String internalName) {
+    return "L" + internalName + ";";
+  }
+
+  /** Content digests and supertypes of the types visible when compiling a single class. */
+  private static class TypeDigests {
+
+    private static final HashCode MISSING = HashCode.fromInt(0);
+
+    private final Map<String, byte[]> programClasses;
+    private final Iterable<ClassFileResourceProvider> providers;
+    private final Map<String, TypeInfo> types = new ConcurrentHashMap<>();
+
+    TypeDigests(Map<String, byte[]> programClasses,
+        Iterable<ClassFileResourceProvider> providers) {
+      this.programClasses = programClasses;
+      this.providers = providers;
+    }
+
+    /**
+     * Returns the digests of the given types and of all their supertypes, sorted by descriptor.
+     */
+    SortedMap<String, HashCode> getDependencies(String self, Set<String> referencedTypes)
+        throws IOException {
+      SortedMap<String, HashCode> dependencies = new TreeMap<>();
+      Deque<String> worklist = new ArrayDeque<>(referencedTypes);
+      while (!worklist.isEmpty()) {
+        String type = worklist.pop();
+        if (type.equals(self) || dependencies.containsKey(type)) {
+          continue;
+        }
+        TypeInfo info = getTypeInfo(type);
+        dependencies.put(type, info.digest);
+        worklist.addAll(info.supertypes);
+      }
+      return dependencies;
+    }
+
+    private TypeInfo getTypeInfo(String type) throws IOException {
+      TypeInfo info = types.get(type);
+      if (info == null) {
+        info = computeTypeInfo(type);
+        types.putIfAbsent(type, info);
+      }
+      return info;
+    }
+
+    private TypeInfo computeTypeInfo(String type) throws IOException {
+      byte[] bytes = programClasses.get(type);
+      if (bytes == null) {
+        bytes = readFromProviders(type);
+      }
+      if (bytes == null) {
+        return new TypeInfo(MISSING, Collections.emptyList());
+      }
+      ClassReader reader = new ClassReader(bytes);
+      List<String> supertypes = new ArrayList<>();
+      if (reader.getSuperName() != null) {
+        supertypes.add(getDescriptor(reader.getSuperName()));
+      }
+      for (String iface : reader.getInterfaces()) {
+        supertypes.add(getDescriptor(iface));
+      }
+      return new TypeInfo(Hashing.sha256().hashBytes(bytes), supertypes);
+    }
+
+    private byte[] readFromProviders(String type) throws IOException {
+      for (ClassFileResourceProvider provider : providers) {
+        Resource resource = provider.getResource(type);
+        if (resource != null) {
+          try (InputStream input = resource.getStream()) {
+            return ByteStreams.toByteArray(input);
+          }
+        }
+      }
+      return null;
+    }
+  }
+
+  private static class TypeInfo {
+
+    final HashCode digest;
+    final List<String> supertypes;
+
+    TypeInfo(HashCode digest, List<String> supertypes) {
+      this.digest = digest;
+      this.supertypes = supertypes;
+    }
+  }
+}
@@ -5,18 +5,28 @@ package com.android.tools.r8;
 
 import com.android.tools.r8.utils.ThreadUtils;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Comparator;
 import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
 
 public class IncrementalDexingBenchmark {
   private static final int ITERATIONS = 1000;
 
   public static void compile(ExecutorService executor) throws IOException, CompilationException {
+    compile(executor, null);
+  }
+
+  public static void compile(ExecutorService executor, Path dexCache)
+      throws IOException, CompilationException {
     D8Output output =
         D8.run(
             D8Command.builder()
                 .addProgramFiles(Paths.get("build/test/examples/arithmetic.jar"))
                 .setMode(CompilationMode.DEBUG)
+                .setDexCacheDirectory(dexCache)
                 .build(),
             executor);
     if (output.getDexResources().size() != 1) {
@@ -34,8 +44,42 @@ public class IncrementalDexingBenchmark {
       }
       double elapsedMs = (System.nanoTime() - start) / 1000000.0;
       System.out.println("IncrementalDexing(RunTime): " + elapsedMs + " ms");
+      runWithDexCache(executor);
     } finally {
       executor.shutdown();
     }
   }
+
+  // Every cold iteration starts from an empty dex cache, every warm iteration hits on all classes.
+  private static void runWithDexCache(ExecutorService executor)
+      throws IOException, CompilationException {
+    Path dexCache = Files.createTempDirectory("dexcache");
+    try {
+      long coldNanos = 0;
+      for (int i = 0; i < ITERATIONS; i++) {
+        deleteContents(dexCache);
+        long start = System.nanoTime();
+        compile(executor, dexCache);
+        coldNanos += System.nanoTime() - start;
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        compile(executor, dexCache);
+      }
+      long warmNanos = System.nanoTime() - start;
+      System.out.println("IncrementalDexingColdCache(RunTime): " + coldNanos / 1000000.0 + " ms");
+      System.out.println("IncrementalDexingWarmCache(RunTime): " + warmNanos / 1000000.0 + " ms");
+    } finally {
+      deleteContents(dexCache);
+      Files.delete(dexCache);
+    }
+  }
+
+  private static void deleteContents(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.filter(path -> !path.equals(directory))
+          .sorted(Comparator.reverseOrder())
+          .forEach(path -> path.toFile().delete());
+    }
+  }
 }
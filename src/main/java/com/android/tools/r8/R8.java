@@ -43,6 +43,7 @@ import com.android.tools.r8.shaking.TreePruner;
 import com.android.tools.r8.shaking.protolite.ProtoLiteExtension;
 import com.android.tools.r8.utils.AndroidApp;
 import com.android.tools.r8.utils.CfgPrinter;
+import com.android.tools.r8.utils.DexOutputSink;
 import com.android.tools.r8.utils.FileUtils;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.PackageDistribution;
@@ -77,7 +78,6 @@ public class R8 {
 
   private R8(InternalOptions options) {
     this.options = options;
-    options.itemFactory.resetSortedIndices();
   }
 
   // Compute the marker to be placed in the main dex file.
@@ -137,6 +137,7 @@ public class R8 {
       IRConverter converter = new IRConverter(
           timing, application, appInfo, options, printer, graphLense);
       application = converter.optimize(executorService);
+      appInfo.countVirtualTargetLookups(timing);
     } finally {
       timing.end();
     }
@@ -261,7 +262,7 @@ public class R8 {
             .run(executorService);
         Enqueuer enqueuer = new Enqueuer(appInfo);
         enqueuer.addExtension(new ProtoLiteExtension(appInfo));
-        appInfo = enqueuer.traceApplication(rootSet, timing);
+        appInfo = enqueuer.traceApplication(rootSet, executorService, timing);
         if (options.proguardConfiguration.isPrintSeeds()) {
           ByteArrayOutputStream bytes = new ByteArrayOutputStream();
           PrintStream out = new PrintStream(bytes);
@@ -270,7 +271,9 @@ public class R8 {
           proguardSeedsData = bytes.toByteArray();
         }
         if (options.useTreeShaking) {
+          int classCount = application.classes().size();
           application = new TreePruner(application, appInfo.withLiveness(), options).run();
+          timing.count("Classes pruned", classCount - application.classes().size());
           // Recompute the subtyping information.
           appInfo = appInfo.withLiveness().prunedCopyFrom(application);
           new AbstractMethodRemover(appInfo).run();
@@ -331,9 +334,11 @@ public class R8 {
         timing.begin("Post optimization code stripping");
         try {
           Enqueuer enqueuer = new Enqueuer(appInfo);
-          appInfo = enqueuer.traceApplication(rootSet, timing);
+          appInfo = enqueuer.traceApplication(rootSet, executorService, timing);
           if (options.useTreeShaking) {
+            int classCount = application.classes().size();
             application = new TreePruner(application, appInfo.withLiveness(), options).run();
+            timing.count("Classes pruned", classCount - application.classes().size());
             appInfo = appInfo.withLiveness().prunedCopyFrom(application);
             // Print reasons on the application after pruning, so that we reflect the actual result.
             ReasonPrinter reasonPrinter = enqueuer.getReasonPrinter(rootSet.reasonAsked);
@@ -398,6 +403,9 @@ public class R8 {
       if (options.printTimes) {
         timing.report();
       }
+      if (options.timingsOutput != null) {
+        timing.writeTraceOrReport(options.timingsOutput);
+      }
     }
   }
 
@@ -422,7 +430,8 @@ public class R8 {
 
   static void writeOutputs(R8Command command, InternalOptions options, AndroidApp outputApp)
       throws IOException {
-    if (command.getOutputPath() != null) {
+    // With a sink, the dex files have already been written while compiling.
+    if (command.getOutputPath() != null && options.dexOutputSink == null) {
       outputApp.write(command.getOutputPath(), options.outputMode);
     }
 
@@ -490,6 +499,20 @@ public class R8 {
     return outputApp;
   }
 
+  /**
+   * Compiles and streams each dex file to the output path of the command as it is written, instead
+   * of returning the dex files in memory. The other outputs are written as by {@link #run}.
+   */
+  static void runAndWrite(R8Command command, ExecutorService executor)
+      throws IOException, CompilationException, ProguardRuleParserException {
+    InternalOptions options = command.getInternalOptions();
+    try (DexOutputSink sink = DexOutputSink.create(command.getOutputPath(), options.outputMode)) {
+      options.dexOutputSink = sink;
+      AndroidApp outputApp = runForTesting(command.getInputApp(), options, executor).androidApp;
+      writeOutputs(command, options, outputApp);
+    }
+  }
+
   private static void run(String[] args)
       throws IOException, ProguardRuleParserException, CompilationException {
     R8Command.Builder builder = R8Command.parse(args);
@@ -505,7 +528,12 @@ public class R8 {
       System.out.println("R8 " + VERSION);
       return;
     }
-    run(command);
+    ExecutorService executorService = ThreadUtils.getExecutorService(command.getInternalOptions());
+    try {
+      runAndWrite(command, executorService);
+    } finally {
+      executorService.shutdown();
+    }
   }
 
   public static void main(String[] args) {
@@ -35,6 +35,7 @@ public class R8Command extends BaseCommand {
     private Optional<Boolean> minification = Optional.empty();
     private boolean ignoreMissingClasses = false;
     private Path packageDistributionFile = null;
+    private DexItemFactory itemFactory = null;
 
     private Builder() {
       super(CompilationMode.RELEASE);
@@ -142,6 +143,15 @@ public class R8Command extends BaseCommand {
       return self();
     }
 
+    /**
+     * Set the factory for the dex items of the compilation, so that it can be shared by several
+     * compilations. For testing.
+     */
+    Builder setDexItemFactory(DexItemFactory itemFactory) {
+      this.itemFactory = itemFactory;
+      return self();
+    }
+
     protected void validate() throws CompilationException {
       super.validate();
       if (mainDexListOutput != null && mainDexRules.isEmpty() && !getAppBuilder().hasMainDexList()) {
@@ -162,7 +172,7 @@ public class R8Command extends BaseCommand {
       }
 
       validate();
-      DexItemFactory factory = new DexItemFactory();
+      DexItemFactory factory = itemFactory != null ? itemFactory : new DexItemFactory();
       ImmutableList<ProguardConfigurationRule> mainDexKeepRules;
       if (this.mainDexRules.isEmpty()) {
         mainDexKeepRules = ImmutableList.of();
@@ -212,7 +222,8 @@ public class R8Command extends BaseCommand {
           getMinApiLevel(),
           useTreeShaking,
           useMinification,
-          ignoreMissingClasses);
+          ignoreMissingClasses,
+          getTimingsOutput());
     }
   }
 
@@ -241,6 +252,8 @@ public class R8Command extends BaseCommand {
       "                           # primary dex file.",
       "  --main-dex-list <file>   # List of classes to place in the primary dex file.",
       "  --main-dex-list-output <file>  # Output the full main-dex list in <file>.",
+      "  --timings <file>         # Write timings of the compilation phases to <file>",
+      "                           # in the Chrome trace event format.",
       "  --version                # Print the version of r8.",
       "  --help                   # Print this message."));
 
@@ -319,6 +332,8 @@ public class R8Command extends BaseCommand {
         builder.setProguardMapFile(Paths.get(args[++i]));
       } else if (arg.equals("--ignore-missing-classes")) {
         builder.setIgnoreMissingClasses(true);
+      } else if (arg.equals("--timings")) {
+        builder.setTimingsOutput(Paths.get(args[++i]));
       } else if (arg.startsWith("@")) {
         // TODO(zerny): Replace this with pipe reading.
         String argsFile = arg.substring(1);
@@ -360,8 +375,9 @@ public class R8Command extends BaseCommand {
       int minApiLevel,
       boolean useTreeShaking,
       boolean useMinification,
-      boolean ignoreMissingClasses) {
-    super(inputApp, outputPath, outputMode, mode, minApiLevel);
+      boolean ignoreMissingClasses,
+      Path timingsOutput) {
+    super(inputApp, outputPath, outputMode, mode, minApiLevel, timingsOutput);
     assert proguardConfiguration != null;
     assert mainDexKeepRules != null;
     assert getOutputMode() == OutputMode.Indexed : "Only regular mode is supported in R8";
@@ -415,6 +431,7 @@ public class R8Command extends BaseCommand {
       internal.printMainDexListFile = mainDexListOutput;
     }
     internal.outputMode = getOutputMode();
+    internal.timingsOutput = getTimingsOutput();
     if (internal.debug) {
       // TODO(zerny): Should we support removeSwitchMaps in debug mode? b/62936642
       internal.removeSwitchMaps = false;
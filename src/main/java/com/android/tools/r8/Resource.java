@@ -49,6 +49,11 @@ public abstract class Resource {
   /** Get the resource as a stream. */
   public abstract InputStream getStream() throws IOException;
 
+  /** Get the file holding the resource content if it is file based, or null otherwise. */
+  public Path getFile() {
+    return null;
+  }
+
   /** File based application resource. */
   private static class FileResource extends Resource {
     final Path file;
@@ -68,6 +73,11 @@ public abstract class Resource {
     public InputStream getStream() throws IOException {
       return new FileInputStream(file.toFile());
     }
+
+    @Override
+    public Path getFile() {
+      return file;
+    }
   }
 
   /** Byte content based application resource. */
@@ -10,6 +10,7 @@ import com.android.tools.r8.graph.DexApplication;
 import com.android.tools.r8.graph.DexApplication.Builder;
 import com.android.tools.r8.graph.DexProgramClass;
 import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.graph.SortedIndices;
 import com.android.tools.r8.naming.NamingLens;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
@@ -319,9 +320,8 @@ public class BisectState {
 
   private static List<DexProgramClass> getSortedClasses(DexApplication app) {
     List<DexProgramClass> classes = new ArrayList<>(app.classes());
-    app.dexItemFactory.sort(NamingLens.getIdentityLens());
-    classes.sort((a, b) -> a.type.compareTo(b.type));
-    app.dexItemFactory.resetSortedIndices();
+    SortedIndices indices = app.dexItemFactory.sort(NamingLens.getIdentityLens());
+    classes.sort((a, b) -> indices.compare(a.type, b.type));
     return classes;
   }
 
@@ -189,27 +189,35 @@ public class ApplicationReader {
         List<DexFileReader> fileReaders = new ArrayList<>(dexSources.size());
         int computedMinApiLevel = options.minApiLevel;
         for (Resource input : dexSources) {
-          try (InputStream is = input.getStream()) {
-            DexFile file = new DexFile(is);
-            computedMinApiLevel = verifyOrComputeMinApiLevel(computedMinApiLevel, file);
-            fileReaders.add(new DexFileReader(file, classKind, itemFactory));
-          }
+          DexFile file = readDexFile(input);
+          computedMinApiLevel = verifyOrComputeMinApiLevel(computedMinApiLevel, file);
+          fileReaders.add(new DexFileReader(file, classKind, itemFactory));
         }
         options.minApiLevel = computedMinApiLevel;
         for (DexFileReader reader : fileReaders) {
           DexFileReader.populateIndexTables(reader);
         }
-        // Read the DexCode items and DexProgramClass items in parallel.
+        // Read the DexProgramClass items in parallel. Code items are decoded when first used.
         for (DexFileReader reader : fileReaders) {
           futures.add(executorService.submit(() -> {
-            reader.addCodeItemsTo();  // Depends on Everything for parsing.
             reader.addClassDefsTo(
-                classKind.bridgeConsumer(classes::add)); // Depends on Methods, Code items etc.
+                classKind.bridgeConsumer(classes::add)); // Depends on Methods etc.
           }));
         }
       }
     }
 
+    private DexFile readDexFile(Resource input) throws IOException {
+      // Map dex files instead of reading them, so that the content of all dex inputs does not
+      // have to be on the heap at the same time.
+      if (input.getFile() != null) {
+        return new DexFile(input.getFile());
+      }
+      try (InputStream is = input.getStream()) {
+        return new DexFile(is);
+      }
+    }
+
     private <T extends DexClass> void readClassSources(List<Resource> classSources,
         ClassKind classKind, Queue<T> classes) throws IOException, ExecutionException {
       JarClassFileReader reader = new JarClassFileReader(
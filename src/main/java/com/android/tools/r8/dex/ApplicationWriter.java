@@ -6,7 +6,6 @@ package com.android.tools.r8.dex;
 import com.android.tools.r8.errors.CompilationError;
 import com.android.tools.r8.graph.AppInfo;
 import com.android.tools.r8.graph.DexAnnotation;
-import com.android.tools.r8.graph.DexAnnotationDirectory;
 import com.android.tools.r8.graph.DexAnnotationSet;
 import com.android.tools.r8.graph.DexAnnotationSetRefList;
 import com.android.tools.r8.graph.DexApplication;
@@ -18,20 +17,26 @@ import com.android.tools.r8.graph.DexString;
 import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.graph.DexTypeList;
 import com.android.tools.r8.graph.DexValue;
+import com.android.tools.r8.graph.SortedIndices;
 import com.android.tools.r8.naming.MinifiedNameMapPrinter;
 import com.android.tools.r8.naming.NamingLens;
 import com.android.tools.r8.utils.AndroidApp;
 import com.android.tools.r8.utils.DescriptorUtils;
+import com.android.tools.r8.utils.DexOutputSink;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.OutputMode;
 import com.android.tools.r8.utils.PackageDistribution;
+import com.android.tools.r8.utils.ThreadUtils;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.Writer;
-import java.util.LinkedHashMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -48,17 +53,23 @@ public class ApplicationWriter {
 
   private static class SortAnnotations extends MixedSectionCollection {
 
+    private final SortedIndices sortedIndices;
+
+    private SortAnnotations(SortedIndices sortedIndices) {
+      this.sortedIndices = sortedIndices;
+    }
+
     @Override
     public boolean add(DexAnnotationSet dexAnnotationSet) {
       // Annotation sets are sorted by annotation types.
-      dexAnnotationSet.sort();
+      dexAnnotationSet.sort(sortedIndices);
       return true;
     }
 
     @Override
     public boolean add(DexAnnotation annotation) {
       // The elements of encoded annotation must be sorted by name.
-      annotation.annotation.sort();
+      annotation.annotation.sort(sortedIndices);
       return true;
     }
 
@@ -66,7 +77,7 @@ public class ApplicationWriter {
     public boolean add(DexEncodedArray dexEncodedArray) {
       // Dex values must potentially be sorted, eg, for DexValueAnnotation.
       for (DexValue value : dexEncodedArray.values) {
-        value.sort();
+        value.sort(sortedIndices);
       }
       return true;
     }
@@ -97,8 +108,7 @@ public class ApplicationWriter {
     }
 
     @Override
-    public boolean setAnnotationsDirectoryForClass(DexProgramClass clazz,
-        DexAnnotationDirectory annotationDirectory) {
+    public boolean setAnnotationsDirectoryForClass(DexProgramClass clazz) {
       return true;
     }
   }
@@ -128,10 +138,21 @@ public class ApplicationWriter {
       throws IOException, ExecutionException {
     application.timing.begin("DexApplication.write");
     try {
-      application.dexItemFactory.sort(namingLens);
+      // Only the items written to the output are sorted, as the factory also holds the items of
+      // the library and of removed code.
+      application.timing.begin("Sort items");
+      ReferencedItems referencedItems =
+          ReferencedItems.collect(application.classes(), namingLens, executorService);
+      if (markerString != null) {
+        markerString.collectIndexedItems(referencedItems);
+      }
+      SortedIndices sortedIndices = application.dexItemFactory.sort(namingLens,
+          referencedItems.getStrings(), referencedItems.getTypes(), referencedItems.getFields(),
+          referencedItems.getProtos(), referencedItems.getMethods(), executorService);
+      application.timing.end();
       assert this.markerString == null || application.dexItemFactory.extractMarker() != null;
 
-      SortAnnotations sortAnnotations = new SortAnnotations();
+      SortAnnotations sortAnnotations = new SortAnnotations(sortedIndices);
       application.classes().forEach((clazz) -> clazz.addDependencies(sortAnnotations));
 
       // Distribute classes into dex files.
@@ -160,23 +181,38 @@ public class ApplicationWriter {
       }
       Map<Integer, VirtualFile> newFiles = distributor.run();
 
-      // Write the dex files and the Proguard mapping file in parallel. Use a linked hash map
-      // as the order matters when addDexProgramData is called below.
-      LinkedHashMap<VirtualFile, Future<byte[]>> dexDataFutures = new LinkedHashMap<>();
-      for (int i = 0; i < newFiles.size(); i++) {
-        VirtualFile newFile = newFiles.get(i);
-        assert newFile.getId() == i;
-        assert !newFile.isEmpty();
-        if (!newFile.isEmpty()) {
-          dexDataFutures.put(newFile, executorService.submit(() -> writeDexFile(newFile)));
-        }
-      }
-
-      // Wait for all the spawned futures to terminate.
+      // Write the dex files in parallel, and pass them to the sink in order. The output buffers
+      // are reused between the dex files, so that a buffer only has to grow to the size of the
+      // largest file once. A written file keeps its buffer until the sink has taken it, so only
+      // a few more files than there are threads are written ahead of the sink.
       AndroidApp.Builder builder = AndroidApp.builder();
+      DexOutputSink sink = options.dexOutputSink;
+      if (sink == null) {
+        // Keep the dex files in memory, in the resulting application.
+        sink = (index, content, length, classDescriptors) ->
+            builder.addDexProgramData(Arrays.copyOf(content, length), classDescriptors);
+      }
+      Queue<DexOutputBuffer> outputBuffers = new ConcurrentLinkedQueue<>();
+      Queue<Future<WrittenDexFile>> dexFileFutures = new ArrayDeque<>();
+      int filesInFlight = Math.max(1, ThreadUtils.getNumberOfThreads(options)) + 1;
+      int submitted = 0;
       try {
-        for (Map.Entry<VirtualFile, Future<byte[]>> entry : dexDataFutures.entrySet()) {
-          builder.addDexProgramData(entry.getValue().get(), entry.getKey().getClassDescriptors());
+        for (int i = 0; i < newFiles.size(); i++) {
+          for (; submitted < newFiles.size() && submitted < i + filesInFlight; submitted++) {
+            VirtualFile newFile = newFiles.get(submitted);
+            assert newFile.getId() == submitted;
+            assert !newFile.isEmpty();
+            dexFileFutures.add(executorService.submit(
+                () -> writeDexFile(newFile, sortedIndices, outputBuffers, executorService)));
+          }
+          WrittenDexFile dexFile = dexFileFutures.remove().get();
+          try {
+            sink.accept(i, dexFile.buffer.asArray(), dexFile.size,
+                newFiles.get(i).getClassDescriptors());
+          } finally {
+            dexFile.buffer.reset();
+            outputBuffers.offer(dexFile.buffer);
+          }
         }
       } catch (InterruptedException e) {
         throw new RuntimeException("Interrupted while waiting for future.", e);
@@ -203,16 +239,39 @@ public class ApplicationWriter {
     }
   }
 
-  private byte[] writeDexFile(VirtualFile vfile) {
+  // A dex file written to the start of an output buffer taken from the pool.
+  private static class WrittenDexFile {
+
+    private final DexOutputBuffer buffer;
+    private final int size;
+
+    private WrittenDexFile(DexOutputBuffer buffer, int size) {
+      this.buffer = buffer;
+      this.size = size;
+    }
+  }
+
+  private WrittenDexFile writeDexFile(VirtualFile vfile, SortedIndices sortedIndices,
+      Queue<DexOutputBuffer> outputBuffers, ExecutorService executorService) {
+    DexOutputBuffer outputBuffer = outputBuffers.poll();
+    if (outputBuffer == null) {
+      outputBuffer = new DexOutputBuffer();
+    }
     FileWriter fileWriter =
         new FileWriter(
-            vfile.computeMapping(application), application, appInfo, options, namingLens);
+            vfile.computeMapping(sortedIndices, application),
+            application,
+            appInfo,
+            options,
+            namingLens,
+            outputBuffer,
+            executorService);
     // The file writer now knows the indexes of the fixed sections including strings.
     fileWriter.rewriteCodeWithJumboStrings(vfile.classes());
     // Collect the non-fixed sections.
     fileWriter.collect();
-    // Generate and write the bytes.
-    return fileWriter.generate();
+    // Generate and write the bytes. The buffer goes back to the pool once the sink took them.
+    return new WrittenDexFile(outputBuffer, fileWriter.generate());
   }
 
   private byte[] writeProguardMapFile() throws IOException {
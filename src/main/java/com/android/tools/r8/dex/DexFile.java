@@ -12,9 +12,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 public class DexFile {
 
@@ -22,10 +23,15 @@ public class DexFile {
   private final ByteBuffer buffer;
   private final int version;
 
-  DexFile(String name) throws IOException {
-    this.name = name;
-    Path path = Paths.get(name);
-    buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+  /**
+   * Returns a DexFile reading directly from a read-only memory mapping of the file, so the content
+   * is not copied to the heap. The mapping is released when the DexFile is garbage collected.
+   */
+  public DexFile(Path path) throws IOException {
+    this.name = path.toString();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    }
     version = parseMagic(buffer);
   }
 
@@ -47,6 +53,17 @@ public class DexFile {
     version = parseMagic(buffer);
   }
 
+  private DexFile(DexFile file) {
+    this.name = file.name;
+    this.buffer = file.buffer.duplicate().order(file.buffer.order());
+    this.version = file.version;
+  }
+
+  /** Returns a DexFile sharing the content of this one but with an independent position. */
+  DexFile duplicate() {
+    return new DexFile(this);
+  }
+
   // Parse the magic header and determine the dex file version.
   private int parseMagic(ByteBuffer buffer) {
     int index = 0;
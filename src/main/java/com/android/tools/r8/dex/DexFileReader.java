@@ -12,6 +12,7 @@ import com.android.tools.r8.Resource;
 import com.android.tools.r8.code.Instruction;
 import com.android.tools.r8.code.InstructionFactory;
 import com.android.tools.r8.graph.ClassKind;
+import com.android.tools.r8.graph.Code;
 import com.android.tools.r8.graph.Descriptor;
 import com.android.tools.r8.graph.DexAccessFlags;
 import com.android.tools.r8.graph.DexAnnotation;
@@ -49,11 +50,11 @@ import com.android.tools.r8.graph.DexValue.DexValueMethodHandle;
 import com.android.tools.r8.graph.DexValue.DexValueMethodType;
 import com.android.tools.r8.graph.DexValue.DexValueNull;
 import com.android.tools.r8.graph.DexValue.DexValueString;
+import com.android.tools.r8.graph.LazyDexCode;
 import com.android.tools.r8.graph.OffsetToObjectMapping;
 import com.android.tools.r8.logging.Log;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ShortBuffer;
@@ -67,14 +68,14 @@ import java.util.function.Supplier;
 
 public class DexFileReader {
 
-  final int NO_INDEX = -1;
+  static final int NO_INDEX = -1;
   private DexFile file;
   private final Segment[] segments;
   private int[] stringIDs;
   private final ClassKind classKind;
 
   public static Segment[] parseMapFrom(Path file) throws IOException {
-    return parseMapFrom(new DexFile(file.toString()));
+    return parseMapFrom(new DexFile(file));
   }
 
   public static Segment[] parseMapFrom(InputStream stream) throws IOException {
@@ -89,24 +90,27 @@ public class DexFileReader {
   public void close() {
     // This close behavior is needed to reduce peak memory usage of D8/R8.
     indexedItems = null;
-    codes = null;
     offsetMap = null;
     file = null;
     stringIDs = null;
+    codeItemDecoder = null;
   }
 
   // Mapping from indexes to indexable dex items.
   private OffsetToObjectMapping indexedItems = new OffsetToObjectMapping();
 
-  // Mapping from offset to code item;
-  private Int2ObjectMap<DexCode> codes = new Int2ObjectOpenHashMap<>();
-
   // Mapping from offset to dex item;
   private Int2ObjectMap<Object> offsetMap = new Int2ObjectOpenHashMap<>();
 
   // Factory to canonicalize certain dexitems.
   private final DexItemFactory dexItemFactory;
 
+  // Shared by the lazy code of all methods read from this file.
+  private CodeItemDecoder codeItemDecoder = null;
+
+  // Scratch buffer for the content of the string being read.
+  private byte[] stringBuffer = new byte[256];
+
   public DexFileReader(DexFile file, ClassKind classKind, DexItemFactory dexItemFactory) {
     this.file = file;
     this.dexItemFactory = dexItemFactory;
@@ -120,24 +124,6 @@ public class DexFileReader {
     return indexedItems;
   }
 
-  void addCodeItemsTo() {
-    if (classKind == ClassKind.LIBRARY) {
-      // Ignore contents of library files.
-      return;
-    }
-    Segment segment = lookupSegment(Constants.TYPE_CODE_ITEM);
-    if (segment.length == 0) {
-      return;
-    }
-    file.position(segment.offset);
-    for (int i = 0; i < segment.length; i++) {
-      file.align(4);  // code items are 4 byte aligned.
-      int offset = file.position();
-      DexCode code = parseCodeItem();
-      codes.put(offset, code);  // Update the file local offset to code mapping.
-    }
-  }
-
   private DexTypeList parseTypeList() {
     DexType[] result = new DexType[file.getUint()];
     for (int j = 0; j < result.length; j++) {
@@ -435,83 +421,6 @@ public class DexFileReader {
         parameters);
   }
 
-  private DexDebugInfo debugInfoAt(int offset) {
-    return (DexDebugInfo) cacheAt(offset, this::parseDebugInfo);
-  }
-
-  private DexDebugInfo parseDebugInfo() {
-    int start = file.getUleb128();
-    int parametersSize = file.getUleb128();
-    DexString[] parameters = new DexString[parametersSize];
-    for (int i = 0; i < parametersSize; i++) {
-      int index = file.getUleb128p1();
-      if (index != NO_INDEX) {
-        parameters[i] = indexedItems.getString(index);
-      }
-    }
-    List<DexDebugEvent> events = new ArrayList<>();
-    for (int head = file.getUbyte(); head != Constants.DBG_END_SEQUENCE; head = file.getUbyte()) {
-      switch (head) {
-        case Constants.DBG_ADVANCE_PC:
-          events.add(dexItemFactory.createAdvancePC(file.getUleb128()));
-          break;
-        case Constants.DBG_ADVANCE_LINE:
-          events.add(dexItemFactory.createAdvanceLine(file.getSleb128()));
-          break;
-        case Constants.DBG_START_LOCAL: {
-          int registerNum = file.getUleb128();
-          int nameIdx = file.getUleb128p1();
-          int typeIdx = file.getUleb128p1();
-          events.add(new DexDebugEvent.StartLocal(
-              registerNum,
-              nameIdx == NO_INDEX ? null : indexedItems.getString(nameIdx),
-              typeIdx == NO_INDEX ? null : indexedItems.getType(typeIdx),
-              null));
-          break;
-        }
-        case Constants.DBG_START_LOCAL_EXTENDED: {
-          int registerNum = file.getUleb128();
-          int nameIdx = file.getUleb128p1();
-          int typeIdx = file.getUleb128p1();
-          int sigIdx = file.getUleb128p1();
-          events.add(new DexDebugEvent.StartLocal(
-              registerNum,
-              nameIdx == NO_INDEX ? null : indexedItems.getString(nameIdx),
-              typeIdx == NO_INDEX ? null : indexedItems.getType(typeIdx),
-              sigIdx == NO_INDEX ? null : indexedItems.getString(sigIdx)));
-          break;
-        }
-        case Constants.DBG_END_LOCAL: {
-          events.add(dexItemFactory.createEndLocal(file.getUleb128()));
-          break;
-        }
-        case Constants.DBG_RESTART_LOCAL: {
-          events.add(dexItemFactory.createRestartLocal(file.getUleb128()));
-          break;
-        }
-        case Constants.DBG_SET_PROLOGUE_END: {
-          events.add(dexItemFactory.createSetPrologueEnd());
-          break;
-        }
-        case Constants.DBG_SET_EPILOGUE_BEGIN: {
-          events.add(dexItemFactory.createSetEpilogueBegin());
-          break;
-        }
-        case Constants.DBG_SET_FILE: {
-          int nameIdx = file.getUleb128p1();
-          DexString sourceFile = nameIdx == NO_INDEX ? null : indexedItems.getString(nameIdx);
-          events.add(dexItemFactory.createSetFile(sourceFile));
-          break;
-        }
-        default: {
-          assert head >= 0x0a && head <= 0xff;
-          events.add(dexItemFactory.createDefault(head));
-        }
-      }
-    }
-    return new DexDebugInfo(start, parameters, events.toArray(new DexDebugEvent[events.size()]));
-  }
-
   private static class MemberAnnotationIterator<S extends Descriptor<?, S>, T extends DexItem> {
 
     private int index = 0;
@@ -565,6 +474,13 @@ public class DexFileReader {
     return fields;
   }
 
+  private CodeItemDecoder getCodeItemDecoder() {
+    if (codeItemDecoder == null) {
+      codeItemDecoder = new CodeItemDecoder(file.duplicate(), indexedItems, dexItemFactory);
+    }
+    return codeItemDecoder;
+  }
+
   private DexEncodedMethod[] readMethods(int size, DexMethodAnnotation[] annotations,
       DexParameterAnnotation[] parameters, boolean skipCodes) {
     DexEncodedMethod[] methods = new DexEncodedMethod[size];
@@ -573,14 +489,14 @@ public class DexFileReader {
         new MemberAnnotationIterator<>(annotations, DexAnnotationSet::empty);
     MemberAnnotationIterator<DexMethod, DexAnnotationSetRefList> parameterAnnotationsIterator =
         new MemberAnnotationIterator<>(parameters, DexAnnotationSetRefList::empty);
+    CodeItemDecoder decoder = getCodeItemDecoder();
     for (int i = 0; i < size; i++) {
       methodIndex += file.getUleb128();
       DexAccessFlags accessFlags = new DexAccessFlags(file.getUleb128());
       int codeOff = file.getUleb128();
-      DexCode code = null;
-      if (!skipCodes) {
-        assert codeOff == 0 || codes.get(codeOff) != null;
-        code = codes.get(codeOff);
+      Code code = null;
+      if (!skipCodes && codeOff != 0) {
+        code = new LazyDexCode(() -> decoder.decode(codeOff));
       }
       DexMethod method = indexedItems.getMethod(methodIndex);
       methods[i] = new DexEncodedMethod(method, accessFlags, annotationIterator.getNextFor(method),
@@ -674,6 +590,9 @@ public class DexFileReader {
           virtualMethods);
       classCollection.accept(clazz);  // Update the application object.
     }
+    // Code items are decoded by readers with their own offset cache, so the parsed annotations
+    // and encoded arrays are no longer needed here.
+    offsetMap = new Int2ObjectOpenHashMap<>();
   }
 
   private void parseStringIDs() {
@@ -726,81 +645,188 @@ public class DexFileReader {
     return result;
   }
 
-  private DexCode parseCodeItem() {
-    int registerSize = file.getUshort();
-    int insSize = file.getUshort();
-    int outsSize = file.getUshort();
-    int triesSize = file.getUshort();
-    int debugInfoOff = file.getUint();
-    int insnsSize = file.getUint();
-    short[] code = new short[insnsSize];
-    Try[] tries = new Try[triesSize];
-    DexCode.TryHandler[] handlers = null;
-
-    if (insnsSize != 0) {
-      for (int i = 0; i < insnsSize; i++) {
-        code[i] = file.getShort();
-      }
-      if (insnsSize % 2 != 0) {
-        file.getUshort();  // Skip padding ushort
+  // Decodes the code item at the given offset. Called when the code of a method is first used.
+  /**
+   * Decodes code items for {@link LazyDexCode}. It only holds on to the file content and the index
+   * tables, so the lazy code does not keep the reader alive, and it decodes through a private view
+   * of the content, so code items can be decoded concurrently.
+   */
+  private static class CodeItemDecoder {
+
+    private final DexFile file;
+    private final OffsetToObjectMapping indexedItems;
+    private final DexItemFactory dexItemFactory;
+
+    CodeItemDecoder(DexFile file, OffsetToObjectMapping indexedItems,
+        DexItemFactory dexItemFactory) {
+      this.file = file;
+      this.indexedItems = indexedItems;
+      this.dexItemFactory = dexItemFactory;
+    }
+
+    DexCode decode(int offset) {
+      DexFile view = file.duplicate();
+      view.position(offset);
+      return parseCodeItem(view);
+    }
+
+    private DexDebugInfo debugInfoAt(DexFile file, int offset) {
+      if (offset == 0) {
+        return null;
       }
-      if (triesSize > 0) {
-        Hashtable<Integer, Integer> handlerMap = new Hashtable<>();
-        // tries: try_item[tries_size].
-        for (int i = 0; i < triesSize; i++) {
-          int startAddr = file.getUint();
-          int insnCount = file.getUshort();
-          int handlerOff = file.getUshort();
-          tries[i] = new Try(startAddr, insnCount, handlerOff);
+      file.position(offset);
+      return parseDebugInfo(file);
+    }
+
+    private DexCode parseCodeItem(DexFile file) {
+      int registerSize = file.getUshort();
+      int insSize = file.getUshort();
+      int outsSize = file.getUshort();
+      int triesSize = file.getUshort();
+      int debugInfoOff = file.getUint();
+      int insnsSize = file.getUint();
+      short[] code = new short[insnsSize];
+      Try[] tries = new Try[triesSize];
+      DexCode.TryHandler[] handlers = null;
+
+      if (insnsSize != 0) {
+        for (int i = 0; i < insnsSize; i++) {
+          code[i] = file.getShort();
+        }
+        if (insnsSize % 2 != 0) {
+          file.getUshort();  // Skip padding ushort
         }
-        // handlers: encoded_catch_handler_list
-        int encodedCatchHandlerListPosition = file.position();
-        // - size: uleb128
-        int size = file.getUleb128();
-        handlers = new TryHandler[size];
-        // - list: encoded_catch_handler[handlers_size]
-        for (int i = 0; i < size; i++) {
-          // encoded_catch_handler
-          int encodedCatchHandlerOffset = file.position() - encodedCatchHandlerListPosition;
-          handlerMap.put(encodedCatchHandlerOffset, i);
-          // - size:	sleb128
-          int hsize = file.getSleb128();
-          int realHsize = Math.abs(hsize);
-          // - handlers	encoded_type_addr_pair[abs(size)]
-          TryHandler.TypeAddrPair pairs[] = new TryHandler.TypeAddrPair[realHsize];
-          for (int j = 0; j < realHsize; j++) {
-            int typeIdx = file.getUleb128();
-            int addr = file.getUleb128();
-            pairs[j] = new TypeAddrPair(indexedItems.getType(typeIdx), addr);
+        if (triesSize > 0) {
+          Hashtable<Integer, Integer> handlerMap = new Hashtable<>();
+          // tries: try_item[tries_size].
+          for (int i = 0; i < triesSize; i++) {
+            int startAddr = file.getUint();
+            int insnCount = file.getUshort();
+            int handlerOff = file.getUshort();
+            tries[i] = new Try(startAddr, insnCount, handlerOff);
           }
-          int catchAllAddr = -1;
-          if (hsize <= 0) {
-            catchAllAddr = file.getUleb128();
+          // handlers: encoded_catch_handler_list
+          int encodedCatchHandlerListPosition = file.position();
+          // - size: uleb128
+          int size = file.getUleb128();
+          handlers = new TryHandler[size];
+          // - list: encoded_catch_handler[handlers_size]
+          for (int i = 0; i < size; i++) {
+            // encoded_catch_handler
+            int encodedCatchHandlerOffset = file.position() - encodedCatchHandlerListPosition;
+            handlerMap.put(encodedCatchHandlerOffset, i);
+            // - size:	sleb128
+            int hsize = file.getSleb128();
+            int realHsize = Math.abs(hsize);
+            // - handlers	encoded_type_addr_pair[abs(size)]
+            TryHandler.TypeAddrPair pairs[] = new TryHandler.TypeAddrPair[realHsize];
+            for (int j = 0; j < realHsize; j++) {
+              int typeIdx = file.getUleb128();
+              int addr = file.getUleb128();
+              pairs[j] = new TypeAddrPair(indexedItems.getType(typeIdx), addr);
+            }
+            int catchAllAddr = -1;
+            if (hsize <= 0) {
+              catchAllAddr = file.getUleb128();
+            }
+            handlers[i] = new TryHandler(pairs, catchAllAddr);
           }
-          handlers[i] = new TryHandler(pairs, catchAllAddr);
+          // Convert the handler offsets inside the Try objects to indexes.
+          for (Try t : tries) {
+            t.setHandlerIndex(handlerMap);
+          }
+        }
+      }
+      // Store and restore offset information around reading debug info.
+      int saved = file.position();
+      DexDebugInfo debugInfo = debugInfoAt(file, debugInfoOff);
+      file.position(saved);
+      InstructionFactory factory = new InstructionFactory();
+      Instruction[] instructions =
+          factory.readSequenceFrom(ShortBuffer.wrap(code), 0, code.length, indexedItems);
+      return new DexCode(
+          registerSize,
+          insSize,
+          outsSize,
+          instructions,
+          tries,
+          handlers,
+          debugInfo,
+          factory.getHighestSortingString());
+    }
+
+    private DexDebugInfo parseDebugInfo(DexFile file) {
+      int start = file.getUleb128();
+      int parametersSize = file.getUleb128();
+      DexString[] parameters = new DexString[parametersSize];
+      for (int i = 0; i < parametersSize; i++) {
+        int index = file.getUleb128p1();
+        if (index != NO_INDEX) {
+          parameters[i] = indexedItems.getString(index);
         }
-        // Convert the handler offsets inside the Try objects to indexes.
-        for (Try t : tries) {
-          t.setHandlerIndex(handlerMap);
+      }
+      List<DexDebugEvent> events = new ArrayList<>();
+      for (int head = file.getUbyte(); head != Constants.DBG_END_SEQUENCE; head = file.getUbyte()) {
+        switch (head) {
+          case Constants.DBG_ADVANCE_PC:
+            events.add(dexItemFactory.createAdvancePC(file.getUleb128()));
+            break;
+          case Constants.DBG_ADVANCE_LINE:
+            events.add(dexItemFactory.createAdvanceLine(file.getSleb128()));
+            break;
+          case Constants.DBG_START_LOCAL: {
+            int registerNum = file.getUleb128();
+            int nameIdx = file.getUleb128p1();
+            int typeIdx = file.getUleb128p1();
+            events.add(new DexDebugEvent.StartLocal(
+                registerNum,
+                nameIdx == NO_INDEX ? null : indexedItems.getString(nameIdx),
+                typeIdx == NO_INDEX ? null : indexedItems.getType(typeIdx),
+                null));
+            break;
+          }
+          case Constants.DBG_START_LOCAL_EXTENDED: {
+            int registerNum = file.getUleb128();
+            int nameIdx = file.getUleb128p1();
+            int typeIdx = file.getUleb128p1();
+            int sigIdx = file.getUleb128p1();
+            events.add(new DexDebugEvent.StartLocal(
+                registerNum,
+                nameIdx == NO_INDEX ? null : indexedItems.getString(nameIdx),
+                typeIdx == NO_INDEX ? null : indexedItems.getType(typeIdx),
+                sigIdx == NO_INDEX ? null : indexedItems.getString(sigIdx)));
+            break;
+          }
+          case Constants.DBG_END_LOCAL: {
+            events.add(dexItemFactory.createEndLocal(file.getUleb128()));
+            break;
+          }
+          case Constants.DBG_RESTART_LOCAL: {
+            events.add(dexItemFactory.createRestartLocal(file.getUleb128()));
+            break;
+          }
+          case Constants.DBG_SET_PROLOGUE_END: {
+            events.add(dexItemFactory.createSetPrologueEnd());
+            break;
+          }
+          case Constants.DBG_SET_EPILOGUE_BEGIN: {
+            events.add(dexItemFactory.createSetEpilogueBegin());
+            break;
+          }
+          case Constants.DBG_SET_FILE: {
+            int nameIdx = file.getUleb128p1();
+            DexString sourceFile = nameIdx == NO_INDEX ? null : indexedItems.getString(nameIdx);
+            events.add(dexItemFactory.createSetFile(sourceFile));
+            break;
+          }
+          default: {
+            assert head >= 0x0a && head <= 0xff;
+            events.add(dexItemFactory.createDefault(head));
+          }
         }
       }
+      return new DexDebugInfo(start, parameters, events.toArray(new DexDebugEvent[events.size()]));
     }
-    // Store and restore offset information around reading debug info.
-    int saved = file.position();
-    DexDebugInfo debugInfo = debugInfoAt(debugInfoOff);
-    file.position(saved);
-    InstructionFactory factory = new InstructionFactory();
-    Instruction[] instructions =
-        factory.readSequenceFrom(ShortBuffer.wrap(code), 0, code.length, indexedItems);
-    return new DexCode(
-        registerSize,
-        insSize,
-        outsSize,
-        instructions,
-        tries,
-        handlers,
-        debugInfo,
-        factory.getHighestSortingString());
   }
 
   static void populateIndexTables(DexFileReader fileReader) {
@@ -873,13 +899,17 @@ public class DexFileReader {
     final int offset = stringIDs[index];
     file.position(offset);
     int size = file.getUleb128();
-    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    // Read the content into a scratch buffer, the factory only copies it if the string is new.
+    int length = 0;
     byte read;
     do {
+      if (length == stringBuffer.length) {
+        stringBuffer = Arrays.copyOf(stringBuffer, length * 2);
+      }
       read = file.get();
-      os.write(read);
+      stringBuffer[length++] = read;
     } while (read != 0);
-    return dexItemFactory.createString(size, os.toByteArray());
+    return dexItemFactory.createString(size, stringBuffer, 0, length);
   }
 
   private DexType typeAt(int index) {
@@ -4,12 +4,14 @@
 package com.android.tools.r8.dex;
 
 import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.errors.Unreachable;
 import com.android.tools.r8.graph.ObjectToOffsetMapping;
 import com.android.tools.r8.utils.EncodedValueUtils;
 import com.android.tools.r8.utils.LebUtils;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
+import java.util.Arrays;
 
 /**
  * Provides an abstraction around a {@link ByteBuffer} with write operations for
@@ -19,19 +21,82 @@ public class DexOutputBuffer {
   private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
 
   private ByteBuffer byteBuffer;
+  // Views share the content of another buffer and can therefore not grow.
+  private final boolean isView;
+  // End of the region that may have been written since the last reset. Views cannot write past
+  // the high water mark of their buffer at the time they were created.
+  private int highWater = 0;
 
   public DexOutputBuffer() {
-    byteBuffer = allocate(DEFAULT_BUFFER_SIZE);
+    this(DEFAULT_BUFFER_SIZE);
+  }
+
+  public DexOutputBuffer(int initialSize) {
+    byteBuffer = allocate(initialSize);
+    isView = false;
+  }
+
+  private DexOutputBuffer(ByteBuffer byteBuffer) {
+    this.byteBuffer = byteBuffer;
+    isView = true;
+  }
+
+  /**
+   * Returns a view of this buffer positioned at {@code position}.
+   *
+   * <p>The view shares the content of this buffer but has its own position, so that disjoint
+   * regions can be written through different views concurrently. Views cannot grow, so the space
+   * has to be allocated up front using {@link #ensureCapacity(int)}.
+   */
+  public DexOutputBuffer viewAt(int position) {
+    ByteBuffer view = byteBuffer.duplicate();
+    view.order(ByteOrder.LITTLE_ENDIAN);
+    view.limit(highWater);
+    view.position(position);
+    return new DexOutputBuffer(view);
+  }
+
+  /**
+   * Grows the buffer to hold exactly {@code capacity} bytes if it is smaller, keeping the content.
+   * The first {@code capacity} bytes can then be written through views.
+   */
+  public void ensureCapacity(int capacity) {
+    if (byteBuffer.capacity() < capacity) {
+      grow(capacity);
+    }
+    highWater = Math.max(highWater, capacity);
   }
 
   private void ensureSpaceFor(int bytes) {
     if (byteBuffer.remaining() < bytes) {
-      int newSize = byteBuffer.capacity() + Math.max(byteBuffer.capacity(), bytes * 2);
-      ByteBuffer newBuffer = allocate(newSize);
-      System.arraycopy(byteBuffer.array(), 0, newBuffer.array(), 0, byteBuffer.position());
-      newBuffer.position(byteBuffer.position());
-      byteBuffer = newBuffer;
+      grow(byteBuffer.capacity() + Math.max(byteBuffer.capacity(), bytes * 2));
+    }
+    if (!isView) {
+      highWater = Math.max(highWater, byteBuffer.position() + bytes);
+    }
+  }
+
+  private void grow(int newSize) {
+    if (isView) {
+      throw new Unreachable("Writing outside of the space allocated for the view.");
     }
+    ByteBuffer newBuffer = allocate(newSize);
+    System.arraycopy(byteBuffer.array(), 0, newBuffer.array(), 0, byteBuffer.capacity());
+    newBuffer.position(byteBuffer.position());
+    byteBuffer = newBuffer;
+  }
+
+  /**
+   * Clears the content of the buffer and moves back to the start, keeping the current capacity.
+   *
+   * <p>This allows the buffer to be reused for writing another file without growing it again.
+   * Only the part written since the last reset is cleared.
+   */
+  public void reset() {
+    assert !isView;
+    Arrays.fill(byteBuffer.array(), 0, highWater, (byte) 0);
+    highWater = 0;
+    byteBuffer.position(0);
   }
 
   private ByteBuffer allocate(int size) {
@@ -39,8 +39,8 @@ import com.android.tools.r8.graph.DexTypeList;
 import com.android.tools.r8.graph.DexValue;
 import com.android.tools.r8.graph.KeyedDexItem;
 import com.android.tools.r8.graph.ObjectToOffsetMapping;
-import com.android.tools.r8.graph.PresortedComparable;
 import com.android.tools.r8.graph.ProgramClassVisitor;
+import com.android.tools.r8.graph.SortedIndices;
 import com.android.tools.r8.logging.Log;
 import com.android.tools.r8.naming.ClassNameMapper;
 import com.android.tools.r8.naming.MemberNaming.MethodSignature;
@@ -48,6 +48,9 @@ import com.android.tools.r8.naming.MemberNaming.Signature;
 import com.android.tools.r8.naming.NamingLens;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.LebUtils;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
@@ -64,33 +67,71 @@ import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
-import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
 import java.util.function.ToIntFunction;
 import java.util.zip.Adler32;
 
 public class FileWriter {
 
+  // The number of items handled by one task when writing in parallel.
+  private static final int ITEMS_PER_TASK = 1024;
+
   private final ObjectToOffsetMapping mapping;
   private final DexApplication application;
   private final AppInfo appInfo;
   private final InternalOptions options;
   private final NamingLens namingLens;
-  private final DexOutputBuffer dest = new DexOutputBuffer();
+  private final DexOutputBuffer outputBuffer;
+  private final ExecutorService executorService;
   private final MixedSectionOffsets mixedSectionOffsets;
+  private final boolean writeInParallel;
 
   public FileWriter(
       ObjectToOffsetMapping mapping,
       DexApplication application,
       AppInfo appinfo,
       InternalOptions options,
-      NamingLens namingLens) {
+      NamingLens namingLens,
+      ExecutorService executorService) {
+    this(mapping, application, appinfo, options, namingLens, new DexOutputBuffer(0),
+        executorService);
+  }
+
+  public FileWriter(
+      ObjectToOffsetMapping mapping,
+      DexApplication application,
+      AppInfo appinfo,
+      InternalOptions options,
+      NamingLens namingLens,
+      DexOutputBuffer outputBuffer,
+      ExecutorService executorService) {
+    assert outputBuffer.position() == 0;
     this.mapping = mapping;
     this.application = application;
     this.appInfo = appinfo;
     this.options = options;
     this.namingLens = namingLens;
-    this.mixedSectionOffsets = new MixedSectionOffsets();
+    this.outputBuffer = outputBuffer;
+    this.executorService = executorService;
+    this.mixedSectionOffsets = new MixedSectionOffsets(mapping.getSortedIndices());
+    this.writeInParallel = numberOfIndexedItems(mapping) >= options.parallelFileWritingThreshold;
+  }
+
+  private static int numberOfIndexedItems(ObjectToOffsetMapping mapping) {
+    return mapping.getClasses().length + mapping.getProtos().length + mapping.getTypes().length
+        + mapping.getMethods().length + mapping.getFields().length + mapping.getStrings().length
+        + mapping.getCallSites().length + mapping.getMethodHandles().length;
+  }
+
+  private void runAll(List<Runnable> tasks) {
+    if (writeInParallel) {
+      ThreadUtils.runAll(tasks, executorService);
+    } else {
+      tasks.forEach(Runnable::run);
+    }
   }
 
   public static void writeEncodedAnnotation(DexEncodedAnnotation annotation, DexOutputBuffer dest,
@@ -100,25 +141,19 @@ public class FileWriter {
     }
     dest.putUleb128(mapping.getOffsetFor(annotation.type));
     dest.putUleb128(annotation.elements.length);
-    assert isSorted(annotation.elements, (element) -> element.name);
+    assert isSorted(annotation.elements,
+        (a, b) -> mapping.getSortedIndices().compare(a.name, b.name));
     for (DexAnnotationElement element : annotation.elements) {
       dest.putUleb128(mapping.getOffsetFor(element.name));
       element.value.writeTo(dest, mapping);
     }
   }
 
-  private static <T extends PresortedComparable<T>> boolean isSorted(KeyedDexItem<T>[] items) {
-    return isSorted(items, KeyedDexItem::getKey);
-  }
-
-  private static <S, T extends Comparable<T>> boolean isSorted(S[] items, Function<S, T> getter) {
-    T current = null;
-    for (S item : items) {
-      T next = getter.apply(item);
-      if (current != null && current.compareTo(next) >= 0) {
+  private static <T> boolean isSorted(T[] items, Comparator<T> comparator) {
+    for (int i = 1; i < items.length; i++) {
+      if (comparator.compare(items[i - 1], items[i]) >= 0) {
         return false;
       }
-      current = next;
     }
     return true;
   }
@@ -160,7 +195,8 @@ public class FileWriter {
     if (code.highestSortingString != null) {
       if (mapping.getOffsetFor(code.highestSortingString) > Constants.MAX_NON_JUMBO_INDEX) {
         JumboStringRewriter rewriter =
-            new JumboStringRewriter(method, mapping.getFirstJumboString(), options.itemFactory);
+            new JumboStringRewriter(method, mapping.getFirstJumboString(),
+                mapping.getSortedIndices(), options.itemFactory);
         rewriter.rewrite();
       }
     }
@@ -183,72 +219,109 @@ public class FileWriter {
     return this;
   }
 
-  public byte[] generate() {
+  /**
+   * Writes the dex file to the start of the output buffer and returns its size.
+   */
+  public int generate() {
     // Check restrictions on interface methods.
     checkInterfaceMethods();
 
-    Layout layout = Layout.from(mapping);
-    layout.setCodesOffset(layout.dataSectionOffset);
-
     // Sort the codes first, as their order might impact size due to alignment constraints.
     List<DexCode> codes = sortDexCodesByClassName(mixedSectionOffsets.getCodes(), application);
 
-    // Output the debug_info_items first, as they have no dependencies.
-    dest.moveTo(layout.getCodesOffset() + sizeOfCodeItems(codes));
-    writeItems(mixedSectionOffsets.getDebugInfos(), layout::setDebugInfosOffset,
-        this::writeDebugItem);
-
-    // Remember the typelist offset for later.
-    layout.setTypeListsOffset(dest.align(4));  // type_list are aligned.
-
-    // Now output the code.
-    dest.moveTo(layout.getCodesOffset());
-    assert dest.isAligned(4);
-    writeItems(codes, layout::alreadySetOffset, this::writeCodeItem, 4);
-    assert layout.getDebugInfosOffset() == 0 || dest.position() == layout.getDebugInfosOffset();
-
-    // Now the type lists and rest.
-    dest.moveTo(layout.getTypeListsOffset());
-    writeItems(mixedSectionOffsets.getTypeLists(), layout::alreadySetOffset, this::writeTypeList);
-    writeItems(mixedSectionOffsets.getStringData(), layout::setStringDataOffsets,
-        this::writeStringData);
-    writeItems(mixedSectionOffsets.getAnnotations(), layout::setAnnotationsOffset,
-        this::writeAnnotation);
-    writeItems(mixedSectionOffsets.getClassesWithData(), layout::setClassDataOffset,
-        this::writeClassData);
-    writeItems(mixedSectionOffsets.getEncodedArrays(), layout::setEncodedArrarysOffset,
-        this::writeEncodedArray);
-    writeItems(mixedSectionOffsets.getAnnotationSets(), layout::setAnnotationSetsOffset,
-        this::writeAnnotationSet, 4);
-    writeItems(mixedSectionOffsets.getAnnotationSetRefLists(),
-        layout::setAnnotationSetRefListsOffset, this::writeAnnotationSetRefList, 4);
-    writeItems(mixedSectionOffsets.getAnnotationDirectories(),
-        layout::setAnnotationDirectoriesOffset, this::writeAnnotationDirectory, 4);
-
-    // Add the map at the end
-    layout.setMapOffset(dest.align(4));
-    writeMap(layout);
-    layout.setEndOfFile(dest.position());
-
-    // Now that we have all mixedSectionOffsets, lets write the indexed items.
-    dest.moveTo(Constants.TYPE_HEADER_ITEM_SIZE);
-    writeFixedSectionItems(mapping.getStrings(), layout.stringIdsOffset, this::writeStringItem);
-    writeFixedSectionItems(mapping.getTypes(), layout.typeIdsOffset, this::writeTypeItem);
-    writeFixedSectionItems(mapping.getProtos(), layout.protoIdsOffset, this::writeProtoItem);
-    writeFixedSectionItems(mapping.getFields(), layout.fieldIdsOffset, this::writeFieldItem);
-    writeFixedSectionItems(mapping.getMethods(), layout.methodIdsOffset, this::writeMethodItem);
-    writeFixedSectionItems(mapping.getClasses(), layout.classDefsOffset, this::writeClassDefItem);
-    writeFixedSectionItems(mapping.getCallSites(), layout.callSiteIdsOffset, this::writeCallSite);
-    writeFixedSectionItems(
-        mapping.getMethodHandles(), layout.methodHandleIdsOffset, this::writeMethodHandle);
+    // The debug_info_items, annotation_items and encoded_array_items do not refer to the offsets
+    // of other items, so they are encoded first to know their size.
+    List<Runnable> tasks = new ArrayList<>();
+    EncodedItems<DexDebugInfo> debugInfos =
+        new EncodedItems<>(mixedSectionOffsets.getDebugInfos(), this::writeDebugItem, tasks);
+    EncodedItems<DexAnnotation> annotations =
+        new EncodedItems<>(mixedSectionOffsets.getAnnotations(), this::writeAnnotation, tasks);
+    EncodedItems<DexEncodedArray> encodedArrays =
+        new EncodedItems<>(mixedSectionOffsets.getEncodedArrays(), this::writeEncodedArray, tasks);
+    runAll(tasks);
+
+    // Compute the offsets of all items, so that the sections can be written independently.
+    Layout layout = Layout.from(mapping);
+    layout.setCodesOffset(layout.dataSectionOffset);
+    int offset = layoutItems(codes, layout.getCodesOffset(), 4, layout::alreadySetOffset,
+        this::sizeOfCodeItem, mixedSectionOffsets::setOffsetFor);
+    offset = debugInfos.layout(offset, layout::setDebugInfosOffset,
+        mixedSectionOffsets::setOffsetFor);
+    layout.setTypeListsOffset(alignSize(4, offset));  // type_list are aligned.
+    offset = layoutItems(mixedSectionOffsets.getTypeLists(), layout.getTypeListsOffset(), 4,
+        layout::alreadySetOffset, list -> 4 + list.values.length * 2,
+        mixedSectionOffsets::setOffsetFor);
+    offset = layoutItems(mixedSectionOffsets.getStringData(), offset, 1,
+        layout::setStringDataOffsets,
+        string -> sizeAsUleb128(string.size) + string.content.length,
+        mixedSectionOffsets::setOffsetFor);
+    offset = annotations.layout(offset, layout::setAnnotationsOffset,
+        mixedSectionOffsets::setOffsetFor);
+    offset = layoutItems(mixedSectionOffsets.getClassesWithData(), offset, 1,
+        layout::setClassDataOffset, this::sizeOfClassData, mixedSectionOffsets::setOffsetFor);
+    offset = encodedArrays.layout(offset, layout::setEncodedArrarysOffset,
+        mixedSectionOffsets::setOffsetFor);
+    offset = layoutItems(mixedSectionOffsets.getAnnotationSets(), offset, 4,
+        layout::setAnnotationSetsOffset, set -> 4 + set.annotations.length * 4,
+        mixedSectionOffsets::setOffsetFor);
+    offset = layoutItems(mixedSectionOffsets.getAnnotationSetRefLists(), offset, 4,
+        layout::setAnnotationSetRefListsOffset, list -> 4 + list.values.length * 4,
+        mixedSectionOffsets::setOffsetFor);
+    offset = layoutItems(mixedSectionOffsets.getAnnotationDirectories(), offset, 4,
+        layout::setAnnotationDirectoriesOffset, this::sizeOfAnnotationDirectory,
+        mixedSectionOffsets::setOffsetForAnnotationsDirectory);
+
+    // Add the map at the end. It only depends on the layout, so it is written to a separate
+    // buffer to know the size of the file.
+    layout.setMapOffset(alignSize(4, offset));
+    DexOutputBuffer map = new DexOutputBuffer(256);
+    writeMap(layout, map);
+    layout.setEndOfFile(layout.getMapOffset() + map.position());
+
+    application.timing.count(
+        "Instructions emitted", codes.stream().mapToLong(code -> code.instructions.length).sum());
+
+    // Now that all offsets are known, allocate the space for the file once and write the
+    // sections into their own regions of it, in parallel for large files.
+    outputBuffer.ensureCapacity(layout.getEndOfFile());
+    tasks.clear();
+    addWriteTasks(codes, this::writeCodeItem, mixedSectionOffsets::getOffsetFor, tasks);
+    debugInfos.addWriteTask(outputBuffer, tasks);
+    addWriteTasks(mixedSectionOffsets.getTypeLists(), this::writeTypeList,
+        mixedSectionOffsets::getOffsetFor, tasks);
+    addWriteTasks(mixedSectionOffsets.getStringData(), this::writeStringData,
+        mixedSectionOffsets::getOffsetFor, tasks);
+    annotations.addWriteTask(outputBuffer, tasks);
+    addWriteTasks(mixedSectionOffsets.getClassesWithData(), this::writeClassData,
+        mixedSectionOffsets::getOffsetFor, tasks);
+    encodedArrays.addWriteTask(outputBuffer, tasks);
+    addWriteTasks(mixedSectionOffsets.getAnnotationSets(), this::writeAnnotationSet,
+        mixedSectionOffsets::getOffsetFor, tasks);
+    addWriteTasks(mixedSectionOffsets.getAnnotationSetRefLists(), this::writeAnnotationSetRefList,
+        mixedSectionOffsets::getOffsetFor, tasks);
+    addWriteTasks(mixedSectionOffsets.getAnnotationDirectories(), this::writeAnnotationDirectory,
+        mixedSectionOffsets::getOffsetFor, tasks);
+    tasks.add(() -> outputBuffer.viewAt(layout.getMapOffset())
+        .putBytes(Arrays.copyOf(map.asArray(), map.position())));
+
+    // The indexed items only refer to the mixed sections through the offsets.
+    addWriteTask(mapping.getStrings(), layout.stringIdsOffset, this::writeStringItem, tasks);
+    addWriteTask(mapping.getTypes(), layout.typeIdsOffset, this::writeTypeItem, tasks);
+    addWriteTask(mapping.getProtos(), layout.protoIdsOffset, this::writeProtoItem, tasks);
+    addWriteTask(mapping.getFields(), layout.fieldIdsOffset, this::writeFieldItem, tasks);
+    addWriteTask(mapping.getMethods(), layout.methodIdsOffset, this::writeMethodItem, tasks);
+    addWriteTask(mapping.getClasses(), layout.classDefsOffset, this::writeClassDefItem, tasks);
+    addWriteTask(mapping.getCallSites(), layout.callSiteIdsOffset, this::writeCallSite, tasks);
+    addWriteTask(mapping.getMethodHandles(), layout.methodHandleIdsOffset,
+        this::writeMethodHandle, tasks);
+    runAll(tasks);
 
     // Fill in the header information.
     writeHeader(layout);
     writeSignature(layout);
     writeChecksum(layout);
 
-    // Turn into an array
-    return Arrays.copyOf(dest.asArray(), layout.getEndOfFile());
+    return layout.getEndOfFile();
   }
 
   private void sortClassData(Collection<DexProgramClass> classesWithData) {
@@ -261,11 +334,15 @@ public class FileWriter {
   }
 
   private void sortEncodedFields(DexEncodedField[] fields) {
-    Arrays.sort(fields, (DexEncodedField a, DexEncodedField b) -> a.field.compareTo(b.field));
+    SortedIndices indices = mapping.getSortedIndices();
+    Arrays.sort(fields,
+        (DexEncodedField a, DexEncodedField b) -> indices.compare(a.field, b.field));
   }
 
   private void sortEncodedMethods(DexEncodedMethod[] methods) {
-    Arrays.sort(methods, (DexEncodedMethod a, DexEncodedMethod b) -> a.method.compareTo(b.method));
+    SortedIndices indices = mapping.getSortedIndices();
+    Arrays.sort(methods,
+        (DexEncodedMethod a, DexEncodedMethod b) -> indices.compare(a.method, b.method));
   }
 
   private void checkInterfaceMethods() {
@@ -323,11 +400,23 @@ public class FileWriter {
 
   private List<DexCode> sortDexCodesByClassName(Collection<DexCode> codes,
       DexApplication application) {
-    Map<DexCode, String> codeToSignatureMap = new IdentityHashMap<>();
-    for (DexProgramClass clazz : mapping.getClasses()) {
-      clazz.forEachMethod(method ->
-          addSignaturesFromMethod(method, codeToSignatureMap, application.getProguardMap()));
+    // Looking up the original signatures is expensive, so do it for chunks of classes in parallel.
+    List<Map<DexCode, String>> chunkSignatures = new ArrayList<>();
+    List<Runnable> tasks = new ArrayList<>();
+    for (List<DexProgramClass> chunk :
+        Lists.partition(Arrays.asList(mapping.getClasses()), ITEMS_PER_TASK)) {
+      Map<DexCode, String> signatures = new IdentityHashMap<>();
+      chunkSignatures.add(signatures);
+      tasks.add(() -> {
+        for (DexProgramClass clazz : chunk) {
+          clazz.forEachMethod(method ->
+              addSignaturesFromMethod(method, signatures, application.getProguardMap()));
+        }
+      });
     }
+    runAll(tasks);
+    Map<DexCode, String> codeToSignatureMap = new IdentityHashMap<>();
+    chunkSignatures.forEach(codeToSignatureMap::putAll);
     DexCode[] codesArray = codes.toArray(new DexCode[codes.size()]);
     Arrays.sort(codesArray, Comparator.comparing(codeToSignatureMap::get));
     return Arrays.asList(codesArray);
@@ -352,36 +441,47 @@ public class FileWriter {
     }
   }
 
-  private <T extends DexItem> void writeFixedSectionItems(T[] items, int offset,
-      Consumer<T> writer) {
-    assert dest.position() == offset;
-    for (T item : items) {
-      writer.accept(item);
+  private <T extends DexItem> void addWriteTask(T[] items, int offset,
+      BiConsumer<T, DexOutputBuffer> writer, List<Runnable> tasks) {
+    if (items.length > 0) {
+      tasks.add(() -> {
+        DexOutputBuffer dest = outputBuffer.viewAt(offset);
+        for (T item : items) {
+          writer.accept(item, dest);
+        }
+      });
     }
   }
 
-  private <T extends DexItem> void writeItems(Collection<T> items, Consumer<Integer> offsetSetter,
-      Consumer<T> writer) {
-    writeItems(items, offsetSetter, writer, 1);
+  private <T> void addWriteTasks(Collection<T> items, BiConsumer<T, DexOutputBuffer> writer,
+      ToIntFunction<T> offsetGetter, List<Runnable> tasks) {
+    for (List<T> chunk : Iterables.partition(items, ITEMS_PER_TASK)) {
+      tasks.add(() -> {
+        DexOutputBuffer dest = outputBuffer.viewAt(offsetGetter.applyAsInt(chunk.get(0)));
+        for (T item : chunk) {
+          writer.accept(item, dest);
+        }
+      });
+    }
   }
 
-  private <T extends DexItem> void writeItems(Collection<T> items, Consumer<Integer> offsetSetter,
-      Consumer<T> writer, int alignment) {
+  /**
+   * Assigns offsets to the items of a section starting at {@code offset}, and returns the offset
+   * after the last item.
+   */
+  private <T> int layoutItems(Collection<T> items, int offset, int alignment,
+      Consumer<Integer> offsetSetter, ToIntFunction<T> sizeOf, ObjIntConsumer<T> itemOffsetSetter) {
     if (items.isEmpty()) {
       offsetSetter.accept(0);
-    } else {
-      offsetSetter.accept(dest.align(alignment));
-      items.forEach(writer);
+      return offset;
     }
-  }
-
-  private int sizeOfCodeItems(Iterable<DexCode> codes) {
-    int size = 0;
-    for (DexCode code : codes) {
-      size = alignSize(4, size);
-      size += sizeOfCodeItem(code);
+    offsetSetter.accept(alignSize(alignment, offset));
+    for (T item : items) {
+      offset = alignSize(alignment, offset);
+      itemOffsetSetter.accept(item, offset);
+      offset += sizeOf.applyAsInt(item);
     }
-    return size;
+    return offset;
   }
 
   private int sizeOfCodeItem(DexCode code) {
@@ -415,22 +515,22 @@ public class FileWriter {
     return result;
   }
 
-  private void writeStringItem(DexString string) {
+  private void writeStringItem(DexString string, DexOutputBuffer dest) {
     dest.putInt(mixedSectionOffsets.getOffsetFor(string));
   }
 
-  private void writeTypeItem(DexType type) {
+  private void writeTypeItem(DexType type, DexOutputBuffer dest) {
     DexString descriptor = namingLens.lookupDescriptor(type);
     dest.putInt(mapping.getOffsetFor(descriptor));
   }
 
-  private void writeProtoItem(DexProto proto) {
+  private void writeProtoItem(DexProto proto, DexOutputBuffer dest) {
     dest.putInt(mapping.getOffsetFor(proto.shorty));
     dest.putInt(mapping.getOffsetFor(proto.returnType));
     dest.putInt(mixedSectionOffsets.getOffsetFor(proto.parameters));
   }
 
-  private void writeFieldItem(DexField field) {
+  private void writeFieldItem(DexField field, DexOutputBuffer dest) {
     int classIdx = mapping.getOffsetFor(field.clazz);
     assert (short) classIdx == classIdx;
     dest.putShort((short) classIdx);
@@ -441,7 +541,7 @@ public class FileWriter {
     dest.putInt(mapping.getOffsetFor(name));
   }
 
-  private void writeMethodItem(DexMethod method) {
+  private void writeMethodItem(DexMethod method, DexOutputBuffer dest) {
     int classIdx = mapping.getOffsetFor(method.holder);
     assert (short) classIdx == classIdx;
     dest.putShort((short) classIdx);
@@ -452,7 +552,7 @@ public class FileWriter {
     dest.putInt(mapping.getOffsetFor(name));
   }
 
-  private void writeClassDefItem(DexProgramClass clazz) {
+  private void writeClassDefItem(DexProgramClass clazz, DexOutputBuffer dest) {
     dest.putInt(mapping.getOffsetFor(clazz.type));
     dest.putInt(clazz.accessFlags.get());
     dest.putInt(
@@ -465,13 +565,13 @@ public class FileWriter {
     dest.putInt(mixedSectionOffsets.getOffsetFor(clazz.getStaticValues()));
   }
 
-  private void writeDebugItem(DexDebugInfo debugInfo) {
-    mixedSectionOffsets.setOffsetFor(debugInfo, dest.position());
+  private void writeDebugItem(DexDebugInfo debugInfo, DexOutputBuffer dest) {
     dest.putBytes(new DebugBytecodeWriter(debugInfo, mapping).generate());
   }
 
-  private void writeCodeItem(DexCode code) {
-    mixedSectionOffsets.setOffsetFor(code, dest.align(4));
+  private void writeCodeItem(DexCode code, DexOutputBuffer dest) {
+    int offset = dest.align(4);
+    assert offset == mixedSectionOffsets.getOffsetFor(code);
     // Fixed size header information.
     dest.putShort((short) code.registerSize);
     dest.putShort((short) code.incomingRegisterSize);
@@ -522,9 +622,10 @@ public class FileWriter {
     }
   }
 
-  private void writeTypeList(DexTypeList list) {
+  private void writeTypeList(DexTypeList list, DexOutputBuffer dest) {
     assert !list.isEmpty();
-    mixedSectionOffsets.setOffsetFor(list, dest.align(4));
+    int offset = dest.align(4);
+    assert offset == mixedSectionOffsets.getOffsetFor(list);
     DexType[] values = list.values;
     dest.putInt(values.length);
     for (DexType type : values) {
@@ -532,14 +633,13 @@ public class FileWriter {
     }
   }
 
-  private void writeStringData(DexString string) {
-    mixedSectionOffsets.setOffsetFor(string, dest.position());
+  private void writeStringData(DexString string, DexOutputBuffer dest) {
+    assert dest.position() == mixedSectionOffsets.getOffsetFor(string);
     dest.putUleb128(string.size);
     dest.putBytes(string.content);
   }
 
-  private void writeAnnotation(DexAnnotation annotation) {
-    mixedSectionOffsets.setOffsetFor(annotation, dest.position());
+  private void writeAnnotation(DexAnnotation annotation, DexOutputBuffer dest) {
     if (Log.ENABLED) {
       Log.verbose(getClass(), "Writing Annotation @ 0x%08x.", dest.position());
     }
@@ -547,10 +647,12 @@ public class FileWriter {
     writeEncodedAnnotation(annotation.annotation, dest, mapping);
   }
 
-  private void writeAnnotationSet(DexAnnotationSet set) {
+  private void writeAnnotationSet(DexAnnotationSet set, DexOutputBuffer dest) {
     assert !set.isEmpty();
-    assert isSorted(set.annotations, (item) -> item.annotation.type);
-    mixedSectionOffsets.setOffsetFor(set, dest.align(4));
+    assert isSorted(set.annotations,
+        (a, b) -> mapping.getSortedIndices().compare(a.annotation.type, b.annotation.type));
+    int offset = dest.align(4);
+    assert offset == mixedSectionOffsets.getOffsetFor(set);
     if (Log.ENABLED) {
       Log.verbose(getClass(), "Writing AnnotationSet @ 0x%08x.", dest.position());
     }
@@ -560,25 +662,35 @@ public class FileWriter {
     }
   }
 
-  private void writeAnnotationSetRefList(DexAnnotationSetRefList setRefList) {
+  private void writeAnnotationSetRefList(DexAnnotationSetRefList setRefList, DexOutputBuffer dest) {
     assert !setRefList.isEmpty();
-    mixedSectionOffsets.setOffsetFor(setRefList, dest.align(4));
+    int offset = dest.align(4);
+    assert offset == mixedSectionOffsets.getOffsetFor(setRefList);
     dest.putInt(setRefList.values.length);
     for (DexAnnotationSet set : setRefList.values) {
       dest.putInt(mixedSectionOffsets.getOffsetFor(set));
     }
   }
 
+  private int sizeOfAnnotationDirectory(DexAnnotationDirectory annotationDirectory) {
+    int members = annotationDirectory.getFieldAnnotations().size()
+        + annotationDirectory.getMethodAnnotations().size()
+        + annotationDirectory.getParameterAnnotations().size();
+    return 16 + members * 8;
+  }
+
   private <S extends Descriptor<T, S>, T extends KeyedDexItem<S>> void writeMemberAnnotations(
-      List<T> items, ToIntFunction<T> getter) {
+      List<T> items, ToIntFunction<T> getter, DexOutputBuffer dest) {
     for (T item : items) {
       dest.putInt(item.getKey().getOffset(mapping));
       dest.putInt(getter.applyAsInt(item));
     }
   }
 
-  private void writeAnnotationDirectory(DexAnnotationDirectory annotationDirectory) {
-    mixedSectionOffsets.setOffsetForAnnotationsDirectory(annotationDirectory, dest.align(4));
+  private void writeAnnotationDirectory(DexAnnotationDirectory annotationDirectory,
+      DexOutputBuffer dest) {
+    int offset = dest.align(4);
+    assert offset == mixedSectionOffsets.getOffsetFor(annotationDirectory);
     dest.putInt(mixedSectionOffsets.getOffsetFor(annotationDirectory.getClazzAnnotations()));
     List<DexEncodedMethod> methodAnnotations = annotationDirectory.getMethodAnnotations();
     List<DexEncodedMethod> parameterAnnotations = annotationDirectory.getParameterAnnotations();
@@ -587,15 +699,15 @@ public class FileWriter {
     dest.putInt(methodAnnotations.size());
     dest.putInt(parameterAnnotations.size());
     writeMemberAnnotations(fieldAnnotations,
-        item -> mixedSectionOffsets.getOffsetFor(item.annotations));
+        item -> mixedSectionOffsets.getOffsetFor(item.annotations), dest);
     writeMemberAnnotations(methodAnnotations,
-        item -> mixedSectionOffsets.getOffsetFor(item.annotations));
+        item -> mixedSectionOffsets.getOffsetFor(item.annotations), dest);
     writeMemberAnnotations(parameterAnnotations,
-        item -> mixedSectionOffsets.getOffsetFor(item.parameterAnnotations));
+        item -> mixedSectionOffsets.getOffsetFor(item.parameterAnnotations), dest);
   }
 
-  private void writeEncodedFields(DexEncodedField[] fields) {
-    assert isSorted(fields);
+  private void writeEncodedFields(DexEncodedField[] fields, DexOutputBuffer dest) {
+    assert isSorted(fields, (a, b) -> mapping.getSortedIndices().compare(a.field, b.field));
     int currentOffset = 0;
     for (DexEncodedField field : fields) {
       int nextOffset = mapping.getOffsetFor(field.field);
@@ -606,8 +718,9 @@ public class FileWriter {
     }
   }
 
-  private void writeEncodedMethods(DexEncodedMethod[] methods) {
-    assert isSorted(methods);
+  private void writeEncodedMethods(DexEncodedMethod[] methods, DexOutputBuffer dest) {
+    assert isSorted(methods,
+        (a, b) -> mapping.getSortedIndices().compare(a.method, b.method));
     int currentOffset = 0;
     for (DexEncodedMethod method : methods) {
       int nextOffset = mapping.getOffsetFor(method.method);
@@ -627,17 +740,55 @@ public class FileWriter {
     }
   }
 
-  private void writeClassData(DexProgramClass clazz) {
+  private void writeClassData(DexProgramClass clazz, DexOutputBuffer dest) {
     assert clazz.hasMethodsOrFields();
-    mixedSectionOffsets.setOffsetFor(clazz, dest.position());
+    assert dest.position() == mixedSectionOffsets.getOffsetFor(clazz);
     dest.putUleb128(clazz.staticFields().length);
     dest.putUleb128(clazz.instanceFields().length);
     dest.putUleb128(clazz.directMethods().length);
     dest.putUleb128(clazz.virtualMethods().length);
-    writeEncodedFields(clazz.staticFields());
-    writeEncodedFields(clazz.instanceFields());
-    writeEncodedMethods(clazz.directMethods());
-    writeEncodedMethods(clazz.virtualMethods());
+    writeEncodedFields(clazz.staticFields(), dest);
+    writeEncodedFields(clazz.instanceFields(), dest);
+    writeEncodedMethods(clazz.directMethods(), dest);
+    writeEncodedMethods(clazz.virtualMethods(), dest);
+  }
+
+  private int sizeOfEncodedFields(DexEncodedField[] fields) {
+    int size = 0;
+    int currentOffset = 0;
+    for (DexEncodedField field : fields) {
+      int nextOffset = mapping.getOffsetFor(field.field);
+      size += sizeAsUleb128(nextOffset - currentOffset);
+      currentOffset = nextOffset;
+      size += sizeAsUleb128(field.accessFlags.get());
+    }
+    return size;
+  }
+
+  private int sizeOfEncodedMethods(DexEncodedMethod[] methods) {
+    int size = 0;
+    int currentOffset = 0;
+    for (DexEncodedMethod method : methods) {
+      int nextOffset = mapping.getOffsetFor(method.method);
+      size += sizeAsUleb128(nextOffset - currentOffset);
+      currentOffset = nextOffset;
+      size += sizeAsUleb128(method.accessFlags.get());
+      size += sizeAsUleb128(method.getCode() == null
+          ? 0
+          : mixedSectionOffsets.getOffsetFor(method.getCode().asDexCode()));
+    }
+    return size;
+  }
+
+  private int sizeOfClassData(DexProgramClass clazz) {
+    return sizeAsUleb128(clazz.staticFields().length)
+        + sizeAsUleb128(clazz.instanceFields().length)
+        + sizeAsUleb128(clazz.directMethods().length)
+        + sizeAsUleb128(clazz.virtualMethods().length)
+        + sizeOfEncodedFields(clazz.staticFields())
+        + sizeOfEncodedFields(clazz.instanceFields())
+        + sizeOfEncodedMethods(clazz.directMethods())
+        + sizeOfEncodedMethods(clazz.virtualMethods());
   }
 
   private void addStaticFieldValues(DexProgramClass clazz) {
@@ -660,7 +811,7 @@ public class FileWriter {
     }
   }
 
-  private void writeMethodHandle(DexMethodHandle methodHandle) {
+  private void writeMethodHandle(DexMethodHandle methodHandle, DexOutputBuffer dest) {
     checkThatInvokeCustomIsAllowed();
     MethodHandleType methodHandleDexType;
     switch (methodHandle.type) {
@@ -689,14 +840,13 @@ public class FileWriter {
     dest.putShort((short) 0); // unused
   }
 
-  private void writeCallSite(DexCallSite callSite) {
+  private void writeCallSite(DexCallSite callSite, DexOutputBuffer dest) {
     checkThatInvokeCustomIsAllowed();
     assert dest.isAligned(4);
     dest.putInt(mixedSectionOffsets.getOffsetFor(callSite.getEncodedArray()));
   }
 
-  private void writeEncodedArray(DexEncodedArray array) {
-    mixedSectionOffsets.setOffsetFor(array, dest.position());
+  private void writeEncodedArray(DexEncodedArray array, DexOutputBuffer dest) {
     if (Log.ENABLED) {
       Log.verbose(getClass(), "Writing EncodedArray @ 0x%08x [%s].", dest.position(), array);
     }
@@ -706,7 +856,7 @@ public class FileWriter {
     }
   }
 
-  private int writeMapItem(int type, int offset, int length) {
+  private int writeMapItem(int type, int offset, int length, DexOutputBuffer dest) {
     if (length == 0) {
       return 0;
     }
@@ -720,50 +870,50 @@ public class FileWriter {
     return 1;
   }
 
-  private void writeMap(Layout layout) {
+  private void writeMap(Layout layout, DexOutputBuffer dest) {
     int startOfMap = dest.align(4);
     dest.forward(4); // Leave space for size;
     int size = 0;
-    size += writeMapItem(Constants.TYPE_HEADER_ITEM, 0, 1);
+    size += writeMapItem(Constants.TYPE_HEADER_ITEM, 0, 1, dest);
     size += writeMapItem(Constants.TYPE_STRING_ID_ITEM, layout.stringIdsOffset,
-        mapping.getStrings().length);
+        mapping.getStrings().length, dest);
     size += writeMapItem(Constants.TYPE_TYPE_ID_ITEM, layout.typeIdsOffset,
-        mapping.getTypes().length);
+        mapping.getTypes().length, dest);
     size += writeMapItem(Constants.TYPE_PROTO_ID_ITEM, layout.protoIdsOffset,
-        mapping.getProtos().length);
+        mapping.getProtos().length, dest);
     size += writeMapItem(Constants.TYPE_FIELD_ID_ITEM, layout.fieldIdsOffset,
-        mapping.getFields().length);
+        mapping.getFields().length, dest);
     size += writeMapItem(Constants.TYPE_METHOD_ID_ITEM, layout.methodIdsOffset,
-        mapping.getMethods().length);
+        mapping.getMethods().length, dest);
     size += writeMapItem(Constants.TYPE_CLASS_DEF_ITEM, layout.classDefsOffset,
-        mapping.getClasses().length);
+        mapping.getClasses().length, dest);
     size += writeMapItem(Constants.TYPE_CALL_SITE_ID_ITEM, layout.callSiteIdsOffset,
-        mapping.getCallSites().length);
+        mapping.getCallSites().length, dest);
     size += writeMapItem(Constants.TYPE_METHOD_HANDLE_ITEM, layout.methodHandleIdsOffset,
-        mapping.getMethodHandles().length);
+        mapping.getMethodHandles().length, dest);
     size += writeMapItem(Constants.TYPE_CODE_ITEM, layout.getCodesOffset(),
-        mixedSectionOffsets.getCodes().size());
+        mixedSectionOffsets.getCodes().size(), dest);
     size += writeMapItem(Constants.TYPE_DEBUG_INFO_ITEM, layout.getDebugInfosOffset(),
-        mixedSectionOffsets.getDebugInfos().size());
+        mixedSectionOffsets.getDebugInfos().size(), dest);
     size += writeMapItem(Constants.TYPE_TYPE_LIST, layout.getTypeListsOffset(),
-        mixedSectionOffsets.getTypeLists().size());
+        mixedSectionOffsets.getTypeLists().size(), dest);
     size += writeMapItem(Constants.TYPE_STRING_DATA_ITEM, layout.getStringDataOffsets(),
-        mixedSectionOffsets.getStringData().size());
+        mixedSectionOffsets.getStringData().size(), dest);
     size += writeMapItem(Constants.TYPE_ANNOTATION_ITEM, layout.getAnnotationsOffset(),
-        mixedSectionOffsets.getAnnotations().size());
+        mixedSectionOffsets.getAnnotations().size(), dest);
     size += writeMapItem(Constants.TYPE_CLASS_DATA_ITEM, layout.getClassDataOffset(),
-        mixedSectionOffsets.getClassesWithData().size());
+        mixedSectionOffsets.getClassesWithData().size(), dest);
     size += writeMapItem(Constants.TYPE_ENCODED_ARRAY_ITEM, layout.getEncodedArrarysOffset(),
-        mixedSectionOffsets.getEncodedArrays().size());
+        mixedSectionOffsets.getEncodedArrays().size(), dest);
     size += writeMapItem(Constants.TYPE_ANNOTATION_SET_ITEM, layout.getAnnotationSetsOffset(),
-        mixedSectionOffsets.getAnnotationSets().size());
+        mixedSectionOffsets.getAnnotationSets().size(), dest);
     size += writeMapItem(Constants.TYPE_ANNOTATION_SET_REF_LIST,
         layout.getAnnotationSetRefListsOffset(),
-        mixedSectionOffsets.getAnnotationSetRefLists().size());
+        mixedSectionOffsets.getAnnotationSetRefLists().size(), dest);
     size += writeMapItem(Constants.TYPE_ANNOTATIONS_DIRECTORY_ITEM,
         layout.getAnnotationDirectoriesOffset(),
-        mixedSectionOffsets.getAnnotationDirectories().size());
-    size += writeMapItem(Constants.TYPE_MAP_LIST, layout.getMapOffset(), 1);
+        mixedSectionOffsets.getAnnotationDirectories().size(), dest);
+    size += writeMapItem(Constants.TYPE_MAP_LIST, layout.getMapOffset(), 1, dest);
     dest.moveTo(startOfMap);
     dest.putInt(size);
     dest.forward(size * Constants.TYPE_MAP_LIST_ITEM_SIZE);
@@ -780,47 +930,47 @@ public class FileWriter {
   }
 
   private void writeHeader(Layout layout) {
-    dest.moveTo(0);
-    dest.putBytes(Constants.DEX_FILE_MAGIC_PREFIX);
-    dest.putBytes(convertApiLevelToDexVersion(options.minApiLevel));
-    dest.putByte(Constants.DEX_FILE_MAGIC_SUFFIX);
+    outputBuffer.moveTo(0);
+    outputBuffer.putBytes(Constants.DEX_FILE_MAGIC_PREFIX);
+    outputBuffer.putBytes(convertApiLevelToDexVersion(options.minApiLevel));
+    outputBuffer.putByte(Constants.DEX_FILE_MAGIC_SUFFIX);
     // Leave out checksum and signature for now.
-    dest.moveTo(Constants.FILE_SIZE_OFFSET);
-    dest.putInt(layout.getEndOfFile());
-    dest.putInt(Constants.TYPE_HEADER_ITEM_SIZE);
-    dest.putInt(Constants.ENDIAN_CONSTANT);
-    dest.putInt(0);
-    dest.putInt(0);
-    dest.putInt(layout.getMapOffset());
+    outputBuffer.moveTo(Constants.FILE_SIZE_OFFSET);
+    outputBuffer.putInt(layout.getEndOfFile());
+    outputBuffer.putInt(Constants.TYPE_HEADER_ITEM_SIZE);
+    outputBuffer.putInt(Constants.ENDIAN_CONSTANT);
+    outputBuffer.putInt(0);
+    outputBuffer.putInt(0);
+    outputBuffer.putInt(layout.getMapOffset());
     int numberOfStrings = mapping.getStrings().length;
-    dest.putInt(numberOfStrings);
-    dest.putInt(numberOfStrings == 0 ? 0 : layout.stringIdsOffset);
+    outputBuffer.putInt(numberOfStrings);
+    outputBuffer.putInt(numberOfStrings == 0 ? 0 : layout.stringIdsOffset);
     int numberOfTypes = mapping.getTypes().length;
-    dest.putInt(numberOfTypes);
-    dest.putInt(numberOfTypes == 0 ? 0 : layout.typeIdsOffset);
+    outputBuffer.putInt(numberOfTypes);
+    outputBuffer.putInt(numberOfTypes == 0 ? 0 : layout.typeIdsOffset);
     int numberOfProtos = mapping.getProtos().length;
-    dest.putInt(numberOfProtos);
-    dest.putInt(numberOfProtos == 0 ? 0 : layout.protoIdsOffset);
+    outputBuffer.putInt(numberOfProtos);
+    outputBuffer.putInt(numberOfProtos == 0 ? 0 : layout.protoIdsOffset);
     int numberOfFields = mapping.getFields().length;
-    dest.putInt(numberOfFields);
-    dest.putInt(numberOfFields == 0 ? 0 : layout.fieldIdsOffset);
+    outputBuffer.putInt(numberOfFields);
+    outputBuffer.putInt(numberOfFields == 0 ? 0 : layout.fieldIdsOffset);
     int numberOfMethods = mapping.getMethods().length;
-    dest.putInt(numberOfMethods);
-    dest.putInt(numberOfMethods == 0 ? 0 : layout.methodIdsOffset);
+    outputBuffer.putInt(numberOfMethods);
+    outputBuffer.putInt(numberOfMethods == 0 ? 0 : layout.methodIdsOffset);
     int numberOfClasses = mapping.getClasses().length;
-    dest.putInt(numberOfClasses);
-    dest.putInt(numberOfClasses == 0 ? 0 : layout.classDefsOffset);
-    dest.putInt(layout.getDataSectionSize());
-    dest.putInt(layout.dataSectionOffset);
-    assert dest.position() == layout.stringIdsOffset;
+    outputBuffer.putInt(numberOfClasses);
+    outputBuffer.putInt(numberOfClasses == 0 ? 0 : layout.classDefsOffset);
+    outputBuffer.putInt(layout.getDataSectionSize());
+    outputBuffer.putInt(layout.dataSectionOffset);
+    assert outputBuffer.position() == layout.stringIdsOffset;
   }
 
   private void writeSignature(Layout layout) {
     try {
       MessageDigest md = MessageDigest.getInstance("SHA-1");
-      md.update(dest.asArray(), Constants.FILE_SIZE_OFFSET,
+      md.update(outputBuffer.asArray(), Constants.FILE_SIZE_OFFSET,
           layout.getEndOfFile() - Constants.FIELD_IDS_OFF_OFFSET);
-      md.digest(dest.asArray(), Constants.SIGNATURE_OFFSET, 20);
+      md.digest(outputBuffer.asArray(), Constants.SIGNATURE_OFFSET, 20);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -828,10 +978,10 @@ public class FileWriter {
 
   private void writeChecksum(Layout layout) {
     Adler32 adler = new Adler32();
-    adler.update(dest.asArray(), Constants.SIGNATURE_OFFSET,
+    adler.update(outputBuffer.asArray(), Constants.SIGNATURE_OFFSET,
         layout.getEndOfFile() - Constants.SIGNATURE_OFFSET);
-    dest.moveTo(Constants.CHECKSUM_OFFSET);
-    dest.putInt((int) adler.getValue());
+    outputBuffer.moveTo(Constants.CHECKSUM_OFFSET);
+    outputBuffer.putInt((int) adler.getValue());
   }
 
   private int alignSize(int bytes, int value) {
@@ -1036,6 +1186,69 @@ public class FileWriter {
     }
   }
 
+  /**
+   * The encoding of the items of a section that do not refer to the offsets of other items.
+   * The items are encoded in chunks in parallel before the layout is computed, and the chunks are
+   * copied into the output once the offset of the section is known.
+   */
+  private static class EncodedItems<T> {
+
+    private final List<T> items;
+    private final byte[][] chunks;
+    // The offset of each item relative to the start of its chunk.
+    private final int[] offsetsInChunk;
+    private int offset = Layout.NOT_SET;
+
+    EncodedItems(Collection<T> items, BiConsumer<T, DexOutputBuffer> writer,
+        List<Runnable> tasks) {
+      this.items = new ArrayList<>(items);
+      List<List<T>> partitions = Lists.partition(this.items, ITEMS_PER_TASK);
+      chunks = new byte[partitions.size()][];
+      offsetsInChunk = new int[this.items.size()];
+      for (int i = 0; i < partitions.size(); i++) {
+        int chunk = i;
+        tasks.add(() -> {
+          DexOutputBuffer dest = new DexOutputBuffer(4 * 1024);
+          int index = chunk * ITEMS_PER_TASK;
+          for (T item : partitions.get(chunk)) {
+            offsetsInChunk[index++] = dest.position();
+            writer.accept(item, dest);
+          }
+          chunks[chunk] = Arrays.copyOf(dest.asArray(), dest.position());
+        });
+      }
+    }
+
+    int layout(int offset, Consumer<Integer> offsetSetter, ObjIntConsumer<T> itemOffsetSetter) {
+      if (items.isEmpty()) {
+        offsetSetter.accept(0);
+        return offset;
+      }
+      this.offset = offset;
+      offsetSetter.accept(offset);
+      for (int chunk = 0; chunk < chunks.length; chunk++) {
+        int end = Math.min(items.size(), (chunk + 1) * ITEMS_PER_TASK);
+        for (int i = chunk * ITEMS_PER_TASK; i < end; i++) {
+          itemOffsetSetter.accept(items.get(i), offset + offsetsInChunk[i]);
+        }
+        offset += chunks[chunk].length;
+      }
+      return offset;
+    }
+
+    void addWriteTask(DexOutputBuffer outputBuffer, List<Runnable> tasks) {
+      if (!items.isEmpty()) {
+        assert offset != Layout.NOT_SET;
+        tasks.add(() -> {
+          DexOutputBuffer dest = outputBuffer.viewAt(offset);
+          for (byte[] chunk : chunks) {
+            dest.putBytes(chunk);
+          }
+        });
+      }
+    }
+  }
+
   /**
    * Encapsulates information on the offsets of items in the sections of the mixed data part of the
    * DEX file.
@@ -1064,6 +1277,12 @@ public class FileWriter {
     private final Hashtable<DexProgramClass, DexAnnotationDirectory> clazzToAnnotationDirectory
         = new Hashtable<>();
 
+    private final SortedIndices sortedIndices;
+
+    private MixedSectionOffsets(SortedIndices sortedIndices) {
+      this.sortedIndices = sortedIndices;
+    }
+
     private static <T> Object2IntMap<T> createObject2IntMap() {
       Object2IntMap<T> result = new Object2IntLinkedOpenHashMap<>();
       result.defaultReturnValue(NOT_KNOWN);
@@ -1142,8 +1361,8 @@ public class FileWriter {
     }
 
     @Override
-    public boolean setAnnotationsDirectoryForClass(DexProgramClass clazz,
-        DexAnnotationDirectory annotationDirectory) {
+    public boolean setAnnotationsDirectoryForClass(DexProgramClass clazz) {
+      DexAnnotationDirectory annotationDirectory = new DexAnnotationDirectory(clazz, sortedIndices);
       DexAnnotationDirectory previous = clazzToAnnotationDirectory.put(clazz, annotationDirectory);
       assert previous == null;
       return add(annotationDirectories, annotationDirectory);
@@ -1244,6 +1463,10 @@ public class FileWriter {
       return offset;
     }
 
+    public int getOffsetFor(DexAnnotationDirectory annotationDirectory) {
+      return lookup(annotationDirectory, annotationDirectories);
+    }
+
     public int getOffsetFor(DexAnnotation annotation) {
       return lookup(annotation, annotations);
     }
@@ -40,6 +40,7 @@ import com.android.tools.r8.graph.DexDebugInfo;
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.graph.DexItemFactory;
 import com.android.tools.r8.graph.DexString;
+import com.android.tools.r8.graph.SortedIndices;
 import com.google.common.collect.Lists;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceMap;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
@@ -91,6 +92,7 @@ public class JumboStringRewriter {
 
   private final DexEncodedMethod method;
   private final DexString firstJumboString;
+  private final SortedIndices sortedIndices;
   private final DexItemFactory factory;
   private final Map<Instruction, List<Instruction>> instructionTargets = new IdentityHashMap<>();
   private final Int2ReferenceMap<Instruction> debugEventTargets
@@ -99,10 +101,11 @@ public class JumboStringRewriter {
   private final Map<Try, TryTargets> tryTargets = new IdentityHashMap<>();
   private final Map<TryHandler, List<Instruction>> handlerTargets = new IdentityHashMap<>();
 
-  public JumboStringRewriter(
-      DexEncodedMethod method, DexString firstJumboString, DexItemFactory factory) {
+  public JumboStringRewriter(DexEncodedMethod method, DexString firstJumboString,
+      SortedIndices sortedIndices, DexItemFactory factory) {
     this.method = method;
     this.firstJumboString = firstJumboString;
+    this.sortedIndices = sortedIndices;
     this.factory = factory;
   }
 
@@ -280,7 +283,7 @@ public class JumboStringRewriter {
         instruction.setOffset(instruction.getOffset() + offsetDelta);
         if (instruction instanceof ConstString) {
           ConstString string = (ConstString) instruction;
-          if (string.getString().compareTo(firstJumboString) >= 0) {
+          if (sortedIndices.compare(string.getString(), firstJumboString) >= 0) {
             ConstStringJumbo jumboString = new ConstStringJumbo(string.AA, string.getString());
             jumboString.setOffset(string.getOffset());
             offsetDelta++;
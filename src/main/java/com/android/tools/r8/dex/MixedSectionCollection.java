@@ -4,7 +4,6 @@
 package com.android.tools.r8.dex;
 
 import com.android.tools.r8.graph.DexAnnotation;
-import com.android.tools.r8.graph.DexAnnotationDirectory;
 import com.android.tools.r8.graph.DexAnnotationSet;
 import com.android.tools.r8.graph.DexAnnotationSetRefList;
 import com.android.tools.r8.graph.DexCode;
@@ -98,12 +97,11 @@ public abstract class MixedSectionCollection {
   public abstract boolean add(DexAnnotation annotation);
 
   /**
-   * Adds the given annotation directory to the collection.
+   * Adds the annotation directory of the given class to the collection.
    *
    * Add a dependency between the clazz and the annotation directory.
    *
    * @return true if the item was not added before
    */
-  public abstract boolean setAnnotationsDirectoryForClass(DexProgramClass clazz,
-      DexAnnotationDirectory annotationDirectory);
+  public abstract boolean setAnnotationsDirectoryForClass(DexProgramClass clazz);
 }
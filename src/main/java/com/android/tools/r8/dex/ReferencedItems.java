@@ -0,0 +1,136 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.dex;
+
+import com.android.tools.r8.graph.DexCallSite;
+import com.android.tools.r8.graph.DexField;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexMethodHandle;
+import com.android.tools.r8.graph.DexProgramClass;
+import com.android.tools.r8.graph.DexProto;
+import com.android.tools.r8.graph.DexString;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.naming.NamingLens;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The strings, types, fields, protos and methods referenced from a set of program classes, using
+ * the names after renaming.
+ *
+ * <p>These are the items written to the output, so they are the only items that need sorted
+ * indices when writing.
+ */
+public class ReferencedItems implements IndexedItemCollection {
+
+  private final NamingLens namingLens;
+
+  private final Set<DexProgramClass> classes = Sets.newConcurrentHashSet();
+  private final Set<DexString> strings = Sets.newConcurrentHashSet();
+  private final Set<DexType> types = Sets.newConcurrentHashSet();
+  private final Set<DexField> fields = Sets.newConcurrentHashSet();
+  private final Set<DexProto> protos = Sets.newConcurrentHashSet();
+  private final Set<DexMethod> methods = Sets.newConcurrentHashSet();
+  // Call sites and method handles are not sorted, they are only kept to visit their components
+  // once.
+  private final Set<DexCallSite> callSites = Sets.newConcurrentHashSet();
+  private final Set<DexMethodHandle> methodHandles = Sets.newConcurrentHashSet();
+
+  private ReferencedItems(NamingLens namingLens) {
+    this.namingLens = namingLens;
+  }
+
+  public static ReferencedItems collect(Iterable<DexProgramClass> classes, NamingLens namingLens,
+      ExecutorService executorService) throws ExecutionException {
+    ReferencedItems items = new ReferencedItems(namingLens);
+    List<Future<?>> futures = new ArrayList<>();
+    for (DexProgramClass clazz : classes) {
+      futures.add(executorService.submit(() -> clazz.collectIndexedItems(items)));
+    }
+    ThreadUtils.awaitFutures(futures);
+    return items;
+  }
+
+  public Collection<DexString> getStrings() {
+    return strings;
+  }
+
+  public Collection<DexType> getTypes() {
+    return types;
+  }
+
+  public Collection<DexField> getFields() {
+    return fields;
+  }
+
+  public Collection<DexProto> getProtos() {
+    return protos;
+  }
+
+  public Collection<DexMethod> getMethods() {
+    return methods;
+  }
+
+  @Override
+  public boolean addClass(DexProgramClass dexProgramClass) {
+    return classes.add(dexProgramClass);
+  }
+
+  @Override
+  public boolean addField(DexField field) {
+    return fields.add(field);
+  }
+
+  @Override
+  public boolean addMethod(DexMethod method) {
+    return methods.add(method);
+  }
+
+  @Override
+  public boolean addString(DexString string) {
+    return strings.add(string);
+  }
+
+  @Override
+  public boolean addProto(DexProto proto) {
+    return protos.add(proto);
+  }
+
+  @Override
+  public boolean addType(DexType type) {
+    return types.add(type);
+  }
+
+  @Override
+  public boolean addCallSite(DexCallSite callSite) {
+    return callSites.add(callSite);
+  }
+
+  @Override
+  public boolean addMethodHandle(DexMethodHandle methodHandle) {
+    return methodHandles.add(methodHandle);
+  }
+
+  @Override
+  public DexString getRenamedDescriptor(DexType type) {
+    return namingLens.lookupDescriptor(type);
+  }
+
+  @Override
+  public DexString getRenamedName(DexMethod method) {
+    return namingLens.lookupName(method);
+  }
+
+  @Override
+  public DexString getRenamedName(DexField field) {
+    return namingLens.lookupName(field);
+  }
+}
@@ -20,6 +20,7 @@ import com.android.tools.r8.graph.DexString;
 import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.graph.IndexedDexItem;
 import com.android.tools.r8.graph.ObjectToOffsetMapping;
+import com.android.tools.r8.graph.SortedIndices;
 import com.android.tools.r8.naming.ClassNameMapper;
 import com.android.tools.r8.naming.NamingLens;
 import com.android.tools.r8.utils.DescriptorUtils;
@@ -78,7 +79,7 @@ public class VirtualFile {
 
   private VirtualFile(int id, NamingLens namingLens) {
     this.id = id;
-    this.indexedItems = new VirtualFileIndexedItemCollection(id);
+    this.indexedItems = new VirtualFileIndexedItemCollection();
     this.transaction = new IndexedItemTransaction(indexedItems, namingLens);
   }
 
@@ -146,10 +147,11 @@ public class VirtualFile {
     return prefix;
   }
 
-  public ObjectToOffsetMapping computeMapping(DexApplication application) {
+  public ObjectToOffsetMapping computeMapping(SortedIndices sortedIndices,
+      DexApplication application) {
     assert transaction.isEmpty();
     return new ObjectToOffsetMapping(
-        id,
+        sortedIndices,
         application,
         indexedItems.classes.toArray(new DexProgramClass[indexedItems.classes.size()]),
         indexedItems.protos.toArray(new DexProto[indexedItems.protos.size()]),
@@ -457,8 +459,6 @@ public class VirtualFile {
 
   private static class VirtualFileIndexedItemCollection implements IndexedItemCollection {
 
-    final int id;
-
     private final List<DexProgramClass> classes = new ArrayList<>();
     private final List<DexProto> protos = new ArrayList<>();
     private final List<DexType> types = new ArrayList<>();
@@ -469,14 +469,11 @@ public class VirtualFile {
     private final List<DexMethodHandle> methodHandles = new ArrayList<>();
 
     private final Set<DexClass> seenClasses = Sets.newIdentityHashSet();
-
-    private VirtualFileIndexedItemCollection(int id) {
-      this.id = id;
-    }
+    private final Set<IndexedDexItem> seenItems = Sets.newIdentityHashSet();
 
     private <T extends IndexedDexItem> boolean addItem(T item, List<T> itemList) {
       assert item != null;
-      if (item.assignToVirtualFile(id)) {
+      if (seenItems.add(item)) {
         itemList.add(item);
         return true;
       }
@@ -561,7 +558,7 @@ public class VirtualFile {
     }
 
     private <T extends IndexedDexItem> boolean maybeInsert(T item, Set<T> set) {
-      if (item.hasVirtualFileData(base.id) || set.contains(item)) {
+      if (base.seenItems.contains(item) || set.contains(item)) {
         return false;
       }
       set.add(item);
@@ -3,102 +3,140 @@
 // BSD-style license that can be found in the LICENSE file.
 package com.android.tools.r8.graph;
 
-import com.google.common.collect.ImmutableSet;
+import com.android.tools.r8.utils.Timing;
 import com.google.common.collect.Sets;
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Function;
 
 public class AppInfoWithSubtyping extends AppInfo {
 
-  // Set of missing classes, discovered during subtypeMap computation.
-  private Set<DexType> missingClasses = Sets.newIdentityHashSet();
-  // Map from types to their subtypes.
-  private final Hashtable<DexType, ImmutableSet<DexType>> subtypeMap = new Hashtable<>();
+  // Set of missing classes, discovered during subtypeIndex computation.
+  private final Set<DexType> missingClasses = Sets.newIdentityHashSet();
+  // Index of the subtypes of types.
+  private final SubtypeIndex subtypeIndex;
+  // Direct subtypes and hierarchy levels of types.
+  public final TypeHierarchy typeHierarchy;
+  // Targets of virtual and interface invokes.
+  private final VirtualTargetCache virtualTargetCache;
 
   public AppInfoWithSubtyping(DexApplication application) {
     super(application);
-    populateSubtypeMap(application.getFullClassMap(), application.dexItemFactory);
+    typeHierarchy = new TypeHierarchy(dexItemFactory);
+    subtypeIndex = populateSubtypeIndex(application.getFullClassMap());
+    virtualTargetCache = new VirtualTargetCache();
   }
 
   protected AppInfoWithSubtyping(AppInfoWithSubtyping previous) {
     super(previous);
     missingClasses.addAll(previous.missingClasses);
-    subtypeMap.putAll(previous.subtypeMap);
+    // The index is never changed, so it can be shared.
+    subtypeIndex = previous.subtypeIndex;
+    typeHierarchy = previous.typeHierarchy;
+    virtualTargetCache = previous.virtualTargetCache;
+  }
+
+  protected AppInfoWithSubtyping(AppInfoWithSubtyping previous, DexApplication application) {
+    super(application);
+    typeHierarchy = new TypeHierarchy(dexItemFactory);
+    subtypeIndex = populateSubtypeIndex(application.getFullClassMap());
+    // Classes have been removed, so targets may have been removed.
+    virtualTargetCache = previous.virtualTargetCache.invalidate();
   }
 
   protected AppInfoWithSubtyping(AppInfoWithSubtyping previous, GraphLense lense) {
     super(previous, lense);
-    // Recompute subtype map if we have modified the graph.
-    populateSubtypeMap(previous.app.getFullClassMap(), dexItemFactory);
+    // Recompute subtype index if we have modified the graph.
+    typeHierarchy = new TypeHierarchy(dexItemFactory);
+    subtypeIndex = populateSubtypeIndex(previous.app.getFullClassMap());
+    virtualTargetCache = previous.virtualTargetCache.invalidate();
   }
 
   public Set<DexType> getMissingClasses() {
     return Collections.unmodifiableSet(missingClasses);
   }
 
-  public ImmutableSet<DexType> subtypes(DexType type) {
+  /**
+   * Returns a view of the defined classes reaching type through super classes and interfaces.
+   */
+  public Set<DexType> subtypes(DexType type) {
     assert type.isClassType();
-    ImmutableSet<DexType> subtypes = subtypeMap.get(type);
-    return subtypes == null ? ImmutableSet.of() : subtypes;
+    return subtypeIndex.subtypes(type);
   }
 
-  private void populateSuperType(Hashtable<DexType, Set<DexType>> map, DexType superType,
-      DexClass baseClass, Function<DexType, DexClass> definitions) {
-    if (superType != null) {
-      Set<DexType> set = map.computeIfAbsent(superType, ignore -> new HashSet<>());
-      if (set.add(baseClass.type)) {
-        // Only continue recursion if type has been added to set.
-        populateAllSuperTypes(map, superType, baseClass, definitions);
-      }
+  private void populateAllSuperTypes(DexType holder, Map<DexType, DexClass> classes,
+      Set<DexType> visited) {
+    if (!visited.add(holder)) {
+      return;
     }
-  }
-
-  private void populateAllSuperTypes(Hashtable<DexType, Set<DexType>> map, DexType holder,
-      DexClass baseClass, Function<DexType, DexClass> definitions) {
-    DexClass holderClass = definitions.apply(holder);
+    DexClass holderClass = classes.get(holder);
     // Skip if no corresponding class is found.
     if (holderClass != null) {
-      populateSuperType(map, holderClass.superType, baseClass, definitions);
       if (holderClass.superType != null) {
-        holderClass.superType.addDirectSubtype(holder);
+        populateAllSuperTypes(holderClass.superType, classes, visited);
+        typeHierarchy.addDirectSubtype(holderClass.superType, holder);
       } else {
         // We found java.lang.Object
         assert dexItemFactory.objectType == holder;
       }
       for (DexType inter : holderClass.interfaces.values) {
-        populateSuperType(map, inter, baseClass, definitions);
-        inter.addInterfaceSubtype(holder);
+        populateAllSuperTypes(inter, classes, visited);
+        typeHierarchy.addInterfaceSubtype(inter, holder);
       }
     } else {
-      if (!baseClass.isLibraryClass()) {
-        missingClasses.add(holder);
-      }
       // The subtype chain is broken, at least make this type a subtype of Object.
       if (holder != dexItemFactory.objectType) {
-        dexItemFactory.objectType.addDirectSubtype(holder);
+        typeHierarchy.addDirectSubtype(dexItemFactory.objectType, holder);
       }
     }
   }
 
-  private void populateSubtypeMap(Map<DexType, DexClass> classes, DexItemFactory dexItemFactory) {
-    dexItemFactory.clearSubtypeInformation();
-    dexItemFactory.objectType.tagAsSubtypeRoot();
-    Hashtable<DexType, Set<DexType>> map = new Hashtable<>();
-    for (Map.Entry<DexType, DexClass> entry : classes.entrySet()) {
-      populateAllSuperTypes(map, entry.getKey(), entry.getValue(), classes::get);
+  private void populateMissingClasses(Map<DexType, DexClass> classes) {
+    Set<DexType> visited = Sets.newIdentityHashSet();
+    Deque<DexType> worklist = new ArrayDeque<>();
+    for (DexClass clazz : classes.values()) {
+      if (!clazz.isLibraryClass() && visited.add(clazz.type)) {
+        worklist.add(clazz.type);
+      }
+    }
+    while (!worklist.isEmpty()) {
+      DexType type = worklist.removeFirst();
+      DexClass clazz = classes.get(type);
+      if (clazz == null) {
+        missingClasses.add(type);
+        continue;
+      }
+      if (clazz.superType != null && visited.add(clazz.superType)) {
+        worklist.add(clazz.superType);
+      }
+      for (DexType inter : clazz.interfaces.values) {
+        if (visited.add(inter)) {
+          worklist.add(inter);
+        }
+      }
     }
-    for (Map.Entry<DexType, Set<DexType>> entry : map.entrySet()) {
-      subtypeMap.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue()));
+  }
+
+  private SubtypeIndex populateSubtypeIndex(Map<DexType, DexClass> classes) {
+    Set<DexType> visited = Sets.newIdentityHashSet();
+    for (DexType type : classes.keySet()) {
+      populateAllSuperTypes(type, classes, visited);
     }
-    assert DexType.validateLevelsAreCorrect(classes::get, dexItemFactory);
+    populateMissingClasses(classes);
+    typeHierarchy.finishBuilding();
+    assert typeHierarchy.validateLevelsAreCorrect(classes::get);
+    return new SubtypeIndex(classes);
   }
 
   // For mapping invoke virtual instruction to target methods.
   public Set<DexEncodedMethod> lookupVirtualTargets(DexMethod method) {
+    return virtualTargetCache.lookupVirtualTargets(method, this::computeVirtualTargets);
+  }
+
+  private Set<DexEncodedMethod> computeVirtualTargets(DexMethod method) {
     Set<DexEncodedMethod> result = new HashSet<>();
     // First add the target for receiver type method.type.
     DexClass root = definitionFor(method.holder);
@@ -142,9 +180,10 @@ public class AppInfoWithSubtyping extends AppInfo {
     if ((holder == null) || holder.isLibraryClass()) {
       return null;
     }
-    if (method.isSingleVirtualMethodCached()) {
-      return method.getSingleVirtualMethodCache();
-    }
+    return virtualTargetCache.lookupSingleVirtualTarget(method, this::computeSingleVirtualTarget);
+  }
+
+  private DexEncodedMethod computeSingleVirtualTarget(DexMethod method) {
     DexEncodedMethod result = null;
     // First add the target for receiver type method.type.
     DexEncodedMethod topMethod = lookupVirtualTarget(method.holder, method);
@@ -173,7 +212,6 @@ public class AppInfoWithSubtyping extends AppInfo {
         }
       }
     }
-    method.setSingleVirtualMethodCache(result);
     return result;
   }
 
@@ -184,6 +222,10 @@ public class AppInfoWithSubtyping extends AppInfo {
 
   // For mapping invoke interface instruction to target methods.
   public Set<DexEncodedMethod> lookupInterfaceTargets(DexMethod method) {
+    return virtualTargetCache.lookupInterfaceTargets(method, this::computeInterfaceTargets);
+  }
+
+  private Set<DexEncodedMethod> computeInterfaceTargets(DexMethod method) {
     Set<DexEncodedMethod> result = new HashSet<>();
     Set<DexType> set = subtypes(method.holder);
     if (set != null) {
@@ -206,6 +248,11 @@ public class AppInfoWithSubtyping extends AppInfo {
     if ((holder == null) || holder.isLibraryClass()) {
       return null;
     }
+    return virtualTargetCache.lookupSingleInterfaceTarget(
+        method, this::computeSingleInterfaceTarget);
+  }
+
+  private DexEncodedMethod computeSingleInterfaceTarget(DexMethod method) {
     DexEncodedMethod result = null;
     Set<DexType> set = subtypes(method.holder);
     if (set != null) {
@@ -226,10 +273,17 @@ public class AppInfoWithSubtyping extends AppInfo {
     return result;
   }
 
+  /**
+   * Adds the hits and misses of the virtual target lookups since the last call to timing.
+   */
+  public void countVirtualTargetLookups(Timing timing) {
+    virtualTargetCache.count(timing);
+  }
+
   @Override
   public void registerNewType(DexType newType, DexType superType) {
     // Register the relationship between this type and its superType.
-    superType.addDirectSubtype(newType);
+    typeHierarchy.addDirectSubtype(superType, newType);
   }
 
   @Override
@@ -8,8 +8,8 @@ import com.android.tools.r8.dex.MixedSectionCollection;
 import com.android.tools.r8.errors.Unreachable;
 import com.android.tools.r8.utils.OrderedMergingIterator;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.function.Function;
 
 public class DexAnnotationDirectory extends DexItem {
 
@@ -19,13 +19,13 @@ public class DexAnnotationDirectory extends DexItem {
   private final List<DexEncodedField> fieldAnnotations;
   private final boolean classHasOnlyInternalizableAnnotations;
 
-  public DexAnnotationDirectory(DexProgramClass clazz) {
+  public DexAnnotationDirectory(DexProgramClass clazz, SortedIndices indices) {
     this.clazz = clazz;
     this.classHasOnlyInternalizableAnnotations = clazz.hasOnlyInternalizableAnnotations();
-    assert isSorted(clazz.directMethods());
-    assert isSorted(clazz.virtualMethods());
-    OrderedMergingIterator<DexEncodedMethod, DexMethod> methods =
-        new OrderedMergingIterator<>(clazz.directMethods(), clazz.virtualMethods());
+    assert isSorted(clazz.directMethods(), indices::compare);
+    assert isSorted(clazz.virtualMethods(), indices::compare);
+    OrderedMergingIterator<DexEncodedMethod, DexMethod> methods = new OrderedMergingIterator<>(
+        clazz.directMethods(), clazz.virtualMethods(), indices::compare);
     methodAnnotations = new ArrayList<>();
     parameterAnnotations = new ArrayList<>();
     while (methods.hasNext()) {
@@ -37,10 +37,10 @@ public class DexAnnotationDirectory extends DexItem {
         parameterAnnotations.add(method);
       }
     }
-    assert isSorted(clazz.staticFields());
-    assert isSorted(clazz.instanceFields());
-    OrderedMergingIterator<DexEncodedField, DexField> fields =
-        new OrderedMergingIterator<>(clazz.staticFields(), clazz.instanceFields());
+    assert isSorted(clazz.staticFields(), indices::compare);
+    assert isSorted(clazz.instanceFields(), indices::compare);
+    OrderedMergingIterator<DexEncodedField, DexField> fields = new OrderedMergingIterator<>(
+        clazz.staticFields(), clazz.instanceFields(), indices::compare);
     fieldAnnotations = new ArrayList<>();
     while (fields.hasNext()) {
       DexEncodedField field = fields.next();
@@ -107,18 +107,12 @@ public class DexAnnotationDirectory extends DexItem {
     throw new Unreachable();
   }
 
-  private static <T extends PresortedComparable<T>> boolean isSorted(KeyedDexItem<T>[] items) {
-    return isSorted(items, KeyedDexItem::getKey);
-  }
-
-  private static <S, T extends Comparable<T>> boolean isSorted(S[] items, Function<S, T> getter) {
-    T current = null;
-    for (S item : items) {
-      T next = getter.apply(item);
-      if (current != null && current.compareTo(next) >= 0) {
+  private static <T extends PresortedComparable<T>> boolean isSorted(KeyedDexItem<T>[] items,
+      Comparator<T> comparator) {
+    for (int i = 1; i < items.length; i++) {
+      if (comparator.compare(items[i - 1].getKey(), items[i].getKey()) >= 0) {
         return false;
       }
-      current = next;
     }
     return true;
   }
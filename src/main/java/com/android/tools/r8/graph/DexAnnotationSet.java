@@ -53,14 +53,14 @@ public class DexAnnotationSet extends CachedHashValueDexItem {
     return annotations.length == 0;
   }
 
-  public void sort() {
+  public void sort(SortedIndices indices) {
     if (sorted != UNSORTED) {
       assert sorted == sortedHashCode();
       return;
     }
-    Arrays.sort(annotations, (a, b) -> a.annotation.type.compareTo(b.annotation.type));
+    Arrays.sort(annotations, (a, b) -> indices.compare(a.annotation.type, b.annotation.type));
     for (DexAnnotation annotation : annotations) {
-      annotation.annotation.sort();
+      annotation.annotation.sort(indices);
     }
     sorted = hashCode();
   }
@@ -11,6 +11,7 @@ import com.android.tools.r8.dex.MixedSectionCollection;
 import com.android.tools.r8.errors.Unreachable;
 import com.android.tools.r8.ir.code.IRCode;
 import com.android.tools.r8.ir.code.ValueNumberGenerator;
+import com.android.tools.r8.ir.conversion.DecodedDexCodeCache;
 import com.android.tools.r8.ir.conversion.DexSourceCode;
 import com.android.tools.r8.ir.conversion.IRBuilder;
 import com.android.tools.r8.naming.ClassNameMapper;
@@ -110,8 +111,12 @@ public class DexCode extends Code {
 
   @Override
   public boolean computeEquals(Object other) {
-    if (other instanceof DexCode) {
-      DexCode o = (DexCode) other;
+    // Compare by content with any code that is dex code, such as a not yet decoded code item.
+    if (other instanceof Code && ((Code) other).isDexCode()) {
+      DexCode o = ((Code) other).asDexCode();
+      if (this == o) {
+        return true;
+      }
       if (incomingRegisterSize != o.incomingRegisterSize) {
         return false;
       }
@@ -148,7 +153,12 @@ public class DexCode extends Code {
 
   @Override
   public IRCode buildIR(DexEncodedMethod encodedMethod, InternalOptions options) {
-    DexSourceCode source = new DexSourceCode(this, encodedMethod);
+    return buildIR(encodedMethod, options, null);
+  }
+
+  public IRCode buildIR(
+      DexEncodedMethod encodedMethod, InternalOptions options, DecodedDexCodeCache cache) {
+    DexSourceCode source = new DexSourceCode(this, encodedMethod, cache);
     IRBuilder builder = new IRBuilder(encodedMethod, source, options);
     return builder.build();
   }
@@ -157,7 +167,15 @@ public class DexCode extends Code {
       DexEncodedMethod encodedMethod,
       ValueNumberGenerator valueNumberGenerator,
       InternalOptions options) {
-    DexSourceCode source = new DexSourceCode(this, encodedMethod);
+    return buildIR(encodedMethod, valueNumberGenerator, options, null);
+  }
+
+  public IRCode buildIR(
+      DexEncodedMethod encodedMethod,
+      ValueNumberGenerator valueNumberGenerator,
+      InternalOptions options,
+      DecodedDexCodeCache cache) {
+    DexSourceCode source = new DexSourceCode(this, encodedMethod, cache);
     IRBuilder builder = new IRBuilder(encodedMethod, source, valueNumberGenerator, options);
     return builder.build();
   }
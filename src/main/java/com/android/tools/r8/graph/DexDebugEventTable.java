@@ -0,0 +1,44 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Canonicalization table for {@link DexDebugEvent}s that are identified by a single int, e.g.,
+ * the delta of an {@link DexDebugEvent.AdvancePC}.
+ *
+ * <p>The keys are kept unboxed. Like {@link DexStringTable}, the table is split into shards with a
+ * lock each, so that threads reading the debug info of different methods rarely contend.
+ */
+final class DexDebugEventTable<T extends DexDebugEvent> {
+
+  private static final int SHARD_BITS = 3;
+
+  private final IntFunction<T> factory;
+  private final Int2ObjectMap<T>[] shards;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})  // Generic array creation; the shards only hold T.
+  DexDebugEventTable(IntFunction<T> factory) {
+    this.factory = factory;
+    shards = new Int2ObjectMap[1 << SHARD_BITS];
+    for (int i = 0; i < shards.length; i++) {
+      shards[i] = new Int2ObjectOpenHashMap<>();
+    }
+  }
+
+  T lookupOrAdd(int key) {
+    Int2ObjectMap<T> shard = shards[(key * 0x9E3779B9) >>> (Integer.SIZE - SHARD_BITS)];
+    synchronized (shard) {
+      T event = shard.get(key);
+      if (event == null) {
+        event = factory.apply(key);
+        shard.put(key, event);
+      }
+      return event;
+    }
+  }
+}
@@ -54,14 +54,14 @@ public class DexEncodedAnnotation extends DexItem {
     return false;
   }
 
-  public void sort() {
+  public void sort(SortedIndices indices) {
     if (sorted != UNSORTED) {
       assert sorted == sortedHashCode();
       return;
     }
-    Arrays.sort(elements, (a, b) -> a.name.compareTo(b.name));
+    Arrays.sort(elements, (a, b) -> indices.compare(a.name, b.name));
     for (DexAnnotationElement element : elements) {
-      element.value.sort();
+      element.value.sort(indices);
     }
     sorted = sortedHashCode();
   }
@@ -23,6 +23,7 @@ import com.android.tools.r8.ir.code.IRCode;
 import com.android.tools.r8.ir.code.Invoke;
 import com.android.tools.r8.ir.code.MoveType;
 import com.android.tools.r8.ir.code.ValueNumberGenerator;
+import com.android.tools.r8.ir.conversion.DecodedDexCodeCache;
 import com.android.tools.r8.ir.conversion.DexBuilder;
 import com.android.tools.r8.ir.optimize.Inliner.Constraint;
 import com.android.tools.r8.ir.regalloc.RegisterAllocator;
@@ -156,13 +157,32 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
   }
 
   public IRCode buildIR(InternalOptions options) {
-    return code == null ? null : code.buildIR(this, options);
+    return code == null ? null : getCode().buildIR(this, options);
+  }
+
+  /**
+   * Builds the IR like {@link #buildIR(InternalOptions)}, but reuses the decoding of dex code
+   * kept by the given cache.
+   */
+  public IRCode buildIR(InternalOptions options, DecodedDexCodeCache cache) {
+    if (code == null) {
+      return null;
+    }
+    Code methodCode = getCode();
+    return methodCode.isDexCode()
+        ? methodCode.asDexCode().buildIR(this, options, cache)
+        : methodCode.buildIR(this, options);
   }
 
   public IRCode buildIR(ValueNumberGenerator valueNumberGenerator, InternalOptions options) {
+    return buildIR(valueNumberGenerator, options, null);
+  }
+
+  public IRCode buildIR(ValueNumberGenerator valueNumberGenerator, InternalOptions options,
+      DecodedDexCodeCache cache) {
     return code == null
         ? null
-        : code.asDexCode().buildIR(this, valueNumberGenerator, options);
+        : getCode().asDexCode().buildIR(this, valueNumberGenerator, options, cache);
   }
 
   public void setCode(
@@ -195,7 +215,18 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
   }
 
   public Code getCode() {
-    return code;
+    Code current = code;
+    if (current instanceof LazyDexCode) {
+      DexCode decoded = ((LazyDexCode) current).decode();
+      synchronized (this) {
+        // Do not overwrite code that was set while decoding.
+        if (code == current) {
+          code = decoded;
+        }
+        return code;
+      }
+    }
+    return current;
   }
 
   public void setDexCode(DexCode code) {
@@ -402,7 +433,7 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
       if (Log.ENABLED) {
         Log.verbose(getClass(), "Registering definitions reachable from `%s`.", method);
       }
-      code.registerReachableDefinitions(registry);
+      getCode().registerReachableDefinitions(registry);
     }
   }
 
@@ -61,11 +61,6 @@ public class DexField extends Descriptor<DexEncodedField, DexField> implements
     return mapping.getOffsetFor(this);
   }
 
-  @Override
-  public int compareTo(DexField other) {
-    return sortedCompareTo(other.getSortedIndex());
-  }
-
   @Override
   public int slowCompareTo(DexField other) {
     int result = clazz.slowCompareTo(other.clazz);
@@ -93,16 +88,16 @@ public class DexField extends Descriptor<DexEncodedField, DexField> implements
   }
 
   @Override
-  public int layeredCompareTo(DexField other, NamingLens namingLens) {
-    int result = clazz.compareTo(other.clazz);
+  public int layeredCompareTo(DexField other, NamingLens namingLens, SortedIndices indices) {
+    int result = indices.compare(clazz, other.clazz);
     if (result != 0) {
       return result;
     }
-    result = namingLens.lookupName(this).compareTo(namingLens.lookupName(other));
+    result = indices.compare(namingLens.lookupName(this), namingLens.lookupName(other));
     if (result != 0) {
       return result;
     }
-    return type.compareTo(other.type);
+    return indices.compare(type, other.type);
   }
 
   @Override
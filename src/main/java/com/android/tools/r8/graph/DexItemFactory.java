@@ -15,21 +15,23 @@ import com.android.tools.r8.graph.DexDebugEvent.SetFile;
 import com.android.tools.r8.graph.DexDebugEvent.SetPrologueEnd;
 import com.android.tools.r8.graph.DexMethodHandle.MethodHandleType;
 import com.android.tools.r8.naming.NamingLens;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class DexItemFactory {
 
-  private final ConcurrentHashMap<DexString, DexString> strings = new ConcurrentHashMap<>();
+  private final DexStringTable strings = new DexStringTable();
   private final ConcurrentHashMap<DexString, DexType> types = new ConcurrentHashMap<>();
   private final ConcurrentHashMap<DexField, DexField> fields = new ConcurrentHashMap<>();
   private final ConcurrentHashMap<DexProto, DexProto> protos = new ConcurrentHashMap<>();
@@ -38,17 +40,19 @@ public class DexItemFactory {
   private final ConcurrentHashMap<DexMethodHandle, DexMethodHandle> methodHandles =
       new ConcurrentHashMap<>();
 
-  // DexDebugEvent Canonicalization.
-  private final Int2ObjectMap<AdvanceLine> advanceLines = new Int2ObjectOpenHashMap<>();
-  private final Int2ObjectMap<AdvancePC> advancePCs = new Int2ObjectOpenHashMap<>();
-  private final Int2ObjectMap<Default> defaults = new Int2ObjectOpenHashMap<>();
-  private final Int2ObjectMap<EndLocal> endLocals = new Int2ObjectOpenHashMap<>();
-  private final Int2ObjectMap<RestartLocal> restartLocals = new Int2ObjectOpenHashMap<>();
+  // DexDebugEvent Canonicalization. The events are created concurrently when reading the debug
+  // info of methods on several threads.
+  private final DexDebugEventTable<AdvanceLine> advanceLines =
+      new DexDebugEventTable<>(AdvanceLine::new);
+  private final DexDebugEventTable<AdvancePC> advancePCs =
+      new DexDebugEventTable<>(AdvancePC::new);
+  private final DexDebugEventTable<Default> defaults = new DexDebugEventTable<>(Default::new);
+  private final DexDebugEventTable<EndLocal> endLocals = new DexDebugEventTable<>(EndLocal::new);
+  private final DexDebugEventTable<RestartLocal> restartLocals =
+      new DexDebugEventTable<>(RestartLocal::new);
   private final SetEpilogueBegin setEpilogueBegin = new SetEpilogueBegin();
   private final SetPrologueEnd setPrologueEnd = new SetPrologueEnd();
-  private final Map<DexString, SetFile> setFiles = new HashMap<>();
-
-  boolean sorted = false;
+  private final Map<DexString, SetFile> setFiles = new ConcurrentHashMap<>();
 
   public static final DexType catchAllType = new DexType(new DexString("CATCH_ALL"));
   private static final Set<DexItem> internalSentinels = ImmutableSet.of(catchAllType);
@@ -162,10 +166,6 @@ public class DexItemFactory {
       "Ldalvik/annotation/SourceDebugExtension;");
   public final DexType annotationThrows = createType("Ldalvik/annotation/Throws;");
 
-  public void clearSubtypeInformation() {
-    types.values().forEach(DexType::clearSubtypeInformation);
-  }
-
   public class LongMethods {
 
     public final DexMethod compare;
@@ -290,19 +290,25 @@ public class DexItemFactory {
   }
 
   public DexString createString(int size, byte[] content) {
-    assert !sorted;
-    return canonicalize(strings, new DexString(size, content));
+    return strings.lookupOrAdd(new DexString(size, content));
+  }
+
+  /**
+   * Create a string from the MUTF-8 encoded bytes in {@code content[offset..offset + length)},
+   * including the terminating zero byte. The bytes are only copied if the string is new.
+   */
+  public DexString createString(int size, byte[] content, int offset, int length) {
+    return strings.lookupOrAdd(size, content, offset, length);
   }
 
   public DexString createString(String source) {
-    assert !sorted;
-    return canonicalize(strings, new DexString(source));
+    return strings.lookupOrAdd(source);
   }
 
   // Debugging support to extract marking string.
   synchronized public Marker extractMarker() {
     // This is slow but it is not needed for any production code yet.
-    for (DexString dexString : strings.keySet()) {
+    for (DexString dexString : strings.values()) {
       Marker result = Marker.parse(dexString.toString());
       if (result != null) {
         return result;
@@ -311,14 +317,16 @@ public class DexItemFactory {
     return null;
   }
 
-  synchronized public DexType createType(DexString descriptor) {
-    assert !sorted;
+  public DexType createType(DexString descriptor) {
     assert descriptor != null;
     DexType result = types.get(descriptor);
     if (result == null) {
-      result = new DexType(descriptor);
-      assert !internalSentinels.contains(result);
-      types.put(descriptor, result);
+      DexType type = new DexType(descriptor);
+      assert !internalSentinels.contains(type);
+      result = types.putIfAbsent(descriptor, type);
+      if (result == null) {
+        result = type;
+      }
     }
     return result;
   }
@@ -328,7 +336,6 @@ public class DexItemFactory {
   }
 
   public DexField createField(DexType clazz, DexType type, DexString name) {
-    assert !sorted;
     DexField field = new DexField(clazz, type, name);
     return canonicalize(fields, field);
   }
@@ -338,13 +345,11 @@ public class DexItemFactory {
   }
 
   public DexProto createProto(DexString shorty, DexType returnType, DexTypeList parameters) {
-    assert !sorted;
     DexProto proto = new DexProto(shorty, returnType, parameters);
     return canonicalize(protos, proto);
   }
 
   public DexProto createProto(DexString shorty, DexType returnType, DexType[] parameters) {
-    assert !sorted;
     return createProto(shorty, returnType,
         parameters.length == 0 ? DexTypeList.empty() : new DexTypeList(parameters));
   }
@@ -363,7 +368,6 @@ public class DexItemFactory {
   }
 
   public DexMethod createMethod(DexType holder, DexProto proto, DexString name) {
-    assert !sorted;
     DexMethod method = new DexMethod(holder, proto, name);
     return canonicalize(methods, method);
   }
@@ -374,7 +378,6 @@ public class DexItemFactory {
 
   public DexMethodHandle createMethodHandle(
       MethodHandleType type, Descriptor<? extends DexItem, ? extends Descriptor> fieldOrMethod) {
-    assert !sorted;
     DexMethodHandle methodHandle = new DexMethodHandle(type, fieldOrMethod);
     return canonicalize(methodHandles, methodHandle);
   }
@@ -382,7 +385,6 @@ public class DexItemFactory {
   public DexCallSite createCallSite(
       DexString methodName, DexProto methodProto,
       DexMethodHandle bootstrapMethod, List<DexValue> bootstrapArgs) {
-    assert !sorted;
     DexCallSite callSite = new DexCallSite(methodName, methodProto, bootstrapMethod, bootstrapArgs);
     return canonicalize(callSites, callSite);
   }
@@ -390,7 +392,6 @@ public class DexItemFactory {
   public DexMethod createMethod(DexString clazzDescriptor, DexString name,
       DexString returnTypeDescriptor,
       DexString[] parameterDescriptors) {
-    assert !sorted;
     DexType clazz = createType(clazzDescriptor);
     DexType returnType = createType(returnTypeDescriptor);
     DexType[] parameterTypes = new DexType[parameterDescriptors.length];
@@ -402,34 +403,30 @@ public class DexItemFactory {
     return createMethod(clazz, proto, name);
   }
 
+  // Avoids locking in ConcurrentHashMap.computeIfAbsent when the value is already present.
+  private static <K, V> V lookupOrCreate(Map<K, V> map, K key, Function<K, V> factory) {
+    V value = map.get(key);
+    return value != null ? value : map.computeIfAbsent(key, factory);
+  }
+
   public AdvanceLine createAdvanceLine(int delta) {
-    synchronized (advanceLines) {
-      return advanceLines.computeIfAbsent(delta, AdvanceLine::new);
-    }
+    return advanceLines.lookupOrAdd(delta);
   }
 
   public AdvancePC createAdvancePC(int delta) {
-    synchronized (advancePCs) {
-      return advancePCs.computeIfAbsent(delta, AdvancePC::new);
-    }
+    return advancePCs.lookupOrAdd(delta);
   }
 
   public Default createDefault(int value) {
-    synchronized (defaults) {
-      return defaults.computeIfAbsent(value, Default::new);
-    }
+    return defaults.lookupOrAdd(value);
   }
 
   public EndLocal createEndLocal(int registerNum) {
-    synchronized (endLocals) {
-      return endLocals.computeIfAbsent(registerNum, EndLocal::new);
-    }
+    return endLocals.lookupOrAdd(registerNum);
   }
 
   public RestartLocal createRestartLocal(int registerNum) {
-    synchronized (restartLocals) {
-      return restartLocals.computeIfAbsent(registerNum, RestartLocal::new);
-    }
+    return restartLocals.lookupOrAdd(registerNum);
   }
 
   public SetEpilogueBegin createSetEpilogueBegin() {
@@ -441,9 +438,7 @@ public class DexItemFactory {
   }
 
   public SetFile createSetFile(DexString fileName) {
-    synchronized (setFiles) {
-      return setFiles.computeIfAbsent(fileName, SetFile::new);
-    }
+    return lookupOrCreate(setFiles, fileName, SetFile::new);
   }
 
   public boolean isConstructor(DexMethod method) {
@@ -468,37 +463,35 @@ public class DexItemFactory {
     builder.append(first == '[' ? 'L' : first);
   }
 
-  private static <S extends PresortedComparable<S>> void assignSortedIndices(Collection<S> items,
-      NamingLens namingLens) {
-    List<S> sorted = new ArrayList<>(items);
-    sorted.sort((a, b) -> a.layeredCompareTo(b, namingLens));
-    int i = 0;
-    for (S value : sorted) {
-      value.setSortedIndex(i++);
-    }
-  }
-
-  synchronized public void sort(NamingLens namingLens) {
-    assert !sorted;
-    assignSortedIndices(strings.values(), namingLens);
-    assignSortedIndices(types.values(), namingLens);
-    assignSortedIndices(fields.values(), namingLens);
-    assignSortedIndices(protos.values(), namingLens);
-    assignSortedIndices(methods.values(), namingLens);
-    sorted = true;
-  }
-
-  synchronized public void resetSortedIndices() {
-    if (!sorted) {
-      return;
-    }
-    // Only used for asserting that we don't use the sorted index after we build the graph.
-    strings.values().forEach(IndexedDexItem::resetSortedIndex);
-    types.values().forEach(IndexedDexItem::resetSortedIndex);
-    fields.values().forEach(IndexedDexItem::resetSortedIndex);
-    protos.values().forEach(IndexedDexItem::resetSortedIndex);
-    methods.values().forEach(IndexedDexItem::resetSortedIndex);
-    sorted = false;
+  /**
+   * Sorts all items created by this factory, and returns their indices.
+   */
+  synchronized public SortedIndices sort(NamingLens namingLens) {
+    return sort(namingLens, strings.values(), types.values(), fields.values(), protos.values(),
+        methods.values(), MoreExecutors.newDirectExecutorService());
+  }
+
+  /**
+   * Sorts the given items only, and returns their indices. Other items cannot be compared using
+   * the returned indices.
+   *
+   * <p>The items are compared using the indices of their parts, so strings and types are sorted
+   * first. Fields do not depend on protos and methods, and are sorted in parallel with them.
+   */
+  public SortedIndices sort(NamingLens namingLens, Collection<DexString> strings,
+      Collection<DexType> types, Collection<DexField> fields, Collection<DexProto> protos,
+      Collection<DexMethod> methods, ExecutorService executorService) {
+    SortedIndices indices = new SortedIndices();
+    indices.sortStrings(strings, namingLens, executorService);
+    indices.sortTypes(types, namingLens, executorService);
+    ThreadUtils.runAll(ImmutableList.<Runnable>of(
+        () -> indices.sortFields(fields, namingLens, executorService),
+        () -> {
+          indices.sortProtos(protos, namingLens, executorService);
+          indices.sortMethods(methods, namingLens, executorService);
+        }),
+        executorService);
+    return indices;
   }
 
   synchronized public void forAllTypes(Consumer<DexType> f) {
@@ -14,9 +14,6 @@ public class DexMethod extends Descriptor<DexEncodedMethod, DexMethod>
   public final DexProto proto;
   public final DexString name;
 
-  // Caches used during processing.
-  private DexEncodedMethod singleTargetCache;
-
   DexMethod(DexType holder, DexProto proto, DexString name) {
     this.holder = holder;
     this.proto = proto;
@@ -66,11 +63,6 @@ public class DexMethod extends Descriptor<DexEncodedMethod, DexMethod>
     return false;
   }
 
-  @Override
-  public int compareTo(DexMethod other) {
-    return sortedCompareTo(other.getSortedIndex());
-  }
-
   @Override
   public int slowCompareTo(DexMethod other) {
     int result = holder.slowCompareTo(other.holder);
@@ -98,16 +90,16 @@ public class DexMethod extends Descriptor<DexEncodedMethod, DexMethod>
   }
 
   @Override
-  public int layeredCompareTo(DexMethod other, NamingLens namingLens) {
-    int result = holder.compareTo(other.holder);
+  public int layeredCompareTo(DexMethod other, NamingLens namingLens, SortedIndices indices) {
+    int result = indices.compare(holder, other.holder);
     if (result != 0) {
       return result;
     }
-    result = namingLens.lookupName(this).compareTo(namingLens.lookupName(other));
+    result = indices.compare(namingLens.lookupName(this), namingLens.lookupName(other));
     if (result != 0) {
       return result;
     }
-    return proto.compareTo(other.proto);
+    return indices.compare(proto, other.proto);
   }
 
   @Override
@@ -145,17 +137,4 @@ public class DexMethod extends Descriptor<DexEncodedMethod, DexMethod>
     builder.append(")");
     return builder.toString();
   }
-
-  synchronized public void setSingleVirtualMethodCache(DexEncodedMethod method) {
-    singleTargetCache = method == null ? DexEncodedMethod.SENTINEL : method;
-  }
-
-  synchronized public boolean isSingleVirtualMethodCached() {
-    return singleTargetCache != null;
-  }
-
-  synchronized public DexEncodedMethod getSingleVirtualMethodCache() {
-    assert isSingleVirtualMethodCached();
-    return singleTargetCache == DexEncodedMethod.SENTINEL ? null : singleTargetCache;
-  }
 }
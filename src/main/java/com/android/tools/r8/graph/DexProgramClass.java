@@ -57,7 +57,7 @@ public class DexProgramClass extends DexClass implements Supplier<DexProgramClas
   @Override
   void collectMixedSectionItems(MixedSectionCollection mixedItems) {
     if (hasAnnotations()) {
-      mixedItems.setAnnotationsDirectoryForClass(this, new DexAnnotationDirectory(this));
+      mixedItems.setAnnotationsDirectoryForClass(this);
     }
   }
 
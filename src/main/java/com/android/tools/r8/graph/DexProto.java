@@ -52,11 +52,6 @@ public class DexProto extends IndexedDexItem implements PresortedComparable<DexP
     return mapping.getOffsetFor(this);
   }
 
-  @Override
-  public int compareTo(DexProto other) {
-    return sortedCompareTo(other.getSortedIndex());
-  }
-
   @Override
   public int slowCompareTo(DexProto other) {
     int result = returnType.slowCompareTo(other.returnType);
@@ -76,10 +71,10 @@ public class DexProto extends IndexedDexItem implements PresortedComparable<DexP
   }
 
   @Override
-  public int layeredCompareTo(DexProto other, NamingLens namingLens) {
-    int result = returnType.compareTo(other.returnType);
+  public int layeredCompareTo(DexProto other, NamingLens namingLens, SortedIndices indices) {
+    int result = indices.compare(returnType, other.returnType);
     if (result == 0) {
-      result = parameters.compareTo(other.parameters);
+      result = indices.compare(parameters, other.parameters);
     }
     return result;
   }
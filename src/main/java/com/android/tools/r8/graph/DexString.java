@@ -136,11 +136,6 @@ public class DexString extends IndexedDexItem implements PresortedComparable<Dex
     return mapping.getOffsetFor(this);
   }
 
-  @Override
-  public int compareTo(DexString other) {
-    return sortedCompareTo(other.getSortedIndex());
-  }
-
   @Override
   public int slowCompareTo(DexString other) {
     // Compare the bytes, as comparing UTF-8 encoded strings as strings of unsigned bytes gives
@@ -181,7 +176,7 @@ public class DexString extends IndexedDexItem implements PresortedComparable<Dex
   }
 
   @Override
-  public int layeredCompareTo(DexString other, NamingLens lens) {
+  public int layeredCompareTo(DexString other, NamingLens lens, SortedIndices indices) {
     // Strings have no subparts that are already sorted.
     return slowCompareTo(other);
   }
@@ -0,0 +1,234 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Canonicalization table for {@link DexString}s.
+ *
+ * <p>Strings can be looked up directly from a {@link String} or from the MUTF-8 encoded bytes in
+ * a buffer, so no {@link DexString} (and no encoded content) is allocated when the string is
+ * already present. The table is split into shards with a lock each, so that concurrent readers of
+ * different strings rarely contend.
+ *
+ * <p>The hash codes are the same as {@link DexString#hashCode()}.
+ */
+final class DexStringTable {
+
+  private static final int SHARD_BITS = 5;
+  private static final int INITIAL_SHARD_CAPACITY = 256;
+
+  private final Shard[] shards = new Shard[1 << SHARD_BITS];
+
+  DexStringTable() {
+    for (int i = 0; i < shards.length; i++) {
+      shards[i] = new Shard();
+    }
+  }
+
+  private static int mix(int hash) {
+    return hash * 0x9E3779B9;
+  }
+
+  private Shard shardFor(int mixed) {
+    return shards[mixed >>> (Integer.SIZE - SHARD_BITS)];
+  }
+
+  DexString lookupOrAdd(DexString string) {
+    int mixed = mix(string.hashCode());
+    return shardFor(mixed).lookupOrAdd(mixed, string);
+  }
+
+  DexString lookupOrAdd(String string) {
+    int mixed = mix(hash(string));
+    return shardFor(mixed).lookupOrAdd(mixed, string);
+  }
+
+  /**
+   * Look up the string with UTF-16 length {@code size} and the MUTF-8 encoding in
+   * {@code content[offset..offset + length)}, including the terminating zero byte. The content is
+   * only copied if the string is not already present.
+   */
+  DexString lookupOrAdd(int size, byte[] content, int offset, int length) {
+    int mixed = mix(hash(size, content, offset, length));
+    return shardFor(mixed).lookupOrAdd(mixed, size, content, offset, length);
+  }
+
+  int size() {
+    int size = 0;
+    for (Shard shard : shards) {
+      synchronized (shard) {
+        size += shard.size;
+      }
+    }
+    return size;
+  }
+
+  List<DexString> values() {
+    List<DexString> result = new ArrayList<>(size());
+    forEach(result::add);
+    return result;
+  }
+
+  void forEach(Consumer<DexString> consumer) {
+    for (Shard shard : shards) {
+      DexString[] table;
+      synchronized (shard) {
+        table = shard.table;
+      }
+      for (DexString string : table) {
+        if (string != null) {
+          consumer.accept(string);
+        }
+      }
+    }
+  }
+
+  private static int hash(int size, byte[] content, int offset, int length) {
+    int hash = 1;
+    for (int i = offset; i < offset + length; i++) {
+      hash = 31 * hash + content[i];
+    }
+    return size * 7 + hash;
+  }
+
+  // Computes the hash of the MUTF-8 encoding of the string, see DexString.encode.
+  private static int hash(String string) {
+    int hash = 1;
+    for (int i = 0; i < string.length(); i++) {
+      char ch = string.charAt(i);
+      if (ch != 0 && ch <= 127) {
+        hash = 31 * hash + (byte) ch;
+      } else if (ch <= 2047) {
+        hash = 31 * hash + (byte) (0xc0 | (0x1f & (ch >> 6)));
+        hash = 31 * hash + (byte) (0x80 | (0x3f & ch));
+      } else {
+        hash = 31 * hash + (byte) (0xe0 | (0x0f & (ch >> 12)));
+        hash = 31 * hash + (byte) (0x80 | (0x3f & (ch >> 6)));
+        hash = 31 * hash + (byte) (0x80 | (0x3f & ch));
+      }
+    }
+    // The terminating zero.
+    hash = 31 * hash;
+    return string.length() * 7 + hash;
+  }
+
+  private static boolean matches(DexString candidate, String string) {
+    if (candidate.size != string.length()) {
+      return false;
+    }
+    byte[] content = candidate.content;
+    int p = 0;
+    for (int i = 0; i < string.length(); i++) {
+      char ch = string.charAt(i);
+      if (ch != 0 && ch <= 127) {
+        if (p + 1 > content.length || content[p++] != (byte) ch) {
+          return false;
+        }
+      } else if (ch <= 2047) {
+        if (p + 2 > content.length
+            || content[p++] != (byte) (0xc0 | (0x1f & (ch >> 6)))
+            || content[p++] != (byte) (0x80 | (0x3f & ch))) {
+          return false;
+        }
+      } else {
+        if (p + 3 > content.length
+            || content[p++] != (byte) (0xe0 | (0x0f & (ch >> 12)))
+            || content[p++] != (byte) (0x80 | (0x3f & (ch >> 6)))
+            || content[p++] != (byte) (0x80 | (0x3f & ch))) {
+          return false;
+        }
+      }
+    }
+    return p == content.length - 1 && content[p] == 0;
+  }
+
+  private static boolean matches(
+      DexString candidate, int size, byte[] content, int offset, int length) {
+    if (candidate.size != size || candidate.content.length != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (candidate.content[i] != content[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Open addressing hash table with linear probing, indexed by the low bits of the mixed hash.
+  private static final class Shard {
+
+    private DexString[] table = new DexString[INITIAL_SHARD_CAPACITY];
+    private int size = 0;
+
+    synchronized DexString lookupOrAdd(int mixed, DexString string) {
+      int mask = table.length - 1;
+      for (int i = mixed & mask; ; i = (i + 1) & mask) {
+        DexString candidate = table[i];
+        if (candidate == null) {
+          return add(i, string);
+        }
+        if (candidate.equals(string)) {
+          return candidate;
+        }
+      }
+    }
+
+    synchronized DexString lookupOrAdd(int mixed, String string) {
+      int mask = table.length - 1;
+      for (int i = mixed & mask; ; i = (i + 1) & mask) {
+        DexString candidate = table[i];
+        if (candidate == null) {
+          return add(i, new DexString(string));
+        }
+        if (matches(candidate, string)) {
+          return candidate;
+        }
+      }
+    }
+
+    synchronized DexString lookupOrAdd(
+        int mixed, int size, byte[] content, int offset, int length) {
+      int mask = table.length - 1;
+      for (int i = mixed & mask; ; i = (i + 1) & mask) {
+        DexString candidate = table[i];
+        if (candidate == null) {
+          byte[] copy = new byte[length];
+          System.arraycopy(content, offset, copy, 0, length);
+          return add(i, new DexString(size, copy));
+        }
+        if (matches(candidate, size, content, offset, length)) {
+          return candidate;
+        }
+      }
+    }
+
+    private DexString add(int index, DexString string) {
+      table[index] = string;
+      if (++size * 2 > table.length) {
+        grow();
+      }
+      return string;
+    }
+
+    private void grow() {
+      DexString[] newTable = new DexString[table.length * 2];
+      int mask = newTable.length - 1;
+      for (DexString string : table) {
+        if (string != null) {
+          int i = mix(string.hashCode()) & mask;
+          while (newTable[i] != null) {
+            i = (i + 1) & mask;
+          }
+          newTable[i] = string;
+        }
+      }
+      table = newTable;
+    }
+  }
+}
@@ -46,7 +46,7 @@ public abstract class DexValue extends DexItem {
     assert false;
   }
 
-  public abstract void sort();
+  public abstract void sort(SortedIndices indices);
 
   public abstract void writeTo(DexOutputBuffer dest, ObjectToOffsetMapping mapping);
 
@@ -116,7 +116,7 @@ public abstract class DexValue extends DexItem {
     }
 
     @Override
-    public void sort() {
+    public void sort(SortedIndices indices) {
       // Intentionally empty
     }
 
@@ -475,7 +475,7 @@ public abstract class DexValue extends DexItem {
     }
 
     @Override
-    public void sort() {
+    public void sort(SortedIndices indices) {
       // Intentionally empty.
     }
 
@@ -626,9 +626,9 @@ public abstract class DexValue extends DexItem {
     }
 
     @Override
-    public void sort() {
+    public void sort(SortedIndices indices) {
       for (DexValue value : values) {
-        value.sort();
+        value.sort(indices);
       }
     }
 
@@ -675,8 +675,8 @@ public abstract class DexValue extends DexItem {
     }
 
     @Override
-    public void sort() {
-      value.sort();
+    public void sort(SortedIndices indices) {
+      value.sort(indices);
     }
 
     @Override
@@ -0,0 +1,100 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import com.android.tools.r8.dex.IndexedItemCollection;
+import com.android.tools.r8.dex.MixedSectionCollection;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.naming.ClassNameMapper;
+import com.android.tools.r8.utils.InternalOptions;
+import java.util.function.Supplier;
+
+/**
+ * Code item of a dex file input that has not been decoded yet.
+ *
+ * <p>The code item is decoded the first time the code of the method is requested, so the code of
+ * methods that are never looked at, e.g., methods removed by tree shaking, is never decoded.
+ * {@link DexEncodedMethod#getCode()} replaces the lazy code with the decoded {@link DexCode}, so
+ * instances of this class are not seen outside of {@link DexEncodedMethod}.
+ */
+public class LazyDexCode extends Code {
+
+  private Supplier<DexCode> decoder;
+  private volatile DexCode code = null;
+
+  public LazyDexCode(Supplier<DexCode> decoder) {
+    this.decoder = decoder;
+  }
+
+  public DexCode decode() {
+    DexCode result = code;
+    if (result == null) {
+      synchronized (this) {
+        result = code;
+        if (result == null) {
+          result = decoder.get();
+          code = result;
+          decoder = null;
+        }
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public IRCode buildIR(DexEncodedMethod encodedMethod, InternalOptions options) {
+    return decode().buildIR(encodedMethod, options);
+  }
+
+  @Override
+  public void registerReachableDefinitions(UseRegistry registry) {
+    decode().registerReachableDefinitions(registry);
+  }
+
+  @Override
+  public String toString() {
+    return decode().toString();
+  }
+
+  @Override
+  public String toString(DexEncodedMethod method, ClassNameMapper naming) {
+    return decode().toString(method, naming);
+  }
+
+  @Override
+  public boolean isDexCode() {
+    return true;
+  }
+
+  @Override
+  public int estimatedSizeForInlining() {
+    return decode().estimatedSizeForInlining();
+  }
+
+  @Override
+  public DexCode asDexCode() {
+    return decode();
+  }
+
+  @Override
+  protected int computeHashCode() {
+    return decode().hashCode();
+  }
+
+  @Override
+  protected boolean computeEquals(Object other) {
+    // Equal to the same code whether it is decoded or not, as DexCode is.
+    return decode().equals(other);
+  }
+
+  @Override
+  void collectIndexedItems(IndexedItemCollection collection) {
+    decode().collectIndexedItems(collection);
+  }
+
+  @Override
+  void collectMixedSectionItems(MixedSectionCollection collection) {
+    decode().collectMixedSectionItems(collection);
+  }
+}
@@ -5,13 +5,24 @@ package com.android.tools.r8.graph;
 
 import com.android.tools.r8.dex.Constants;
 import com.google.common.collect.Sets;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Set;
 
+/**
+ * The indices of the items written to one output file.
+ *
+ * <p>The indices are kept here instead of on the items, as the items may be written to several
+ * files, and may be shared by compilations running at the same time.
+ */
 public class ObjectToOffsetMapping {
 
-  private final int virtualFileId;
+  private static final int NOT_MAPPED = -1;
+
+  private final SortedIndices sortedIndices;
+  private final Reference2IntMap<IndexedDexItem> offsets;
 
   private final DexProgramClass[] classes;
   private final DexProto[] protos;
@@ -24,7 +35,7 @@ public class ObjectToOffsetMapping {
   private DexString firstJumboString;
 
   public ObjectToOffsetMapping(
-      int virtualFileId,
+      SortedIndices sortedIndices,
       DexApplication application,
       DexProgramClass[] classes,
       DexProto[] protos,
@@ -34,6 +45,7 @@ public class ObjectToOffsetMapping {
       DexString[] strings,
       DexCallSite[] callSites,
       DexMethodHandle[] methodHandles) {
+    assert sortedIndices != null;
     assert application != null;
     assert classes != null;
     assert protos != null;
@@ -44,7 +56,10 @@ public class ObjectToOffsetMapping {
     assert callSites != null;
     assert methodHandles != null;
 
-    this.virtualFileId = virtualFileId;
+    this.sortedIndices = sortedIndices;
+    this.offsets = new Reference2IntOpenHashMap<>(protos.length + types.length + methods.length
+        + fields.length + strings.length + callSites.length + methodHandles.length);
+    this.offsets.defaultReturnValue(NOT_MAPPED);
     this.classes = sortClasses(application, classes);
     this.protos = protos;
     this.types = types;
@@ -54,19 +69,19 @@ public class ObjectToOffsetMapping {
     this.callSites = callSites;
     this.methodHandles = methodHandles;
 
-    Arrays.sort(protos);
+    Arrays.sort(protos, sortedIndices::compare);
     setIndexes(protos);
 
-    Arrays.sort(types);
+    Arrays.sort(types, sortedIndices::compare);
     setIndexes(types);
 
-    Arrays.sort(methods);
+    Arrays.sort(methods, sortedIndices::compare);
     setIndexes(methods);
 
-    Arrays.sort(fields);
+    Arrays.sort(fields, sortedIndices::compare);
     setIndexes(fields);
 
-    Arrays.sort(strings);
+    Arrays.sort(strings, sortedIndices::compare);
     setIndexes(strings);
 
     // No need to sort CallSite, they will be written in data section in the callSites order,
@@ -88,7 +103,7 @@ public class ObjectToOffsetMapping {
   private void setIndexes(IndexedDexItem[] items) {
     int index = 0;
     for (IndexedDexItem item : items) {
-      item.assignVirtualFileIndex(virtualFileId, index);
+      offsets.put(item, index);
       // For strings collect the first jumbo string (if any).
       if ((index > Constants.MAX_NON_JUMBO_INDEX) && (item instanceof DexString)) {
         if (index == Constants.FIRST_JUMBO_INDEX) {
@@ -99,6 +114,10 @@ public class ObjectToOffsetMapping {
     }
   }
 
+  public SortedIndices getSortedIndices() {
+    return sortedIndices;
+  }
+
   public DexMethod[] getMethods() {
     return methods;
   }
@@ -139,43 +158,38 @@ public class ObjectToOffsetMapping {
     return firstJumboString;
   }
 
-  private boolean isContainedInMapping(IndexedDexItem item) {
-    return item.getVirtualFileIndex(virtualFileId) != IndexedDexItem.UNASSOCIATED_VALUE;
+  private int getOffset(IndexedDexItem item) {
+    int offset = offsets.getInt(item);
+    assert offset != NOT_MAPPED : "Missing dependency: " + item;
+    return offset;
   }
 
   public int getOffsetFor(DexProto proto) {
-    assert isContainedInMapping(proto) : "Missing dependency: " + proto;
-    return proto.getVirtualFileIndex(virtualFileId);
+    return getOffset(proto);
   }
 
   public int getOffsetFor(DexField field) {
-    assert isContainedInMapping(field) : "Missing dependency: " + field;
-    return field.getVirtualFileIndex(virtualFileId);
+    return getOffset(field);
   }
 
   public int getOffsetFor(DexMethod method) {
-    assert isContainedInMapping(method) : "Missing dependency: " + method;
-    return method.getVirtualFileIndex(virtualFileId);
+    return getOffset(method);
   }
 
   public int getOffsetFor(DexString string) {
-    assert isContainedInMapping(string) : "Missing dependency: " + string;
-    return string.getVirtualFileIndex(virtualFileId);
+    return getOffset(string);
   }
 
   public int getOffsetFor(DexType type) {
-    assert isContainedInMapping(type) : "Missing dependency: " + type;
-    return type.getVirtualFileIndex(virtualFileId);
+    return getOffset(type);
   }
 
   public int getOffsetFor(DexCallSite callSite) {
-    assert isContainedInMapping(callSite) : "Missing dependency: " + callSite;
-    return callSite.getVirtualFileIndex(virtualFileId);
+    return getOffset(callSite);
   }
 
   public int getOffsetFor(DexMethodHandle methodHandle) {
-    assert isContainedInMapping(methodHandle) : "Missing dependency: " + methodHandle;
-    return methodHandle.getVirtualFileIndex(virtualFileId);
+    return getOffset(methodHandle);
   }
 
   private static class SortingProgramClassVisitor extends ProgramClassVisitor {
@@ -5,14 +5,14 @@ package com.android.tools.r8.graph;
 
 import com.android.tools.r8.naming.NamingLens;
 
-public interface PresortedComparable<T> extends Presorted, Comparable<T> {
+public interface PresortedComparable<T> {
   // Slow comparison methods that make no use of indices for comparisons. These are used
   // for sorting operations when reading dex files.
   int slowCompareTo(T other);
   int slowCompareTo(T other, NamingLens namingLens);
   // Layered comparison methods that make use of indices for subpart comparisons. These rely
   // on subparts already being sorted and having indices assigned.
-  int layeredCompareTo(T other, NamingLens namingLens);
+  int layeredCompareTo(T other, NamingLens namingLens, SortedIndices indices);
 
   static <T extends PresortedComparable<T>> int slowCompare(T a, T b) {
     return a.slowCompareTo(b);
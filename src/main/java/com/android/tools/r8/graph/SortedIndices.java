@@ -0,0 +1,202 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import com.android.tools.r8.errors.InternalCompilerError;
+import com.android.tools.r8.naming.NamingLens;
+import com.android.tools.r8.utils.ThreadUtils;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The sorted indices of the strings, types, fields, protos and methods written by one compilation.
+ *
+ * <p>The items are canonicalized by their {@link DexItemFactory}, which may be shared by several
+ * compilations running at the same time, so the indices are kept here instead of on the items.
+ * Comparing an item that has no index is an internal error.
+ */
+public class SortedIndices {
+
+  private static final int UNKNOWN = -1;
+  // The number of items sorted by one task.
+  private static final int ITEMS_PER_TASK = 8192;
+
+  // One map per kind of item, so that the fields can be sorted while the methods are.
+  private Reference2IntMap<DexString> strings = newMap(0);
+  private Reference2IntMap<DexType> types = newMap(0);
+  private Reference2IntMap<DexField> fields = newMap(0);
+  private Reference2IntMap<DexProto> protos = newMap(0);
+  private Reference2IntMap<DexMethod> methods = newMap(0);
+
+  SortedIndices() {
+  }
+
+  private static <T> Reference2IntMap<T> newMap(int size) {
+    Reference2IntMap<T> map = new Reference2IntOpenHashMap<>(size);
+    map.defaultReturnValue(UNKNOWN);
+    return map;
+  }
+
+  /**
+   * Sorts the items in runs of {@link #ITEMS_PER_TASK} items, and then merges the runs pairwise
+   * until one run is left. The runs of each round are sorted or merged in parallel.
+   */
+  private static <T> void sort(T[] items, Comparator<T> comparator,
+      ExecutorService executorService) {
+    if (items.length <= ITEMS_PER_TASK) {
+      Arrays.sort(items, comparator);
+      return;
+    }
+    List<Runnable> tasks = new ArrayList<>();
+    for (int start = 0; start < items.length; start += ITEMS_PER_TASK) {
+      int from = start;
+      int to = Math.min(items.length, start + ITEMS_PER_TASK);
+      tasks.add(() -> Arrays.sort(items, from, to, comparator));
+    }
+    ThreadUtils.runAll(tasks, executorService);
+    T[] source = items;
+    T[] target = Arrays.copyOf(items, items.length);
+    for (int width = ITEMS_PER_TASK; width < items.length; width *= 2) {
+      tasks.clear();
+      for (int start = 0; start < items.length; start += 2 * width) {
+        T[] from = source;
+        T[] to = target;
+        int begin = start;
+        int middle = Math.min(items.length, start + width);
+        int end = Math.min(items.length, start + 2 * width);
+        tasks.add(() -> merge(from, to, begin, middle, end, comparator));
+      }
+      ThreadUtils.runAll(tasks, executorService);
+      T[] merged = target;
+      target = source;
+      source = merged;
+    }
+    if (source != items) {
+      System.arraycopy(source, 0, items, 0, items.length);
+    }
+  }
+
+  private static <T> void merge(T[] source, T[] target, int begin, int middle, int end,
+      Comparator<T> comparator) {
+    int left = begin;
+    int right = middle;
+    for (int i = begin; i < end; i++) {
+      if (right == end || (left < middle && comparator.compare(source[left], source[right]) <= 0)) {
+        target[i] = source[left++];
+      } else {
+        target[i] = source[right++];
+      }
+    }
+  }
+
+  private <S extends PresortedComparable<S>> Reference2IntMap<S> sort(S[] items,
+      NamingLens namingLens, ExecutorService executorService) {
+    sort(items, (a, b) -> a.layeredCompareTo(b, namingLens, this), executorService);
+    Reference2IntMap<S> indices = newMap(items.length);
+    for (int i = 0; i < items.length; i++) {
+      indices.put(items[i], i);
+    }
+    return indices;
+  }
+
+  // The items are compared using the indices of their parts, so strings have to be sorted before
+  // types, and types before fields, protos and methods.
+
+  void sortStrings(Collection<DexString> items, NamingLens namingLens,
+      ExecutorService executorService) {
+    strings = sort(items.toArray(new DexString[items.size()]), namingLens, executorService);
+  }
+
+  void sortTypes(Collection<DexType> items, NamingLens namingLens,
+      ExecutorService executorService) {
+    types = sort(items.toArray(new DexType[items.size()]), namingLens, executorService);
+  }
+
+  void sortFields(Collection<DexField> items, NamingLens namingLens,
+      ExecutorService executorService) {
+    fields = sort(items.toArray(new DexField[items.size()]), namingLens, executorService);
+  }
+
+  void sortProtos(Collection<DexProto> items, NamingLens namingLens,
+      ExecutorService executorService) {
+    protos = sort(items.toArray(new DexProto[items.size()]), namingLens, executorService);
+  }
+
+  void sortMethods(Collection<DexMethod> items, NamingLens namingLens,
+      ExecutorService executorService) {
+    methods = sort(items.toArray(new DexMethod[items.size()]), namingLens, executorService);
+  }
+
+  private static <T> int getIndex(Reference2IntMap<T> indices, T item) {
+    int index = indices.getInt(item);
+    if (index == UNKNOWN) {
+      throw new InternalCompilerError("No sorted index for " + item);
+    }
+    return index;
+  }
+
+  public int getIndex(DexString string) {
+    return getIndex(strings, string);
+  }
+
+  public int getIndex(DexType type) {
+    return getIndex(types, type);
+  }
+
+  public int getIndex(DexField field) {
+    return getIndex(fields, field);
+  }
+
+  public int getIndex(DexProto proto) {
+    return getIndex(protos, proto);
+  }
+
+  public int getIndex(DexMethod method) {
+    return getIndex(methods, method);
+  }
+
+  public boolean hasIndex(DexString string) {
+    return strings.containsKey(string);
+  }
+
+  public boolean hasIndex(DexType type) {
+    return types.containsKey(type);
+  }
+
+  public int compare(DexString a, DexString b) {
+    return Integer.compare(getIndex(a), getIndex(b));
+  }
+
+  public int compare(DexType a, DexType b) {
+    return Integer.compare(getIndex(a), getIndex(b));
+  }
+
+  public int compare(DexField a, DexField b) {
+    return Integer.compare(getIndex(a), getIndex(b));
+  }
+
+  public int compare(DexProto a, DexProto b) {
+    return Integer.compare(getIndex(a), getIndex(b));
+  }
+
+  public int compare(DexMethod a, DexMethod b) {
+    return Integer.compare(getIndex(a), getIndex(b));
+  }
+
+  public int compare(DexTypeList a, DexTypeList b) {
+    for (int i = 0; i < Math.min(a.values.length, b.values.length); i++) {
+      int result = compare(a.values[i], b.values[i]);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return Integer.compare(a.values.length, b.values.length);
+  }
+}
@@ -0,0 +1,373 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The subtypes of each type of an application, as ranges of a numbering of the types.
+ *
+ * <p>The types are numbered in pre-order of the trees of super classes, so the subclasses of a type
+ * are numbered from the number of the type to the last number of its subtree. The subtypes of an
+ * interface, or of a class with subclasses implementing interfaces, are a sorted list of such
+ * ranges. This makes checking for a subtype constant time for classes and a binary search for
+ * interfaces. Types are visited sorted by descriptor, so the numbering, and thus the iteration
+ * order of {@link #subtypes}, is the same for the same classes.
+ *
+ * <p>The subtypes of a type are the defined classes reaching the type through the super classes
+ * and interfaces of defined classes. A class with a missing super class is thus not a subtype of
+ * the supertypes of the missing class.
+ *
+ * <p>The index is not changed after construction, so it can be read from several threads without
+ * locking.
+ */
+public class SubtypeIndex {
+
+  private static final int NOT_VISITED = 0;
+  private static final int VISITING = 1;
+  private static final int VISITED = 2;
+
+  // Map from types to their numbers.
+  private final Reference2IntMap<DexType> numbers;
+  // Map from numbers to types.
+  private final DexType[] types;
+  // The last number of the tree of subclasses of each type.
+  private final int[] last;
+  // The subtypes of each type including the type itself, as sorted pairs of first and last number,
+  // or null if they are just the tree of subclasses.
+  private final int[][] ranges;
+  // The number of defined classes numbered before each number.
+  private final int[] definedBefore;
+
+  public SubtypeIndex(Map<DexType, DexClass> classes) {
+    // Visit the classes sorted by type, so that the numbering and the order of subtypes do not
+    // depend on the iteration order of the map.
+    DexClass[] sortedClasses = classes.values().toArray(new DexClass[classes.size()]);
+    Arrays.sort(sortedClasses, (a, b) -> a.type.slowCompareTo(b.type));
+    // Assign temporary ids to all types in the order they are found.
+    Reference2IntMap<DexType> ids = new Reference2IntOpenHashMap<>(classes.size());
+    ids.defaultReturnValue(-1);
+    for (DexClass clazz : sortedClasses) {
+      addId(ids, clazz.type);
+    }
+    for (DexClass clazz : sortedClasses) {
+      addId(ids, clazz.superType);
+      for (DexType type : clazz.interfaces.values) {
+        addId(ids, type);
+      }
+    }
+    int size = ids.size();
+    DexType[] typesById = new DexType[size];
+    for (Reference2IntMap.Entry<DexType> entry : ids.reference2IntEntrySet()) {
+      typesById[entry.getIntValue()] = entry.getKey();
+    }
+
+    // The direct subclasses and implementers of each id, as offsets into arrays of ids.
+    int[] superIds = new int[size];
+    Arrays.fill(superIds, -1);
+    int[] subclassOffsets = new int[size + 1];
+    int[] implementerOffsets = new int[size + 1];
+    for (DexClass clazz : sortedClasses) {
+      if (clazz.superType != null) {
+        int superId = ids.getInt(clazz.superType);
+        superIds[ids.getInt(clazz.type)] = superId;
+        subclassOffsets[superId + 1]++;
+      }
+      for (DexType type : clazz.interfaces.values) {
+        implementerOffsets[ids.getInt(type) + 1]++;
+      }
+    }
+    for (int id = 0; id < size; id++) {
+      subclassOffsets[id + 1] += subclassOffsets[id];
+      implementerOffsets[id + 1] += implementerOffsets[id];
+    }
+    int[] subclasses = new int[subclassOffsets[size]];
+    int[] implementers = new int[implementerOffsets[size]];
+    int[] subclassCursors = Arrays.copyOf(subclassOffsets, size);
+    int[] implementerCursors = Arrays.copyOf(implementerOffsets, size);
+    for (DexClass clazz : sortedClasses) {
+      int id = ids.getInt(clazz.type);
+      if (superIds[id] != -1) {
+        subclasses[subclassCursors[superIds[id]]++] = id;
+      }
+      for (DexType type : clazz.interfaces.values) {
+        implementers[implementerCursors[ids.getInt(type)]++] = id;
+      }
+    }
+
+    // Number the types in pre-order of the trees of subclasses. Types in a cycle of super classes
+    // are not reachable from a root, so they are numbered after all trees.
+    numbers = new Reference2IntOpenHashMap<>(size);
+    numbers.defaultReturnValue(-1);
+    types = new DexType[size];
+    last = new int[size];
+    int[] numberById = new int[size];
+    Arrays.fill(numberById, -1);
+    int[] stack = new int[size];
+    int[] cursors = new int[size];
+    int next = 0;
+    for (int pass = 0; pass < 2; pass++) {
+      for (int root = 0; root < size; root++) {
+        if (numberById[root] != -1 || (pass == 0 && superIds[root] != -1)) {
+          continue;
+        }
+        int top = 0;
+        stack[top] = root;
+        cursors[top] = subclassOffsets[root];
+        number(typesById[root], root, next++, numberById);
+        while (top >= 0) {
+          int id = stack[top];
+          if (cursors[top] < subclassOffsets[id + 1]) {
+            int subclass = subclasses[cursors[top]++];
+            if (numberById[subclass] == -1) {
+              number(typesById[subclass], subclass, next++, numberById);
+              top++;
+              stack[top] = subclass;
+              cursors[top] = subclassOffsets[subclass];
+            }
+          } else {
+            last[numberById[id]] = next - 1;
+            top--;
+          }
+        }
+      }
+    }
+    assert next == size;
+
+    definedBefore = new int[size + 1];
+    for (int number = 0; number < size; number++) {
+      boolean defined = classes.containsKey(types[number]);
+      definedBefore[number + 1] = definedBefore[number] + (defined ? 1 : 0);
+    }
+
+    // The subtypes of a type are the tree of its subclasses and the subtypes of the implementers
+    // of any of the types in the tree.
+    int[][] implementersByNumber = new int[size][];
+    for (int id = 0; id < size; id++) {
+      int from = implementerOffsets[id];
+      int to = implementerOffsets[id + 1];
+      if (from < to) {
+        int[] numbersOfImplementers = new int[to - from];
+        for (int i = from; i < to; i++) {
+          numbersOfImplementers[i - from] = numberById[implementers[i]];
+        }
+        implementersByNumber[numberById[id]] = numbersOfImplementers;
+      }
+    }
+    ranges = new int[size][];
+    int[] states = new int[size];
+    for (int number = 0; number < size; number++) {
+      computeRanges(number, implementersByNumber, states);
+    }
+  }
+
+  private static void addId(Reference2IntMap<DexType> ids, DexType type) {
+    if (type != null && !ids.containsKey(type)) {
+      ids.put(type, ids.size());
+    }
+  }
+
+  private void number(DexType type, int id, int number, int[] numberById) {
+    numberById[id] = number;
+    types[number] = type;
+    numbers.put(type, number);
+  }
+
+  private int[] computeRanges(int number, int[][] implementersByNumber, int[] states) {
+    if (states[number] == VISITED) {
+      return getRanges(number);
+    }
+    if (states[number] == VISITING) {
+      // Interfaces implementing themselves are not valid, so leave out the rest of the cycle.
+      return new int[] { number, last[number] };
+    }
+    states[number] = VISITING;
+    LongArrayList collected = null;
+    for (int subclass = number; subclass <= last[number]; subclass++) {
+      int[] numbersOfImplementers = implementersByNumber[subclass];
+      if (numbersOfImplementers == null) {
+        continue;
+      }
+      if (collected == null) {
+        collected = new LongArrayList();
+        collected.add(range(number, last[number]));
+      }
+      for (int implementer : numbersOfImplementers) {
+        int[] implementerRanges = computeRanges(implementer, implementersByNumber, states);
+        for (int i = 0; i < implementerRanges.length; i += 2) {
+          collected.add(range(implementerRanges[i], implementerRanges[i + 1]));
+        }
+      }
+    }
+    states[number] = VISITED;
+    if (collected != null) {
+      int[] result = coalesce(collected.toLongArray());
+      // Adjacent ranges are merged, so a single range can be larger than the tree of subclasses.
+      if (result.length > 2 || result[0] != number || result[1] != last[number]) {
+        ranges[number] = result;
+      }
+    }
+    return getRanges(number);
+  }
+
+  private static long range(int first, int last) {
+    return ((long) first << 32) | last;
+  }
+
+  // Sorts the ranges and merges the overlapping and adjacent ones.
+  private static int[] coalesce(long[] collected) {
+    Arrays.sort(collected);
+    int[] result = new int[collected.length * 2];
+    int length = 0;
+    for (long range : collected) {
+      int first = (int) (range >>> 32);
+      int lastOfRange = (int) range;
+      if (length > 0 && first <= result[length - 1] + 1) {
+        result[length - 1] = Math.max(result[length - 1], lastOfRange);
+      } else {
+        result[length++] = first;
+        result[length++] = lastOfRange;
+      }
+    }
+    return Arrays.copyOf(result, length);
+  }
+
+  private int[] getRanges(int number) {
+    int[] result = ranges[number];
+    return result != null ? result : new int[] { number, last[number] };
+  }
+
+  private boolean isDefined(int number) {
+    return definedBefore[number + 1] != definedBefore[number];
+  }
+
+  /**
+   * Returns true if subtype is a defined class, other than type, reaching type through the super
+   * classes and interfaces of defined classes.
+   */
+  public boolean isSubtype(DexType subtype, DexType type) {
+    int number = numbers.getInt(type);
+    int subtypeNumber = numbers.getInt(subtype);
+    if (number == -1 || subtypeNumber == -1 || number == subtypeNumber
+        || !isDefined(subtypeNumber)) {
+      return false;
+    }
+    int[] typeRanges = ranges[number];
+    if (typeRanges == null) {
+      return number < subtypeNumber && subtypeNumber <= last[number];
+    }
+    // Find the last range starting at or before the subtype.
+    int low = 0;
+    int high = typeRanges.length / 2 - 1;
+    while (low < high) {
+      int middle = (low + high + 1) >>> 1;
+      if (typeRanges[middle * 2] <= subtypeNumber) {
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return typeRanges[low * 2] <= subtypeNumber && subtypeNumber <= typeRanges[low * 2 + 1];
+  }
+
+  /**
+   * Returns a view of the subtypes of type, as defined by {@link #isSubtype}.
+   */
+  public Set<DexType> subtypes(DexType type) {
+    return new Subtypes(numbers.getInt(type));
+  }
+
+  private class Subtypes extends AbstractSet<DexType> {
+
+    private final int number;
+
+    Subtypes(int number) {
+      this.number = number;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+      return number != -1
+          && object instanceof DexType
+          && isSubtype((DexType) object, types[number]);
+    }
+
+    @Override
+    public int size() {
+      if (number == -1) {
+        return 0;
+      }
+      int[] typeRanges = getRanges(number);
+      int size = 0;
+      for (int i = 0; i < typeRanges.length; i += 2) {
+        size += definedBefore[typeRanges[i + 1] + 1] - definedBefore[typeRanges[i]];
+      }
+      return isDefined(number) ? size - 1 : size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return size() == 0;
+    }
+
+    @Override
+    public Iterator<DexType> iterator() {
+      return new RangeIterator(number, number == -1 ? new int[0] : getRanges(number));
+    }
+  }
+
+  private class RangeIterator implements Iterator<DexType> {
+
+    private final int excluded;
+    private final int[] ranges;
+    private int range = 0;
+    private int next;
+
+    RangeIterator(int excluded, int[] ranges) {
+      this.excluded = excluded;
+      this.ranges = ranges;
+      next = ranges.length == 0 ? 0 : ranges[0];
+      advance();
+    }
+
+    // Moves next to the first defined subtype at or after it.
+    private void advance() {
+      while (range < ranges.length) {
+        while (next <= ranges[range + 1]) {
+          if (next != excluded && isDefined(next)) {
+            return;
+          }
+          next++;
+        }
+        range += 2;
+        if (range < ranges.length) {
+          next = ranges[range];
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return range < ranges.length;
+    }
+
+    @Override
+    public DexType next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      DexType result = types[next++];
+      advance();
+      return result;
+    }
+  }
+}
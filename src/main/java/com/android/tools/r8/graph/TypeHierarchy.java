@@ -0,0 +1,286 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The direct subtypes and the level in the class hierarchy of the types of one compilation.
+ *
+ * <p>The hierarchy is kept apart from the canonical {@link DexType} objects, so compilations and
+ * app infos sharing a {@link DexItemFactory} each have their own. Types are added while building
+ * the {@link AppInfoWithSubtyping} and when classes are synthesized, which can happen on several
+ * threads.
+ *
+ * <p>The levels of the types added while building are kept unboxed in a map that is only read
+ * once built. Types of synthesized classes are few, and go to a concurrent map on the side.
+ */
+public class TypeHierarchy {
+
+  private static final int ROOT_LEVEL = 0;
+  private static final int UNKNOWN_LEVEL = -1;
+  private static final int INTERFACE_LEVEL = -2;
+
+  // Since most Java types has no sub-types, we can just share an empty immutable set until we need
+  // to add to it.
+  private static final Set<DexType> NO_DIRECT_SUBTYPE = ImmutableSet.of();
+
+  private final DexItemFactory dexItemFactory;
+  // The levels of the types added while building, read without locking once built.
+  private final Reference2IntMap<DexType> levels = new Reference2IntOpenHashMap<>();
+  // The levels of the types added once built.
+  private final Map<DexType, Integer> addedLevels = new ConcurrentHashMap<>();
+  private boolean built = false;
+  private final Map<DexType, Set<DexType>> directSubtypes = new ConcurrentHashMap<>();
+
+  TypeHierarchy(DexItemFactory dexItemFactory) {
+    this.dexItemFactory = dexItemFactory;
+    levels.defaultReturnValue(UNKNOWN_LEVEL);
+    setLevel(dexItemFactory.objectType, ROOT_LEVEL);
+  }
+
+  /**
+   * Marks the end of building. Types added after this, from any thread, are kept on the side.
+   */
+  void finishBuilding() {
+    built = true;
+  }
+
+  private int getLevel(DexType type) {
+    int level = levels.getInt(type);
+    if (level == UNKNOWN_LEVEL && !addedLevels.isEmpty()) {
+      return addedLevels.getOrDefault(type, UNKNOWN_LEVEL);
+    }
+    return level;
+  }
+
+  private void putLevel(DexType type, int level) {
+    if (built) {
+      addedLevels.put(type, level);
+    } else {
+      levels.put(type, level);
+    }
+  }
+
+  private Set<DexType> getDirectSubtypes(DexType type) {
+    return directSubtypes.getOrDefault(type, NO_DIRECT_SUBTYPE);
+  }
+
+  private Set<DexType> ensureDirectSubtypeSet(DexType type) {
+    return directSubtypes.computeIfAbsent(type, ignore -> Sets.newConcurrentHashSet());
+  }
+
+  private void setLevel(DexType type, int level) {
+    int hierarchyLevel = getLevel(type);
+    if (level == hierarchyLevel) {
+      return;
+    }
+    if (hierarchyLevel == INTERFACE_LEVEL) {
+      assert level == ROOT_LEVEL + 1;
+    } else if (level == INTERFACE_LEVEL) {
+      assert hierarchyLevel == ROOT_LEVEL + 1 || hierarchyLevel == UNKNOWN_LEVEL;
+      putLevel(type, INTERFACE_LEVEL);
+    } else {
+      assert hierarchyLevel == UNKNOWN_LEVEL;
+      putLevel(type, level);
+    }
+  }
+
+  void addDirectSubtype(DexType type, DexType subtype) {
+    int hierarchyLevel = getLevel(type);
+    assert hierarchyLevel != UNKNOWN_LEVEL;
+    ensureDirectSubtypeSet(type).add(subtype);
+    setLevel(subtype, hierarchyLevel + 1);
+  }
+
+  void addInterfaceSubtype(DexType type, DexType subtype) {
+    // Interfaces all inherit from java.lang.Object. However, we assign a special level to
+    // identify them later on.
+    setLevel(type, INTERFACE_LEVEL);
+    ensureDirectSubtypeSet(type).add(subtype);
+  }
+
+  public boolean isInterface(DexType type) {
+    assert type.isClassType() && getLevel(type) != UNKNOWN_LEVEL;
+    return getLevel(type) == INTERFACE_LEVEL;
+  }
+
+  public boolean isSubtypeOf(DexType type, DexType other, AppInfo appInfo) {
+    if (type == other) {
+      return true;
+    }
+    // Treat the object class special as it is always the supertype, even in the case of broken
+    // subtype chains.
+    if (type == dexItemFactory.objectType) {
+      return false;
+    }
+    if (other == dexItemFactory.objectType) {
+      return true;
+    }
+    if (getLevel(type) == INTERFACE_LEVEL) {
+      return isInterfaceSubtypeOf(type, other, appInfo);
+    }
+    if (getLevel(other) == INTERFACE_LEVEL) {
+      return getDirectSubtypes(other).stream().anyMatch(subtype -> isSubtypeOf(type, subtype,
+          appInfo));
+    }
+    return isSubtypeOfClass(type, other, appInfo);
+  }
+
+  private boolean isInterfaceSubtypeOf(DexType candidate, DexType other, AppInfo appInfo) {
+    if (candidate == other || other == dexItemFactory.objectType) {
+      return true;
+    }
+    DexClass candidateHolder = appInfo.definitionFor(candidate);
+    if (candidateHolder == null) {
+      return false;
+    }
+    for (DexType iface : candidateHolder.interfaces.values) {
+      assert getLevel(iface) == INTERFACE_LEVEL;
+      if (isInterfaceSubtypeOf(iface, other, appInfo)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isSubtypeOfClass(DexType type, DexType other, AppInfo appInfo) {
+    DexType self = type;
+    int otherLevel = getLevel(other);
+    if (otherLevel == UNKNOWN_LEVEL) {
+      // We have no definition for this class, hence it is not part of the
+      // hierarchy.
+      return false;
+    }
+    while (otherLevel < getLevel(self)) {
+      DexClass holder = appInfo.definitionFor(self);
+      assert holder != null && !holder.isInterface();
+      self = holder.superType;
+    }
+    return self == other;
+  }
+
+  /**
+   * Apply the given function to all classes that directly extend this class.
+   *
+   * If this class is an interface, then this method will visit all sub-interfaces. This deviates
+   * from the dex-file encoding, where subinterfaces "implement" their super interfaces. However,
+   * it is consistent with the source language.
+   */
+  public void forAllExtendsSubtypes(DexType type, Consumer<DexType> f) {
+    int hierarchyLevel = getLevel(type);
+    assert hierarchyLevel != UNKNOWN_LEVEL;
+    if (hierarchyLevel == INTERFACE_LEVEL) {
+      for (DexType subtype : getDirectSubtypes(type)) {
+        // Other interfaces that extend this interface.
+        if (getLevel(subtype) == INTERFACE_LEVEL) {
+          f.accept(subtype);
+        }
+      }
+    } else if (hierarchyLevel == ROOT_LEVEL) {
+      // This is the object type. Filter out interfaces
+      for (DexType subtype : getDirectSubtypes(type)) {
+        // Other interfaces that extend this interface.
+        if (getLevel(subtype) != INTERFACE_LEVEL) {
+          f.accept(subtype);
+        }
+      }
+    } else {
+      getDirectSubtypes(type).forEach(f);
+    }
+  }
+
+  /**
+   * Apply the given function to all classes that directly implement this interface.
+   *
+   * The implementation does not consider how the hierarchy is encoded in the dex file, where
+   * interfaces "implement" their super interfaces. Instead it takes the view of the source
+   * language, where interfaces "extend" their superinterface.
+   */
+  public void forAllImplementsSubtypes(DexType type, Consumer<DexType> f) {
+    if (getLevel(type) != INTERFACE_LEVEL) {
+      return;
+    }
+    for (DexType subtype : getDirectSubtypes(type)) {
+      // Filter out other interfaces.
+      if (getLevel(subtype) != INTERFACE_LEVEL) {
+        f.accept(subtype);
+      }
+    }
+  }
+
+  public void forAllInterfaces(Consumer<DexType> f) {
+    DexType object = dexItemFactory.objectType;
+    assert getLevel(object) == ROOT_LEVEL;
+    for (DexType subtype : getDirectSubtypes(object)) {
+      if (isInterface(subtype)) {
+        f.accept(subtype);
+      }
+    }
+  }
+
+  public DexType getSingleSubtype(DexType type) {
+    assert getLevel(type) != UNKNOWN_LEVEL;
+    Set<DexType> subtypes = getDirectSubtypes(type);
+    if (subtypes.size() == 1) {
+      return Iterables.getFirst(subtypes, null);
+    } else {
+      return null;
+    }
+  }
+
+  public boolean isImmediateSubtypeOf(DexType type, DexType supertype) {
+    assert getLevel(type) != UNKNOWN_LEVEL;
+    return getDirectSubtypes(supertype).contains(type);
+  }
+
+  boolean validateLevelsAreCorrect(Function<DexType, DexClass> definitions) {
+    Set<DexType> seenTypes = Sets.newIdentityHashSet();
+    Deque<DexType> worklist = new ArrayDeque<>();
+    DexType objectType = dexItemFactory.objectType;
+    worklist.add(objectType);
+    while (!worklist.isEmpty()) {
+      DexType next = worklist.pop();
+      DexClass nextHolder = definitions.apply(next);
+      DexType superType;
+      if (nextHolder == null) {
+        // We might lack the definition of Object, so guard against that.
+        superType = next == dexItemFactory.objectType ? null : dexItemFactory.objectType;
+      } else {
+        superType = nextHolder.superType;
+      }
+      assert !seenTypes.contains(next);
+      seenTypes.add(next);
+      if (superType == null) {
+        assert getLevel(next) == ROOT_LEVEL;
+      } else {
+        assert getLevel(superType) == getLevel(next) - 1
+            || getLevel(superType) == ROOT_LEVEL && getLevel(next) == INTERFACE_LEVEL;
+        assert getDirectSubtypes(superType).contains(next);
+      }
+      if (getLevel(next) != INTERFACE_LEVEL) {
+        // Only traverse the class hierarchy subtypes, not interfaces.
+        worklist.addAll(getDirectSubtypes(next));
+      } else if (nextHolder != null) {
+        // Test that the interfaces of this class are interfaces and have this class as subtype.
+        for (DexType iface : nextHolder.interfaces.values) {
+          assert getDirectSubtypes(iface).contains(next);
+          assert getLevel(iface) == INTERFACE_LEVEL;
+        }
+      }
+    }
+    return true;
+  }
+}
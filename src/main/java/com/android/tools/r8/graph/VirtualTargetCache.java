@@ -0,0 +1,119 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import com.android.tools.r8.utils.Timing;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Results of looking up the targets of virtual and interface invokes, for the classes of one
+ * {@link AppInfoWithSubtyping}.
+ *
+ * <p>When the classes or the subtypes change, a new cache is created with {@link #invalidate},
+ * which keeps counting the hits and misses of the previous cache. Once a cache holds {@link
+ * #MAX_ENTRIES} results of a kind, further results of that kind are not kept.
+ */
+class VirtualTargetCache {
+
+  static final int MAX_ENTRIES = 1 << 18;
+
+  private static class Statistics {
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+  }
+
+  private final Statistics statistics;
+  private final Map<DexMethod, Set<DexEncodedMethod>> virtualTargets = new ConcurrentHashMap<>();
+  private final Map<DexMethod, Set<DexEncodedMethod>> interfaceTargets =
+      new ConcurrentHashMap<>();
+  // Null targets are kept as DexEncodedMethod.SENTINEL.
+  private final Map<DexMethod, DexEncodedMethod> singleVirtualTargets = new ConcurrentHashMap<>();
+  private final Map<DexMethod, DexEncodedMethod> singleInterfaceTargets =
+      new ConcurrentHashMap<>();
+
+  VirtualTargetCache() {
+    this(new Statistics());
+  }
+
+  private VirtualTargetCache(Statistics statistics) {
+    this.statistics = statistics;
+  }
+
+  /**
+   * Returns an empty cache counting into the statistics of this cache.
+   */
+  VirtualTargetCache invalidate() {
+    return new VirtualTargetCache(statistics);
+  }
+
+  /**
+   * Returns the cached targets of method, or the targets computed by lookup, which are cached if
+   * not null. The result must not be modified.
+   */
+  Set<DexEncodedMethod> lookupVirtualTargets(
+      DexMethod method, Function<DexMethod, Set<DexEncodedMethod>> lookup) {
+    return lookupTargets(virtualTargets, method, lookup);
+  }
+
+  Set<DexEncodedMethod> lookupInterfaceTargets(
+      DexMethod method, Function<DexMethod, Set<DexEncodedMethod>> lookup) {
+    return lookupTargets(interfaceTargets, method, lookup);
+  }
+
+  DexEncodedMethod lookupSingleVirtualTarget(
+      DexMethod method, Function<DexMethod, DexEncodedMethod> lookup) {
+    return lookupSingleTarget(singleVirtualTargets, method, lookup);
+  }
+
+  DexEncodedMethod lookupSingleInterfaceTarget(
+      DexMethod method, Function<DexMethod, DexEncodedMethod> lookup) {
+    return lookupSingleTarget(singleInterfaceTargets, method, lookup);
+  }
+
+  private Set<DexEncodedMethod> lookupTargets(Map<DexMethod, Set<DexEncodedMethod>> cache,
+      DexMethod method, Function<DexMethod, Set<DexEncodedMethod>> lookup) {
+    Set<DexEncodedMethod> result = cache.get(method);
+    if (result != null) {
+      statistics.hits.increment();
+      return result;
+    }
+    statistics.misses.increment();
+    result = lookup.apply(method);
+    if (result != null) {
+      result = Collections.unmodifiableSet(result);
+      if (cache.size() < MAX_ENTRIES) {
+        cache.put(method, result);
+      }
+    }
+    return result;
+  }
+
+  private DexEncodedMethod lookupSingleTarget(Map<DexMethod, DexEncodedMethod> cache,
+      DexMethod method, Function<DexMethod, DexEncodedMethod> lookup) {
+    DexEncodedMethod result = cache.get(method);
+    if (result != null) {
+      statistics.hits.increment();
+      return result == DexEncodedMethod.SENTINEL ? null : result;
+    }
+    statistics.misses.increment();
+    result = lookup.apply(method);
+    if (cache.size() < MAX_ENTRIES) {
+      cache.put(method, result == null ? DexEncodedMethod.SENTINEL : result);
+    }
+    return result;
+  }
+
+  /**
+   * Adds the hits and misses since the last call to the current task of timing.
+   */
+  void count(Timing timing) {
+    timing.count("Virtual target cache hits", statistics.hits.sumThenReset());
+    timing.count("Virtual target cache misses", statistics.misses.sumThenReset());
+  }
+}
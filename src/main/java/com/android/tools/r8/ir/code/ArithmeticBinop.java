@@ -7,6 +7,7 @@ package com.android.tools.r8.ir.code;
 import com.android.tools.r8.code.Instruction;
 import com.android.tools.r8.errors.Unreachable;
 import com.android.tools.r8.ir.conversion.DexBuilder;
+import java.util.function.Function;
 
 public abstract class ArithmeticBinop extends Binop {
 
@@ -55,32 +56,37 @@ public abstract class ArithmeticBinop extends Binop {
   @Override
   public ConstInstruction fold(IRCode code) {
     assert canBeFolded();
+    return fold(code, value -> value.getConstInstruction().asConstNumber());
+  }
+
+  @Override
+  public ConstNumber fold(IRCode code, Function<Value, ConstNumber> inConstants) {
     if (type == NumericType.INT) {
-      int left = leftValue().getConstInstruction().asConstNumber().getIntValue();
-      int right = rightValue().getConstInstruction().asConstNumber().getIntValue();
+      int left = inConstants.apply(leftValue()).getIntValue();
+      int right = inConstants.apply(rightValue()).getIntValue();
       int result = foldIntegers(left, right);
       Value value = code.createValue(MoveType.SINGLE, getDebugInfo());
       return new ConstNumber(ConstType.INT, value, result);
     } else if (type == NumericType.LONG) {
-      long left = leftValue().getConstInstruction().asConstNumber().getLongValue();
-      long right = rightValue().getConstInstruction().asConstNumber().getLongValue();
+      long left = inConstants.apply(leftValue()).getLongValue();
+      long right = inConstants.apply(rightValue()).getLongValue();
       long result = foldLongs(left, right);
       Value value = code.createValue(MoveType.WIDE, getDebugInfo());
       return new ConstNumber(ConstType.LONG, value, result);
     } else if (type == NumericType.FLOAT) {
-      float left = leftValue().getConstInstruction().asConstNumber().getFloatValue();
-      float right = rightValue().getConstInstruction().asConstNumber().getFloatValue();
+      float left = inConstants.apply(leftValue()).getFloatValue();
+      float right = inConstants.apply(rightValue()).getFloatValue();
       float result = foldFloat(left, right);
       Value value = code.createValue(MoveType.SINGLE, getDebugInfo());
       return new ConstNumber(ConstType.FLOAT, value, Float.floatToIntBits(result));
-    } else {
-      assert type == NumericType.DOUBLE;
-      double left = leftValue().getConstInstruction().asConstNumber().getDoubleValue();
-      double right = rightValue().getConstInstruction().asConstNumber().getDoubleValue();
+    } else if (type == NumericType.DOUBLE) {
+      double left = inConstants.apply(leftValue()).getDoubleValue();
+      double right = inConstants.apply(rightValue()).getDoubleValue();
       double result = foldDouble(left, right);
       Value value = code.createValue(MoveType.WIDE, getDebugInfo());
       return new ConstNumber(ConstType.DOUBLE, value, Double.doubleToLongBits(result));
     }
+    return null;
   }
 
   @Override
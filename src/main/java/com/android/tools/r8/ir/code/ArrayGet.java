@@ -28,6 +28,10 @@ public class ArrayGet extends Instruction {
     this.type = type;
   }
 
+  public MemberType getMemberType() {
+    return type;
+  }
+
   public Value dest() {
     return outValue;
   }
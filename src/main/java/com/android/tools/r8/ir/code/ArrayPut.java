@@ -30,6 +30,10 @@ public class ArrayPut extends Instruction {
     this.type = type;
   }
 
+  public MemberType getMemberType() {
+    return type;
+  }
+
   public Value source() {
     return inValues.get(0);
   }
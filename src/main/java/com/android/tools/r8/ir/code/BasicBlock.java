@@ -15,15 +15,13 @@ import com.android.tools.r8.utils.StringUtils;
 import com.android.tools.r8.utils.StringUtils.BraceType;
 import com.google.common.collect.ImmutableList;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceMap;
+import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntCollection;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.function.Consumer;
@@ -88,7 +86,7 @@ public class BasicBlock {
   // Catch handler information about which successors are catch handlers and what their guards are.
   private CatchHandlers<Integer> catchHandlers = CatchHandlers.EMPTY_INDICES;
 
-  private LinkedList<Instruction> instructions = new LinkedList<>();
+  private InstructionList instructions = new InstructionList();
   private int number = -1;
   private List<Phi> phis = new ArrayList<>();
 
@@ -104,7 +102,7 @@ public class BasicBlock {
   // in predecessor blocks.
   private boolean filled = false;
   private boolean sealed = false;
-  private Map<Integer, Phi> incompletePhis = new HashMap<>();
+  private Int2ReferenceMap<Phi> incompletePhis = new Int2ReferenceOpenHashMap<>();
   private int estimatedPredecessorsCount = 0;
   private int unfilledPredecessorsCount = 0;
 
@@ -112,7 +110,7 @@ public class BasicBlock {
   private int color = 0;
 
   // Map of registers to current SSA value. Used during SSA numbering and cleared once filled.
-  private Map<Integer, Value> currentDefinitions = new HashMap<>();
+  private Int2ReferenceMap<Value> currentDefinitions = new Int2ReferenceOpenHashMap<>();
 
   public List<BasicBlock> getSuccessors() {
     return successors;
@@ -371,18 +369,18 @@ public class BasicBlock {
     this.number = number;
   }
 
-  public LinkedList<Instruction> getInstructions() {
+  public InstructionList getInstructions() {
     return instructions;
   }
 
   public Instruction entry() {
-    return instructions.get(0);
+    return instructions.getFirst();
   }
 
   public JumpInstruction exit() {
     assert filled;
-    assert instructions.get(instructions.size() - 1).isJumpInstruction();
-    return instructions.get(instructions.size() - 1).asJumpInstruction();
+    assert instructions.getLast().isJumpInstruction();
+    return instructions.getLast().asJumpInstruction();
   }
 
   public Instruction exceptionalExit() {
@@ -642,20 +640,14 @@ public class BasicBlock {
     // We keep track of all users of phis so that we can update all users during
     // trivial phi elimination. We only rewrite phi values during IR construction, so
     // we only need to record definition users for phis.
-    Value previousValue = currentDefinitions.get(register);
     if (value.isPhi()) {
       value.asPhi().addDefinitionsUser(currentDefinitions);
     }
     assert verifyOnThrowWrite(register);
     currentDefinitions.put(register, value);
-    // We have replaced one occurrence of value in currentDefinitions. There could be
-    // other occurrences. We only remove currentDefinitions from the set of users
-    // of the phi if we have removed all occurrences.
-    if (previousValue != null &&
-        previousValue.isPhi() &&
-        !currentDefinitions.values().contains(previousValue)) {
-      previousValue.asPhi().removeDefinitionsUser(currentDefinitions);
-    }
+    // The definitions are not removed from the users of a phi that is overwritten here, as other
+    // registers can still be defined by the phi. Finding out would require a scan of all the
+    // definitions on every write. Replacing a trivial phi simply finds no occurrences instead.
   }
 
   public void writeCurrentDefinition(int register, Value value, ThrowingInfo throwing) {
@@ -674,8 +666,8 @@ public class BasicBlock {
     assert unfilledPredecessorsCount > 0;
     if (--unfilledPredecessorsCount == 0) {
       assert estimatedPredecessorsCount == predecessors.size();
-      for (Entry<Integer, Phi> entry : incompletePhis.entrySet()) {
-        int register = entry.getKey();
+      for (Int2ReferenceMap.Entry<Phi> entry : incompletePhis.int2ReferenceEntrySet()) {
+        int register = entry.getIntKey();
         if (register < 0) {
           register = onThrowValueRegister(register);
         }
@@ -727,7 +719,7 @@ public class BasicBlock {
     return !incompletePhis.isEmpty();
   }
 
-  public Collection<Integer> getIncompletePhiRegisters() {
+  public IntCollection getIncompletePhiRegisters() {
     return incompletePhis.keySet();
   }
 
@@ -828,8 +820,8 @@ public class BasicBlock {
     printer.ln();
     printer.print("xhandlers\n");
     printer.print("flags\n");
-    printer.print("first_lir_id ").print(instructions.get(0).getNumber()).ln();
-    printer.print("last_lir_id ").print(instructions.get(instructions.size() - 1).getNumber()).ln();
+    printer.print("first_lir_id ").print(instructions.getFirst().getNumber()).ln();
+    printer.print("last_lir_id ").print(instructions.getLast().getNumber()).ln();
     printer.begin("HIR");
     if (phis != null) {
       for (Phi phi : phis) {
@@ -861,33 +853,34 @@ public class BasicBlock {
     // TODO(ager): Consider this more, is it always the case that we should add it before the
     // exit instruction?
     Instruction branch = exit();
-    instructions.set(instructions.size() - 1, move);
+    instructions.removeLast();
+    instructions.add(move);
     instructions.add(branch);
   }
 
-  public void setInstructions(LinkedList<Instruction> instructions) {
-    this.instructions = instructions;
-  }
-
   /**
    * Remove a number of instructions. The instructions to remove are given as indexes in the
    * instruction stream.
    */
   public void removeInstructions(List<Integer> toRemove) {
     if (!toRemove.isEmpty()) {
-      LinkedList<Instruction> newInstructions = new LinkedList<>();
-      int nextIndex = 0;
-      for (Integer index : toRemove) {
-        assert index >= nextIndex;  // Indexes in toRemove must be sorted ascending.
-        newInstructions.addAll(instructions.subList(nextIndex, index));
-        instructions.get(index).clearBlock();
-        nextIndex = index + 1;
-      }
-      if (nextIndex < instructions.size()) {
-        newInstructions.addAll(instructions.subList(nextIndex, instructions.size()));
+      Iterator<Integer> indices = toRemove.iterator();
+      int nextToRemove = indices.next();
+      int index = 0;
+      Iterator<Instruction> iterator = instructions.iterator();
+      while (iterator.hasNext()) {
+        Instruction instruction = iterator.next();
+        if (index++ == nextToRemove) {
+          iterator.remove();
+          instruction.clearBlock();
+          if (!indices.hasNext()) {
+            break;
+          }
+          nextToRemove = indices.next();
+          assert nextToRemove >= index;  // Indexes in toRemove must be sorted ascending.
+        }
       }
-      assert instructions.size() == newInstructions.size() + toRemove.size();
-      setInstructions(newInstructions);
+      assert !indices.hasNext();
     }
   }
 
@@ -895,9 +888,9 @@ public class BasicBlock {
    * Remove an instruction.
    */
   public void removeInstruction(Instruction toRemove) {
-    int index = instructions.indexOf(toRemove);
-    assert index >= 0;
-    removeInstructions(Collections.singletonList(index));
+    assert instructions.contains(toRemove);
+    instructions.remove(toRemove);
+    toRemove.clearBlock();
   }
 
   /**
@@ -988,7 +981,7 @@ public class BasicBlock {
     if (register >= 0) {
       return true;
     }
-    for (Integer other : currentDefinitions.keySet()) {
+    for (int other : currentDefinitions.keySet()) {
       assert other >= 0 || other == register;
     }
     return true;
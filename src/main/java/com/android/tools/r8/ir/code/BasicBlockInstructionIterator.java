@@ -194,9 +194,9 @@ public class BasicBlockInstructionIterator implements InstructionIterator, Instr
     // Move all remaining instructions to the new block.
     while (listIterator.hasNext()) {
       Instruction instruction = listIterator.next();
+      listIterator.remove();
       newBlock.getInstructions().addLast(instruction);
       instruction.setBlock(newBlock);
-      listIterator.remove();
     }
 
     // If splitting the normal exit block, the new block is now the normal exit block.
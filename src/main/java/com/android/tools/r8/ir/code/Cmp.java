@@ -15,6 +15,7 @@ import com.android.tools.r8.ir.conversion.DexBuilder;
 import com.android.tools.r8.utils.LongInterval;
 import com.android.tools.r8.utils.StringUtils;
 import com.android.tools.r8.utils.StringUtils.BraceType;
+import java.util.function.Function;
 
 public class Cmp extends Binop {
 
@@ -29,6 +30,10 @@ public class Cmp extends Binop {
     this.bias = bias;
   }
 
+  public Bias getBias() {
+    return bias;
+  }
+
   @Override
   public boolean isCommutative() {
     return false;
@@ -149,21 +154,27 @@ public class Cmp extends Binop {
   @Override
   public ConstInstruction fold(IRCode code) {
     assert canBeFolded();
+    if (leftValue().isConstNumber() && rightValue().isConstNumber()) {
+      return fold(code, value -> value.getConstInstruction().asConstNumber());
+    }
+    assert nonOverlapingRanges();
+    LongInterval leftRange = leftValue().getValueRange();
+    LongInterval rightRange = rightValue().getValueRange();
+    int result = Integer.signum(Long.compare(leftRange.getMin(), rightRange.getMin()));
+    Value value = code.createValue(MoveType.SINGLE, getDebugInfo());
+    return new ConstNumber(ConstType.INT, value, result);
+  }
+
+  @Override
+  public ConstNumber fold(IRCode code, Function<Value, ConstNumber> inConstants) {
     int result;
     if (type == NumericType.LONG) {
-      if (leftValue().isConstNumber() && rightValue().isConstNumber()) {
-        long left = leftValue().getConstInstruction().asConstNumber().getLongValue();
-        long right = rightValue().getConstInstruction().asConstNumber().getLongValue();
-        result = Integer.signum(Long.compare(left, right));
-      } else {
-        assert nonOverlapingRanges();
-        LongInterval leftRange = leftValue().getValueRange();
-        LongInterval rightRange = rightValue().getValueRange();
-        result = Integer.signum(Long.compare(leftRange.getMin(), rightRange.getMin()));
-      }
+      long left = inConstants.apply(leftValue()).getLongValue();
+      long right = inConstants.apply(rightValue()).getLongValue();
+      result = Integer.signum(Long.compare(left, right));
     } else if (type == NumericType.FLOAT) {
-      float left = leftValue().getConstInstruction().asConstNumber().getFloatValue();
-      float right = rightValue().getConstInstruction().asConstNumber().getFloatValue();
+      float left = inConstants.apply(leftValue()).getFloatValue();
+      float right = inConstants.apply(rightValue()).getFloatValue();
       if (Float.isNaN(left) || Float.isNaN(right)) {
         result = bias == Bias.GT ? 1 : -1;
       } else {
@@ -171,8 +182,8 @@ public class Cmp extends Binop {
       }
     } else {
       assert type == NumericType.DOUBLE;
-      double left = leftValue().getConstInstruction().asConstNumber().getDoubleValue();
-      double right = rightValue().getConstInstruction().asConstNumber().getDoubleValue();
+      double left = inConstants.apply(leftValue()).getDoubleValue();
+      double right = inConstants.apply(rightValue()).getDoubleValue();
       if (Double.isNaN(left) || Double.isNaN(right)) {
         result = bias == Bias.GT ? 1 : -1;
       } else {
@@ -14,6 +14,7 @@ import com.android.tools.r8.code.DivIntLit16;
 import com.android.tools.r8.code.DivIntLit8;
 import com.android.tools.r8.code.DivLong;
 import com.android.tools.r8.code.DivLong2Addr;
+import java.util.function.Function;
 
 public class Div extends ArithmeticBinop {
 
@@ -91,6 +92,11 @@ public class Div extends ArithmeticBinop {
     return super.canBeFolded() && !rightValue().getConstInstruction().asConstNumber().isZero();
   }
 
+  @Override
+  public ConstNumber fold(IRCode code, Function<Value, ConstNumber> inConstants) {
+    return inConstants.apply(rightValue()).isZero() ? null : super.fold(code, inConstants);
+  }
+
   @Override
   int foldIntegers(int left, int right) {
     return left / right;
@@ -0,0 +1,284 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.code;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copies IR code, e.g., to inline the same code more than once without building it again.
+ *
+ * <p>The copy has the same blocks, instructions and values as the original, including the order of
+ * the users of each value. The value numbers of the copy are the numbers of the original offset by
+ * the first of the numbers reserved for the copy, so copying code built with a fresh {@link
+ * ValueNumberGenerator} gives the same result as building it with the generator of the copy.
+ *
+ * <p>Only code without catch handlers and debug information, consisting of the instructions found
+ * in small methods, can be copied. The original is only read, so it can be copied from several
+ * threads at the same time.
+ */
+public class IRCodeCopier {
+
+  private final IRCode original;
+  private final int valueNumberOffset;
+  private final Map<BasicBlock, BasicBlock> blockCopies = new IdentityHashMap<>();
+  private final Map<Value, Value> valueCopies = new IdentityHashMap<>();
+  private final Map<Instruction, Instruction> instructionCopies = new IdentityHashMap<>();
+
+  private IRCodeCopier(IRCode original, int valueNumberOffset) {
+    this.original = original;
+    this.valueNumberOffset = valueNumberOffset;
+  }
+
+  /**
+   * Returns a copy of the code with values numbered by the given generator, or null if the code
+   * cannot be copied. The generator is only used if the code can be copied.
+   */
+  public static IRCode copy(IRCode code, ValueNumberGenerator valueNumberGenerator) {
+    if (!canCopy(code)) {
+      return null;
+    }
+    int numberOfValues = code.valueNumberGenerator.numberOfValues();
+    IRCodeCopier copier =
+        new IRCodeCopier(code, valueNumberGenerator.reserve(numberOfValues));
+    return copier.copy(valueNumberGenerator);
+  }
+
+  public static boolean canCopy(IRCode code) {
+    for (BasicBlock block : code.blocks) {
+      if (block.hasCatchHandlers() || block.getLocalsAtEntry() != null) {
+        return false;
+      }
+      for (Phi phi : block.getPhis()) {
+        if (phi.getDebugInfo() != null) {
+          return false;
+        }
+      }
+      for (Instruction instruction : block.getInstructions()) {
+        if (!canCopy(instruction)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean canCopy(Instruction instruction) {
+    if (!instruction.getDebugValues().isEmpty()
+        || (instruction.outValue() != null && instruction.outValue().getDebugInfo() != null)
+        || instruction.isDebugInstruction()) {
+      return false;
+    }
+    return instruction.isArgument()
+        || instruction.isConstNumber()
+        || instruction.isConstString()
+        || instruction.isConstClass()
+        || instruction.isBinop()
+        || instruction.isNeg()
+        || instruction.isNot()
+        || instruction.isNumberConversion()
+        || instruction.isArrayGet()
+        || instruction.isArrayPut()
+        || instruction.isArrayLength()
+        || instruction.isCheckCast()
+        || instruction.isInstanceOf()
+        || instruction.isInstanceGet()
+        || instruction.isInstancePut()
+        || instruction.isStaticGet()
+        || instruction.isStaticPut()
+        || instruction.isInvokeDirect()
+        || instruction.isInvokeInterface()
+        || instruction.isInvokeStatic()
+        || instruction.isInvokeSuper()
+        || instruction.isInvokeVirtual()
+        || instruction.isNewInstance()
+        || instruction.isNewArrayEmpty()
+        || instruction.isGoto()
+        || instruction.isIf()
+        || instruction.isReturn()
+        || instruction.isThrow()
+        || instruction.isMove();
+  }
+
+  private IRCode copy(ValueNumberGenerator valueNumberGenerator) {
+    // Create all blocks and values first, as the blocks refer to each other and values can be used
+    // in blocks before the block defining them.
+    LinkedList<BasicBlock> blocks = new LinkedList<>();
+    for (BasicBlock block : original.blocks) {
+      BasicBlock copy = new BasicBlock();
+      copy.setNumber(block.getNumber());
+      blockCopies.put(block, copy);
+      blocks.add(copy);
+      for (Phi phi : block.getPhis()) {
+        valueCopies.put(phi, new Phi(copyNumber(phi), copy, phi.type, null));
+      }
+      for (Instruction instruction : block.getInstructions()) {
+        Value outValue = instruction.outValue();
+        if (outValue != null) {
+          valueCopies.put(outValue, new Value(copyNumber(outValue), outValue.type, null));
+        }
+      }
+    }
+    for (BasicBlock block : original.blocks) {
+      BasicBlock copy = blockCopies.get(block);
+      for (Instruction instruction : block.getInstructions()) {
+        Instruction instructionCopy = copyInstruction(instruction);
+        instructionCopies.put(instruction, instructionCopy);
+        copy.add(instructionCopy);
+      }
+      // Close the block before linking it, so the successors are not updated.
+      copy.close(null);
+    }
+    for (BasicBlock block : original.blocks) {
+      BasicBlock copy = blockCopies.get(block);
+      for (BasicBlock successor : block.getSuccessors()) {
+        copy.getSuccessors().add(blockCopies.get(successor));
+      }
+      for (BasicBlock predecessor : block.getPredecessors()) {
+        copy.getPredecessors().add(blockCopies.get(predecessor));
+      }
+      for (Phi phi : block.getPhis()) {
+        List<Value> operands = valueCopies.get(phi).asPhi().getOperands();
+        for (Value operand : phi.getOperands()) {
+          operands.add(valueCopies.get(operand));
+        }
+      }
+    }
+    valueCopies.forEach((value, copy) ->
+        copy.copyPropertiesAndUsers(value, instructionCopies, valueCopies));
+    BasicBlock normalExitBlock = original.getNormalExitBlock() == null
+        ? null
+        : blockCopies.get(original.getNormalExitBlock());
+    return new IRCode(original.method, blocks, normalExitBlock, valueNumberGenerator);
+  }
+
+  private int copyNumber(Value value) {
+    return valueNumberOffset + value.getNumber();
+  }
+
+  private Value in(Instruction instruction, int index) {
+    return valueCopies.get(instruction.inValues().get(index));
+  }
+
+  private List<Value> ins(Instruction instruction) {
+    List<Value> result = new ArrayList<>(instruction.inValues().size());
+    for (Value value : instruction.inValues()) {
+      result.add(valueCopies.get(value));
+    }
+    return result;
+  }
+
+  private Instruction copyInstruction(Instruction instruction) {
+    Value out = instruction.outValue() == null ? null : valueCopies.get(instruction.outValue());
+    if (instruction.isArgument()) {
+      return new Argument(out);
+    } else if (instruction.isConstNumber()) {
+      ConstNumber constNumber = instruction.asConstNumber();
+      return new ConstNumber(constNumber.type, out, constNumber.getRawValue());
+    } else if (instruction.isConstString()) {
+      return new ConstString(out, instruction.asConstString().getValue());
+    } else if (instruction.isConstClass()) {
+      return new ConstClass(out, instruction.asConstClass().getValue());
+    } else if (instruction.isBinop()) {
+      return copyBinop(instruction.asBinop(), out);
+    } else if (instruction.isNeg()) {
+      return new Neg(instruction.asNeg().type, out, in(instruction, 0));
+    } else if (instruction.isNot()) {
+      return new Not(instruction.asNot().type, out, in(instruction, 0));
+    } else if (instruction.isNumberConversion()) {
+      NumberConversion conversion = instruction.asNumberConversion();
+      return new NumberConversion(conversion.from, conversion.to, out, in(instruction, 0));
+    } else if (instruction.isArrayGet()) {
+      return new ArrayGet(instruction.asArrayGet().getMemberType(), out, in(instruction, 0),
+          in(instruction, 1));
+    } else if (instruction.isArrayPut()) {
+      return new ArrayPut(instruction.asArrayPut().getMemberType(), ins(instruction));
+    } else if (instruction.isArrayLength()) {
+      return new ArrayLength(out, in(instruction, 0));
+    } else if (instruction.isCheckCast()) {
+      return new CheckCast(out, in(instruction, 0), instruction.asCheckCast().getType());
+    } else if (instruction.isInstanceOf()) {
+      return new InstanceOf(out, in(instruction, 0), instruction.asInstanceOf().type());
+    } else if (instruction.isInstanceGet()) {
+      InstanceGet get = instruction.asInstanceGet();
+      return new InstanceGet(get.getType(), out, in(instruction, 0), get.getField());
+    } else if (instruction.isInstancePut()) {
+      InstancePut put = instruction.asInstancePut();
+      return new InstancePut(put.getType(), ins(instruction), put.getField());
+    } else if (instruction.isStaticGet()) {
+      StaticGet get = instruction.asStaticGet();
+      return new StaticGet(get.getType(), out, get.getField());
+    } else if (instruction.isStaticPut()) {
+      StaticPut put = instruction.asStaticPut();
+      return new StaticPut(put.getType(), in(instruction, 0), put.getField());
+    } else if (instruction.isInvokeDirect()) {
+      return new InvokeDirect(
+          instruction.asInvokeDirect().getInvokedMethod(), out, ins(instruction));
+    } else if (instruction.isInvokeInterface()) {
+      return new InvokeInterface(
+          instruction.asInvokeInterface().getInvokedMethod(), out, ins(instruction));
+    } else if (instruction.isInvokeStatic()) {
+      return new InvokeStatic(
+          instruction.asInvokeStatic().getInvokedMethod(), out, ins(instruction));
+    } else if (instruction.isInvokeSuper()) {
+      return new InvokeSuper(
+          instruction.asInvokeSuper().getInvokedMethod(), out, ins(instruction));
+    } else if (instruction.isInvokeVirtual()) {
+      return new InvokeVirtual(
+          instruction.asInvokeVirtual().getInvokedMethod(), out, ins(instruction));
+    } else if (instruction.isNewInstance()) {
+      return new NewInstance(instruction.asNewInstance().clazz, out);
+    } else if (instruction.isNewArrayEmpty()) {
+      return new NewArrayEmpty(out, in(instruction, 0), instruction.asNewArrayEmpty().type);
+    } else if (instruction.isGoto()) {
+      return new Goto();
+    } else if (instruction.isIf()) {
+      return new If(instruction.asIf().getType(), ins(instruction));
+    } else if (instruction.isReturn()) {
+      Return ret = instruction.asReturn();
+      return ret.isReturnVoid()
+          ? new Return()
+          : new Return(in(instruction, 0), ret.getReturnType());
+    } else if (instruction.isThrow()) {
+      return new Throw(in(instruction, 0));
+    } else {
+      assert instruction.isMove();
+      return new Move(out, in(instruction, 0));
+    }
+  }
+
+  private Instruction copyBinop(Binop binop, Value out) {
+    Value left = in(binop, 0);
+    Value right = in(binop, 1);
+    if (binop.isAdd()) {
+      return new Add(binop.type, out, left, right);
+    } else if (binop.isSub()) {
+      return new Sub(binop.type, out, left, right);
+    } else if (binop.isMul()) {
+      return new Mul(binop.type, out, left, right);
+    } else if (binop.isDiv()) {
+      return new Div(binop.type, out, left, right);
+    } else if (binop.isRem()) {
+      return new Rem(binop.type, out, left, right);
+    } else if (binop.isAnd()) {
+      return new And(binop.type, out, left, right);
+    } else if (binop.isOr()) {
+      return new Or(binop.type, out, left, right);
+    } else if (binop.isXor()) {
+      return new Xor(binop.type, out, left, right);
+    } else if (binop.isShl()) {
+      return new Shl(binop.type, out, left, right);
+    } else if (binop.isShr()) {
+      return new Shr(binop.type, out, left, right);
+    } else if (binop.isUshr()) {
+      return new Ushr(binop.type, out, left, right);
+    } else {
+      assert binop.isCmp();
+      return new Cmp(binop.type, binop.asCmp().getBias(), out, left, right);
+    }
+  }
+}
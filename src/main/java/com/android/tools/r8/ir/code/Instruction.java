@@ -18,6 +18,7 @@ import com.android.tools.r8.utils.StringUtils.BraceType;
 import com.google.common.collect.ImmutableList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 public abstract class Instruction {
 
@@ -26,6 +27,10 @@ public abstract class Instruction {
   private BasicBlock block = null;
   private int number = -1;
   private List<Value> debugValues = null;
+  // Links of the InstructionList of the block that this instruction is in.
+  InstructionList list = null;
+  Instruction listPrevious = null;
+  Instruction listNext = null;
 
   protected Instruction(Value outValue) {
     setOutValue(outValue);
@@ -838,6 +843,13 @@ public abstract class Instruction {
     throw new Unreachable("Unsupported folding for " + this);
   }
 
+  // Returns the constant computed by this instruction when its in-values are the constants given
+  // by inConstants, or null if it cannot be computed. Used by constant propagation, where in-values
+  // can be known to be constant without being defined by a constant instruction.
+  public ConstNumber fold(IRCode code, Function<Value, ConstNumber> inConstants) {
+    return null;
+  }
+
   // Returns the inlining constraint for this instruction.
   public abstract Constraint inliningConstraint(AppInfoWithSubtyping info, DexType holder);
 }
@@ -0,0 +1,348 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.code;
+
+import java.util.AbstractSequentialList;
+import java.util.ConcurrentModificationException;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * The instructions of a basic block.
+ *
+ * <p>This is a doubly linked list where the links are stored in the instructions themselves, so
+ * no node objects are allocated. As a consequence an instruction can only be in one list at a
+ * time, and it must be removed from a list before it is added to another.
+ */
+public class InstructionList extends AbstractSequentialList<Instruction> {
+
+  private Instruction first = null;
+  private Instruction last = null;
+  private int size = 0;
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public Instruction getFirst() {
+    if (first == null) {
+      throw new NoSuchElementException();
+    }
+    return first;
+  }
+
+  public Instruction getLast() {
+    if (last == null) {
+      throw new NoSuchElementException();
+    }
+    return last;
+  }
+
+  public void addFirst(Instruction instruction) {
+    if (first == null) {
+      linkLast(instruction);
+    } else {
+      linkBefore(instruction, first);
+    }
+  }
+
+  public void addLast(Instruction instruction) {
+    linkLast(instruction);
+  }
+
+  @Override
+  public boolean add(Instruction instruction) {
+    linkLast(instruction);
+    return true;
+  }
+
+  public Instruction removeFirst() {
+    Instruction instruction = getFirst();
+    unlink(instruction);
+    return instruction;
+  }
+
+  public Instruction removeLast() {
+    Instruction instruction = getLast();
+    unlink(instruction);
+    return instruction;
+  }
+
+  @Override
+  public boolean remove(Object object) {
+    if (object instanceof Instruction && ((Instruction) object).list == this) {
+      unlink((Instruction) object);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean contains(Object object) {
+    return object instanceof Instruction && ((Instruction) object).list == this;
+  }
+
+  @Override
+  public void clear() {
+    Instruction instruction = first;
+    while (instruction != null) {
+      Instruction next = instruction.listNext;
+      instruction.list = null;
+      instruction.listPrevious = null;
+      instruction.listNext = null;
+      instruction = next;
+    }
+    first = last = null;
+    size = 0;
+    modCount++;
+  }
+
+  @Override
+  public Instruction get(int index) {
+    return instructionAt(index);
+  }
+
+  @Override
+  public Instruction set(int index, Instruction instruction) {
+    Instruction old = instructionAt(index);
+    replace(old, instruction);
+    return old;
+  }
+
+  @Override
+  public void forEach(Consumer<? super Instruction> action) {
+    int expectedModCount = modCount;
+    for (Instruction instruction = first; instruction != null; ) {
+      Instruction next = instruction.listNext;
+      action.accept(instruction);
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      instruction = next;
+    }
+  }
+
+  @Override
+  public ListIterator<Instruction> listIterator(int index) {
+    if (index < 0 || index > size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return new Itr(index);
+  }
+
+  private Instruction instructionAt(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    Instruction instruction;
+    if (index < size / 2) {
+      instruction = first;
+      for (int i = 0; i < index; i++) {
+        instruction = instruction.listNext;
+      }
+    } else {
+      instruction = last;
+      for (int i = size - 1; i > index; i--) {
+        instruction = instruction.listPrevious;
+      }
+    }
+    return instruction;
+  }
+
+  private void assertNotLinked(Instruction instruction) {
+    assert instruction.list == null : "Instruction is already in a list: " + instruction;
+    assert instruction.listPrevious == null && instruction.listNext == null;
+  }
+
+  private void linkLast(Instruction instruction) {
+    assertNotLinked(instruction);
+    instruction.list = this;
+    instruction.listPrevious = last;
+    if (last == null) {
+      first = instruction;
+    } else {
+      last.listNext = instruction;
+    }
+    last = instruction;
+    size++;
+    modCount++;
+  }
+
+  private void linkBefore(Instruction instruction, Instruction successor) {
+    assertNotLinked(instruction);
+    Instruction predecessor = successor.listPrevious;
+    instruction.list = this;
+    instruction.listPrevious = predecessor;
+    instruction.listNext = successor;
+    successor.listPrevious = instruction;
+    if (predecessor == null) {
+      first = instruction;
+    } else {
+      predecessor.listNext = instruction;
+    }
+    size++;
+    modCount++;
+  }
+
+  private void unlink(Instruction instruction) {
+    assert instruction.list == this;
+    Instruction predecessor = instruction.listPrevious;
+    Instruction successor = instruction.listNext;
+    if (predecessor == null) {
+      first = successor;
+    } else {
+      predecessor.listNext = successor;
+    }
+    if (successor == null) {
+      last = predecessor;
+    } else {
+      successor.listPrevious = predecessor;
+    }
+    instruction.list = null;
+    instruction.listPrevious = null;
+    instruction.listNext = null;
+    size--;
+    modCount++;
+  }
+
+  // Replacing an instruction is not a structural modification.
+  private void replace(Instruction old, Instruction instruction) {
+    assert old.list == this;
+    if (old == instruction) {
+      return;
+    }
+    assertNotLinked(instruction);
+    Instruction predecessor = old.listPrevious;
+    Instruction successor = old.listNext;
+    instruction.list = this;
+    instruction.listPrevious = predecessor;
+    instruction.listNext = successor;
+    if (predecessor == null) {
+      first = instruction;
+    } else {
+      predecessor.listNext = instruction;
+    }
+    if (successor == null) {
+      last = instruction;
+    } else {
+      successor.listPrevious = instruction;
+    }
+    old.list = null;
+    old.listPrevious = null;
+    old.listNext = null;
+  }
+
+  private class Itr implements ListIterator<Instruction> {
+
+    private Instruction next;
+    private Instruction lastReturned = null;
+    private int nextIndex;
+    private int expectedModCount = modCount;
+
+    Itr(int index) {
+      next = index == size ? null : instructionAt(index);
+      nextIndex = index;
+    }
+
+    private void checkForComodification() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return nextIndex < size;
+    }
+
+    @Override
+    public Instruction next() {
+      checkForComodification();
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      lastReturned = next;
+      next = next.listNext;
+      nextIndex++;
+      return lastReturned;
+    }
+
+    @Override
+    public boolean hasPrevious() {
+      return nextIndex > 0;
+    }
+
+    @Override
+    public Instruction previous() {
+      checkForComodification();
+      if (!hasPrevious()) {
+        throw new NoSuchElementException();
+      }
+      next = next == null ? last : next.listPrevious;
+      lastReturned = next;
+      nextIndex--;
+      return lastReturned;
+    }
+
+    @Override
+    public int nextIndex() {
+      return nextIndex;
+    }
+
+    @Override
+    public int previousIndex() {
+      return nextIndex - 1;
+    }
+
+    @Override
+    public void remove() {
+      checkForComodification();
+      if (lastReturned == null) {
+        throw new IllegalStateException();
+      }
+      Instruction lastNext = lastReturned.listNext;
+      unlink(lastReturned);
+      if (next == lastReturned) {
+        next = lastNext;
+      } else {
+        nextIndex--;
+      }
+      lastReturned = null;
+      expectedModCount++;
+    }
+
+    @Override
+    public void set(Instruction instruction) {
+      checkForComodification();
+      if (lastReturned == null) {
+        throw new IllegalStateException();
+      }
+      replace(lastReturned, instruction);
+      if (next == lastReturned) {
+        next = instruction;
+      }
+      lastReturned = instruction;
+    }
+
+    @Override
+    public void add(Instruction instruction) {
+      checkForComodification();
+      lastReturned = null;
+      if (next == null) {
+        linkLast(instruction);
+      } else {
+        linkBefore(instruction, next);
+      }
+      nextIndex++;
+      expectedModCount++;
+    }
+  }
+}
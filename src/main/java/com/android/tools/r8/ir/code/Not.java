@@ -7,6 +7,7 @@ import com.android.tools.r8.code.NotInt;
 import com.android.tools.r8.code.NotLong;
 import com.android.tools.r8.errors.Unreachable;
 import com.android.tools.r8.ir.conversion.DexBuilder;
+import java.util.function.Function;
 
 public class Not extends Unop {
 
@@ -25,13 +26,18 @@ public class Not extends Unop {
   @Override
   public ConstInstruction fold(IRCode code) {
     assert canBeFolded();
+    return fold(code, value -> value.getConstInstruction().asConstNumber());
+  }
+
+  @Override
+  public ConstNumber fold(IRCode code, Function<Value, ConstNumber> inConstants) {
     if (type == NumericType.INT) {
-      int result = ~(source().getConstInstruction().asConstNumber().getIntValue());
+      int result = ~(inConstants.apply(source()).getIntValue());
       Value value = code.createValue(MoveType.SINGLE, getDebugInfo());
       return new ConstNumber(ConstType.INT, value, result);
     } else {
       assert type == NumericType.LONG;
-      long result = ~source().getConstInstruction().asConstNumber().getLongValue();
+      long result = ~inConstants.apply(source()).getLongValue();
       Value value = code.createValue(MoveType.WIDE, getDebugInfo());
       return new ConstNumber(ConstType.LONG, value, result);
     }
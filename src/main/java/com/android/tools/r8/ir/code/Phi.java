@@ -10,10 +10,11 @@ import com.android.tools.r8.ir.conversion.IRBuilder;
 import com.android.tools.r8.utils.CfgPrinter;
 import com.android.tools.r8.utils.ListUtils;
 import com.android.tools.r8.utils.StringUtils;
+import com.google.common.collect.Sets;
+import it.unimi.dsi.fastutil.ints.Int2ReferenceMap;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 public class Phi extends Value {
@@ -25,7 +26,9 @@ public class Phi extends Value {
   // we need to update all references to it. A phi can be referenced from phis, instructions
   // and current definition mappings. This list contains the current definitions mappings that
   // contain this phi.
-  private List<Map<Integer, Value>> definitionUsers = new ArrayList<>();
+  // The current definitions maps of the blocks under construction that may map a register to this
+  // phi. Only used during IR construction.
+  private Set<Int2ReferenceMap<Value>> definitionUsers = Sets.newIdentityHashSet();
 
   // The computed out type is not always the same as 'this.type' because of the type
   // confusion around null and constant zero. The null object can be used in a single
@@ -208,8 +211,8 @@ public class Phi extends Value {
     }
     // If IR construction is taking place, update the definition users.
     if (definitionUsers != null) {
-      for (Map<Integer, Value> user : definitionUsers) {
-        for (Map.Entry<Integer, Value> entry : user.entrySet()) {
+      for (Int2ReferenceMap<Value> user : definitionUsers) {
+        for (Int2ReferenceMap.Entry<Value> entry : user.int2ReferenceEntrySet()) {
           if (entry.getValue() == this) {
             entry.setValue(same);
             if (same.isPhi()) {
@@ -251,14 +254,10 @@ public class Phi extends Value {
     }
   }
 
-  public void addDefinitionsUser(Map<Integer, Value> currentDefinitions) {
+  public void addDefinitionsUser(Int2ReferenceMap<Value> currentDefinitions) {
     definitionUsers.add(currentDefinitions);
   }
 
-  public void removeDefinitionsUser(Map<Integer, Value> currentDefinitions) {
-    definitionUsers.remove(currentDefinitions);
-  }
-
   public void clearDefinitionsUsers() {
     definitionUsers = null;
   }
@@ -14,6 +14,7 @@ import com.android.tools.r8.code.RemIntLit16;
 import com.android.tools.r8.code.RemIntLit8;
 import com.android.tools.r8.code.RemLong;
 import com.android.tools.r8.code.RemLong2Addr;
+import java.util.function.Function;
 
 public class Rem extends ArithmeticBinop {
 
@@ -91,6 +92,11 @@ public class Rem extends ArithmeticBinop {
     return super.canBeFolded() && !rightValue().getConstInstruction().asConstNumber().isZero();
   }
 
+  @Override
+  public ConstNumber fold(IRCode code, Function<Value, ConstNumber> inConstants) {
+    return inConstants.apply(rightValue()).isZero() ? null : super.fold(code, inConstants);
+  }
+
   @Override
   int foldIntegers(int left, int right) {
     return left % right;
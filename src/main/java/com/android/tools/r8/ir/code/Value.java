@@ -12,8 +12,8 @@ import com.google.common.collect.ImmutableSet;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class Value {
@@ -59,9 +59,10 @@ public class Value {
   protected final int number;
   protected final MoveType type;
   public Instruction definition = null;
-  private LinkedList<Instruction> users = new LinkedList<>();
+  // Most values have few users, so the use lists start out with no capacity.
+  private ArrayList<Instruction> users = new ArrayList<>(0);
   private Set<Instruction> uniqueUsers = null;
-  private LinkedList<Phi> phiUsers = new LinkedList<>();
+  private ArrayList<Phi> phiUsers = new ArrayList<>(0);
   private Set<Phi> uniquePhiUsers = null;
   private Value nextConsecutive = null;
   private Value previousConsecutive = null;
@@ -288,6 +289,26 @@ public class Value {
     }
   }
 
+  // Gives this value the properties and the users of the value it is a copy of, see IRCodeCopier.
+  void copyPropertiesAndUsers(
+      Value original, Map<Instruction, Instruction> instructionCopies, Map<Value, Value> copies) {
+    assert debugData == null && original.debugData == null;
+    users.clear();
+    for (Instruction user : original.users) {
+      users.add(instructionCopies.get(user));
+    }
+    uniqueUsers = null;
+    phiUsers.clear();
+    for (Phi user : original.phiUsers) {
+      phiUsers.add(copies.get(user).asPhi());
+    }
+    uniquePhiUsers = null;
+    neverNull = original.neverNull;
+    isThis = original.isThis;
+    isArgument = original.isArgument;
+    valueRange = original.valueRange;
+  }
+
   public void replaceUsers(Value newValue) {
     if (this == newValue) {
       return;
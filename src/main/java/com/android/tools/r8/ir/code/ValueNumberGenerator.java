@@ -9,4 +9,15 @@ public class ValueNumberGenerator {
   public int next() {
     return nextValueNumber++;
   }
+
+  public int numberOfValues() {
+    return nextValueNumber;
+  }
+
+  // Hands out count consecutive numbers and returns the first of them.
+  public int reserve(int count) {
+    int first = nextValueNumber;
+    nextValueNumber += count;
+    return first;
+  }
 }
@@ -17,12 +17,13 @@ import com.android.tools.r8.graph.UseRegistry;
 import com.android.tools.r8.ir.code.Invoke.Type;
 import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
 import com.android.tools.r8.utils.InternalOptions;
-import com.android.tools.r8.utils.ThreadUtils;
 import com.google.common.collect.Sets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -30,7 +31,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -68,6 +70,11 @@ public class CallGraph {
     // Incoming calls to this method.
     private final Set<Node> callers = new LinkedHashSet<>();
 
+    // Scheduling state used by forEachMethod: the methods that must be processed before this one
+    // and the methods waiting for this one to be processed.
+    private int blockers = 0;
+    private final List<Node> waiters = new ArrayList<>();
+
     private Node(DexEncodedMethod method) {
       this.method = method;
     }
@@ -133,6 +140,8 @@ public class CallGraph {
   private final Map<DexEncodedMethod, Node> nodes = new LinkedHashMap<>();
   private final Map<DexEncodedMethod, Set<DexEncodedMethod>> breakers = new HashMap<>();
   private final Function<List<DexEncodedMethod>, List<DexEncodedMethod>> shuffle;
+  // If not null, only calls to these methods are recorded.
+  private Set<DexEncodedMethod> restriction = null;
 
   // Returns whether the method->callee edge has been removed from the call graph
   // to break a cycle in the call graph.
@@ -141,6 +150,11 @@ public class CallGraph {
     return (value != null) && value.contains(callee);
   }
 
+  // Time spent processing methods and time the executor threads were idle in the last call to
+  // forEachMethod, in nanoseconds. The idle time is the average over all threads.
+  private long busyTime = 0;
+  private long idleTime = 0;
+
   private Set<DexEncodedMethod> singleCallSite = Sets.newIdentityHashSet();
   private Set<DexEncodedMethod> doubleCallSite = Sets.newIdentityHashSet();
 
@@ -163,6 +177,30 @@ public class CallGraph {
     return graph;
   }
 
+  /**
+   * Build the call graph of only the given methods, recording the calls between them.
+   * <p>
+   * This is cheaper than building the call graph of the whole application when only the order in
+   * which to process a few methods is needed. The call site information is not computed.
+   */
+  public static CallGraph build(Set<DexEncodedMethod> methods, AppInfoWithSubtyping appInfo,
+      GraphLense graphLense, InternalOptions options) {
+    CallGraph graph = new CallGraph(options);
+    graph.restriction = methods;
+    DexEncodedMethod[] sorted = methods.toArray(new DexEncodedMethod[methods.size()]);
+    Arrays.sort(sorted, (a, b) -> a.method.slowCompareTo(b.method));
+    for (DexEncodedMethod method : sorted) {
+      graph.ensureMethodNode(method);
+    }
+    for (DexEncodedMethod method : sorted) {
+      Node node = graph.nodes.get(method);
+      method.registerReachableDefinitions(new InvokeExtractor(appInfo, graphLense, node, graph));
+    }
+    graph.breakCycles();
+    assert graph.breakCycles() == 0;  // This time the cycles should be gone.
+    return graph;
+  }
+
   /**
    * Check if the <code>method</code> is guaranteed to only have a single call site.
    * <p>
@@ -205,25 +243,78 @@ public class CallGraph {
   }
 
   /**
-   * Extract the next set of leaves (nodes with an call (outgoing) degree of 0) if any.
+   * Compute the level of each node, where leaves have level 0 and every other node has a level one
+   * higher than the highest level of its callees. Processing the graph level by level, as was done
+   * before scheduling on dependencies, processes a method after all of its callees.
    * <p>
-   * All nodes in the graph are extracted if called repeatedly until null is returned.
    * Please note that there are no cycles in this graph (see {@link #breakCycles}).
+   */
+  private Map<Node, Integer> computeLevels() {
+    Map<Node, Integer> levels = new IdentityHashMap<>();
+    Map<Node, Integer> unprocessedCallees = new IdentityHashMap<>();
+    Deque<Node> worklist = new ArrayDeque<>();
+    for (Node node : nodes.values()) {
+      levels.put(node, 0);
+      unprocessedCallees.put(node, node.callees.size());
+      if (node.isLeaf()) {
+        worklist.add(node);
+      }
+    }
+    while (!worklist.isEmpty()) {
+      Node node = worklist.removeFirst();
+      int level = levels.get(node);
+      for (Node caller : node.callers) {
+        levels.put(caller, Math.max(levels.get(caller), level + 1));
+        int remaining = unprocessedCallees.get(caller) - 1;
+        unprocessedCallees.put(caller, remaining);
+        if (remaining == 0) {
+          worklist.add(caller);
+        }
+      }
+    }
+    assert levels.size() == nodes.size();
+    return levels;
+  }
+
+  private static void addDependency(Node node, Node dependency) {
+    node.blockers++;
+    dependency.waiters.add(node);
+  }
+
+  /**
+   * Set up the dependencies used for scheduling and return the nodes that can be processed
+   * immediately.
    * <p>
-   *
-   * @return List of {@link DexEncodedMethod}.
+   * A method depends on all of its callees. For a call edge removed to break a cycle the callee
+   * is processed before the caller if it has a lower level, and otherwise after it. This makes the
+   * order of the two fixed, which is needed for deterministic output as the inliner looks at
+   * whether the target of a removed edge has already been processed.
    */
-  private List<DexEncodedMethod> extractLeaves() {
-    if (isEmpty()) {
-      return Collections.emptyList();
+  private List<Node> computeDependencies() {
+    Map<Node, Integer> levels = computeLevels();
+    for (Node node : nodes.values()) {
+      for (Node callee : node.callees) {
+        addDependency(node, callee);
+      }
     }
-    // First identify all leaves before removing them from the graph.
-    List<Node> leaves = nodes.values().stream().filter(Node::isLeaf).collect(Collectors.toList());
-    leaves.forEach(leaf -> {
-      leaf.callers.forEach(caller -> caller.callees.remove(leaf));
-      nodes.remove(leaf.method);
+    breakers.forEach((method, callees) -> {
+      Node caller = nodes.get(method);
+      for (DexEncodedMethod calleeMethod : callees) {
+        Node callee = nodes.get(calleeMethod);
+        if (caller == null || callee == null) {
+          continue;
+        }
+        // The removed edges all point to an ancestor in the depth first traversal of
+        // breakCycles, so reversing some of them cannot introduce a cycle.
+        if (levels.get(callee) < levels.get(caller)) {
+          addDependency(caller, callee);
+        } else {
+          addDependency(callee, caller);
+        }
+      }
     });
-    return shuffle.apply(leaves.stream().map(leaf -> leaf.method).collect(Collectors.toList()));
+    return nodes.values().stream().filter(node -> node.blockers == 0)
+        .collect(Collectors.toList());
   }
 
   private int traverse(Node node, Set<Node> stack, Set<Node> marked) {
@@ -293,18 +384,125 @@ public class CallGraph {
     return nodes.size() == 0;
   }
 
+  /**
+   * Apply the consumer to all methods in the graph, processing a method after all of its callees.
+   * <p>
+   * Methods are submitted to the executor as soon as the methods they depend on have been
+   * processed, so a single slow method only holds back its callers. The graph is consumed.
+   */
   public void forEachMethod(Consumer<DexEncodedMethod> consumer, ExecutorService executorService)
       throws ExecutionException {
-    while (!isEmpty()) {
-      List<DexEncodedMethod> methods = extractLeaves();
-      assert methods.size() > 0;
-      List<Future<?>> futures = new ArrayList<>();
+    if (isEmpty()) {
+      return;
+    }
+    Scheduler scheduler = new Scheduler(consumer, executorService);
+    long start = System.nanoTime();
+    scheduler.run(computeDependencies());
+    long wallTime = System.nanoTime() - start;
+    int threads = getParallelism(executorService);
+    busyTime = scheduler.busyTime;
+    idleTime = Math.max(0, wallTime * threads - busyTime) / threads;
+    nodes.clear();
+  }
+
+  /**
+   * Returns the time the executor threads were idle during the last call to forEachMethod, in
+   * nanoseconds, averaged over all threads.
+   */
+  public long getIdleTime() {
+    return idleTime;
+  }
+
+  /**
+   * Returns the total time spent processing methods during the last call to forEachMethod, in
+   * nanoseconds, summed over all threads.
+   */
+  public long getBusyTime() {
+    return busyTime;
+  }
+
+  private static int getParallelism(ExecutorService executorService) {
+    if (executorService instanceof ForkJoinPool) {
+      return ((ForkJoinPool) executorService).getParallelism();
+    }
+    if (executorService instanceof ThreadPoolExecutor) {
+      return ((ThreadPoolExecutor) executorService).getMaximumPoolSize();
+    }
+    return 1;
+  }
+
+  private class Scheduler {
+
+    private final Consumer<DexEncodedMethod> consumer;
+    private final ExecutorService executorService;
+
+    // All fields below are guarded by this.
+    private int remaining = nodes.size();
+    private int running = 0;
+    private Throwable failure = null;
+    private long busyTime = 0;
+
+    private Scheduler(Consumer<DexEncodedMethod> consumer, ExecutorService executorService) {
+      this.consumer = consumer;
+      this.executorService = executorService;
+    }
+
+    private synchronized void run(List<Node> roots) throws ExecutionException {
+      submit(roots);
+      while (remaining > 0 && (failure == null || running > 0)) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          throw new RuntimeException("Interrupted while waiting for methods to be processed.", e);
+        }
+      }
+      if (failure != null) {
+        throw new ExecutionException(failure);
+      }
+    }
+
+    // Must be called while holding the lock.
+    private void submit(List<Node> ready) {
+      if (failure != null || ready.isEmpty()) {
+        return;
+      }
+      List<DexEncodedMethod> methods = shuffle.apply(
+          ready.stream().map(node -> node.method).collect(Collectors.toList()));
       for (DexEncodedMethod method : methods) {
-        futures.add(executorService.submit(() -> {
-          consumer.accept(method);
-        }));
+        Node node = nodes.get(method);
+        running++;
+        executorService.submit(() -> process(node));
+      }
+    }
+
+    private void process(Node node) {
+      long start = System.nanoTime();
+      Throwable error = null;
+      try {
+        consumer.accept(node.method);
+      } catch (Throwable e) {
+        error = e;
+      }
+      long duration = System.nanoTime() - start;
+      synchronized (this) {
+        busyTime += duration;
+        running--;
+        remaining--;
+        if (error != null) {
+          if (failure == null) {
+            failure = error;
+          }
+        } else {
+          List<Node> ready = new ArrayList<>();
+          for (Node waiter : node.waiters) {
+            if (--waiter.blockers == 0) {
+              ready.add(waiter);
+            }
+          }
+          submit(ready);
+        }
+        notifyAll();
       }
-      ThreadUtils.awaitFutures(futures);
     }
   }
 
@@ -346,6 +544,9 @@ public class CallGraph {
     }
 
     private void addTarget(DexEncodedMethod target) {
+      if (graph.restriction != null && !graph.restriction.contains(target)) {
+        return;
+      }
       Node callee = graph.ensureMethodNode(target);
       graph.addCall(caller, callee);
     }
@@ -0,0 +1,100 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.conversion;
+
+import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.graph.DexCode;
+import com.android.tools.r8.graph.DexDebugEntry;
+import com.android.tools.r8.graph.DexDebugInfo;
+import java.util.List;
+
+/**
+ * The information {@link DexSourceCode} derives from the instructions and the debug info of a
+ * {@link DexCode} before building IR for it.
+ *
+ * <p>Instances are immutable, so they can be shared between all the times IR is built from the
+ * same code, see {@link DecodedDexCodeCache}.
+ */
+class DecodedDexCode {
+
+  private static final int[] NO_PAYLOADS = new int[0];
+
+  final DexDebugInfo debugInfo;
+  // Indices of the payload instructions in the instruction array.
+  final int[] payloadIndices;
+  // The debug entry at the offset of each instruction, or null if there is none. The array itself
+  // is null if the code has no debug info.
+  final DexDebugEntry[] debugEntries;
+  private final int numberOfDebugEntries;
+
+  private DecodedDexCode(DexDebugInfo debugInfo, int[] payloadIndices,
+      DexDebugEntry[] debugEntries, int numberOfDebugEntries) {
+    this.debugInfo = debugInfo;
+    this.payloadIndices = payloadIndices;
+    this.debugEntries = debugEntries;
+    this.numberOfDebugEntries = numberOfDebugEntries;
+  }
+
+  static DecodedDexCode decode(DexCode code) {
+    Instruction[] instructions = code.instructions;
+    int numberOfPayloads = 0;
+    for (Instruction instruction : instructions) {
+      if (instruction.isPayload()) {
+        numberOfPayloads++;
+      }
+    }
+    int[] payloadIndices = NO_PAYLOADS;
+    if (numberOfPayloads > 0) {
+      payloadIndices = new int[numberOfPayloads];
+      int next = 0;
+      for (int index = 0; index < instructions.length; index++) {
+        if (instructions[index].isPayload()) {
+          payloadIndices[next++] = index;
+        }
+      }
+    }
+    DexDebugInfo debugInfo = code.getDebugInfo();
+    if (debugInfo == null) {
+      return new DecodedDexCode(null, payloadIndices, null, 0);
+    }
+    List<DexDebugEntry> entries = debugInfo.computeEntries();
+    if (entries.isEmpty()) {
+      return new DecodedDexCode(debugInfo, payloadIndices, null, 0);
+    }
+    // Both the instructions and the entries are sorted by address. An instruction gets the first
+    // entry at its offset.
+    DexDebugEntry[] debugEntries = new DexDebugEntry[instructions.length];
+    int entryIndex = 0;
+    for (int index = 0; index < instructions.length && entryIndex < entries.size(); index++) {
+      int offset = instructions[index].getOffset();
+      while (entryIndex < entries.size() && entries.get(entryIndex).address < offset) {
+        entryIndex++;
+      }
+      if (entryIndex < entries.size() && entries.get(entryIndex).address == offset) {
+        debugEntries[index] = entries.get(entryIndex);
+      }
+    }
+    return new DecodedDexCode(debugInfo, payloadIndices, debugEntries, entries.size());
+  }
+
+  /**
+   * Whether this is still the decoding of the given code, from which it was decoded. The debug
+   * info of a code can be replaced after it was decoded.
+   */
+  boolean isDecodingOf(DexCode code) {
+    return debugInfo == code.getDebugInfo();
+  }
+
+  /**
+   * Rough estimate of the number of bytes retained by this object, not counting the debug info,
+   * which is owned by the code.
+   */
+  int estimatedSize() {
+    int size = 32 + 4 * payloadIndices.length;
+    if (debugEntries != null) {
+      size += 4 * debugEntries.length + 48 * numberOfDebugEntries;
+    }
+    return size;
+  }
+}
@@ -0,0 +1,53 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.conversion;
+
+import com.android.tools.r8.graph.DexCode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the decoded form of the code of methods, used by R8 where the IR of a method
+ * is built many times: once for each caller it is inlined into, again for the double inlining
+ * and again for outlining.
+ *
+ * <p>Entries are weakly keyed by the code they were decoded from, so an entry goes away with the
+ * code, e.g., when a method gets its processed code. The least recently used entries are evicted
+ * when the estimated size of all entries exceeds the maximum size.
+ */
+public class DecodedDexCodeCache {
+
+  private final Cache<DexCode, DecodedDexCode> cache;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public DecodedDexCodeCache(long maximumSize) {
+    cache = CacheBuilder.newBuilder()
+        .weakKeys()
+        .maximumWeight(maximumSize)
+        .weigher((DexCode code, DecodedDexCode decoded) -> decoded.estimatedSize())
+        .build();
+  }
+
+  DecodedDexCode get(DexCode code) {
+    DecodedDexCode decoded = cache.getIfPresent(code);
+    if (decoded == null || !decoded.isDecodingOf(code)) {
+      misses.incrementAndGet();
+      decoded = DecodedDexCode.decode(code);
+      cache.put(code, decoded);
+    } else {
+      hits.incrementAndGet();
+    }
+    return decoded;
+  }
+
+  public long hitCount() {
+    return hits.get();
+  }
+
+  public long missCount() {
+    return misses.get();
+  }
+}
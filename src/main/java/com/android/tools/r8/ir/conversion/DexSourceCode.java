@@ -26,6 +26,7 @@ import com.android.tools.r8.code.MoveResultObject;
 import com.android.tools.r8.code.MoveResultWide;
 import com.android.tools.r8.code.SwitchPayload;
 import com.android.tools.r8.code.Throw;
+import com.android.tools.r8.errors.Unreachable;
 import com.android.tools.r8.graph.DebugLocalInfo;
 import com.android.tools.r8.graph.DexAccessFlags;
 import com.android.tools.r8.graph.DexCode;
@@ -33,7 +34,6 @@ import com.android.tools.r8.graph.DexCode.Try;
 import com.android.tools.r8.graph.DexCode.TryHandler;
 import com.android.tools.r8.graph.DexCode.TryHandler.TypeAddrPair;
 import com.android.tools.r8.graph.DexDebugEntry;
-import com.android.tools.r8.graph.DexDebugInfo;
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.graph.DexItemFactory;
 import com.android.tools.r8.graph.DexProto;
@@ -41,10 +41,8 @@ import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.ir.code.CatchHandlers;
 import com.android.tools.r8.ir.code.MoveType;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 public class DexSourceCode implements SourceCode {
@@ -52,9 +50,7 @@ public class DexSourceCode implements SourceCode {
   private final DexCode code;
   private final DexAccessFlags accessFlags;
   private final DexProto proto;
-
-  // Mapping from instruction offset to instruction index in the DexCode instruction array.
-  private final Map<Integer, Integer> offsetToInstructionIndex = new HashMap<>();
+  private final DecodedDexCode decoded;
 
   private final SwitchPayloadResolver switchPayloadResolver = new SwitchPayloadResolver();
   private final ArrayFilledDataPayloadResolver arrayFilledDataPayloadResolver =
@@ -66,17 +62,16 @@ public class DexSourceCode implements SourceCode {
 
   private final List<MoveType> argumentTypes;
 
-  private List<DexDebugEntry> debugEntries = null;
-
   public DexSourceCode(DexCode code, DexEncodedMethod method) {
+    this(code, method, null);
+  }
+
+  public DexSourceCode(DexCode code, DexEncodedMethod method, DecodedDexCodeCache cache) {
     this.code = code;
     this.proto = method.method.proto;
     this.accessFlags = method.accessFlags;
+    this.decoded = cache == null ? DecodedDexCode.decode(code) : cache.get(code);
     argumentTypes = computeArgumentTypes();
-    DexDebugInfo info = code.getDebugInfo();
-    if (info != null) {
-      debugEntries = info.computeEntries();
-    }
   }
 
   @Override
@@ -103,15 +98,12 @@ public class DexSourceCode implements SourceCode {
   @Override
   public void setUp() {
     // Collect all payloads in the instruction stream.
-    for (int index = 0; index < code.instructions.length; index++) {
+    for (int index : decoded.payloadIndices) {
       Instruction insn = code.instructions[index];
-      offsetToInstructionIndex.put(insn.getOffset(), index);
-      if (insn.isPayload()) {
-        if (insn.isSwitchPayload()) {
-          switchPayloadResolver.resolve((SwitchPayload) insn);
-        } else {
-          arrayFilledDataPayloadResolver.resolve((FillArrayDataPayload) insn);
-        }
+      if (insn.isSwitchPayload()) {
+        switchPayloadResolver.resolve((SwitchPayload) insn);
+      } else {
+        arrayFilledDataPayloadResolver.resolve((FillArrayDataPayload) insn);
       }
     }
   }
@@ -186,18 +178,12 @@ public class DexSourceCode implements SourceCode {
   }
 
   private void emitDebugPosition(int instructionIndex, IRBuilder builder) {
-    if (debugEntries == null || debugEntries.isEmpty()) {
+    if (decoded.debugEntries == null) {
       return;
     }
-    int offset = instructionOffset(instructionIndex);
-    for (DexDebugEntry entry : debugEntries) {
-      if (entry.address == offset) {
-        builder.updateCurrentDebugPosition(entry.line, entry.sourceFile);
-        return;
-      }
-      if (entry.address > offset) {
-        return;
-      }
+    DexDebugEntry entry = decoded.debugEntries[instructionIndex];
+    if (entry != null) {
+      builder.updateCurrentDebugPosition(entry.line, entry.sourceFile);
     }
   }
 
@@ -209,7 +195,22 @@ public class DexSourceCode implements SourceCode {
 
   @Override
   public int instructionIndex(int instructionOffset) {
-    return offsetToInstructionIndex.get(instructionOffset);
+    // The instructions are sorted by offset.
+    Instruction[] instructions = code.instructions;
+    int low = 0;
+    int high = instructions.length - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int offset = instructions[middle].getOffset();
+      if (offset < instructionOffset) {
+        low = middle + 1;
+      } else if (offset > instructionOffset) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    throw new Unreachable("No instruction at offset " + instructionOffset);
   }
 
   @Override
@@ -286,7 +287,7 @@ public class DexSourceCode implements SourceCode {
       if (tryRange != null) {
         // Ensure the block starts at the start of the try-range (don't enqueue, not a target).
         int tryRangeStartAddress = tryRange.startAddress;
-        if (isMoveResult(code.instructions[offsetToInstructionIndex.get(tryRangeStartAddress)])) {
+        if (isMoveResult(code.instructions[instructionIndex(tryRangeStartAddress)])) {
           // If a handler range starts at a move result instruction it is safe to start it at
           // the following instruction since the move-result cannot throw an exception. Doing so
           // makes sure that we do not split an invoke and its move result instruction across
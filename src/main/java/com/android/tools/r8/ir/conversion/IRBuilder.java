@@ -79,6 +79,8 @@ import com.android.tools.r8.ir.code.Value.DebugInfo;
 import com.android.tools.r8.ir.code.ValueNumberGenerator;
 import com.android.tools.r8.ir.code.Xor;
 import com.android.tools.r8.utils.InternalOptions;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceAVLTreeMap;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceMap;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceSortedMap;
@@ -89,6 +91,7 @@ import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.ints.IntSet;
 import it.unimi.dsi.fastutil.longs.Long2ObjectArrayMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -244,10 +247,10 @@ public class IRBuilder {
   private BasicBlock currentBlock = null;
 
   // Mappings for canonicalizing constants of a given type at IR construction time.
-  private Long2ObjectMap<ConstNumber> intConstants = new Long2ObjectArrayMap<>();
-  private Long2ObjectMap<ConstNumber> longConstants = new Long2ObjectArrayMap<>();
-  private Long2ObjectMap<ConstNumber> floatConstants = new Long2ObjectArrayMap<>();
-  private Long2ObjectMap<ConstNumber> doubleConstants = new Long2ObjectArrayMap<>();
+  private Long2ObjectMap<ConstNumber> intConstants = new Long2ObjectOpenHashMap<>();
+  private Long2ObjectMap<ConstNumber> longConstants = new Long2ObjectOpenHashMap<>();
+  private Long2ObjectMap<ConstNumber> floatConstants = new Long2ObjectOpenHashMap<>();
+  private Long2ObjectMap<ConstNumber> doubleConstants = new Long2ObjectOpenHashMap<>();
   private Long2ObjectMap<ConstNumber> nullConstants = new Long2ObjectArrayMap<>();
 
   private List<BasicBlock> exitBlocks = new ArrayList<>();
@@ -1274,7 +1277,8 @@ public class IRBuilder {
     // Compute target blocks for all keys. Only add a successor block once even
     // if it is hit by more of the keys.
     int[] targetBlockIndices = new int[targetOffsets.length];
-    Map<Integer, Integer> offsetToBlockIndex = new HashMap<>();
+    Int2IntMap offsetToBlockIndex = new Int2IntOpenHashMap();
+    offsetToBlockIndex.defaultReturnValue(-1);
     // Start with fall-through block.
     BasicBlock fallthroughBlock = getTarget(fallthroughOffset);
     currentBlock.link(fallthroughBlock);
@@ -1285,8 +1289,8 @@ public class IRBuilder {
     for (int i = 0; i < targetOffsets.length; i++) {
       int targetOffset = targetOffsets[i];
       BasicBlock targetBlock = getTarget(targetOffset);
-      Integer targetBlockIndex = offsetToBlockIndex.get(targetOffset);
-      if (targetBlockIndex == null) {
+      int targetBlockIndex = offsetToBlockIndex.get(targetOffset);
+      if (targetBlockIndex == -1) {
         // Target block not added as successor. Add it now.
         currentBlock.link(targetBlock);
         addToWorklist(targetBlock, source.instructionIndex(targetOffset));
@@ -19,7 +19,9 @@ import com.android.tools.r8.graph.DexProgramClass;
 import com.android.tools.r8.graph.DexString;
 import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.graph.GraphLense;
+import com.android.tools.r8.ir.code.BasicBlock;
 import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.conversion.PassMetrics.MethodMetrics;
 import com.android.tools.r8.ir.desugar.InterfaceMethodRewriter;
 import com.android.tools.r8.ir.desugar.LambdaRewriter;
 import com.android.tools.r8.ir.optimize.CodeRewriter;
@@ -29,6 +31,7 @@ import com.android.tools.r8.ir.optimize.Inliner.Constraint;
 import com.android.tools.r8.ir.optimize.MemberValuePropagation;
 import com.android.tools.r8.ir.optimize.Outliner;
 import com.android.tools.r8.ir.optimize.PeepholeOptimizer;
+import com.android.tools.r8.ir.optimize.SparseConditionalConstantPropagation;
 import com.android.tools.r8.ir.regalloc.LinearScanRegisterAllocator;
 import com.android.tools.r8.ir.regalloc.RegisterAllocator;
 import com.android.tools.r8.logging.Log;
@@ -46,6 +49,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 
 public class IRConverter {
@@ -66,7 +70,14 @@ public class IRConverter {
   private final LensCodeRewriter lensCodeRewriter;
   private final Inliner inliner;
   private final ProtoLitePruner protoLiteRewriter;
+  private final PassMetrics passMetrics;
+  // Decoding of the dex code of methods, kept for building their IR again, e.g., when inlining.
+  private final DecodedDexCodeCache decodedCodeCache;
   private CallGraph callGraph;
+  // Counted by the converting threads and added to the timings after each phase, so that the
+  // threads do not contend for the timings on every method.
+  private final LongAdder methodsConverted = new LongAdder();
+  private final LongAdder methodsOverBudget = new LongAdder();
 
   private OptimizationFeedback ignoreOptimizationFeedback = new OptimizationFeedbackIgnore();
   private DexString highestSortingString;
@@ -89,6 +100,8 @@ public class IRConverter {
     this.graphLense = graphLense != null ? graphLense : GraphLense.getIdentityLense();
     this.options = options;
     this.printer = printer;
+    this.passMetrics =
+        options.printPassMetrics ? new PassMetrics(options.passMetricsSlowestMethods) : null;
     this.codeRewriter = new CodeRewriter(appInfo, libraryMethodsReturningReceiver());
     this.lambdaRewriter = enableDesugaring ? new LambdaRewriter(this) : null;
     this.interfaceMethodRewriter =
@@ -96,7 +109,11 @@ public class IRConverter {
             ? new InterfaceMethodRewriter(this) : null;
     if (enableWholeProgramOptimizations) {
       assert appInfo.hasSubtyping();
-      this.inliner = new Inliner(appInfo.withSubtyping(), graphLense, options);
+      this.decodedCodeCache = options.decodedCodeCacheSize > 0
+          ? new DecodedDexCodeCache(options.decodedCodeCacheSize)
+          : null;
+      this.inliner =
+          new Inliner(appInfo.withSubtyping(), graphLense, options, decodedCodeCache);
       this.outliner = new Outliner(appInfo, options);
       this.memberValuePropagation = new MemberValuePropagation(appInfo);
       this.lensCodeRewriter = new LensCodeRewriter(graphLense, appInfo.withSubtyping());
@@ -106,6 +123,7 @@ public class IRConverter {
         this.protoLiteRewriter = null;
       }
     } else {
+      this.decodedCodeCache = null;
       this.inliner = null;
       this.outliner = null;
       this.memberValuePropagation = null;
@@ -214,6 +232,7 @@ public class IRConverter {
     removeLambdaDeserializationMethods();
 
     convertClassesToDex(application.classes(), executor);
+    reportPassMetrics();
 
     // Build a new application with jumbo string info,
     Builder builder = new Builder(application);
@@ -233,6 +252,7 @@ public class IRConverter {
     }
 
     ThreadUtils.awaitFutures(futures);
+    countMethods();
 
     // Get rid of <clinit> methods with no code.
     removeEmptyClassInitializers();
@@ -279,6 +299,8 @@ public class IRConverter {
           processMethod(method, directFeedback,
               outliner == null ? Outliner::noProcessing : outliner::identifyCandidates);
     }, executorService);
+    timing.add("Idle time per thread", callGraph.getIdleTime());
+    countMethods();
     timing.end();
 
     // Get rid of <clinit> methods with no code.
@@ -290,7 +312,9 @@ public class IRConverter {
 
     // Second inlining pass for dealing with double inline callers.
     if (inliner != null) {
-      inliner.processDoubleInlineCallers(this, ignoreOptimizationFeedback);
+      timing.begin("Double inlining");
+      inliner.processDoubleInlineCallers(this, executorService, ignoreOptimizationFeedback);
+      timing.end();
     }
 
     synthesizeLambdaClasses(builder);
@@ -300,7 +324,7 @@ public class IRConverter {
       timing.begin("IR conversion phase 2");
       // Compile all classes flagged for outlining and
       // add the outline support class IF needed.
-      DexProgramClass outlineClass = prepareOutlining();
+      DexProgramClass outlineClass = prepareOutlining(executorService);
       if (outlineClass != null) {
         // We need a new call graph to ensure deterministic order and also processing inside out
         // to get maximal inlining. Use a identity lense, as the code has been rewritten.
@@ -316,15 +340,65 @@ public class IRConverter {
           processMethod(method, ignoreOptimizationFeedback, outliner::applyOutliningCandidate);
           assert method.isProcessed();
         }, executorService);
+        timing.add("Idle time per thread", callGraph.getIdleTime());
+        countMethods();
         builder.addSynthesizedClass(outlineClass, true);
         clearDexMethodCompilationState(outlineClass);
       }
       timing.end();
     }
     clearDexMethodCompilationState();
+    if (inliner != null) {
+      inliner.finishInlineeTemplates(timing);
+    }
+    if (decodedCodeCache != null) {
+      timing.count("Decoded code hits", decodedCodeCache.hitCount());
+      timing.count("Decoded code misses", decodedCodeCache.missCount());
+    }
+    // Methods processed outside of the phases above, e.g., synthesized methods.
+    countMethods();
+    reportPassMetrics();
     return builder.build();
   }
 
+  /**
+   * Process the given methods over the executor, processing a method after the methods it calls.
+   * <p>
+   * The order is computed from the calls between the given methods in the current code, but the
+   * inlining decisions are still based on the call graph of the first round of processing.
+   */
+  public void processMethodsConcurrently(Set<DexEncodedMethod> methods,
+      OptimizationFeedback feedback, BiConsumer<IRCode, DexEncodedMethod> outlineHandler,
+      ExecutorService executorService) throws ExecutionException {
+    CallGraph order = CallGraph
+        .build(methods, appInfo.withSubtyping(), GraphLense.getIdentityLense(), options);
+    order.forEachMethod(method -> {
+      processMethod(method, feedback, outlineHandler);
+      assert method.isProcessed();
+    }, executorService);
+    timing.add("Idle time per thread", order.getIdleTime());
+    countMethods();
+  }
+
+  // Adds the methods counted since the last call to the innermost task of the timings.
+  private void countMethods() {
+    long converted = methodsConverted.sumThenReset();
+    if (converted > 0) {
+      timing.count("Methods converted", converted);
+    }
+    long overBudget = methodsOverBudget.sumThenReset();
+    if (overBudget > 0) {
+      timing.count("Methods over budget", overBudget);
+    }
+  }
+
+  private void reportPassMetrics() {
+    if (passMetrics != null) {
+      passMetrics.addTo(timing);
+      passMetrics.report(System.out);
+    }
+  }
+
   private void removeEmptyClassInitializers() {
     application.classes().forEach(this::removeEmptyClassInitializer);
   }
@@ -357,7 +431,8 @@ public class IRConverter {
       Log.debug(getClass(), "Initial (SSA) flow graph for %s:\n%s", method.toSourceString(), code);
     }
     assert code.isConsistentSSA();
-    RegisterAllocator registerAllocator = performRegisterAllocation(code, method);
+    RegisterAllocator registerAllocator =
+        performRegisterAllocation(code, method, false, PassMetrics.NONE);
     method.setCode(code, registerAllocator, appInfo.dexItemFactory);
     if (Log.ENABLED) {
       Log.debug(getClass(), "Resulting dex code for %s:\n%s",
@@ -380,8 +455,9 @@ public class IRConverter {
     return result;
   }
 
-  private DexProgramClass prepareOutlining() {
-    if (!outliner.selectMethodsForOutlining()) {
+  private DexProgramClass prepareOutlining(ExecutorService executorService)
+      throws ExecutionException {
+    if (!outliner.selectMethodsForOutlining(executorService)) {
       return null;
     }
     DexProgramClass outlineClass = outliner.buildOutlinerClass(computeOutlineClassType());
@@ -426,11 +502,16 @@ public class IRConverter {
       Log.debug(getClass(), "Original code for %s:\n%s",
           method.toSourceString(), logCode(options, method));
     }
-    IRCode code = method.buildIR(options);
+    long startTime = System.nanoTime();
+    MethodMetrics metrics = passMetrics != null ? passMetrics.begin(method) : PassMetrics.NONE;
+    IRCode code = method.buildIR(options, decodedCodeCache);
     if (code == null) {
       feedback.markProcessed(method, Constraint.NEVER);
       return;
     }
+    metrics.after("Build IR", code);
+    methodsConverted.increment();
+    boolean overBudget = exceedsInstructionBudget(code);
     if (Log.ENABLED) {
       Log.debug(getClass(), "Initial (SSA) flow graph for %s:\n%s", method.toSourceString(), code);
     }
@@ -441,39 +522,63 @@ public class IRConverter {
     if (!method.isProcessed()) {
       if (protoLiteRewriter != null && protoLiteRewriter.appliesTo(method)) {
         protoLiteRewriter.rewriteProtoLiteSpecialMethod(code, method);
+        metrics.after("Rewrite proto lite methods");
       }
       if (lensCodeRewriter != null) {
         lensCodeRewriter.rewrite(code, method);
+        metrics.after("Rewrite graph lense references");
       } else {
         assert graphLense.isIdentityLense();
       }
     }
     if (memberValuePropagation != null) {
       memberValuePropagation.rewriteWithConstantValues(code);
+      metrics.after("Member value propagation");
     }
     if (options.removeSwitchMaps && appInfo.hasLiveness()) {
       // TODO(zerny): Should we support removeSwitchMaps in debug mode? b/62936642
       assert !options.debug;
       codeRewriter.removeSwitchMaps(code);
+      metrics.after("Remove switch maps");
     }
     if (options.disableAssertions) {
       codeRewriter.disableAssertions(code);
+      metrics.after("Disable assertions");
     }
-    if (options.inlineAccessors && inliner != null) {
+    overBudget = overBudget || exceedsTimeBudget(startTime);
+    if (options.inlineAccessors && inliner != null && !overBudget) {
       // TODO(zerny): Should we support inlining in debug mode? b/62937285
       assert !options.debug;
       inliner.performInlining(method, code, callGraph);
+      metrics.after("Inlining");
     }
     codeRewriter.removeCastChains(code);
+    metrics.after("Remove cast chains");
     codeRewriter.rewriteLongCompareAndRequireNonNull(code, options);
-    codeRewriter.commonSubexpressionElimination(code);
+    metrics.after("Rewrite long compare and requireNonNull");
+    overBudget = overBudget || exceedsTimeBudget(startTime);
+    if (!overBudget) {
+      codeRewriter.commonSubexpressionElimination(code);
+      metrics.after("Common subexpression elimination");
+    }
     codeRewriter.simplifyArrayConstruction(code);
+    metrics.after("Simplify array construction");
     codeRewriter.rewriteMoveResult(code);
+    metrics.after("Rewrite move result");
+    if (options.propagateConstants) {
+      SparseConditionalConstantPropagation.run(code);
+      metrics.after("Sparse conditional constant propagation");
+    }
     codeRewriter.splitRangeInvokeConstants(code);
+    metrics.after("Split range invoke constants");
     codeRewriter.foldConstants(code);
+    metrics.after("Fold constants");
     codeRewriter.rewriteSwitch(code);
+    metrics.after("Rewrite switch");
     codeRewriter.simplifyIf(code);
+    metrics.after("Simplify if");
     codeRewriter.collectClassInitializerDefaults(method, code);
+    metrics.after("Collect class initializer defaults");
     if (Log.ENABLED) {
       Log.debug(getClass(), "Intermediate (SSA) flow graph for %s:\n%s",
           method.toSourceString(), code);
@@ -482,39 +587,51 @@ public class IRConverter {
     // as a result of those simplifications. The following optimizations could reveal more
     // dead code which is removed right before register allocation in performRegisterAllocation.
     DeadCodeRemover.removeDeadCode(code, codeRewriter, options);
+    metrics.after("Dead code removal after simplification");
     assert code.isConsistentSSA();
 
     if (enableTryWithResourcesDesugaring()) {
       codeRewriter.rewriteThrowableAddAndGetSuppressed(code);
+      metrics.after("Desugar try-with-resources");
     }
 
     if (lambdaRewriter != null) {
       lambdaRewriter.desugarLambdas(method, code);
+      metrics.after("Desugar lambdas");
       assert code.isConsistentSSA();
     }
 
     if (interfaceMethodRewriter != null) {
       interfaceMethodRewriter.rewriteMethodReferences(method, code);
+      metrics.after("Desugar interface methods");
       assert code.isConsistentSSA();
     }
 
-    if (options.outline.enabled) {
+    overBudget = overBudget || exceedsTimeBudget(startTime);
+    if (options.outline.enabled && !overBudget) {
       outlineHandler.accept(code, method);
+      metrics.after("Outlining");
       assert code.isConsistentSSA();
     }
 
     codeRewriter.shortenLiveRanges(code);
+    metrics.after("Shorten live ranges");
     codeRewriter.identifyReturnsArgument(method, code, feedback);
+    metrics.after("Identify returns argument");
 
     // Insert code to log arguments if requested.
     if (options.methodMatchesLogArgumentsFilter(method)) {
       codeRewriter.logArgumentTypes(method, code);
+      metrics.after("Log argument types");
     }
 
     printMethod(code, "Optimized IR (SSA)");
     // Perform register allocation.
-    RegisterAllocator registerAllocator = performRegisterAllocation(code, method);
+    overBudget = overBudget || exceedsTimeBudget(startTime);
+    RegisterAllocator registerAllocator =
+        performRegisterAllocation(code, method, overBudget, metrics);
     method.setCode(code, registerAllocator, appInfo.dexItemFactory);
+    metrics.after("Build dex code");
     updateHighestSortingStrings(method);
     if (Log.ENABLED) {
       Log.debug(getClass(), "Resulting dex code for %s:\n%s",
@@ -528,8 +645,14 @@ public class IRConverter {
       state = Constraint.NEVER;
     } else {
       state = inliner.computeInliningConstraint(code, method);
+      metrics.after("Compute inlining constraint");
     }
     feedback.markProcessed(method, state);
+    metrics.finish();
+    if (overBudget) {
+      options.warningMethodOverBudget(method);
+      methodsOverBudget.increment();
+    }
   }
 
   private synchronized void updateHighestSortingStrings(DexEncodedMethod method) {
@@ -542,22 +665,48 @@ public class IRConverter {
     }
   }
 
-  private RegisterAllocator performRegisterAllocation(IRCode code, DexEncodedMethod method) {
+  private boolean exceedsInstructionBudget(IRCode code) {
+    if (options.methodInstructionBudget < 0) {
+      return false;
+    }
+    int instructions = 0;
+    for (BasicBlock block : code.blocks) {
+      instructions += block.getInstructions().size();
+      if (instructions > options.methodInstructionBudget) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean exceedsTimeBudget(long startTime) {
+    return options.methodTimeBudgetMillis >= 0
+        && System.nanoTime() - startTime > options.methodTimeBudgetMillis * 1000000;
+  }
+
+  private RegisterAllocator performRegisterAllocation(
+      IRCode code, DexEncodedMethod method, boolean singlePass, MethodMetrics metrics) {
     // Always perform dead code elimination before register allocation. The register allocator
     // does not allow dead code (to make sure that we do not waste registers for unneeded values).
     DeadCodeRemover.removeDeadCode(code, codeRewriter, options);
+    metrics.after("Dead code removal before allocation");
     LinearScanRegisterAllocator registerAllocator = new LinearScanRegisterAllocator(code, options);
-    registerAllocator.allocateRegisters(options.debug);
+    registerAllocator.allocateRegisters(options.debug, singlePass);
+    metrics.after("Register allocation");
     printMethod(code, "After register allocation (non-SSA)");
     printLiveRanges(registerAllocator, "Final live ranges.");
     if (!options.debug) {
       CodeRewriter.removedUnneededDebugPositions(code);
+      metrics.after("Remove unneeded debug positions");
     }
     for (int i = 0; i < PEEPHOLE_OPTIMIZATION_PASSES; i++) {
       CodeRewriter.collapsTrivialGotos(method, code);
+      metrics.after("Collapse trivial gotos before peephole");
       PeepholeOptimizer.optimize(code, registerAllocator);
+      metrics.after("Peephole optimization");
     }
     CodeRewriter.collapsTrivialGotos(method, code);
+    metrics.after("Final collapse trivial gotos");
     if (Log.ENABLED) {
       Log.debug(getClass(), "Final (non-SSA) flow graph for %s:\n%s",
           method.toSourceString(), code);
@@ -0,0 +1,188 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.conversion;
+
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.utils.Timing;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Aggregated time and IR size of the passes run by {@link IRConverter} on each method.
+ *
+ * <p>The passes of a method are measured by a {@link MethodMetrics} that is only used by the
+ * thread processing the method. After each pass {@link MethodMetrics#after} records the time
+ * since the previous pass and the number of blocks and instructions. The results are merged into
+ * the shared totals once per method, so the recording threads do not contend for each pass.
+ */
+public class PassMetrics {
+
+  /** Recorder used when pass metrics are not collected. */
+  public static final MethodMetrics NONE = new MethodMetrics(null, null);
+
+  private final int slowestMethodsCount;
+  // Totals per pass in the order the passes were first seen.
+  private final Map<String, PassTotals> passes = new LinkedHashMap<>();
+  // The slowest methods seen so far, the fastest of them first.
+  private final PriorityQueue<MethodTime> slowestMethods =
+      new PriorityQueue<>(Comparator.comparingLong(methodTime -> methodTime.nanos));
+  private long methods = 0;
+
+  public PassMetrics(int slowestMethodsCount) {
+    this.slowestMethodsCount = slowestMethodsCount;
+  }
+
+  /**
+   * Start recording the passes of {@code method}. The first pass must build the IR and be recorded
+   * with {@link MethodMetrics#after(String, IRCode)}.
+   */
+  public MethodMetrics begin(DexEncodedMethod method) {
+    return new MethodMetrics(this, method);
+  }
+
+  private static class PassTotals {
+    long invocations = 0;
+    long nanos = 0;
+    long blocksBefore = 0;
+    long blocksAfter = 0;
+    long instructionsBefore = 0;
+    long instructionsAfter = 0;
+  }
+
+  private static class MethodTime {
+    final String method;
+    final long nanos;
+    final int instructions;
+
+    MethodTime(String method, long nanos, int instructions) {
+      this.method = method;
+      this.nanos = nanos;
+      this.instructions = instructions;
+    }
+  }
+
+  private synchronized void merge(MethodMetrics metrics) {
+    methods++;
+    long nanos = 0;
+    for (int i = 0; i < metrics.passNames.size(); i++) {
+      PassTotals totals = passes.computeIfAbsent(metrics.passNames.get(i), k -> new PassTotals());
+      long[] sample = metrics.samples.get(i);
+      totals.invocations++;
+      totals.nanos += sample[0];
+      nanos += sample[0];
+      totals.blocksBefore += sample[1];
+      totals.blocksAfter += sample[2];
+      totals.instructionsBefore += sample[3];
+      totals.instructionsAfter += sample[4];
+    }
+    if (slowestMethodsCount > 0) {
+      if (slowestMethods.size() < slowestMethodsCount
+          || slowestMethods.peek().nanos < nanos) {
+        slowestMethods.add(
+            new MethodTime(metrics.method.toSourceString(), nanos, metrics.initialInstructions()));
+        if (slowestMethods.size() > slowestMethodsCount) {
+          slowestMethods.poll();
+        }
+      }
+    }
+  }
+
+  /** Add the time of each pass to the innermost task of {@code timing}. */
+  public synchronized void addTo(Timing timing) {
+    passes.forEach((name, totals) -> timing.add(name, totals.nanos));
+  }
+
+  public synchronized void report(PrintStream out) {
+    out.println();
+    out.println("Pass metrics for " + methods + " methods:");
+    out.println(String.format("%-40s %10s %10s %14s %14s",
+        "Pass", "Calls", "Time (ms)", "Blocks", "Instructions"));
+    passes.forEach((name, totals) -> out.println(String.format(
+        "%-40s %10d %10d %6d -> %-6d %6d -> %-6d",
+        name, totals.invocations, totals.nanos / 1000000,
+        totals.blocksBefore, totals.blocksAfter,
+        totals.instructionsBefore, totals.instructionsAfter)));
+    if (!slowestMethods.isEmpty()) {
+      List<MethodTime> slowest = new ArrayList<>(slowestMethods);
+      slowest.sort(
+          Comparator.comparingLong((MethodTime methodTime) -> methodTime.nanos).reversed());
+      out.println();
+      out.println("Slowest " + slowest.size() + " methods:");
+      for (MethodTime methodTime : slowest) {
+        out.println(String.format("%10.3fms %8d instructions  %s",
+            methodTime.nanos / 1000000.0, methodTime.instructions, methodTime.method));
+      }
+    }
+  }
+
+  /** Recorder of the passes run on a single method. Not thread safe. */
+  public static class MethodMetrics {
+
+    private final PassMetrics metrics;
+    private final DexEncodedMethod method;
+    private final List<String> passNames = new ArrayList<>();
+    // For each pass: time, blocks before and after and instructions before and after.
+    private final List<long[]> samples = new ArrayList<>();
+    private IRCode code;
+    private long last;
+    private int blocks = 0;
+    private int instructions = 0;
+
+    private MethodMetrics(PassMetrics metrics, DexEncodedMethod method) {
+      this.metrics = metrics;
+      this.method = method;
+      last = System.nanoTime();
+    }
+
+    // The number of instructions after the IR was built.
+    private int initialInstructions() {
+      return samples.isEmpty() ? 0 : (int) samples.get(0)[4];
+    }
+
+    private void countInstructions() {
+      blocks = code.blocks.size();
+      instructions = 0;
+      for (BasicBlock block : code.blocks) {
+        instructions += block.getInstructions().size();
+      }
+    }
+
+    /** Record that the pass {@code name} has built the IR {@code code}. */
+    public void after(String name, IRCode code) {
+      if (metrics != null) {
+        this.code = code;
+        after(name);
+      }
+    }
+
+    /** Record that the pass {@code name} has run since the previous pass. */
+    public void after(String name) {
+      if (metrics == null) {
+        return;
+      }
+      long time = System.nanoTime() - last;
+      int blocksBefore = blocks;
+      int instructionsBefore = instructions;
+      countInstructions();
+      passNames.add(name);
+      samples.add(new long[] {time, blocksBefore, blocks, instructionsBefore, instructions});
+      // Do not attribute the counting of instructions to the next pass.
+      last = System.nanoTime();
+    }
+
+    /** Record that all passes of the method have run. */
+    public void finish() {
+      if (metrics != null && code != null) {
+        metrics.merge(this);
+      }
+    }
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.graph.Code;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.IRCodeCopier;
+import com.android.tools.r8.ir.code.ValueNumberGenerator;
+import com.android.tools.r8.ir.conversion.DecodedDexCodeCache;
+import com.android.tools.r8.utils.InternalOptions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * IR of small processed methods kept for inlining them into several callers.
+ *
+ * <p>The first time a method is inlined its IR is built as usual. The second time the IR is built
+ * with a fresh value number generator and kept as a template that is never changed. From then on,
+ * each inlining gets a copy of the template, numbered as if it had been built with the value
+ * number generator of the caller.
+ *
+ * <p>Templates are weakly keyed by the code they were built from, so a template goes away with
+ * the code, e.g., when the method is processed again. The least recently used templates are
+ * evicted when the size of the code of all templates exceeds
+ * {@link InternalOptions#inlineeTemplateCacheSize}.
+ */
+class InlineeTemplateCache {
+
+  private static class Template {
+
+    final DexEncodedMethod method;
+    final boolean canCopy;
+    // Null until the method is inlined a second time.
+    final IRCode ir;
+
+    Template(DexEncodedMethod method, boolean canCopy, IRCode ir) {
+      this.method = method;
+      this.canCopy = canCopy;
+      this.ir = ir;
+    }
+  }
+
+  private final InternalOptions options;
+  private final DecodedDexCodeCache decodedCodeCache;
+  private final Cache<Code, Template> templates;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  InlineeTemplateCache(InternalOptions options, DecodedDexCodeCache decodedCodeCache) {
+    this.options = options;
+    this.decodedCodeCache = decodedCodeCache;
+    this.templates = CacheBuilder.newBuilder()
+        .weakKeys()
+        .maximumWeight(options.inlineeTemplateCacheSize)
+        .weigher((Code code, Template template) ->
+            template.ir == null ? 1 : Math.max(1, code.estimatedSizeForInlining()))
+        .build();
+  }
+
+  /**
+   * Builds the IR of a processed method for inlining it.
+   */
+  IRCode buildIR(DexEncodedMethod target, ValueNumberGenerator generator) {
+    assert target.isProcessed();
+    Code code = target.getCode();
+    if (code.estimatedSizeForInlining() > options.inlineeTemplateMaxSize) {
+      return target.buildIR(generator, options, decodedCodeCache);
+    }
+    // The same code could be shared by several methods, and a template is only used for the
+    // method it was built for.
+    Template template = templates.getIfPresent(code);
+    if (template != null && template.method != target) {
+      template = null;
+    }
+    if (template != null && template.ir != null) {
+      hits.incrementAndGet();
+      return IRCodeCopier.copy(template.ir, generator);
+    }
+    misses.incrementAndGet();
+    if (template == null || !template.canCopy) {
+      IRCode ir = target.buildIR(generator, options, decodedCodeCache);
+      if (template == null) {
+        templates.put(code, new Template(target, IRCodeCopier.canCopy(ir), null));
+      }
+      return ir;
+    }
+    IRCode ir = target.buildIR(new ValueNumberGenerator(), options, decodedCodeCache);
+    templates.put(code, new Template(target, true, ir));
+    return IRCodeCopier.copy(ir, generator);
+  }
+
+  /**
+   * Drops all templates, for when no more methods are inlined.
+   */
+  void clear() {
+    templates.invalidateAll();
+  }
+
+  long hitCount() {
+    return hits.get();
+  }
+
+  long missCount() {
+    return misses.get();
+  }
+}
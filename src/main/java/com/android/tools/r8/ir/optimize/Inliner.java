@@ -23,11 +23,13 @@ import com.android.tools.r8.ir.code.InvokeMethod;
 import com.android.tools.r8.ir.code.Value;
 import com.android.tools.r8.ir.code.ValueNumberGenerator;
 import com.android.tools.r8.ir.conversion.CallGraph;
+import com.android.tools.r8.ir.conversion.DecodedDexCodeCache;
 import com.android.tools.r8.ir.conversion.IRConverter;
 import com.android.tools.r8.ir.conversion.LensCodeRewriter;
 import com.android.tools.r8.ir.conversion.OptimizationFeedback;
 import com.android.tools.r8.logging.Log;
 import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.Timing;
 import com.google.common.collect.Sets;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -35,13 +37,16 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
 public class Inliner {
 
   protected final AppInfoWithSubtyping appInfo;
   private final GraphLense graphLense;
   private final InternalOptions options;
+  private final DecodedDexCodeCache decodedCodeCache;
+  private final InlineeTemplateCache templates;
 
   // State for inlining methods which are known to be called twice.
   private boolean applyDoubleInlining = false;
@@ -49,10 +54,23 @@ public class Inliner {
   private final Set<DexEncodedMethod> doubleInlineSelectedTargets = Sets.newIdentityHashSet();
   private final Map<DexEncodedMethod, DexEncodedMethod> doubleInlineeCandidates = new HashMap<>();
 
-  public Inliner(AppInfoWithSubtyping appInfo, GraphLense graphLense, InternalOptions options) {
+  public Inliner(AppInfoWithSubtyping appInfo, GraphLense graphLense, InternalOptions options,
+      DecodedDexCodeCache decodedCodeCache) {
     this.appInfo = appInfo;
     this.graphLense = graphLense;
     this.options = options;
+    this.decodedCodeCache = decodedCodeCache;
+    this.templates = new InlineeTemplateCache(options, decodedCodeCache);
+  }
+
+  /**
+   * Reports the use of the inlinee templates and drops them. Called when no more methods are
+   * inlined.
+   */
+  public void finishInlineeTemplates(Timing timing) {
+    timing.count("Inlinee template hits", templates.hitCount());
+    timing.count("Inlinee template misses", templates.missCount());
+    templates.clear();
   }
 
   private Constraint instructionAllowedForInlining(
@@ -103,17 +121,21 @@ public class Inliner {
     return target.isSamePackage(context);
   }
 
-  synchronized DexEncodedMethod doubleInlining(DexEncodedMethod method,
-      DexEncodedMethod target) {
+  DexEncodedMethod doubleInlining(DexEncodedMethod method, DexEncodedMethod target) {
+    // The double inlining state is only modified while collecting candidates during the first
+    // round. When applying double inlining it is read-only, and the callers are processed
+    // concurrently without holding the lock.
     if (!applyDoubleInlining) {
-      if (doubleInlineeCandidates.containsKey(target)) {
-        // Both calls can be inlined.
-        doubleInlineCallers.add(doubleInlineeCandidates.get(target));
-        doubleInlineCallers.add(method);
-        doubleInlineSelectedTargets.add(target);
-      } else {
-        // First call can be inlined.
-        doubleInlineeCandidates.put(target, method);
+      synchronized (this) {
+        if (doubleInlineeCandidates.containsKey(target)) {
+          // Both calls can be inlined.
+          doubleInlineCallers.add(doubleInlineeCandidates.get(target));
+          doubleInlineCallers.add(method);
+          doubleInlineSelectedTargets.add(target);
+        } else {
+          // First call can be inlined.
+          doubleInlineeCandidates.put(target, method);
+        }
       }
       // Just preparing for double inlining.
       return null;
@@ -126,18 +148,12 @@ public class Inliner {
     return target;
   }
 
-  public synchronized void processDoubleInlineCallers(IRConverter converter,
-      OptimizationFeedback feedback) {
+  public void processDoubleInlineCallers(IRConverter converter, ExecutorService executorService,
+      OptimizationFeedback feedback) throws ExecutionException {
     if (doubleInlineCallers.size() > 0) {
       applyDoubleInlining = true;
-      List<DexEncodedMethod> methods = doubleInlineCallers
-          .stream()
-          .sorted(DexEncodedMethod::slowCompare)
-          .collect(Collectors.toList());
-      for (DexEncodedMethod method : methods) {
-        converter.processMethod(method, feedback, Outliner::noProcessing);
-        assert method.isProcessed();
-      }
+      converter.processMethodsConcurrently(
+          doubleInlineCallers, feedback, Outliner::noProcessing, executorService);
     }
   }
 
@@ -225,18 +241,20 @@ public class Inliner {
       return reason != Reason.SIMPLE;
     }
 
-    public IRCode buildIR(ValueNumberGenerator generator, AppInfoWithSubtyping appInfo,
-        GraphLense graphLense, InternalOptions options) {
+    IRCode buildIR(ValueNumberGenerator generator, AppInfoWithSubtyping appInfo,
+        GraphLense graphLense, InlineeTemplateCache templates, InternalOptions options,
+        DecodedDexCodeCache decodedCodeCache) {
       if (target.isProcessed()) {
         assert target.getCode().isDexCode();
-        return target.buildIR(generator, options);
+        return templates.buildIR(target, generator);
       } else {
         // Build the IR for a yet not processed method, and perform minimal IR processing.
         IRCode code;
         if (target.getCode().isJarCode()) {
           code = target.getCode().asJarCode().buildIR(target, generator, options);
         } else {
-          code = target.getCode().asDexCode().buildIR(target, generator, options);
+          code = target.getCode().asDexCode()
+              .buildIR(target, generator, options, decodedCodeCache);
         }
         new LensCodeRewriter(graphLense, appInfo).rewrite(code, target);
         return code;
@@ -291,7 +309,8 @@ public class Inliner {
               // Calls to init on same class are always OK.
               && target.holder != methodHolder
               // If we are inlining into a constructor, calls to superclass init are OK.
-              && (!methodHolder.isImmediateSubtypeOf(target.holder) || !methodIsConstructor)) {
+              && (!appInfo.typeHierarchy.isImmediateSubtypeOf(methodHolder, target.holder)
+                  || !methodIsConstructor)) {
             return false;
           }
         }
@@ -347,7 +366,8 @@ public class Inliner {
               continue;
             }
             IRCode inlinee = result
-                .buildIR(code.valueNumberGenerator, appInfo, graphLense, options);
+                .buildIR(code.valueNumberGenerator, appInfo, graphLense, templates, options,
+                    decodedCodeCache);
             if (inlinee != null) {
               // TODO(64432527): Get rid of this additional check by improved inlining.
               if (block.hasCatchHandlers() && inlinee.getNormalExitBlock() == null) {
@@ -46,6 +46,7 @@ import com.android.tools.r8.naming.ClassNameMapper;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.StringUtils;
 import com.android.tools.r8.utils.StringUtils.BraceType;
+import com.android.tools.r8.utils.ThreadUtils;
 import com.google.common.collect.Sets;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -55,15 +56,21 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class Outliner {
 
   private final InternalOptions options;
-  private final Map<Outline, List<DexEncodedMethod>> candidates = new HashMap<>();
+  private final Map<Outline, List<DexEncodedMethod>> candidates = new ConcurrentHashMap<>();
   private final Map<Outline, DexMethod> generatedOutlines = new HashMap<>();
   private final Set<DexEncodedMethod> methodsSelectedForOutlining = Sets.newIdentityHashSet();
 
   static final int MAX_IN_SIZE = 5;  // Avoid using ranged calls for outlined code.
+  // Number of candidates checked by each task when selecting the methods for outlining.
+  private static final int SELECTION_CHUNK_SIZE = 1024;
 
   final private AppInfo appInfo;
   final private DexItemFactory dexItemFactory;
@@ -97,6 +104,9 @@ public class Outliner {
     final List<Integer> argumentMap;
     final List<Instruction> templateInstructions = new ArrayList<>();
     final public DexType returnType;
+    // Outlines are hashed and compared many times while collecting the candidates, so the
+    // structural hash is computed once.
+    private final int hash;
 
     private DexProto proto;
 
@@ -120,6 +130,7 @@ public class Outliner {
           assert false : "Unexpected type of instruction in outlining template.";
         }
       }
+      hash = computeHash();
     }
 
     int argumentCount() {
@@ -144,6 +155,12 @@ public class Outliner {
       if (!(other instanceof Outline)) {
         return false;
       }
+      if (this == other) {
+        return true;
+      }
+      if (hash != ((Outline) other).hash) {
+        return false;
+      }
       List<Instruction> instructions0 = this.templateInstructions;
       List<Instruction> instructions1 = ((Outline) other).templateInstructions;
       if (instructions0.size() != instructions1.size()) {
@@ -165,19 +182,24 @@ public class Outliner {
 
     @Override
     public int hashCode() {
-      final int MAX_HASH_INSTRUCTIONS = 5;
+      return hash;
+    }
 
-      int hash = templateInstructions.size();
-      int hashPart = 0;
-      for (int i = 0; i < templateInstructions.size() && i < MAX_HASH_INSTRUCTIONS; i++) {
-        Instruction instruction = templateInstructions.get(i);
+    // The hash only depends on the parts compared by equals, not the values.
+    private int computeHash() {
+      int result = templateInstructions.size();
+      for (Instruction instruction : templateInstructions) {
+        int hashPart = instruction.getClass().getName().hashCode();
         if (instruction.isInvokeMethod()) {
-          hashPart = hashPart << 4;
           hashPart += instruction.asInvokeMethod().getInvokedMethod().hashCode();
+        } else if (instruction.isNewInstance()) {
+          hashPart += instruction.asNewInstance().clazz.hashCode();
         }
-        hash = hash * 3 + hashPart;
+        result = result * 31 + hashPart;
+        result = result * 2 + (instruction.outValue() != null ? 1 : 0);
       }
-      return hash;
+      result = result * 31 + argumentMap.hashCode();
+      return result * 31 + returnType.hashCode();
     }
 
     @Override
@@ -651,9 +673,14 @@ public class Outliner {
     }
 
     protected void handle(int start, int end, Outline outline) {
-      synchronized (candidates) {
-        candidates.computeIfAbsent(outline, k -> new ArrayList<>()).add(method);
-      }
+      // Only lock the entry for this outline.
+      candidates.compute(outline, (key, methods) -> {
+        if (methods == null) {
+          methods = new ArrayList<>();
+        }
+        methods.add(method);
+        return methods;
+      });
     }
   }
 
@@ -741,20 +768,35 @@ public class Outliner {
     }
   }
 
-  public boolean selectMethodsForOutlining() {
+  public boolean selectMethodsForOutlining(ExecutorService executorService)
+      throws ExecutionException {
     assert methodsSelectedForOutlining.size() == 0;
-    List<Outline> toRemove = new ArrayList<>();
-    for (Entry<Outline, List<DexEncodedMethod>> entry : candidates.entrySet()) {
+    // The candidates are checked in chunks over the executor. The result is a set, and the
+    // selected outlines are sorted before they are named, so the order does not matter.
+    List<Entry<Outline, List<DexEncodedMethod>>> entries = new ArrayList<>(candidates.entrySet());
+    List<Future<List<DexEncodedMethod>>> futures = new ArrayList<>();
+    for (int start = 0; start < entries.size(); start += SELECTION_CHUNK_SIZE) {
+      List<Entry<Outline, List<DexEncodedMethod>>> chunk =
+          entries.subList(start, Math.min(start + SELECTION_CHUNK_SIZE, entries.size()));
+      futures.add(executorService.submit(() -> selectMethodsForOutlining(chunk)));
+    }
+    for (List<DexEncodedMethod> selected : ThreadUtils.awaitFutures(futures)) {
+      methodsSelectedForOutlining.addAll(selected);
+    }
+    return methodsSelectedForOutlining.size() > 0;
+  }
+
+  private List<DexEncodedMethod> selectMethodsForOutlining(
+      List<Entry<Outline, List<DexEncodedMethod>>> entries) {
+    List<DexEncodedMethod> selected = new ArrayList<>();
+    for (Entry<Outline, List<DexEncodedMethod>> entry : entries) {
       if (entry.getValue().size() < options.outline.threshold) {
-        toRemove.add(entry.getKey());
+        candidates.remove(entry.getKey());
       } else {
-        methodsSelectedForOutlining.addAll(entry.getValue());
+        selected.addAll(entry.getValue());
       }
     }
-    for (Outline outline : toRemove) {
-      candidates.remove(outline);
-    }
-    return methodsSelectedForOutlining.size() > 0;
+    return selected;
   }
 
   public Set<DexEncodedMethod> getMethodsSelectedForOutlining() {
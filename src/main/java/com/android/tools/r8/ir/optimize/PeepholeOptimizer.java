@@ -10,6 +10,7 @@ import com.android.tools.r8.ir.code.DebugLocalsChange;
 import com.android.tools.r8.ir.code.Goto;
 import com.android.tools.r8.ir.code.IRCode;
 import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionList;
 import com.android.tools.r8.ir.code.InstructionListIterator;
 import com.android.tools.r8.ir.code.MoveType;
 import com.android.tools.r8.ir.code.Value;
@@ -24,7 +25,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -115,8 +115,6 @@ public class PeepholeOptimizer {
     for (int i = 0; i < suffixSize; i++) {
       Instruction instruction = from.previous();
       movedThrowingInstruction = movedThrowingInstruction || instruction.instructionTypeCanThrow();
-      newBlock.getInstructions().addFirst(instruction);
-      instruction.setBlock(newBlock);
       if (instruction.isDebugLocalsChange()) {
         // Replay the debug local changes backwards to compute the entry state.
         assert newBlockEntryLocals != null;
@@ -133,10 +131,15 @@ public class PeepholeOptimizer {
       newBlock.transferCatchHandlers(first);
     }
     for (BasicBlock pred : preds) {
-      LinkedList<Instruction> instructions = pred.getInstructions();
+      InstructionList instructions = pred.getInstructions();
       Instruction exit = instructions.removeLast();
       for (int i = 0; i < suffixSize; i++) {
-        instructions.removeLast();
+        Instruction instruction = instructions.removeLast();
+        // Move the suffix of the first predecessor to the new block.
+        if (pred == first) {
+          newBlock.getInstructions().addFirst(instruction);
+          instruction.setBlock(newBlock);
+        }
       }
       instructions.add(exit);
       newBlock.getPredecessors().add(pred);
@@ -0,0 +1,417 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.ConstNumber;
+import com.android.tools.r8.ir.code.ConstType;
+import com.android.tools.r8.ir.code.Goto;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.If;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionListIterator;
+import com.android.tools.r8.ir.code.JumpInstruction;
+import com.android.tools.r8.ir.code.MoveType;
+import com.android.tools.r8.ir.code.Phi;
+import com.android.tools.r8.ir.code.Switch;
+import com.android.tools.r8.ir.code.Value;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sparse conditional constant propagation (Wegman and Zadeck).
+ *
+ * <p>Each value is mapped to an element of the lattice top (not yet known), constant, or bottom
+ * (not constant). Starting from the entry block, blocks are only visited when an edge to them is
+ * found to be executable, and a phi is the meet of its operands on the executable edges only. An
+ * if or a switch with a constant condition only makes the edge to its target executable. Values
+ * are revisited through their users when their lattice element goes down, so constants propagate
+ * through phis and loops in one sweep.
+ *
+ * <p>Afterwards, constant values are replaced by constant instructions, ifs and switches with a
+ * constant condition are replaced by gotos and blocks that are not executable are removed. Values
+ * with local information are never considered constant, so the locals are not changed.
+ */
+public class SparseConditionalConstantPropagation {
+
+  private static class LatticeElement {
+
+    static final LatticeElement BOTTOM = new LatticeElement(null);
+
+    // Null for bottom. Top is represented by having no lattice element.
+    final ConstNumber constant;
+
+    LatticeElement(ConstNumber constant) {
+      this.constant = constant;
+    }
+
+    boolean isConstant() {
+      return constant != null;
+    }
+
+    boolean isSameConstant(LatticeElement other) {
+      if (!isConstant() || !other.isConstant()
+          || constant.getRawValue() != other.constant.getRawValue()) {
+        return false;
+      }
+      // A constant of unknown precise type, such as the int or float constant of a const
+      // instruction, is the same as a constant of a precise type of the same size, such as the
+      // result of folding an int instruction.
+      ConstType type = constant.type;
+      ConstType otherType = other.constant.type;
+      return type == otherType
+          || ((isImprecise(type) || isImprecise(otherType))
+              && MoveType.fromConstType(type) == MoveType.fromConstType(otherType));
+    }
+
+    private static boolean isImprecise(ConstType type) {
+      return type == ConstType.INT_OR_FLOAT || type == ConstType.LONG_OR_DOUBLE;
+    }
+  }
+
+  private final IRCode code;
+  private final Map<Value, LatticeElement> lattice = new HashMap<>();
+  private final Set<BasicBlock> executableBlocks = new HashSet<>();
+  private final Map<BasicBlock, Set<BasicBlock>> executablePredecessors = new HashMap<>();
+  private final Deque<BasicBlock> blockWorklist = new ArrayDeque<>();
+  private final Deque<Value> valueWorklist = new ArrayDeque<>();
+
+  private SparseConditionalConstantPropagation(IRCode code) {
+    this.code = code;
+  }
+
+  public static void run(IRCode code) {
+    SparseConditionalConstantPropagation propagation =
+        new SparseConditionalConstantPropagation(code);
+    propagation.analyze();
+    propagation.rewrite();
+    assert code.isConsistentSSA();
+  }
+
+  private void analyze() {
+    blockWorklist.add(code.blocks.getFirst());
+    while (!blockWorklist.isEmpty() || !valueWorklist.isEmpty()) {
+      while (!blockWorklist.isEmpty()) {
+        BasicBlock block = blockWorklist.poll();
+        // Phis are visited for each new executable edge, instructions only the first time.
+        for (Phi phi : block.getPhis()) {
+          visitPhi(phi);
+        }
+        if (executableBlocks.add(block)) {
+          for (Instruction instruction : block.getInstructions()) {
+            visitInstruction(instruction);
+          }
+        }
+      }
+      while (!valueWorklist.isEmpty()) {
+        Value value = valueWorklist.poll();
+        for (Phi phi : value.uniquePhiUsers()) {
+          if (executableBlocks.contains(phi.getBlock())) {
+            visitPhi(phi);
+          }
+        }
+        for (Instruction user : value.uniqueUsers()) {
+          if (executableBlocks.contains(user.getBlock())) {
+            visitInstruction(user);
+          }
+        }
+      }
+    }
+  }
+
+  private LatticeElement getLatticeElement(Value value) {
+    return lattice.get(value);
+  }
+
+  private void setLatticeElement(Value value, LatticeElement element) {
+    if (element == null) {
+      return;
+    }
+    LatticeElement current = lattice.get(value);
+    if (current == element
+        || current == LatticeElement.BOTTOM
+        || (current != null && current.isSameConstant(element))) {
+      return;
+    }
+    // Lattice elements only go down, from top to a constant to bottom.
+    lattice.put(value, current == null ? element : LatticeElement.BOTTOM);
+    valueWorklist.add(value);
+  }
+
+  private void addExecutableEdge(BasicBlock from, BasicBlock to) {
+    if (executablePredecessors.computeIfAbsent(to, k -> new HashSet<>()).add(from)) {
+      blockWorklist.add(to);
+    }
+  }
+
+  private void visitPhi(Phi phi) {
+    if (phi.getLocalInfo() != null) {
+      setLatticeElement(phi, LatticeElement.BOTTOM);
+      return;
+    }
+    Set<BasicBlock> predecessors = executablePredecessors.get(phi.getBlock());
+    LatticeElement element = null;
+    for (int i = 0; i < phi.getOperands().size(); i++) {
+      if (predecessors == null || !predecessors.contains(phi.getBlock().getPredecessors().get(i))) {
+        continue;
+      }
+      LatticeElement operand = getLatticeElement(phi.getOperand(i));
+      if (operand == null) {
+        continue;
+      }
+      if (element == null) {
+        element = operand;
+      } else if (!element.isSameConstant(operand)) {
+        element = LatticeElement.BOTTOM;
+        break;
+      }
+    }
+    setLatticeElement(phi, element);
+  }
+
+  private void visitInstruction(Instruction instruction) {
+    Value outValue = instruction.outValue();
+    if (outValue != null) {
+      setLatticeElement(outValue, evaluate(instruction));
+    }
+    if (instruction.isJumpInstruction()) {
+      visitExit(instruction.asJumpInstruction());
+    }
+  }
+
+  // Returns the lattice element of the out-value of the instruction, or null for top.
+  private LatticeElement evaluate(Instruction instruction) {
+    if (instruction.outValue().getLocalInfo() != null) {
+      return LatticeElement.BOTTOM;
+    }
+    if (instruction.isConstNumber()) {
+      return new LatticeElement(instruction.asConstNumber());
+    }
+    if (!instruction.isBinop() && !instruction.isUnop()) {
+      return LatticeElement.BOTTOM;
+    }
+    boolean hasTopInValue = false;
+    for (Value inValue : instruction.inValues()) {
+      LatticeElement element = getLatticeElement(inValue);
+      if (element == LatticeElement.BOTTOM) {
+        return LatticeElement.BOTTOM;
+      }
+      hasTopInValue |= element == null;
+    }
+    if (hasTopInValue) {
+      return null;
+    }
+    ConstNumber folded = instruction.fold(code, value -> getLatticeElement(value).constant);
+    return folded == null ? LatticeElement.BOTTOM : new LatticeElement(folded);
+  }
+
+  private void visitExit(JumpInstruction exit) {
+    BasicBlock block = exit.getBlock();
+    // The targets of a block with catch handlers are not pruned, as pruning them would require
+    // updating the catch handlers.
+    if (!block.hasCatchHandlers() && (exit.isIf() || exit.isSwitch())) {
+      boolean hasTopInValue = false;
+      for (Value inValue : exit.inValues()) {
+        hasTopInValue |= getLatticeElement(inValue) == null;
+      }
+      if (hasTopInValue) {
+        // Wait until the condition is known.
+        return;
+      }
+      BasicBlock target = exit.isIf() ? getTarget(exit.asIf()) : getTarget(exit.asSwitch());
+      if (target != null) {
+        addExecutableEdge(block, target);
+        return;
+      }
+    }
+    for (BasicBlock successor : block.getSuccessors()) {
+      addExecutableEdge(block, successor);
+    }
+  }
+
+  // Returns the target of the if if its condition is constant, otherwise null.
+  private BasicBlock getTarget(If theIf) {
+    LatticeElement left = getLatticeElement(theIf.inValues().get(0));
+    if (left == null || !left.isConstant()) {
+      return null;
+    }
+    int leftValue = (int) left.constant.getRawValue();
+    if (theIf.isZeroTest()) {
+      return theIf.targetFromCondition(leftValue);
+    }
+    LatticeElement right = getLatticeElement(theIf.inValues().get(1));
+    if (right == null || !right.isConstant()) {
+      return null;
+    }
+    int rightValue = (int) right.constant.getRawValue();
+    return theIf.targetFromCondition(Integer.compare(leftValue, rightValue));
+  }
+
+  // Returns the target of the switch if its key is constant, otherwise null.
+  private BasicBlock getTarget(Switch theSwitch) {
+    LatticeElement element = getLatticeElement(theSwitch.value());
+    if (element == null || !element.isConstant()) {
+      return null;
+    }
+    int key = (int) element.constant.getRawValue();
+    for (int i = 0; i < theSwitch.numberOfKeys(); i++) {
+      if (theSwitch.getKey(i) == key) {
+        return theSwitch.targetBlock(i);
+      }
+    }
+    return theSwitch.fallthroughBlock();
+  }
+
+  private void rewrite() {
+    // Find the targets of the ifs and switches with a constant condition before the constant
+    // values are replaced.
+    Map<BasicBlock, BasicBlock> targets = new LinkedHashMap<>();
+    List<BasicBlock> unreachableBlocks = new ArrayList<>();
+    for (BasicBlock block : code.blocks) {
+      if (!executableBlocks.contains(block)) {
+        unreachableBlocks.add(block);
+        continue;
+      }
+      JumpInstruction exit = block.exit();
+      if (!block.hasCatchHandlers() && (exit.isIf() || exit.isSwitch())) {
+        BasicBlock target = exit.isIf() ? getTarget(exit.asIf()) : getTarget(exit.asSwitch());
+        if (target != null) {
+          targets.put(block, target);
+        }
+      }
+    }
+    for (BasicBlock block : code.blocks) {
+      if (executableBlocks.contains(block)) {
+        replaceConstantPhis(block);
+        replaceConstantInstructions(block);
+      }
+    }
+    targets.forEach((block, target) -> {
+      if (block.exit().isIf()) {
+        rewriteIf(block.exit().asIf(), target);
+      } else {
+        rewriteSwitch(block.exit().asSwitch(), target);
+      }
+    });
+    removeUnreachableBlocks(unreachableBlocks);
+  }
+
+  private ConstNumber createConstant(Value value) {
+    ConstNumber constant = getLatticeElement(value).constant;
+    return new ConstNumber(
+        constant.type, code.createValue(value.outType()), constant.getRawValue());
+  }
+
+  private boolean isConstant(Value value) {
+    LatticeElement element = getLatticeElement(value);
+    return element != null && element.isConstant();
+  }
+
+  private void replaceConstantPhis(BasicBlock block) {
+    List<Phi> constantPhis = new ArrayList<>();
+    for (Phi phi : block.getPhis()) {
+      if (isConstant(phi)) {
+        constantPhis.add(phi);
+      }
+    }
+    if (constantPhis.isEmpty()) {
+      return;
+    }
+    InstructionListIterator iterator = block.listIterator();
+    if (block.entry().isMoveException()) {
+      iterator.next();
+    }
+    for (Phi phi : constantPhis) {
+      ConstNumber constant = createConstant(phi);
+      iterator.add(constant);
+      phi.replaceUsers(constant.outValue());
+      for (Value operand : phi.getOperands()) {
+        operand.removePhiUser(phi);
+      }
+      block.removePhi(phi);
+    }
+  }
+
+  private void replaceConstantInstructions(BasicBlock block) {
+    InstructionListIterator iterator = block.listIterator();
+    while (iterator.hasNext()) {
+      Instruction instruction = iterator.next();
+      Value outValue = instruction.outValue();
+      if (outValue != null && !instruction.isConstNumber() && isConstant(outValue)) {
+        iterator.replaceCurrentInstruction(createConstant(outValue));
+      }
+    }
+  }
+
+  private void rewriteIf(If theIf, BasicBlock target) {
+    if (theIf.getTrueTarget() == theIf.fallthroughBlock()) {
+      return;
+    }
+    BasicBlock block = theIf.getBlock();
+    BasicBlock deadTarget =
+        target == theIf.getTrueTarget() ? theIf.fallthroughBlock() : theIf.getTrueTarget();
+    block.removeSuccessor(deadTarget);
+    deadTarget.removePredecessor(block);
+    block.replaceLastInstruction(new Goto());
+    assert block.exit().asGoto().getTarget() == target;
+  }
+
+  private void rewriteSwitch(Switch theSwitch, BasicBlock target) {
+    BasicBlock block = theSwitch.getBlock();
+    List<BasicBlock> successors = block.getSuccessors();
+    int targetIndex = successors.indexOf(target);
+    List<Integer> deadIndices = new ArrayList<>();
+    for (int i = 0; i < successors.size(); i++) {
+      if (i != targetIndex) {
+        deadIndices.add(i);
+        successors.get(i).removePredecessor(block);
+      }
+    }
+    block.removeSuccessorsByIndex(deadIndices);
+    block.replaceLastInstruction(new Goto());
+    assert block.exit().asGoto().getTarget() == target;
+  }
+
+  private void removeUnreachableBlocks(List<BasicBlock> unreachableBlocks) {
+    if (unreachableBlocks.isEmpty()) {
+      return;
+    }
+    // Values defined in unreachable blocks are only used in unreachable blocks and in phis of
+    // executable blocks for edges from unreachable blocks, which are removed below.
+    for (BasicBlock block : unreachableBlocks) {
+      for (Phi phi : block.getPhis()) {
+        for (Value operand : phi.getOperands()) {
+          operand.removePhiUser(phi);
+        }
+      }
+      for (Instruction instruction : block.getInstructions()) {
+        for (Value value : instruction.inValues()) {
+          value.removeUser(instruction);
+        }
+        for (Value value : instruction.getDebugValues()) {
+          value.removeDebugUser(instruction);
+        }
+        Value previousLocalValue = instruction.getPreviousLocalValue();
+        if (previousLocalValue != null) {
+          previousLocalValue.removeDebugUser(instruction);
+        }
+      }
+    }
+    for (BasicBlock block : unreachableBlocks) {
+      for (BasicBlock successor : block.getSuccessors()) {
+        if (executableBlocks.contains(successor)) {
+          successor.removePredecessor(block);
+        }
+      }
+    }
+    code.removeBlocks(unreachableBlocks);
+  }
+}
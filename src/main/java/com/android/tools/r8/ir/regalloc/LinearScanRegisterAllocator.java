@@ -25,7 +25,6 @@ import com.android.tools.r8.ir.code.Xor;
 import com.android.tools.r8.logging.Log;
 import com.android.tools.r8.utils.CfgPrinter;
 import com.android.tools.r8.utils.InternalOptions;
-import com.android.tools.r8.utils.ListUtils;
 import com.android.tools.r8.utils.StringUtils;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Multiset;
@@ -38,6 +37,7 @@ import it.unimi.dsi.fastutil.ints.IntArraySet;
 import it.unimi.dsi.fastutil.ints.IntIterator;
 import it.unimi.dsi.fastutil.ints.IntSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
@@ -100,7 +100,7 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
 
     @Override
     public String toString() {
-      return local + " @ r" + register + ": " + new LiveRange(start, end);
+      return local + " @ r" + register + ": [" + start + ", " + end + "[";
     }
   }
 
@@ -169,12 +169,31 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
    * Perform register allocation for the IRCode.
    */
   public void allocateRegisters(boolean debug) {
+    allocateRegisters(debug, false);
+  }
+
+  /**
+   * Perform register allocation for the IRCode.
+   *
+   * <p>If {@code singlePass} is true the allocation disallowing argument reuse is done right away.
+   * This saves the first attempt at allocation, which rarely succeeds for large methods, at the
+   * cost of more registers for methods that would fit in 16 registers.
+   */
+  public void allocateRegisters(boolean debug, boolean singlePass) {
     // There are no linked values prior to register allocation.
     assert noLinkedValues();
     assert code.isConsistentSSA();
     computeNeedsRegister();
     insertArgumentMoves();
     BasicBlock[] blocks = computeLivenessInformation();
+    // If more than 16 registers are live at some point, the attempt allowing argument reuse below
+    // is bound to fail, so in that case the allocation disallowing argument reuse is done right
+    // away as well.
+    if (singlePass || registerPressureExceeds(MAX_SMALL_REGISTER + 1)) {
+      performAllocation(ArgumentReuseMode.DISALLOW_ARGUMENT_REUSE);
+      finishAllocation(debug, blocks);
+      return;
+    }
     // First attempt to allocate register allowing argument reuse. This will fail if spilling
     // is required or if we end up using more than 16 registers.
     boolean noSpilling =
@@ -195,7 +214,55 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
         performAllocation(ArgumentReuseMode.DISALLOW_ARGUMENT_REUSE);
       }
     }
+    finishAllocation(debug, blocks);
+  }
 
+  // Returns true if more than limit registers are needed for the values live at some position.
+  // The argument sentinels do not occupy registers and are not counted.
+  private boolean registerPressureExceeds(int limit) {
+    int count = 0;
+    for (LiveIntervals intervals : liveIntervals) {
+      if (!intervals.hasInfiniteRange()) {
+        count += intervals.numberOfRanges() * intervals.requiredRegisters();
+      }
+    }
+    if (count <= limit) {
+      return false;
+    }
+    int[] starts = new int[count];
+    int[] ends = new int[count];
+    int index = 0;
+    for (LiveIntervals intervals : liveIntervals) {
+      if (!intervals.hasInfiniteRange()) {
+        for (int i = 0; i < intervals.numberOfRanges(); i++) {
+          for (int j = 0; j < intervals.requiredRegisters(); j++) {
+            starts[index] = intervals.getRangeStart(i);
+            ends[index] = intervals.getRangeEnd(i);
+            index++;
+          }
+        }
+      }
+    }
+    Arrays.sort(starts);
+    Arrays.sort(ends);
+    // The ranges are half open, so the ranges ending at a position are no longer live when the
+    // ranges starting at that position become live.
+    int live = 0;
+    int endIndex = 0;
+    for (int start : starts) {
+      while (endIndex < count && ends[endIndex] <= start) {
+        live--;
+        endIndex++;
+      }
+      live++;
+      if (live > limit) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void finishAllocation(boolean debug, BasicBlock[] blocks) {
     clearUserInfo();
     assert code.isConsistentGraph();
     if (Log.ENABLED) {
@@ -208,20 +275,21 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
     clearState();
   }
 
-  private static Integer nextInRange(int start, int end, List<Integer> points) {
-    while (!points.isEmpty() && points.get(0) < start) {
-      points.remove(0);
+  // Returns the index of the first point at or after index from that is not before the position.
+  private static int skipPointsBefore(int position, int[] points, int from) {
+    while (from < points.length && points[from] < position) {
+      from++;
     }
-    if (points.isEmpty()) {
-      return null;
-    }
-    Integer next = points.get(0);
-    assert start <= next;
-    if (next < end) {
-      points.remove(0);
-      return next;
+    return from;
+  }
+
+  private static int[] sortedInstructionNumbers(List<Instruction> instructions) {
+    int[] numbers = new int[instructions.size()];
+    for (int i = 0; i < numbers.length; i++) {
+      numbers[i] = instructions.get(i).getNumber();
     }
-    return null;
+    Arrays.sort(numbers);
+    return numbers;
   }
 
   private void computeDebugInfo(BasicBlock[] blocks) {
@@ -232,24 +300,29 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
       if (value.getLocalInfo() == null) {
         continue;
       }
-      List<Integer> starts = ListUtils.map(value.getDebugLocalStarts(), Instruction::getNumber);
-      List<Integer> ends = ListUtils.map(value.getDebugLocalEnds(), Instruction::getNumber);
-      List<LiveRange> liveRanges = new ArrayList<>();
-      liveRanges.addAll(interval.getRanges());
+      int[] starts = sortedInstructionNumbers(value.getDebugLocalStarts());
+      int[] ends = sortedInstructionNumbers(value.getDebugLocalEnds());
+      // The start and end points are consumed in order while going through the sorted live
+      // ranges of the intervals and all of its splits.
+      int nextStartIndex = 0;
+      int nextEndIndex = 0;
+      List<LiveIntervals> splits = new ArrayList<>();
+      splits.add(interval);
       for (LiveIntervals child : interval.getSplitChildren()) {
         assert child.getValue() == value;
         assert child.getSplitChildren() == null || child.getSplitChildren().isEmpty();
-        liveRanges.addAll(child.getRanges());
-      }
-      liveRanges.sort((r1, r2) -> Integer.compare(r1.start, r2.start));
-      starts.sort(Integer::compare);
-      ends.sort(Integer::compare);
-
-      for (LiveRange liveRange : liveRanges) {
-        int start = liveRange.start;
-        int end = liveRange.end;
-        Integer nextEnd;
-        while ((nextEnd = nextInRange(start, end, ends)) != null) {
+        splits.add(child);
+      }
+      long[] liveRanges = sortedLiveRanges(splits);
+      for (long liveRange : liveRanges) {
+        int start = (int) (liveRange >> 32);
+        int end = (int) liveRange;
+        while (true) {
+          nextEndIndex = skipPointsBefore(start, ends, nextEndIndex);
+          if (nextEndIndex == ends.length || ends[nextEndIndex] >= end) {
+            break;
+          }
+          int nextEnd = ends[nextEndIndex++];
           // If an argument value has been split, we have disallowed argument reuse and therefore,
           // the argument value is also in the argument register throughout the method. For debug
           // information, we always use the argument register whenever a local corresponds to an
@@ -257,12 +330,12 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
           // to lower register.
           int register = getArgumentOrAllocateRegisterForValue(value, start);
           ranges.add(new LocalRange(value, register, start, nextEnd));
-          Integer nextStart = nextInRange(nextEnd, end, starts);
-          if (nextStart == null) {
+          nextStartIndex = skipPointsBefore(nextEnd, starts, nextStartIndex);
+          if (nextStartIndex == starts.length || starts[nextStartIndex] >= end) {
             start = -1;
             break;
           }
-          start = nextStart;
+          start = starts[nextStartIndex++];
         }
         if (start >= 0) {
           ranges.add(new LocalRange(value, getArgumentOrAllocateRegisterForValue(value, start),
@@ -603,6 +676,25 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
     return getRegisterForValue(value, instructionNumber);
   }
 
+  // The live ranges of all the intervals sorted by start, each encoded with the start in the high
+  // bits and the end in the low bits.
+  private static long[] sortedLiveRanges(List<LiveIntervals> intervals) {
+    int count = 0;
+    for (LiveIntervals interval : intervals) {
+      count += interval.numberOfRanges();
+    }
+    long[] result = new long[count];
+    int index = 0;
+    for (LiveIntervals interval : intervals) {
+      for (int i = 0; i < interval.numberOfRanges(); i++) {
+        result[index++] = ((long) interval.getRangeStart(i) << 32)
+            | (interval.getRangeEnd(i) & 0xffffffffL);
+      }
+    }
+    Arrays.sort(result);
+    return result;
+  }
+
   private BasicBlock[] computeLivenessInformation() {
     BasicBlock[] blocks = code.numberInstructions();
     computeLiveAtEntrySets();
@@ -741,14 +833,14 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
       } else {
         // Treat the argument interval as spilled which will require a load to a different
         // register for all register-constrained usages.
-        if (argumentInterval.getUses().size() > 1) {
-          LiveIntervalsUse use = argumentInterval.firstUseWithConstraint();
-          if (use != null) {
+        if (argumentInterval.numberOfUses() > 1) {
+          int use = argumentInterval.firstUseWithConstraint();
+          if (use != LiveIntervals.NO_USE) {
             LiveIntervals split;
             if (argumentInterval.numberOfUsesWithConstraint() == 1) {
               // If there is only one register-constrained use, split before
               // that one use.
-              split = argumentInterval.splitBefore(use.getPosition());
+              split = argumentInterval.splitBefore(use);
             } else {
               // If there are multiple register-constrained users, split right after the definition
               // to make it more likely that arguments get in usable registers from the start.
@@ -798,12 +890,8 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
       }
       if (overlappingMoveExceptionIntervals) {
         for (LiveIntervals intervals : moveExceptionIntervals) {
-          if (intervals.getUses().size() > 1) {
-            LiveIntervalsUse firstUse = intervals.getUses().pollFirst();
-            LiveIntervalsUse secondUse = intervals.getUses().pollFirst();
-            intervals.getUses().add(firstUse);
-            intervals.getUses().add(secondUse);
-            LiveIntervals split = intervals.splitBefore(secondUse.getPosition());
+          if (intervals.numberOfUses() > 1) {
+            LiveIntervals split = intervals.splitBefore(intervals.getUsePosition(1));
             unhandled.add(split);
           }
         }
@@ -1190,8 +1278,9 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
       }
       // If the first use for these intervals is unconstrained, just spill this interval instead
       // of finding another candidate to spill via allocateBlockedRegister.
-      if (!unhandledInterval.getUses().first().hasConstraint()) {
-        int nextConstrainedPosition = unhandledInterval.firstUseWithConstraint().getPosition();
+      if (!unhandledInterval.useHasConstraint(0)) {
+        int nextConstrainedPosition = unhandledInterval.firstUseWithConstraint();
+        assert nextConstrainedPosition != LiveIntervals.NO_USE;
         int register;
         // Arguments are always in the argument registers, so for arguments just use that register
         // for the unconstrained prefix. For everything else, get a spill register.
@@ -1589,10 +1678,10 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
         // spilled. That will allows us to remove it afterwards if it is rematerializable.
         if (intervals.getValue().isConstNumber()
             && intervals.getStart() == intervals.getValue().definition.getNumber()
-            && intervals.getUses().size() == 1) {
+            && intervals.numberOfUses() == 1) {
           intervals.setSpilled(true);
         }
-        if (splitChild.getUses().size() > 0) {
+        if (splitChild.numberOfUses() > 0) {
           if (splitChild.isLinked() && !splitChild.isArgumentInterval()) {
             // Spilling a value with a pinned register. We need to move back at the next use.
             LiveIntervals splitOfSplit = splitChild.splitBefore(splitChild.getFirstUse());
@@ -1619,8 +1708,8 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
     // Argument intervals are spilled to the original argument register. We don't know what
     // that is yet, and therefore we split before the next use to make sure we get a usable
     // register at the next use.
-    if (!spilled.getUses().isEmpty()) {
-      LiveIntervals split = spilled.splitBefore(spilled.getUses().first().getPosition());
+    if (spilled.numberOfUses() > 0) {
+      LiveIntervals split = spilled.splitBefore(spilled.getFirstUse());
       unhandled.add(split);
     }
   }
@@ -1634,11 +1723,11 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
     if (spilled.isArgumentInterval()) {
       registerNumber = Constants.U16BIT_MAX;
     }
-    LiveIntervalsUse firstUseWithLowerLimit = null;
+    int firstUseWithLowerLimit = LiveIntervals.NO_USE;
     boolean hasUsesBeforeFirstUseWithLowerLimit = false;
-    for (LiveIntervalsUse use : spilled.getUses()) {
-      if (registerNumber > use.getLimit()) {
-        firstUseWithLowerLimit = use;
+    for (int i = 0; i < spilled.numberOfUses(); i++) {
+      if (registerNumber > spilled.getUseLimit(i)) {
+        firstUseWithLowerLimit = spilled.getUsePosition(i);
         break;
       } else {
         hasUsesBeforeFirstUseWithLowerLimit = true;
@@ -1647,8 +1736,8 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
     if (hasUsesBeforeFirstUseWithLowerLimit) {
       spilled.setSpilled(false);
     }
-    if (firstUseWithLowerLimit != null) {
-      LiveIntervals splitOfSplit = spilled.splitBefore(firstUseWithLowerLimit.getPosition());
+    if (firstUseWithLowerLimit != LiveIntervals.NO_USE) {
+      LiveIntervals splitOfSplit = spilled.splitBefore(firstUseWithLowerLimit);
       unhandled.add(splitOfSplit);
     }
   }
@@ -1664,7 +1753,7 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
     assert !spilled.isLinked() || spilled.isArgumentInterval();
     // Do not split range if constant is reused by one of the eleven following instruction.
     int maxGapSize = 11 * INSTRUCTION_NUMBER_DELTA;
-    if (!spilled.getUses().isEmpty()) {
+    if (spilled.numberOfUses() > 0) {
       // Split at first use after the spill position and add to unhandled to get a register
       // assigned for rematerialization.
       LiveIntervals split = spilled.splitBefore(spilled.getFirstUse());
@@ -1674,18 +1763,19 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
       while (changed) {
         changed = false;
         int previousUse = split.getStart();
-        for (LiveIntervalsUse use : split.getUses()) {
-          if (use.getPosition() - previousUse > maxGapSize) {
+        for (int i = 0; i < split.numberOfUses(); i++) {
+          int use = split.getUsePosition(i);
+          if (use - previousUse > maxGapSize) {
             // Found a use that is more than gap size away from the previous use. Split after
             // the previous use.
             split = split.splitBefore(previousUse + INSTRUCTION_NUMBER_DELTA);
             // If the next use is not at the start of the new split, we split again at the next use
             // and spill the gap.
-            if (toGapPosition(use.getPosition()) > split.getStart()) {
+            if (toGapPosition(use) > split.getStart()) {
               assignRegister(split, spillRegister);
               split.setSpilled(true);
               inactive.add(split);
-              split = split.splitBefore(use.getPosition());
+              split = split.splitBefore(use);
             }
             // |split| now starts at the next use - add it to unhandled to get a register
             // assigned for rematerialization.
@@ -1694,7 +1784,7 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
             changed = true;
             break;
           }
-          previousUse = use.getPosition();
+          previousUse = use;
         }
       }
     }
@@ -1911,13 +2001,13 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
         // the phi value is defined on the inflowing edge.
         instructionNumber--;
       }
-      intervals.addRange(new LiveRange(instructionNumber, end));
+      intervals.addRange(instructionNumber, end);
       if (!v.isPhi()) {
         int constraint = v.definition.maxOutValueRegister();
-        intervals.addUse(new LiveIntervalsUse(instructionNumber, constraint));
+        intervals.addUse(instructionNumber, constraint);
       }
     } else {
-      intervals.addRange(new LiveRange(firstInstructionInBlock - 1, end));
+      intervals.addRange(firstInstructionInBlock - 1, end);
     }
   }
 
@@ -1969,8 +2059,7 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
           }
           if (use.needsRegister()) {
             LiveIntervals useIntervals = use.getLiveIntervals();
-            useIntervals.addUse(
-                new LiveIntervalsUse(instruction.getNumber(), instruction.maxInValueRegister()));
+            useIntervals.addUse(instruction.getNumber(), instruction.maxInValueRegister());
           }
         }
         if (options.debug) {
@@ -2068,7 +2157,7 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
 
   private LiveIntervals createSentinelLiveInterval(Value sentinelValue) {
     LiveIntervals sentinelInterval = new LiveIntervals(sentinelValue);
-    sentinelInterval.addRange(LiveRange.INFINITE);
+    sentinelInterval.addInfiniteRange();
     liveIntervals.add(sentinelInterval);
     return sentinelInterval;
   }
@@ -2093,7 +2182,7 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
       // instruction to avoid dead arguments without a range. This may create an actually empty
       // range like [0,0[ but that works, too.
       LiveIntervals argumentInterval = new LiveIntervals(current);
-      argumentInterval.addRange(new LiveRange(0, index * INSTRUCTION_NUMBER_DELTA));
+      argumentInterval.addRange(0, index * INSTRUCTION_NUMBER_DELTA);
       index++;
       liveIntervals.add(argumentInterval);
       currentIntervals.link(argumentInterval);
@@ -2231,7 +2320,7 @@ public class LinearScanRegisterAllocator implements RegisterAllocator {
         interval != null;
         interval = sortedIntervals.poll()) {
       Value value = interval.getValue();
-      if (interval.getRanges().get(0).isInfinite()) {
+      if (interval.hasInfiniteRange()) {
         // Skip argument sentinels.
         continue;
       }
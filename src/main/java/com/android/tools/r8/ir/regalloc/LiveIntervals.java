@@ -11,19 +11,35 @@ import com.android.tools.r8.ir.code.MoveType;
 import com.android.tools.r8.ir.code.Value;
 import com.android.tools.r8.utils.CfgPrinter;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.TreeSet;
 
+/**
+ * The live ranges and uses of a value, or of a part of a value after splitting.
+ *
+ * <p>The ranges are stored as pairs of start (inclusive) and end (exclusive) positions in a
+ * single int array, sorted by position. The uses are stored in a long array, each use encoded as
+ * the position in the high bits and the register limit in the low bits. Uses are appended in any
+ * order while computing the live ranges, and the array is sorted and made duplicate free the
+ * first time it is read.
+ */
 public class LiveIntervals {
 
+  // Returned when there is no use.
+  public static final int NO_USE = -1;
+
+  private static final int INFINITE_END = Integer.MAX_VALUE;
+
   private final Value value;
   private LiveIntervals nextConsecutive;
   private LiveIntervals previousConsecutive;
   private LiveIntervals splitParent;
   private List<LiveIntervals> splitChildren = new ArrayList<>();
-  private List<LiveRange> ranges = new ArrayList<>();
-  private TreeSet<LiveIntervalsUse> uses = new TreeSet<>();
+  private int[] ranges = new int[2];
+  private int numberOfRanges = 0;
+  private long[] uses = new long[2];
+  private int numberOfUses = 0;
+  private boolean usesSorted = true;
   private int numberOfConsecutiveRegisters = -1;
   private int register = NO_REGISTER;
   private LiveIntervals hint;
@@ -132,7 +148,15 @@ public class LiveIntervals {
     while (current.previousConsecutive != null) {
       current = current.previousConsecutive;
     }
-    return current.ranges.get(0).isInfinite();
+    return current.hasInfiniteRange();
+  }
+
+  /**
+   * Returns true if these are the intervals of an argument sentinel, which is live for the
+   * entire method.
+   */
+  public boolean hasInfiniteRange() {
+    return numberOfRanges > 0 && ranges[1] == INFINITE_END;
   }
 
 
@@ -188,61 +212,143 @@ public class LiveIntervals {
   /**
    * Add a live range to the intervals.
    *
-   * @param range the range to add
+   * @param start the start of the range (inclusive)
+   * @param end the end of the range (exclusive)
    */
-  public void addRange(LiveRange range) {
-    boolean added = tryAddRange(range);
+  public void addRange(int start, int end) {
+    boolean added = tryAddRange(start, end);
     assert added;
   }
 
-  private boolean tryAddRange(LiveRange range) {
-    if (ranges.size() > 0) {
-      LiveRange lastRange = ranges.get(ranges.size() - 1);
-      if (lastRange.isInfinite()) {
+  /**
+   * Add a live range covering the entire method.
+   */
+  public void addInfiniteRange() {
+    addRange(0, INFINITE_END);
+  }
+
+  private boolean tryAddRange(int start, int end) {
+    if (numberOfRanges > 0) {
+      int lastRangeEnd = ranges[2 * numberOfRanges - 1];
+      if (lastRangeEnd == INFINITE_END) {
         return false;
       }
-      int rangeStartInstructionPosition = toInstructionPosition(range.start);
-      int lastRangeEndInstructionPosition = toInstructionPosition(lastRange.end);
+      int rangeStartInstructionPosition = toInstructionPosition(start);
+      int lastRangeEndInstructionPosition = toInstructionPosition(lastRangeEnd);
       if (lastRangeEndInstructionPosition > rangeStartInstructionPosition) {
         return false;
       }
       if (lastRangeEndInstructionPosition == rangeStartInstructionPosition) {
-        lastRange.end = range.end;
+        ranges[2 * numberOfRanges - 1] = end;
         return true;
       }
     }
-    ranges.add(range);
+    if (2 * numberOfRanges == ranges.length) {
+      ranges = Arrays.copyOf(ranges, ranges.length * 2);
+    }
+    ranges[2 * numberOfRanges] = start;
+    ranges[2 * numberOfRanges + 1] = end;
+    numberOfRanges++;
     return true;
   }
 
+  public int numberOfRanges() {
+    return numberOfRanges;
+  }
+
+  public int getRangeStart(int index) {
+    assert index < numberOfRanges;
+    return ranges[2 * index];
+  }
+
+  public int getRangeEnd(int index) {
+    assert index < numberOfRanges;
+    return ranges[2 * index + 1];
+  }
+
   /**
    * Record a use for this interval.
+   *
+   * @param position the instruction number of the use
+   * @param limit the highest register number the use can encode
    */
-  public void addUse(LiveIntervalsUse use) {
-    uses.add(use);
-    updateRegisterConstraint(use.getLimit());
+  public void addUse(int position, int limit) {
+    assert position >= 0 && limit >= 0;
+    if (numberOfUses == uses.length) {
+      uses = Arrays.copyOf(uses, uses.length * 2);
+    }
+    long use = encodeUse(position, limit);
+    if (numberOfUses > 0 && uses[numberOfUses - 1] >= use) {
+      if (uses[numberOfUses - 1] == use) {
+        return;
+      }
+      usesSorted = false;
+    }
+    uses[numberOfUses++] = use;
+    updateRegisterConstraint(limit);
+  }
+
+  private static long encodeUse(int position, int limit) {
+    return ((long) position << 32) | limit;
+  }
+
+  private static int usePosition(long use) {
+    return (int) (use >>> 32);
+  }
+
+  private static int useLimit(long use) {
+    return (int) use;
+  }
+
+  private void ensureUsesSorted() {
+    if (usesSorted) {
+      return;
+    }
+    Arrays.sort(uses, 0, numberOfUses);
+    // Remove duplicate uses, for example from an instruction using the same value twice.
+    int unique = 1;
+    for (int i = 1; i < numberOfUses; i++) {
+      if (uses[i] != uses[unique - 1]) {
+        uses[unique++] = uses[i];
+      }
+    }
+    numberOfUses = unique;
+    usesSorted = true;
   }
 
   public void updateRegisterConstraint(int constraint) {
     registerLimit = Math.min(registerLimit, constraint);
   }
 
-  public TreeSet<LiveIntervalsUse> getUses() {
-    return uses;
+  public int numberOfUses() {
+    ensureUsesSorted();
+    return numberOfUses;
+  }
+
+  public int getUsePosition(int index) {
+    ensureUsesSorted();
+    assert index < numberOfUses;
+    return usePosition(uses[index]);
+  }
+
+  public int getUseLimit(int index) {
+    ensureUsesSorted();
+    assert index < numberOfUses;
+    return useLimit(uses[index]);
   }
 
-  public List<LiveRange> getRanges() {
-    return ranges;
+  public boolean useHasConstraint(int index) {
+    return getUseLimit(index) < U16BIT_MAX;
   }
 
   public int getStart() {
-    assert !ranges.isEmpty();
-    return ranges.get(0).start;
+    assert numberOfRanges > 0;
+    return ranges[0];
   }
 
   public int getEnd() {
-    assert !ranges.isEmpty();
-    return ranges.get(ranges.size() - 1).end;
+    assert numberOfRanges > 0;
+    return ranges[2 * numberOfRanges - 1];
   }
 
   public int getRegister() {
@@ -297,16 +403,35 @@ public class LiveIntervals {
   }
 
   public boolean overlapsPosition(int position) {
-    for (LiveRange range : ranges) {
-      if (range.start > position) {
-        // Ranges are sorted. When a range starts after position there is no overlap.
-        return false;
+    // The ranges are sorted and disjoint, so only the last range starting at or before the
+    // position can contain it.
+    int low = 0;
+    int high = numberOfRanges - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (ranges[2 * mid] <= position) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
       }
-      if (position < range.end) {
-        return true;
+    }
+    return high >= 0 && position < ranges[2 * high + 1];
+  }
+
+  // Returns the index of the first range at or after index from that ends after the position, or
+  // numberOfRanges if there is none.
+  private int firstRangeEndingAfter(int position, int from) {
+    int low = from;
+    int high = numberOfRanges - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (ranges[2 * mid + 1] <= position) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
       }
     }
-    return false;
+    return low;
   }
 
   public boolean overlaps(LiveIntervals other) {
@@ -314,95 +439,112 @@ public class LiveIntervals {
   }
 
   public int nextOverlap(LiveIntervals other) {
-    Iterator<LiveRange> it = other.ranges.iterator();
-    LiveRange otherRange = it.next();
-    for (LiveRange range : ranges) {
-      while (otherRange.end <= range.start) {
-        if (!it.hasNext()) {
+    int otherIndex = 0;
+    for (int i = 0; i < numberOfRanges; i++) {
+      int start = ranges[2 * i];
+      if (other.ranges[2 * otherIndex + 1] <= start) {
+        otherIndex = other.firstRangeEndingAfter(start, otherIndex + 1);
+        if (otherIndex == other.numberOfRanges) {
           return -1;
         }
-        otherRange = it.next();
       }
-      if (otherRange.start < range.end) {
-        return otherRange.start;
+      int otherStart = other.ranges[2 * otherIndex];
+      if (otherStart < ranges[2 * i + 1]) {
+        return otherStart;
       }
     }
     return -1;
   }
 
-  public int firstUseAfter(int unhandledStart) {
-    for (LiveIntervalsUse use : uses) {
-      if (use.getPosition() >= unhandledStart) {
-        return use.getPosition();
+  // Returns the index of the first use at or after the position, or numberOfUses if there is
+  // none.
+  private int firstUseIndexAtOrAfter(int position) {
+    ensureUsesSorted();
+    long key = encodeUse(position, 0);
+    int low = 0;
+    int high = numberOfUses - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (uses[mid] < key) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
       }
     }
-    return Integer.MAX_VALUE;
+    return low;
+  }
+
+  public int firstUseAfter(int unhandledStart) {
+    int index = firstUseIndexAtOrAfter(unhandledStart);
+    return index < numberOfUses ? usePosition(uses[index]) : Integer.MAX_VALUE;
   }
 
   public int getFirstUse() {
-    return uses.first().getPosition();
+    return getUsePosition(0);
   }
 
-  public LiveIntervalsUse firstUseWithConstraint() {
-    for (LiveIntervalsUse use : uses) {
-      if (use.hasConstraint()) {
-        return use;
+  /**
+   * Returns the position of the first use with a register constraint, or {@link #NO_USE}.
+   */
+  public int firstUseWithConstraint() {
+    ensureUsesSorted();
+    for (int i = 0; i < numberOfUses; i++) {
+      if (useLimit(uses[i]) < U16BIT_MAX) {
+        return usePosition(uses[i]);
       }
     }
-    return null;
+    return NO_USE;
   }
 
   public LiveIntervals splitBefore(int start) {
     if (toInstructionPosition(start) == toInstructionPosition(getStart())) {
-      assert uses.size() == 0 || getFirstUse() != start;
+      assert numberOfUses() == 0 || getFirstUse() != start;
       register = NO_REGISTER;
       return this;
     }
     start = toGapPosition(start);
     LiveIntervals splitChild = new LiveIntervals(splitParent);
     splitParent.splitChildren.add(splitChild);
-    List<LiveRange> beforeSplit = new ArrayList<>();
-    List<LiveRange> afterSplit = new ArrayList<>();
     if (start == getEnd()) {
-      beforeSplit = ranges;
-      afterSplit.add(new LiveRange(start, start));
+      splitChild.addRange(start, start);
     } else {
-      int rangeToSplitIndex = 0;
-      for (; rangeToSplitIndex < ranges.size(); rangeToSplitIndex++) {
-        LiveRange range = ranges.get(rangeToSplitIndex);
-        if (range.start <= start && range.end > start) {
-          break;
-        }
-        if (range.start > start) {
-          break;
-        }
-      }
-      LiveRange rangeToSplit = ranges.get(rangeToSplitIndex);
-      beforeSplit.addAll(ranges.subList(0, rangeToSplitIndex));
-      if (rangeToSplit.start < start) {
-        beforeSplit.add(new LiveRange(rangeToSplit.start, start));
-        afterSplit.add(new LiveRange(start, rangeToSplit.end));
+      // The range to split is the first range ending after the split position.
+      int rangeToSplitIndex = firstRangeEndingAfter(start, 0);
+      assert rangeToSplitIndex < numberOfRanges;
+      int rangeToSplitStart = ranges[2 * rangeToSplitIndex];
+      splitChild.ranges =
+          Arrays.copyOfRange(ranges, 2 * rangeToSplitIndex, 2 * numberOfRanges);
+      splitChild.numberOfRanges = numberOfRanges - rangeToSplitIndex;
+      if (rangeToSplitStart < start) {
+        // The range is split in two, the part from the split position goes to the child.
+        splitChild.ranges[0] = start;
+        ranges[2 * rangeToSplitIndex + 1] = start;
+        numberOfRanges = rangeToSplitIndex + 1;
       } else {
-        afterSplit.add(rangeToSplit);
+        numberOfRanges = rangeToSplitIndex;
       }
-      afterSplit.addAll(ranges.subList(rangeToSplitIndex + 1, ranges.size()));
     }
-    splitChild.ranges = afterSplit;
-    ranges = beforeSplit;
-    while (!uses.isEmpty() && uses.last().getPosition() >= start) {
-      splitChild.addUse(uses.pollLast());
+    // Move the uses from the split position to the child.
+    int firstChildUse = firstUseIndexAtOrAfter(start);
+    if (firstChildUse < numberOfUses) {
+      splitChild.uses = Arrays.copyOfRange(uses, firstChildUse, numberOfUses);
+      splitChild.numberOfUses = numberOfUses - firstChildUse;
+      for (int i = 0; i < splitChild.numberOfUses; i++) {
+        splitChild.updateRegisterConstraint(useLimit(splitChild.uses[i]));
+      }
+      numberOfUses = firstChildUse;
     }
     // Recompute limit after having removed uses from this interval.
     recomputeLimit();
-    assert !ranges.isEmpty();
-    assert !splitChild.ranges.isEmpty();
+    assert numberOfRanges > 0;
+    assert splitChild.numberOfRanges > 0;
     return splitChild;
   }
 
   private void recomputeLimit() {
     registerLimit = U16BIT_MAX;
-    for (LiveIntervalsUse use : uses) {
-      updateRegisterConstraint(use.getLimit());
+    for (int i = 0; i < numberOfUses; i++) {
+      updateRegisterConstraint(useLimit(uses[i]));
     }
   }
 
@@ -437,9 +579,10 @@ public class LiveIntervals {
   }
 
   public int numberOfUsesWithConstraint() {
+    ensureUsesSorted();
     int count = 0;
-    for (LiveIntervalsUse use : getUses()) {
-      if (use.hasConstraint()) {
+    for (int i = 0; i < numberOfUses; i++) {
+      if (useLimit(uses[i]) < U16BIT_MAX) {
         count++;
       }
     }
@@ -453,26 +596,31 @@ public class LiveIntervals {
     // Use the field here to avoid toString to have side effects.
     builder.append(numberOfConsecutiveRegisters);
     builder.append("): ");
-    for (LiveRange range : getRanges()) {
-      builder.append(range);
+    for (int i = 0; i < numberOfRanges; i++) {
+      appendRange(builder, i);
       builder.append(" ");
     }
     builder.append("\n");
     return builder.toString();
   }
 
+  private void appendRange(StringBuilder builder, int index) {
+    builder.append("[").append(ranges[2 * index]).append(", ").append(ranges[2 * index + 1])
+        .append("[");
+  }
+
   public String toAscciArtString() {
     StringBuilder builder = new StringBuilder();
     int current = 0;
-    for (LiveRange range : getRanges()) {
-      if (range.isInfinite()) {
+    for (int i = 0; i < numberOfRanges; i++) {
+      if (ranges[2 * i + 1] == INFINITE_END) {
         builder.append("--- infinite ---...");
         break;
       }
-      for (; current < range.start; current++) {
+      for (; current < ranges[2 * i]; current++) {
         builder.append(" ");
       }
-      for (; current < range.end; current++) {
+      for (; current < ranges[2 * i + 1]; current++) {
         builder.append("-");
       }
     }
@@ -484,11 +632,13 @@ public class LiveIntervals {
         .sp().append("object") // range type
         .sp().append(parentNumber * 10000 + getSplitParent().getRegister()) // split parent
         .sp().append(-1); // hint
-    for (LiveRange range : getRanges()) {
+    for (int i = 0; i < numberOfRanges; i++) {
+      StringBuilder range = new StringBuilder();
+      appendRange(range, i);
       printer.sp().append(range.toString());
     }
-    for (LiveIntervalsUse use : getUses()) {
-      printer.sp().append(use.getPosition()).sp().append("M");
+    for (int i = 0; i < numberOfUses(); i++) {
+      printer.sp().append(getUsePosition(i)).sp().append("M");
     }
     printer.append(" \"\"").ln();
     int delta = 0;
@@ -41,13 +41,12 @@ class FieldNameMinifier {
     timing.end();
     // Next, reserve field names in interfaces. These should only be static.
     timing.begin("reserve-interfaces");
-    DexType.forAllInterfaces(appInfo.dexItemFactory,
-        iface -> reserveNamesInSubtypes(iface, rootState));
+    appInfo.typeHierarchy.forAllInterfaces(iface -> reserveNamesInSubtypes(iface, rootState));
     timing.end();
     // Now rename the rest.
     timing.begin("rename");
     renameFieldsInSubtypes(appInfo.dexItemFactory.objectType);
-    DexType.forAllInterfaces(appInfo.dexItemFactory, this::renameFieldsInSubtypes);
+    appInfo.typeHierarchy.forAllInterfaces(this::renameFieldsInSubtypes);
     timing.end();
     return renaming;
   }
@@ -59,7 +58,8 @@ class FieldNameMinifier {
     }
     NamingState<DexType> newState = states.computeIfAbsent(type, t -> state.createChild());
     holder.forEachField(field -> reserveFieldName(field, newState, holder.isLibraryClass()));
-    type.forAllExtendsSubtypes(subtype -> reserveNamesInSubtypes(subtype, newState));
+    appInfo.typeHierarchy.forAllExtendsSubtypes(type,
+        subtype -> reserveNamesInSubtypes(subtype, newState));
   }
 
   private void reserveFieldName(
@@ -80,7 +80,7 @@ class FieldNameMinifier {
     NamingState<DexType> state = states.get(clazz.type);
     assert state != null;
     clazz.forEachField(field -> renameField(field, state));
-    type.forAllExtendsSubtypes(this::renameFieldsInSubtypes);
+    appInfo.typeHierarchy.forAllExtendsSubtypes(type, this::renameFieldsInSubtypes);
   }
 
   private void renameField(DexEncodedField encodedField, NamingState<DexType> state) {
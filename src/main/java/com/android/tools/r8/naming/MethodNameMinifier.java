@@ -113,7 +113,7 @@ class MethodNameMinifier {
     timing.end();
     // Phase 2: Reserve all the names that are required for interfaces.
     timing.begin("Phase 2");
-    DexType.forAllInterfaces(appInfo.dexItemFactory, iface -> {
+    appInfo.typeHierarchy.forAllInterfaces(iface -> {
       reserveNamesInInterfaces(iface, frontierMap);
     });
     timing.end();
@@ -143,7 +143,7 @@ class MethodNameMinifier {
           .computeIfAbsent(type, k -> states.get(holder.superType).createChild());
       holder.forEachMethod(method -> assignNameToMethod(method, state, doPrivates, renaming));
     }
-    type.forAllExtendsSubtypes(
+    appInfo.typeHierarchy.forAllExtendsSubtypes(type,
         subtype -> assignNamesToClassesMethods(subtype, doPrivates, renaming));
   }
 
@@ -170,7 +170,7 @@ class MethodNameMinifier {
       // Add the interface itself
       reachableStates.add(states.get(iface));
       // And the frontiers that correspond to the classes that implement the interface.
-      iface.forAllImplementsSubtypes(t -> {
+      appInfo.typeHierarchy.forAllImplementsSubtypes(iface, t -> {
         NamingState<DexProto> state = states.get(frontierMap.get(t));
         assert state != null;
         reachableStates.add(state);
@@ -191,8 +191,8 @@ class MethodNameMinifier {
     Map<Wrapper<DexMethod>, Set<DexMethod>> sourceMethodsMap = new HashMap<>();
     // A map from DexMethods to the first interface state it was seen in. Used to pick good names.
     Map<Wrapper<DexMethod>, NamingState<DexProto>> originStates = new HashMap<>();
-    DexType.forAllInterfaces(appInfo.dexItemFactory, iface -> {
-      assert iface.isInterface();
+    appInfo.typeHierarchy.forAllInterfaces(iface -> {
+      assert appInfo.typeHierarchy.isInterface(iface);
       DexClass clazz = appInfo.definitionFor(iface);
       if (clazz != null) {
         Set<NamingState<DexProto>> collectedStates = getReachableStates(iface, frontierMap);
@@ -233,8 +233,8 @@ class MethodNameMinifier {
 
 
   private void collectSubInterfaces(DexType iface, Set<DexType> interfaces) {
-    iface.forAllExtendsSubtypes(subtype -> {
-      assert subtype.isInterface();
+    appInfo.typeHierarchy.forAllExtendsSubtypes(iface, subtype -> {
+      assert appInfo.typeHierarchy.isInterface(subtype);
       if (interfaces.add(subtype)) {
         collectSubInterfaces(subtype, interfaces);
       }
@@ -299,14 +299,14 @@ class MethodNameMinifier {
   private void reserveNamesInClasses(DexType type, DexType libraryFrontier,
       NamingState<DexProto> parent,
       Map<DexType, DexType> frontierMap) {
-    assert !type.isInterface();
+    assert !appInfo.typeHierarchy.isInterface(type);
     DexClass holder = appInfo.definitionFor(type);
     NamingState<DexProto> state = allocateNamingStateAndReserve(holder, type, libraryFrontier,
         parent, frontierMap);
     // If this is a library class (or effectively a library class as it is missing) move the
     // frontier forward.
-    type.forAllExtendsSubtypes(subtype -> {
-      assert !subtype.isInterface();
+    appInfo.typeHierarchy.forAllExtendsSubtypes(type, subtype -> {
+      assert !appInfo.typeHierarchy.isInterface(subtype);
       reserveNamesInClasses(subtype,
           holder == null || holder.isLibraryClass() ? subtype : libraryFrontier,
           state, frontierMap);
@@ -314,7 +314,7 @@ class MethodNameMinifier {
   }
 
   private void reserveNamesInInterfaces(DexType type, Map<DexType, DexType> frontierMap) {
-    assert type.isInterface();
+    assert appInfo.typeHierarchy.isInterface(type);
     frontierMap.put(type, type);
     DexClass holder = appInfo.definitionFor(type);
     allocateNamingStateAndReserve(holder, type, type, null, frontierMap);
@@ -37,7 +37,7 @@ public class AbstractMethodRemover {
     if (holder != null) {
       holder.setVirtualMethods(processMethods(holder.virtualMethods()));
     }
-    type.forAllExtendsSubtypes(this::processClass);
+    appInfo.typeHierarchy.forAllExtendsSubtypes(type, this::processClass);
     scope = scope.getParent();
   }
 
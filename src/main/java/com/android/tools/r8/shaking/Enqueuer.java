@@ -29,6 +29,7 @@ import com.android.tools.r8.graph.PresortedComparable;
 import com.android.tools.r8.logging.Log;
 import com.android.tools.r8.shaking.RootSetBuilder.RootSet;
 import com.android.tools.r8.utils.MethodSignatureEquivalence;
+import com.android.tools.r8.utils.ThreadUtils;
 import com.android.tools.r8.utils.Timing;
 import com.google.common.base.Equivalence.Wrapper;
 import com.google.common.collect.ImmutableMap;
@@ -45,12 +46,16 @@ import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -133,6 +138,19 @@ public class Enqueuer {
    */
   private Queue<Action> workList = Queues.newArrayDeque();
 
+  /**
+   * Executor used to scan the code of live methods. If null, the code of a method is scanned as
+   * soon as the method becomes live.
+   */
+  private ExecutorService executorService = null;
+
+  /**
+   * Live methods whose code has not been scanned yet. Only used when tracing with an executor.
+   * The code of all pending methods is scanned concurrently once the work list is empty, and the
+   * recorded uses are then registered in the order in which the methods became live.
+   */
+  private final List<DexEncodedMethod> pendingMethods = new ArrayList<>();
+
   /**
    * A cache for DexMethod that have been marked reachable.
    */
@@ -671,15 +689,15 @@ public class Enqueuer {
     }
   }
 
-  private static void fillWorkList(Deque<DexType> worklist, DexType type) {
-    if (type.isInterface()) {
+  private void fillWorkList(Deque<DexType> worklist, DexType type) {
+    if (appInfo.typeHierarchy.isInterface(type)) {
       // We need to check if the method is shadowed by a class that directly implements
       // the interface and go recursively down to the sub interfaces to reach class
       // implementing the interface
-      type.forAllImplementsSubtypes(worklist::addLast);
-      type.forAllExtendsSubtypes(worklist::addLast);
+      appInfo.typeHierarchy.forAllImplementsSubtypes(type, worklist::addLast);
+      appInfo.typeHierarchy.forAllExtendsSubtypes(type, worklist::addLast);
     } else {
-      type.forAllExtendsSubtypes(worklist::addLast);
+      appInfo.typeHierarchy.forAllExtendsSubtypes(type, worklist::addLast);
     }
   }
 
@@ -719,7 +737,7 @@ public class Enqueuer {
         reachability, instantiatedTypes.getReasons());
   }
 
-  public Set<DexType> traceMainDex(RootSet rootSet, Timing timing) {
+  public Set<DexType> traceMainDex(RootSet rootSet, Timing timing) throws ExecutionException {
     this.rootSet = rootSet;
     // Translate the result of root-set computation into enqueuer actions.
     enqueueRootItems(rootSet.noShrinking);
@@ -729,18 +747,36 @@ public class Enqueuer {
     return new HashSet<>(appInfo.liveTypes);
   }
 
-  public AppInfoWithLiveness traceApplication(RootSet rootSet, Timing timing) {
+  public AppInfoWithLiveness traceApplication(RootSet rootSet, Timing timing)
+      throws ExecutionException {
+    return traceApplication(rootSet, null, timing);
+  }
+
+  /**
+   * Traces the application from the given root set. If an executor is given, the code of live
+   * methods is scanned concurrently. The result does not depend on the number of threads.
+   */
+  public AppInfoWithLiveness traceApplication(
+      RootSet rootSet, ExecutorService executorService, Timing timing) throws ExecutionException {
     this.rootSet = rootSet;
+    this.executorService = executorService;
     // Translate the result of root-set computation into enqueuer actions.
     enqueueRootItems(rootSet.noShrinking);
     appInfo.libraryClasses().forEach(this::markAllVirtualMethodsReachable);
     return trace(timing);
   }
 
-  private AppInfoWithLiveness trace(Timing timing) {
+  private AppInfoWithLiveness trace(Timing timing) throws ExecutionException {
     timing.begin("Grow the tree.");
     try {
-      while (!workList.isEmpty()) {
+      while (true) {
+        if (workList.isEmpty()) {
+          if (pendingMethods.isEmpty()) {
+            break;
+          }
+          scanPendingMethods();
+          continue;
+        }
         Action action = workList.poll();
         switch (action.kind) {
           case MARK_INSTANTIATED:
@@ -792,6 +828,7 @@ public class Enqueuer {
       }
       assert liveTypes.stream().allMatch(DexType::isClassType);
       assert instantiatedTypes.getItems().stream().allMatch(DexType::isClassType);
+      appInfo.countVirtualTargetLookups(timing);
     } finally {
       timing.end();
     }
@@ -876,13 +913,178 @@ public class Enqueuer {
         }
       }
       if (!processed) {
-        method.registerReachableDefinitions(new UseRegistry(method));
+        if (executorService != null) {
+          pendingMethods.add(method);
+        } else {
+          method.registerReachableDefinitions(new UseRegistry(method));
+        }
       }
       // Add all dependent members to the workqueue.
       enqueueRootItems(rootSet.getDependentItems(method));
     }
   }
 
+  private void scanPendingMethods() throws ExecutionException {
+    // All methods of a class are scanned by the same task, as lazily parsed class file code is
+    // materialized for all methods of a class at once.
+    Map<DexType, List<DexEncodedMethod>> methodsByHolder = new LinkedHashMap<>();
+    for (DexEncodedMethod method : pendingMethods) {
+      methodsByHolder.computeIfAbsent(method.method.holder, ignore -> new ArrayList<>())
+          .add(method);
+    }
+    pendingMethods.clear();
+    List<Future<List<UseRecorder>>> futures = new ArrayList<>(methodsByHolder.size());
+    for (List<DexEncodedMethod> methods : methodsByHolder.values()) {
+      futures.add(executorService.submit(() -> {
+        List<UseRecorder> recorders = new ArrayList<>(methods.size());
+        for (DexEncodedMethod method : methods) {
+          UseRecorder recorder = new UseRecorder(method);
+          method.registerReachableDefinitions(recorder);
+          recorders.add(recorder);
+        }
+        return recorders;
+      }));
+    }
+    for (List<UseRecorder> recorders : ThreadUtils.awaitFutures(futures)) {
+      for (UseRecorder recorder : recorders) {
+        recorder.replay(new UseRegistry(recorder.method));
+      }
+    }
+  }
+
+  /**
+   * Records the uses of a method without looking at or changing the state of the enqueuer, so
+   * that method code can be scanned concurrently.
+   */
+  private static class UseRecorder extends com.android.tools.r8.graph.UseRegistry {
+
+    private enum Kind {
+      INVOKE_VIRTUAL,
+      INVOKE_DIRECT,
+      INVOKE_STATIC,
+      INVOKE_INTERFACE,
+      INVOKE_SUPER,
+      INSTANCE_FIELD_WRITE,
+      INSTANCE_FIELD_READ,
+      NEW_INSTANCE,
+      STATIC_FIELD_READ,
+      STATIC_FIELD_WRITE,
+      TYPE_REFERENCE
+    }
+
+    private final DexEncodedMethod method;
+    private final List<Kind> kinds = new ArrayList<>();
+    private final List<DexItem> items = new ArrayList<>();
+
+    private UseRecorder(DexEncodedMethod method) {
+      this.method = method;
+    }
+
+    private boolean record(Kind kind, DexItem item) {
+      kinds.add(kind);
+      items.add(item);
+      return true;
+    }
+
+    void replay(com.android.tools.r8.graph.UseRegistry registry) {
+      for (int i = 0; i < kinds.size(); i++) {
+        DexItem item = items.get(i);
+        switch (kinds.get(i)) {
+          case INVOKE_VIRTUAL:
+            registry.registerInvokeVirtual((DexMethod) item);
+            break;
+          case INVOKE_DIRECT:
+            registry.registerInvokeDirect((DexMethod) item);
+            break;
+          case INVOKE_STATIC:
+            registry.registerInvokeStatic((DexMethod) item);
+            break;
+          case INVOKE_INTERFACE:
+            registry.registerInvokeInterface((DexMethod) item);
+            break;
+          case INVOKE_SUPER:
+            registry.registerInvokeSuper((DexMethod) item);
+            break;
+          case INSTANCE_FIELD_WRITE:
+            registry.registerInstanceFieldWrite((DexField) item);
+            break;
+          case INSTANCE_FIELD_READ:
+            registry.registerInstanceFieldRead((DexField) item);
+            break;
+          case NEW_INSTANCE:
+            registry.registerNewInstance((DexType) item);
+            break;
+          case STATIC_FIELD_READ:
+            registry.registerStaticFieldRead((DexField) item);
+            break;
+          case STATIC_FIELD_WRITE:
+            registry.registerStaticFieldWrite((DexField) item);
+            break;
+          case TYPE_REFERENCE:
+            registry.registerTypeReference((DexType) item);
+            break;
+          default:
+            throw new IllegalArgumentException(kinds.get(i).toString());
+        }
+      }
+    }
+
+    @Override
+    public boolean registerInvokeVirtual(DexMethod method) {
+      return record(Kind.INVOKE_VIRTUAL, method);
+    }
+
+    @Override
+    public boolean registerInvokeDirect(DexMethod method) {
+      return record(Kind.INVOKE_DIRECT, method);
+    }
+
+    @Override
+    public boolean registerInvokeStatic(DexMethod method) {
+      return record(Kind.INVOKE_STATIC, method);
+    }
+
+    @Override
+    public boolean registerInvokeInterface(DexMethod method) {
+      return record(Kind.INVOKE_INTERFACE, method);
+    }
+
+    @Override
+    public boolean registerInvokeSuper(DexMethod method) {
+      return record(Kind.INVOKE_SUPER, method);
+    }
+
+    @Override
+    public boolean registerInstanceFieldWrite(DexField field) {
+      return record(Kind.INSTANCE_FIELD_WRITE, field);
+    }
+
+    @Override
+    public boolean registerInstanceFieldRead(DexField field) {
+      return record(Kind.INSTANCE_FIELD_READ, field);
+    }
+
+    @Override
+    public boolean registerNewInstance(DexType type) {
+      return record(Kind.NEW_INSTANCE, type);
+    }
+
+    @Override
+    public boolean registerStaticFieldRead(DexField field) {
+      return record(Kind.STATIC_FIELD_READ, field);
+    }
+
+    @Override
+    public boolean registerStaticFieldWrite(DexField field) {
+      return record(Kind.STATIC_FIELD_WRITE, field);
+    }
+
+    @Override
+    public boolean registerTypeReference(DexType type) {
+      return record(Kind.TYPE_REFERENCE, type);
+    }
+  }
+
   private Set<DexField> collectFields(Map<DexType, Set<DexField>> map) {
     return map.values().stream().flatMap(Collection::stream)
         .collect(Collectors.toCollection(Sets::newIdentityHashSet));
@@ -1129,7 +1331,7 @@ public class Enqueuer {
     }
 
     private AppInfoWithLiveness(AppInfoWithLiveness previous, DexApplication application) {
-      super(application);
+      super(previous, application);
       this.liveTypes = previous.liveTypes;
       this.instantiatedTypes = previous.instantiatedTypes;
       this.targetedMethods = previous.targetedMethods;
@@ -77,7 +77,7 @@ public class SimpleClassMerger {
     return !clazz.isLibraryClass()
         && !appInfo.instantiatedTypes.contains(clazz.type)
         && !appInfo.pinnedItems.contains(clazz)
-        && clazz.type.getSingleSubtype() != null;
+        && appInfo.typeHierarchy.getSingleSubtype(clazz.type) != null;
   }
 
   private void addProgramMethods(Set<Wrapper<DexMethod>> set, DexMethod method,
@@ -138,7 +138,8 @@ public class SimpleClassMerger {
   private GraphLense mergeClasses(GraphLense graphLense) {
     for (DexProgramClass clazz : application.classes()) {
       if (isMergeCandidate(clazz)) {
-        DexClass targetClass = appInfo.definitionFor(clazz.type.getSingleSubtype());
+        DexClass targetClass =
+            appInfo.definitionFor(appInfo.typeHierarchy.getSingleSubtype(clazz.type));
         if (appInfo.pinnedItems.contains(targetClass)) {
           // We have to keep the target class intact, so we cannot merge it.
           continue;
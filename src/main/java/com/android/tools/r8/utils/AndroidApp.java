@@ -302,11 +302,7 @@ public class AndroidApp {
    */
   public void writeToDirectory(Path directory, OutputMode outputMode) throws IOException {
     if (outputMode == OutputMode.Indexed) {
-      for (Path path : Files.list(directory).collect(Collectors.toList())) {
-        if (isClassesDexFile(path)) {
-          Files.delete(path);
-        }
-      }
+      deleteClassesDexFiles(directory);
     }
     CopyOption[] options = new CopyOption[] {StandardCopyOption.REPLACE_EXISTING};
     try (Closer closer = Closer.create()) {
@@ -321,6 +317,15 @@ public class AndroidApp {
     }
   }
 
+  // Removes the files of a previous indexed output, which may have had more dex files.
+  static void deleteClassesDexFiles(Path directory) throws IOException {
+    for (Path path : Files.list(directory).collect(Collectors.toList())) {
+      if (isClassesDexFile(path)) {
+        Files.delete(path);
+      }
+    }
+  }
+
   private static boolean isClassesDexFile(Path file) {
     String name = file.getFileName().toString().toLowerCase();
     if (!name.startsWith("classes") || !name.endsWith(".dex")) {
@@ -371,11 +376,9 @@ public class AndroidApp {
         List<Resource> dexProgramSources = getDexProgramResources();
         for (int i = 0; i < dexProgramSources.size(); i++) {
           ZipEntry zipEntry = new ZipEntry(outputMode.getOutputPath(dexProgramSources.get(i), i));
-          byte[] bytes =
-              ByteStreams.toByteArray(closer.register(dexProgramSources.get(i).getStream()));
-          zipEntry.setSize(bytes.length);
           out.putNextEntry(zipEntry);
-          out.write(bytes);
+          // Stream the content, the entry size is computed by the zip stream.
+          ByteStreams.copy(closer.register(dexProgramSources.get(i).getStream()), out);
           out.closeEntry();
         }
       }
@@ -444,6 +447,23 @@ public class AndroidApp {
       mainDexListOutput = app.mainDexListOutput;
     }
 
+    /**
+     * Remove all program resources, keeping classpath, library and auxiliary resources.
+     */
+    public Builder clearProgramResources() {
+      programResources.clear();
+      programFileArchiveReaders.clear();
+      return this;
+    }
+
+    /**
+     * Add program resources.
+     */
+    public Builder addProgramResources(Collection<Resource> resources) {
+      programResources.addAll(resources);
+      return this;
+    }
+
     /**
      * Add dex program files and proguard-map file located in @code{directory}.
      *
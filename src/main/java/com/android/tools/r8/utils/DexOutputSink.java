@@ -0,0 +1,104 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.utils;
+
+import static com.android.tools.r8.utils.FileUtils.isArchive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Receives the dex files of an application as they are written.
+ *
+ * <p>The {@link com.android.tools.r8.dex.ApplicationWriter} calls the sink once for each dex file,
+ * in the order of the files. The content is only valid during the call, as the buffer holding it
+ * is reused for the next file.
+ */
+public interface DexOutputSink extends Closeable {
+
+  /**
+   * Accepts the dex file with the given index, which is the first {@code length} bytes of
+   * {@code content}.
+   */
+  void accept(int index, byte[] content, int length, Set<String> classDescriptors)
+      throws IOException;
+
+  @Override
+  default void close() throws IOException {
+  }
+
+  /**
+   * Returns a sink writing the dex files to the zip archive or the directory {@code output}, named
+   * as {@link AndroidApp#write} names them.
+   */
+  static DexOutputSink create(Path output, OutputMode outputMode) throws IOException {
+    return isArchive(output)
+        ? new ZipSink(output, outputMode)
+        : new DirectorySink(output, outputMode);
+  }
+
+  class ZipSink implements DexOutputSink {
+
+    private final OutputMode outputMode;
+    private final ZipOutputStream out;
+
+    ZipSink(Path archive, OutputMode outputMode) throws IOException {
+      this.outputMode = outputMode;
+      out = new ZipOutputStream(Files.newOutputStream(archive,
+          StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    @Override
+    public void accept(int index, byte[] content, int length, Set<String> classDescriptors)
+        throws IOException {
+      out.putNextEntry(new ZipEntry(outputMode.getOutputPathForClasses(classDescriptors, index)));
+      out.write(content, 0, length);
+      out.closeEntry();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  class DirectorySink implements DexOutputSink {
+
+    private final Path directory;
+    private final OutputMode outputMode;
+
+    DirectorySink(Path directory, OutputMode outputMode) throws IOException {
+      this.directory = directory;
+      this.outputMode = outputMode;
+      if (outputMode == OutputMode.Indexed) {
+        AndroidApp.deleteClassesDexFiles(directory);
+      }
+    }
+
+    @Override
+    public void accept(int index, byte[] content, int length, Set<String> classDescriptors)
+        throws IOException {
+      Path filePath =
+          directory.resolve(outputMode.getOutputPathForClasses(classDescriptors, index));
+      if (!Files.exists(filePath.getParent())) {
+        Files.createDirectories(filePath.getParent());
+      }
+      try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        ByteBuffer buffer = ByteBuffer.wrap(content, 0, length);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+    }
+  }
+}
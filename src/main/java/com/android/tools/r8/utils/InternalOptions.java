@@ -14,6 +14,8 @@ import com.android.tools.r8.shaking.ProguardConfigurationRule;
 import com.google.common.collect.ImmutableList;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.Function;
 
 public class InternalOptions {
@@ -51,6 +53,9 @@ public class InternalOptions {
 
   // Number of threads to use while processing the dex files.
   public int numberOfThreads = NOT_SPECIFIED;
+  // Minimum number of indexed items of a dex file for writing its sections in parallel. Smaller
+  // files are written by one thread, as the tasks would cost more than they save.
+  public int parallelFileWritingThreshold = 4 * 1024;
   // Print smali disassembly.
   public boolean useSmaliSyntax = false;
   // Verbose output.
@@ -89,15 +94,43 @@ public class InternalOptions {
 
   // Application writing mode.
   public OutputMode outputMode = OutputMode.Indexed;
+  // Directory of the persistent per-class dex cache used by D8, or null if caching is disabled.
+  public Path dexCacheDirectory = null;
+  // File to write the timings of the compilation phases to, or null if not requested.
+  public Path timingsOutput = null;
+  // Sink receiving the dex files as they are written, or null to return them in the output app.
+  public DexOutputSink dexOutputSink = null;
 
   public boolean useTreeShaking = true;
 
   public boolean printCfg = false;
   public String printCfgFile;
+  // Methods with more IR instructions than this, or that take longer than the time budget to
+  // get to an expensive optimization, are compiled without inlining, common subexpression
+  // elimination and outlining, and with a single register allocation pass. Negative values disable
+  // the budgets. The time budget makes the output depend on the speed of the machine.
+  public int methodInstructionBudget = -1;
+  public long methodTimeBudgetMillis = -1;
+  // Print the time and IR size of each pass run by the IR converter, and the slowest methods.
+  public boolean printPassMetrics = false;
+  public int passMetricsSlowestMethods = 10;
+  // Maximum estimated size in bytes of the decoded code R8 keeps for building the IR of a method
+  // again, e.g., when inlining it. Zero disables the cache.
+  public long decodedCodeCacheSize = 16 * 1024 * 1024;
   public Path printMainDexListFile;
   public boolean ignoreMissingClasses = false;
   public boolean skipMinification = false;
   public boolean inlineAccessors = true;
+  // Processed methods with at most this many dex instructions keep their IR as a template when
+  // inlined, so inlining them again copies the template instead of building the IR again. A
+  // negative value disables the templates.
+  public int inlineeTemplateMaxSize = 64;
+  // Maximum total number of dex instructions of the methods that have an inlinee template. The
+  // least recently used templates are dropped beyond it.
+  public long inlineeTemplateCacheSize = 64 * 1024;
+  // Propagate constants through phis and remove the blocks that are unreachable as a result, before
+  // the local constant folding and if simplification.
+  public boolean propagateConstants = true;
   public boolean removeSwitchMaps = true;
   public boolean disableAssertions = true;
   public final OutlineOptions outline = new OutlineOptions();
@@ -118,6 +151,12 @@ public class InternalOptions {
 
   public int warningInvalidDebugInfoCount = 0;
 
+  public final Set<String> warningMethodsOverBudget = new TreeSet<>();
+
+  public synchronized void warningMethodOverBudget(DexEncodedMethod method) {
+    warningMethodsOverBudget.add(method.toSourceString());
+  }
+
   public void warningInvalidDebugInfo(DexEncodedMethod method, InvalidDebugInfoException e) {
     warningInvalidDebugInfoCount++;
   }
@@ -136,6 +175,13 @@ public class InternalOptions {
       printed = true;
       printOutdatedToolchain = true;
     }
+    if (!warningMethodsOverBudget.isEmpty()) {
+      System.out.println("Warning: " + warningMethodsOverBudget.size()
+          + (warningMethodsOverBudget.size() == 1 ? " method" : " methods")
+          + " exceeded the compilation budget and were compiled with fewer optimizations:");
+      warningMethodsOverBudget.forEach(method -> System.out.println("  " + method));
+      printed = true;
+    }
     if (warningMissingEnclosingMember) {
       System.out.println(
           "Warning: InnerClass annotations are missing corresponding EnclosingMember annotations."
@@ -6,6 +6,7 @@ package com.android.tools.r8.utils;
 import com.android.tools.r8.errors.InternalCompilerError;
 import com.android.tools.r8.graph.KeyedDexItem;
 import com.android.tools.r8.graph.PresortedComparable;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -14,12 +15,14 @@ public class OrderedMergingIterator<T extends KeyedDexItem<S>, S extends Presort
 
   private final T[] one;
   private final T[] other;
+  private final Comparator<S> comparator;
   private int oneIndex = 0;
   private int otherIndex = 0;
 
-  public OrderedMergingIterator(T[] one, T[] other) {
+  public OrderedMergingIterator(T[] one, T[] other, Comparator<S> comparator) {
     this.one = one;
     this.other = other;
+    this.comparator = comparator;
   }
 
   private static <T> T getNextChecked(T[] array, int position) {
@@ -42,7 +45,7 @@ public class OrderedMergingIterator<T extends KeyedDexItem<S>, S extends Presort
     if (otherIndex >= other.length) {
       return getNextChecked(one, oneIndex++);
     }
-    int comparison = one[oneIndex].getKey().compareTo(other[otherIndex].getKey());
+    int comparison = comparator.compare(one[oneIndex].getKey(), other[otherIndex].getKey());
     if (comparison < 0) {
       return one[oneIndex++];
     }
@@ -10,14 +10,13 @@ import java.util.Set;
 public enum OutputMode {
   Indexed {
     @Override
-    String getOutputPath(Resource resource, int index) {
+    String getOutputPathForClasses(Set<String> classDescriptors, int index) {
       return index == 0 ? "classes.dex" : ("classes" + (index + 1) + ".dex");
     }
   },
   FilePerClass {
     @Override
-    String getOutputPath(Resource resource, int index) {
-      Set<String> classDescriptors = resource.getClassDescriptors();
+    String getOutputPathForClasses(Set<String> classDescriptors, int index) {
       assert classDescriptors != null;
       assert classDescriptors.size() == 1;
       String classDescriptor = classDescriptors.iterator().next();
@@ -26,5 +25,10 @@ public enum OutputMode {
     }
   };
 
-  abstract String getOutputPath(Resource resource, int index);
+  String getOutputPath(Resource resource, int index) {
+    // Indexed names only depend on the index, so the resource may be null for those.
+    return getOutputPathForClasses(resource == null ? null : resource.getClassDescriptors(), index);
+  }
+
+  abstract String getOutputPathForClasses(Set<String> classDescriptors, int index);
 }
@@ -9,6 +9,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class ThreadUtils {
 
@@ -25,6 +26,44 @@ public class ThreadUtils {
     return result;
   }
 
+  /**
+   * Runs the tasks on the executor and waits for all of them to finish.
+   *
+   * <p>Tasks that no thread has started yet are run by the calling thread. This makes it safe to
+   * call from a task that is itself running on the executor, even when all threads are busy.
+   * Exceptions thrown by the tasks are rethrown as is.
+   */
+  public static void runAll(List<? extends Runnable> tasks, ExecutorService executorService) {
+    if (tasks.size() == 1) {
+      tasks.get(0).run();
+      return;
+    }
+    List<FutureTask<Void>> futures = new ArrayList<>(tasks.size());
+    for (Runnable task : tasks) {
+      FutureTask<Void> future = new FutureTask<>(task, null);
+      executorService.execute(future);
+      futures.add(future);
+    }
+    // Work backwards, as the executor picks up the tasks from the front.
+    for (int i = futures.size() - 1; i >= 0; i--) {
+      futures.get(i).run();
+    }
+    for (FutureTask<Void> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        throw new RuntimeException("Interrupted while waiting for future.", e);
+      } catch (ExecutionException e) {
+        // The tasks are runnables, so they can only fail with unchecked exceptions.
+        Throwable cause = e.getCause();
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw (RuntimeException) cause;
+      }
+    }
+  }
+
   public static ExecutorService getExecutorService(int threads) {
     if (threads == 1) {
       return Executors.newSingleThreadExecutor();
@@ -34,14 +73,21 @@ public class ThreadUtils {
   }
 
   public static ExecutorService getExecutorService(InternalOptions options) {
-    if (options.numberOfThreads == options.NOT_SPECIFIED) {
-      // This heuristic is based on measurements on a 32 core (hyper-threaded) machine.
-      int threads = Integer.min(Runtime.getRuntime().availableProcessors(), 16) / 2;
-      return Executors.newWorkStealingPool(threads);
-    } else if (options.numberOfThreads == 1) {
+    if (options.numberOfThreads == 1) {
       return Executors.newSingleThreadExecutor();
     } else {
-      return Executors.newWorkStealingPool(options.numberOfThreads);
+      return Executors.newWorkStealingPool(getNumberOfThreads(options));
+    }
+  }
+
+  /**
+   * Returns the number of threads of the executor service created for the options.
+   */
+  public static int getNumberOfThreads(InternalOptions options) {
+    if (options.numberOfThreads == options.NOT_SPECIFIED) {
+      // This heuristic is based on measurements on a 32 core (hyper-threaded) machine.
+      return Integer.min(Runtime.getRuntime().availableProcessors(), 16) / 2;
     }
+    return options.numberOfThreads;
   }
 }
@@ -10,84 +10,259 @@ package com.android.tools.r8.utils;
 //     try { ... } finally { t.end(); }
 // or alternatively:
 //     t.scope("My task", () -> { ... });
+// Counters are added to the innermost task with:
+//     t.count("Methods converted", 1);
 // Finally a report is printed by:
 //     t.report();
+// or written in the Chrome trace event format (chrome://tracing) by:
+//     t.writeTrace(path);
+//
+// Timings can be recorded from any thread. Each thread has its own stack of tasks. The outermost
+// tasks of a thread other than the one that created the Timing are attached to the task that the
+// creating thread is currently in, and counters from such threads go to that task as well.
 
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
+import org.json.simple.JSONValue;
 
 public class Timing {
 
-  private final Stack<Node> stack;
+  private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+  private final Thread owner;
+  private final Node top;
+  private final Map<Thread, Stack<Node>> stacks = new IdentityHashMap<>();
 
   public Timing(String title) {
-    stack = new Stack<>();
-    stack.push(new Node("Recorded timings for " + title));
+    owner = Thread.currentThread();
+    top = new Node("Recorded timings for " + title, owner);
+    Stack<Node> stack = new Stack<>();
+    stack.push(top);
+    stacks.put(owner, stack);
   }
 
   static class Node {
     final String title;
+    final String thread;
+    final long threadId;
 
-    final Stack<Node> sons = new Stack<>();
+    final List<Node> sons = new ArrayList<>();
+    final Map<String, Long> counters = new LinkedHashMap<>();
     final long start_time;
+    final long start_cpu_time;
+    final long start_allocated;
     long stop_time;
+    long stop_cpu_time;
+    long stop_allocated;
 
-    Node(String title) {
+    Node(String title, Thread thread) {
       this.title = title;
+      this.thread = thread.getName();
+      this.threadId = thread.getId();
       this.start_time = System.nanoTime();
+      this.start_cpu_time = currentThreadCpuTime();
+      this.start_allocated = currentThreadAllocatedBytes();
       this.stop_time = -1;
     }
 
+    Node(String title, Thread thread, long duration) {
+      this.title = title;
+      this.thread = thread.getName();
+      this.threadId = thread.getId();
+      this.start_time = System.nanoTime() - duration;
+      this.stop_time = start_time + duration;
+      this.start_cpu_time = this.stop_cpu_time = -1;
+      this.start_allocated = this.stop_allocated = -1;
+    }
+
     void end() {
       stop_time = System.nanoTime();
+      stop_cpu_time = currentThreadCpuTime();
+      stop_allocated = currentThreadAllocatedBytes();
       assert duration() >= 0;
     }
 
+    boolean isEnded() {
+      return stop_time != -1;
+    }
+
     long duration() {
       return stop_time - start_time;
     }
 
+    long cpuTime() {
+      return start_cpu_time < 0 || stop_cpu_time < 0 ? -1 : stop_cpu_time - start_cpu_time;
+    }
+
+    long allocatedBytes() {
+      return start_allocated < 0 || stop_allocated < 0 ? -1 : stop_allocated - start_allocated;
+    }
+
     public String toString() {
-      return title + ": " + (duration() / 1000000) + "ms.";
+      StringBuilder builder = new StringBuilder();
+      builder.append(title).append(": ").append(duration() / 1000000).append("ms.");
+      if (cpuTime() >= 0) {
+        builder.append(" cpu: ").append(cpuTime() / 1000000).append("ms.");
+      }
+      if (allocatedBytes() >= 0) {
+        builder.append(" allocated: ").append(allocatedBytes() / 1024).append("kB.");
+      }
+      return builder.toString();
     }
 
     public String toString(Node top) {
-      if (this == top) return toString();
-      long percentage = duration() * 100 / top.duration();
-      return toString() + " (" + percentage + "%)";
+      String result = toString();
+      if (this != top) {
+        long percentage = duration() * 100 / Math.max(top.duration(), 1);
+        result += " (" + percentage + "%)";
+      }
+      if (threadId != top.threadId) {
+        result += " [" + thread + "]";
+      }
+      return result;
     }
 
     public void report(int depth, Node top) {
       assert duration() >= 0;
+      printIndent(depth);
+      System.out.println(toString(top));
+      counters.forEach((name, value) -> {
+        printIndent(depth + 1);
+        System.out.println(name + ": " + value);
+      });
+      sons.forEach(p -> { p.report(depth + 1, top); });
+    }
+
+    private static void printIndent(int depth) {
       if (depth > 0) {
         for (int i = 0; i < depth; i++) {
           System.out.print("  ");
         }
         System.out.print("- ");
       }
-      System.out.println(toString(top));
-      sons.forEach(p -> { p.report(depth + 1, top); });
     }
+
+    void addTraceEvents(List<Object> events, long origin) {
+      Map<String, Object> event = new LinkedHashMap<>();
+      event.put("name", title);
+      event.put("ph", "X");
+      event.put("pid", 1);
+      event.put("tid", threadId);
+      event.put("ts", (start_time - origin) / 1000);
+      event.put("dur", duration() / 1000);
+      Map<String, Object> args = new LinkedHashMap<>();
+      args.put("thread", thread);
+      if (cpuTime() >= 0) {
+        args.put("cpuTimeUs", cpuTime() / 1000);
+      }
+      if (allocatedBytes() >= 0) {
+        args.put("allocatedBytes", allocatedBytes());
+      }
+      args.putAll(counters);
+      event.put("args", args);
+      events.add(event);
+      sons.forEach(son -> son.addTraceEvents(events, origin));
+    }
+  }
+
+  private static long currentThreadCpuTime() {
+    return threadBean.isCurrentThreadCpuTimeSupported()
+        ? threadBean.getCurrentThreadCpuTime()
+        : -1;
+  }
+
+  private static long currentThreadAllocatedBytes() {
+    if (threadBean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+      if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
   }
 
+  // Returns the innermost task of the current thread, or of the owner if the current thread is
+  // not in any task.
+  private Node current() {
+    Stack<Node> stack = stacks.get(Thread.currentThread());
+    return stack != null ? stack.peek() : stacks.get(owner).peek();
+  }
 
-  public void begin(String title) {
-    Node n = new Node(title);
-    stack.peek().sons.add(n);
-    stack.push(n);
+  public synchronized void begin(String title) {
+    Thread thread = Thread.currentThread();
+    Node n = new Node(title, thread);
+    current().sons.add(n);
+    stacks.computeIfAbsent(thread, t -> new Stack<>()).push(n);
   }
 
-  public void end() {
+  public synchronized void end() {
+    Thread thread = Thread.currentThread();
+    Stack<Node> stack = stacks.get(thread);
     stack.peek().end();  // record time.
     stack.pop();
+    if (stack.isEmpty()) {
+      assert thread != owner;
+      stacks.remove(thread);
+    }
   }
 
-  public void report() {
-    Node top = stack.peek();
-    top.end();
+  // Record a duration that was not measured by a begin/end pair, e.g. time accumulated over
+  // several threads.
+  public synchronized void add(String title, long nanos) {
+    current().sons.add(new Node(title, Thread.currentThread(), nanos));
+  }
+
+  // Add to a counter of the innermost task of the current thread.
+  public synchronized void count(String counter, long value) {
+    current().counters.merge(counter, value, Long::sum);
+  }
+
+  private void finish() {
+    if (!top.isEnded()) {
+      top.end();
+    }
+  }
+
+  public synchronized void report() {
+    finish();
     System.out.println();
     top.report(0, top);
   }
 
+  // Write the timings as a JSON file in the Chrome trace event format.
+  public synchronized void writeTrace(Path path) throws IOException {
+    finish();
+    List<Object> events = new ArrayList<>();
+    top.addTraceEvents(events, top.start_time);
+    Map<String, Object> trace = new LinkedHashMap<>();
+    trace.put("traceEvents", events);
+    trace.put("displayTimeUnit", "ms");
+    try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      JSONValue.writeJSONString(trace, writer);
+    }
+  }
+
+  // Write the trace like writeTrace, but report a failure on stderr instead of throwing. For use
+  // in finally blocks, where an exception would hide the outcome of the compilation.
+  public void writeTraceOrReport(Path path) {
+    try {
+      writeTrace(path);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Failed to write timings to " + path + ": " + e);
+    }
+  }
+
   public void scope(String title, TimingScope fn) {
     begin(title);
     try {
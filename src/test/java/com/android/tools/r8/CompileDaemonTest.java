@@ -0,0 +1,92 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.utils.ThreadUtils;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import org.junit.Test;
+
+public class CompileDaemonTest extends TestBase {
+
+  private static final Path INPUT = Paths.get(ToolHelper.EXAMPLES_BUILD_DIR, "arithmetic.jar");
+
+  private String[] serve(String... requests) throws Exception {
+    return serve(true, null, requests);
+  }
+
+  private String[] serve(boolean allowQuit, String quitToken, String... requests)
+      throws Exception {
+    ExecutorService executor = ThreadUtils.getExecutorService(2);
+    try {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      PrintStream out = new PrintStream(output, true, "UTF-8");
+      new CompileDaemon(executor).serve(
+          new BufferedReader(new StringReader(String.join("\n", requests))), out,
+          allowQuit, quitToken);
+      return output.toString("UTF-8").split("\n");
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void multipleRequests() throws Exception {
+    Path first = temp.newFolder().toPath();
+    Path second = temp.newFolder().toPath();
+    String lib = " --lib " + ToolHelper.getDefaultAndroidJar();
+    String[] responses = serve(
+        "d8 --output " + first + lib + " " + INPUT,
+        "",
+        "d8 --debug --output " + second + lib + " " + INPUT,
+        "quit",
+        "d8 --output " + first + " " + INPUT);
+    assertEquals(2, responses.length);
+    assertEquals("OK", responses[0]);
+    assertEquals("OK", responses[1]);
+    assertTrue(Files.exists(first.resolve("classes.dex")));
+    assertTrue(Files.exists(second.resolve("classes.dex")));
+  }
+
+  @Test
+  public void errorsAreReported() throws Exception {
+    String[] responses = serve(
+        "d8 --output " + temp.newFolder() + " nonexisting.jar",
+        "dx " + INPUT);
+    assertEquals(2, responses.length);
+    assertTrue(responses[0].startsWith("ERROR: "));
+    assertEquals("ERROR: Unknown tool: dx", responses[1]);
+  }
+
+  @Test
+  public void quitRequiresToken() throws Exception {
+    String[] responses = serve(true, "secret",
+        "quit",
+        "quit wrong",
+        "quit secret",
+        "dx " + INPUT);
+    assertEquals(2, responses.length);
+    assertEquals("ERROR: Invalid quit token.", responses[0]);
+    assertEquals("ERROR: Invalid quit token.", responses[1]);
+  }
+
+  @Test
+  public void quitCanBeRefused() throws Exception {
+    String[] responses = serve(false, null,
+        "quit",
+        "dx " + INPUT);
+    assertEquals(2, responses.length);
+    assertTrue(responses[0].startsWith("ERROR: "));
+    assertEquals("ERROR: Unknown tool: dx", responses[1]);
+  }
+}
@@ -0,0 +1,48 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8;
+
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+/**
+ * Compilations running at the same time in one process, with one factory for the dex items and
+ * the same library, produce the same output as when running one at a time.
+ */
+public class ConcurrentCompilationsTest {
+
+  private static final List<String> EXAMPLES = ImmutableList.of(
+      "classmerging", "inlining", "memberrebinding2", "minification", "shaking1", "shaking2");
+  private static final int ROUNDS = 3;
+
+  @Test
+  public void sameOutputAsSequentialCompilations() throws Exception {
+    List<AndroidApp> expected = new ArrayList<>();
+    for (String example : EXAMPLES) {
+      expected.add(ToolHelper.runR8OnExample(example, null));
+    }
+    DexItemFactory factory = new DexItemFactory();
+    ExecutorService executor = ThreadUtils.getExecutorService(EXAMPLES.size());
+    try {
+      List<Future<AndroidApp>> futures = new ArrayList<>();
+      for (int round = 0; round < ROUNDS; round++) {
+        for (String example : EXAMPLES) {
+          futures.add(executor.submit(() -> ToolHelper.runR8OnExample(example, factory, null)));
+        }
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        ToolHelper.assertSameDexFiles(expected.get(i % EXAMPLES.size()), futures.get(i).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,136 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.utils.OutputMode;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The dex files streamed to the output as they are written are the same as the dex files written
+ * from the in-memory output.
+ */
+public class StreamedDexOutputTest {
+
+  private static final Path APP = Paths.get(ToolHelper.EXAMPLES_BUILD_DIR, "inlining.jar");
+
+  @Rule
+  public TemporaryFolder temp = ToolHelper.getTemporaryFolderForTest();
+
+  private static D8Command command(Path output, OutputMode outputMode)
+      throws CompilationException, IOException {
+    return D8Command.builder()
+        .addProgramFiles(APP)
+        .setOutputMode(outputMode)
+        .setOutputPath(output)
+        .build();
+  }
+
+  private static void runAndWrite(D8Command command) throws IOException {
+    // Several threads, so that files are written ahead of the one being streamed.
+    ExecutorService executor = ThreadUtils.getExecutorService(4);
+    try {
+      D8.runAndWrite(command, executor);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static Map<String, byte[]> readZip(Path archive) throws IOException {
+    Map<String, byte[]> result = new TreeMap<>();
+    try (ZipFile zip = new ZipFile(archive.toFile())) {
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        try (InputStream input = zip.getInputStream(entry)) {
+          result.put(entry.getName(), ByteStreams.toByteArray(input));
+        }
+      }
+    }
+    return result;
+  }
+
+  private static Map<String, byte[]> readDirectory(Path directory) throws IOException {
+    Map<String, byte[]> result = new TreeMap<>();
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+        result.put(directory.relativize(file).toString(), Files.readAllBytes(file));
+      }
+    }
+    return result;
+  }
+
+  private static void assertSameFiles(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+    assertTrue(expected.size() > 0);
+    assertEquals(expected.keySet(), actual.keySet());
+    for (String name : expected.keySet()) {
+      assertArrayEquals(name, expected.get(name), actual.get(name));
+    }
+  }
+
+  private void checkZip(OutputMode outputMode) throws Exception {
+    Path expected = temp.getRoot().toPath().resolve("expected.zip");
+    Path actual = temp.getRoot().toPath().resolve("actual.zip");
+    D8.run(command(expected, outputMode));
+    runAndWrite(command(actual, outputMode));
+    assertSameFiles(readZip(expected), readZip(actual));
+  }
+
+  private void checkDirectory(OutputMode outputMode) throws Exception {
+    Path expected = temp.newFolder().toPath();
+    Path actual = temp.newFolder().toPath();
+    D8.run(command(expected, outputMode));
+    runAndWrite(command(actual, outputMode));
+    assertSameFiles(readDirectory(expected), readDirectory(actual));
+  }
+
+  @Test
+  public void zip() throws Exception {
+    checkZip(OutputMode.Indexed);
+  }
+
+  @Test
+  public void zipFilePerClass() throws Exception {
+    checkZip(OutputMode.FilePerClass);
+  }
+
+  @Test
+  public void directory() throws Exception {
+    checkDirectory(OutputMode.Indexed);
+  }
+
+  @Test
+  public void directoryFilePerClass() throws Exception {
+    checkDirectory(OutputMode.FilePerClass);
+  }
+
+  @Test
+  public void staleIndexedFilesAreRemoved() throws Exception {
+    Path output = temp.newFolder().toPath();
+    Files.write(output.resolve("classes2.dex"), new byte[] { 1, 2, 3 });
+    runAndWrite(command(output, OutputMode.Indexed));
+    assertEquals(1, readDirectory(output).size());
+    assertTrue(Files.exists(output.resolve("classes.dex")));
+  }
+}
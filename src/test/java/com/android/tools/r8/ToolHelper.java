@@ -3,6 +3,7 @@
 // BSD-style license that can be found in the LICENSE file.
 package com.android.tools.r8;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -504,6 +505,56 @@ public class ToolHelper {
     return result;
   }
 
+  /**
+   * Runs R8 on an example with its keep rules. Minification is off, since with assertions enabled
+   * the classes are visited in random order and the minified names are not stable.
+   */
+  public static AndroidApp runR8OnExample(
+      String example, Consumer<InternalOptions> optionsConsumer)
+      throws ProguardRuleParserException, ExecutionException, IOException, CompilationException {
+    return runR8OnExample(example, new DexItemFactory(), optionsConsumer);
+  }
+
+  /**
+   * Compiles an example with R8, creating the dex items in the given factory.
+   */
+  public static AndroidApp runR8OnExample(
+      String example, DexItemFactory factory, Consumer<InternalOptions> optionsConsumer)
+      throws ProguardRuleParserException, ExecutionException, IOException, CompilationException {
+    return runR8(
+        R8Command.builder()
+            .setDexItemFactory(factory)
+            .addProgramFiles(Paths.get(EXAMPLES_BUILD_DIR, example + ".jar"))
+            .addProguardConfigurationFiles(Paths.get(EXAMPLES_DIR, example, "keep-rules.txt"))
+            .addLibraryFiles(Paths.get(getDefaultAndroidJar()))
+            .setMinification(false)
+            .build(),
+        optionsConsumer);
+  }
+
+  public static List<byte[]> readDexFiles(AndroidApp app) throws IOException {
+    List<byte[]> result = new ArrayList<>();
+    for (Resource resource : app.getDexProgramResources()) {
+      try (InputStream input = resource.getStream()) {
+        result.add(ByteStreams.toByteArray(input));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Checks that the two applications have the same dex files, byte for byte.
+   */
+  public static void assertSameDexFiles(AndroidApp expected, AndroidApp actual)
+      throws IOException {
+    List<byte[]> expectedFiles = readDexFiles(expected);
+    List<byte[]> actualFiles = readDexFiles(actual);
+    assertEquals(expectedFiles.size(), actualFiles.size());
+    for (int i = 0; i < expectedFiles.size(); i++) {
+      assertArrayEquals(expectedFiles.get(i), actualFiles.get(i));
+    }
+  }
+
   public static AndroidApp runR8(String fileName, String out)
       throws IOException, ProguardRuleParserException, ExecutionException, CompilationException {
     return runR8(Collections.singletonList(fileName), out);
@@ -0,0 +1,146 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.d8;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.D8;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.Resource;
+import com.android.tools.r8.TestBase;
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.dex.Constants;
+import com.android.tools.r8.utils.DexInspector;
+import com.android.tools.r8.utils.OutputMode;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+public class DexCacheTest extends TestBase {
+
+  static class Producer {
+    static Supplier<String> supplier() {
+      return () -> "Hello";
+    }
+  }
+
+  static class Consumer {
+    public static void main(String[] args) {
+      System.out.println(Producer.supplier().get());
+    }
+  }
+
+  private D8Command.Builder builder(Path dexCache) throws Exception {
+    return D8Command.builder()
+        .addProgramFiles(
+            ToolHelper.getClassFileForTestClass(Producer.class),
+            ToolHelper.getClassFileForTestClass(Consumer.class))
+        .setDexCacheDirectory(dexCache);
+  }
+
+  private static byte[] withExtraField(Class<?> clazz) throws IOException {
+    ClassReader reader =
+        new ClassReader(Files.readAllBytes(ToolHelper.getClassFileForTestClass(clazz)));
+    ClassWriter writer = new ClassWriter(0);
+    reader.accept(new ClassVisitor(Opcodes.ASM5, writer) {
+      @Override
+      public void visitEnd() {
+        visitField(Opcodes.ACC_STATIC, "extra", "I", null, null).visitEnd();
+        super.visitEnd();
+      }
+    }, 0);
+    return writer.toByteArray();
+  }
+
+  private static List<Path> cacheEntries(Path dexCache) throws Exception {
+    try (Stream<Path> paths = Files.walk(dexCache)) {
+      return paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static byte[] readSingleDex(List<Resource> resources) throws Exception {
+    assertEquals(1, resources.size());
+    try (InputStream input = resources.get(0).getStream()) {
+      return ByteStreams.toByteArray(input);
+    }
+  }
+
+  @Test
+  public void warmCacheProducesSameOutput() throws Exception {
+    Path dexCache = temp.newFolder().toPath();
+    byte[] cold = readSingleDex(D8.run(builder(dexCache).build()).getDexResources());
+    List<Path> entries = cacheEntries(dexCache);
+    assertEquals(2, entries.size());
+    byte[] warm = readSingleDex(D8.run(builder(dexCache).build()).getDexResources());
+    assertArrayEquals(cold, warm);
+    byte[] uncached =
+        readSingleDex(D8.run(builder(dexCache).setDexCacheDirectory(null).build())
+            .getDexResources());
+    assertArrayEquals(uncached, warm);
+    assertEquals(entries, cacheEntries(dexCache));
+
+    DexInspector inspector = new DexInspector(
+        D8.run(builder(dexCache).build()).getDexResources().stream()
+            .map(resource -> {
+              try (InputStream input = resource.getStream()) {
+                Path dex = temp.newFile("classes.dex").toPath();
+                Files.write(dex, ByteStreams.toByteArray(input));
+                return dex;
+              } catch (Exception e) {
+                throw new RuntimeException(e);
+              }
+            })
+            .collect(Collectors.toList()));
+    assertTrue(inspector.clazz(Producer.class).isPresent());
+    assertTrue(inspector.clazz(Consumer.class).isPresent());
+  }
+
+  @Test
+  public void optionsArePartOfTheKey() throws Exception {
+    Path dexCache = temp.newFolder().toPath();
+    D8.run(builder(dexCache).build());
+    assertEquals(2, cacheEntries(dexCache).size());
+    D8.run(builder(dexCache).setMinApiLevel(Constants.ANDROID_N_API).build());
+    assertEquals(4, cacheEntries(dexCache).size());
+    D8.run(builder(dexCache).setMinApiLevel(Constants.ANDROID_N_API).build());
+    assertEquals(4, cacheEntries(dexCache).size());
+  }
+
+  @Test
+  public void dependenciesArePartOfTheKey() throws Exception {
+    Path dexCache = temp.newFolder().toPath();
+    D8.run(builder(dexCache).build());
+    assertEquals(2, cacheEntries(dexCache).size());
+    // Changing Producer invalidates the entries of both Producer and Consumer, which uses it.
+    D8.run(D8Command.builder()
+        .addClassProgramData(withExtraField(Producer.class))
+        .addProgramFiles(ToolHelper.getClassFileForTestClass(Consumer.class))
+        .setDexCacheDirectory(dexCache)
+        .build());
+    assertEquals(4, cacheEntries(dexCache).size());
+  }
+
+  @Test
+  public void filePerClassFromCache() throws Exception {
+    Path dexCache = temp.newFolder().toPath();
+    D8.run(builder(dexCache).build());
+    List<Resource> resources =
+        D8.run(builder(dexCache).setOutputMode(OutputMode.FilePerClass).build()).getDexResources();
+    // The two program classes and the synthesized lambda class.
+    assertEquals(3, resources.size());
+  }
+}
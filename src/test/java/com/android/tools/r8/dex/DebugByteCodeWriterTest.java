@@ -16,15 +16,17 @@ import com.android.tools.r8.graph.DexProto;
 import com.android.tools.r8.graph.DexString;
 import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.graph.ObjectToOffsetMapping;
+import com.android.tools.r8.naming.NamingLens;
 import org.junit.Assert;
 import org.junit.Test;
 
 public class DebugByteCodeWriterTest {
 
   ObjectToOffsetMapping emptyObjectTObjectMapping() {
+    DexItemFactory factory = new DexItemFactory();
     return new ObjectToOffsetMapping(
-        0,
-        new Builder(new DexItemFactory(), null).build(),
+        factory.sort(NamingLens.getIdentityLens()),
+        new Builder(factory, null).build(),
         new DexProgramClass[] {},
         new DexProto[] {},
         new DexType[] {},
@@ -0,0 +1,102 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.dex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.Resource;
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.errors.Unreachable;
+import com.android.tools.r8.utils.OutputMode;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.Test;
+
+public class DexOutputBufferReuseTest {
+
+  private static final Path APP = Paths.get(ToolHelper.EXAMPLES_BUILD_DIR, "inlining.jar");
+
+  private static byte[] toByteArray(Resource resource) throws Exception {
+    try (InputStream input = resource.getStream()) {
+      return ByteStreams.toByteArray(input);
+    }
+  }
+
+  @Test
+  public void resetClearsContent() {
+    DexOutputBuffer buffer = new DexOutputBuffer();
+    buffer.putInt(0xcafebabe);
+    buffer.moveTo(1024 * 1024);
+    buffer.putByte((byte) 1);
+    int capacity = buffer.asArray().length;
+    buffer.reset();
+    assertEquals(0, buffer.position());
+    assertEquals(capacity, buffer.asArray().length);
+    for (byte b : buffer.asArray()) {
+      assertEquals(0, b);
+    }
+  }
+
+  @Test
+  public void resetClearsContentWrittenThroughViews() {
+    DexOutputBuffer buffer = new DexOutputBuffer(16);
+    buffer.ensureCapacity(1024);
+    buffer.viewAt(1020).putInt(0xcafebabe);
+    buffer.reset();
+    for (byte b : buffer.asArray()) {
+      assertEquals(0, b);
+    }
+  }
+
+  @Test(expected = Unreachable.class)
+  public void viewsCannotWritePastEnsuredCapacity() {
+    DexOutputBuffer buffer = new DexOutputBuffer(1024);
+    buffer.ensureCapacity(16);
+    buffer.viewAt(14).putInt(0xcafebabe);
+  }
+
+  @Test
+  public void reusedBuffersGiveSameOutput() throws Exception {
+    // With a single thread all files are written through the same output buffer.
+    List<Resource> output =
+        ToolHelper.runD8(
+            D8Command.builder()
+                .addProgramFiles(APP)
+                .setOutputMode(OutputMode.FilePerClass)
+                .build(),
+            options -> options.numberOfThreads = 1)
+            .getDexProgramResources();
+    assertTrue(output.size() > 1);
+    try (ZipFile zip = new ZipFile(APP.toFile())) {
+      for (Resource resource : output) {
+        String descriptor = Iterables.getOnlyElement(resource.getClassDescriptors());
+        String name = descriptor.substring(1, descriptor.length() - 1) + ".class";
+        ZipEntry entry = zip.getEntry(name);
+        byte[] classFile;
+        try (InputStream input = zip.getInputStream(entry)) {
+          classFile = ByteStreams.toByteArray(input);
+        }
+        List<Resource> single =
+            ToolHelper.runD8(
+                D8Command.builder()
+                    .addClassProgramData(classFile)
+                    .setOutputMode(OutputMode.FilePerClass)
+                    .build(),
+                null)
+                .getDexProgramResources();
+        assertEquals(1, single.size());
+        assertArrayEquals(name, toByteArray(single.get(0)), toByteArray(resource));
+      }
+    }
+  }
+}
@@ -18,6 +18,7 @@ import com.android.tools.r8.graph.DexCode.Try;
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.graph.DexItemFactory;
 import com.android.tools.r8.graph.DexString;
+import com.android.tools.r8.graph.SortedIndices;
 import com.android.tools.r8.naming.NamingLens;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,9 +30,9 @@ public class JumboStringProcessing {
   public void branching() {
     DexItemFactory factory = new DexItemFactory();
     DexString string = factory.createString("turn into jumbo");
-    factory.sort(NamingLens.getIdentityLens());
+    SortedIndices indices = factory.sort(NamingLens.getIdentityLens());
     Instruction[] instructions = buildInstructions(string, false);
-    DexCode code = jumboStringProcess(factory, string, instructions);
+    DexCode code = jumboStringProcess(factory, indices, string, instructions);
     Instruction[] rewrittenInstructions = code.instructions;
     assert rewrittenInstructions[1] instanceof IfEq;
     IfEq condition = (IfEq) rewrittenInstructions[1];
@@ -46,9 +47,9 @@ public class JumboStringProcessing {
   public void branching2() {
     DexItemFactory factory = new DexItemFactory();
     DexString string = factory.createString("turn into jumbo");
-    factory.sort(NamingLens.getIdentityLens());
+    SortedIndices indices = factory.sort(NamingLens.getIdentityLens());
     Instruction[] instructions = buildInstructions(string, true);
-    DexCode code = jumboStringProcess(factory, string, instructions);
+    DexCode code = jumboStringProcess(factory, indices, string, instructions);
     Instruction[] rewrittenInstructions = code.instructions;
     assert rewrittenInstructions[1] instanceof IfEqz;
     IfEqz condition = (IfEqz) rewrittenInstructions[1];
@@ -88,8 +89,8 @@ public class JumboStringProcessing {
     return instructions.toArray(new Instruction[instructions.size()]);
   }
 
-  private DexCode jumboStringProcess(
-      DexItemFactory factory, DexString string, Instruction[] instructions) {
+  private DexCode jumboStringProcess(DexItemFactory factory, SortedIndices indices,
+      DexString string, Instruction[] instructions) {
     DexCode code = new DexCode(
         1,
         0,
@@ -102,7 +103,7 @@ public class JumboStringProcessing {
     DexAccessFlags flags = new DexAccessFlags(0);
     flags.setPublic();
     DexEncodedMethod method = new DexEncodedMethod(null, flags, null, null, code);
-    new JumboStringRewriter(method, string, factory).rewrite();
+    new JumboStringRewriter(method, string, indices, factory).rewrite();
     return method.getCode().asDexCode();
   }
 }
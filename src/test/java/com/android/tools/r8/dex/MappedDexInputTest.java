@@ -0,0 +1,61 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.dex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.android.tools.r8.Resource;
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.utils.AndroidApp;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.Test;
+
+public class MappedDexInputTest {
+
+  private static final List<Path> INPUTS = ImmutableList.of(
+      Paths.get(ToolHelper.EXAMPLES_BUILD_DIR, "arithmetic", "classes.dex"),
+      Paths.get(ToolHelper.EXAMPLES_BUILD_DIR, "constants", "classes.dex"));
+
+  private static byte[] merge(AndroidApp app) throws Exception {
+    List<Resource> output = ToolHelper.runD8(app).getDexProgramResources();
+    assertEquals(1, output.size());
+    try (InputStream input = output.get(0).getStream()) {
+      return ByteStreams.toByteArray(input);
+    }
+  }
+
+  @Test
+  public void mappedFilesAndBytesGiveSameOutput() throws Exception {
+    AndroidApp.Builder fromBytes = AndroidApp.builder();
+    for (Path input : INPUTS) {
+      fromBytes.addDexProgramData(Files.readAllBytes(input));
+    }
+    assertArrayEquals(
+        merge(fromBytes.build()), merge(AndroidApp.builder().addProgramFiles(INPUTS).build()));
+  }
+
+  @Test
+  public void segmentsOfMappedFile() throws Exception {
+    Path input = INPUTS.get(0);
+    Segment[] mapped = DexFileReader.parseMapFrom(input);
+    Segment[] read;
+    try (InputStream stream = Files.newInputStream(input)) {
+      read = DexFileReader.parseMapFrom(stream);
+    }
+    assertEquals(read.length, mapped.length);
+    for (int i = 0; i < read.length; i++) {
+      assertEquals(read[i].type, mapped[i].type);
+      assertEquals(read[i].offset, mapped[i].offset);
+      assertEquals(read[i].length, mapped[i].length);
+      assertEquals(read[i].size(), mapped[i].size());
+    }
+  }
+}
@@ -0,0 +1,47 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.dex;
+
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.utils.AndroidApp;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Test;
+
+public class ParallelFileWriterTest {
+
+  private static Path example(String name) {
+    return Paths.get(ToolHelper.EXAMPLES_BUILD_DIR, name + ".jar");
+  }
+
+  private static AndroidApp compile(int threads, int parallelFileWritingThreshold)
+      throws Exception {
+    // The jumbo strings example has enough strings to split the string sections into several
+    // tasks, the others add annotations, static values and try-catch handlers.
+    return ToolHelper.runD8(
+        D8Command.builder()
+            .addProgramFiles(
+                example("jumbostring"),
+                example("annotationremoval"),
+                example("floating_point_annotations"),
+                example("nestedtrycatches"),
+                example("inlining"))
+            .build(),
+        options -> {
+          options.numberOfThreads = threads;
+          options.parallelFileWritingThreshold = parallelFileWritingThreshold;
+        });
+  }
+
+  @Test
+  public void sameOutputWrittenInlineAndInParallel() throws Exception {
+    ToolHelper.assertSameDexFiles(compile(1, Integer.MAX_VALUE), compile(4, 0));
+  }
+
+  @Test
+  public void sameOutputWithOneAndManyThreads() throws Exception {
+    ToolHelper.assertSameDexFiles(compile(1, 0), compile(4, 0));
+  }
+}
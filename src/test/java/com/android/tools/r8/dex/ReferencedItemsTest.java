@@ -0,0 +1,106 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.dex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.android.tools.r8.errors.InternalCompilerError;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexString;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.graph.PresortedComparable;
+import com.android.tools.r8.graph.SortedIndices;
+import com.android.tools.r8.naming.NamingLens;
+import com.android.tools.r8.smali.SmaliTestBase;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.ToIntFunction;
+import org.junit.Test;
+
+public class ReferencedItemsTest extends SmaliTestBase {
+
+  private static <T extends PresortedComparable<T>> void checkSorted(
+      Collection<T> items, ToIntFunction<T> getIndex) {
+    List<T> sorted = new ArrayList<>(items);
+    sorted.sort(PresortedComparable::slowCompare);
+    for (int i = 0; i < sorted.size(); i++) {
+      assertEquals(i, getIndex.applyAsInt(sorted.get(i)));
+    }
+  }
+
+  @Test
+  public void onlyReferencedItemsAreSorted() throws Exception {
+    SmaliBuilder builder = new SmaliBuilder(DEFAULT_CLASS_NAME);
+    builder.addMainMethod(
+        2,
+        "    sget-object         v0, Ljava/lang/System;->out:Ljava/io/PrintStream;",
+        "    const-string        v1, \"referenced\"",
+        "    invoke-virtual      { v0, v1 }, Ljava/io/PrintStream;->print(Ljava/lang/String;)V",
+        "    return-void");
+    DexApplication application = buildApplication(builder, new InternalOptions());
+    DexItemFactory factory = application.dexItemFactory;
+    DexString referenced = factory.createString("referenced");
+    DexString unreferenced = factory.createString("unreferenced");
+    DexType unreferencedType = factory.createType("LUnreferenced;");
+    ExecutorService executor = ThreadUtils.getExecutorService(2);
+    try {
+      ReferencedItems items = ReferencedItems.collect(
+          application.classes(), NamingLens.getIdentityLens(), executor);
+      assertTrue(items.getStrings().contains(referenced));
+      assertTrue(items.getTypes().contains(factory.createType("Ljava/io/PrintStream;")));
+      assertFalse(items.getStrings().contains(unreferenced));
+      assertFalse(items.getTypes().contains(unreferencedType));
+      SortedIndices indices = factory.sort(NamingLens.getIdentityLens(), items.getStrings(),
+          items.getTypes(), items.getFields(), items.getProtos(), items.getMethods(), executor);
+      checkSorted(items.getStrings(), indices::getIndex);
+      checkSorted(items.getTypes(), indices::getIndex);
+      checkSorted(items.getFields(), indices::getIndex);
+      checkSorted(items.getProtos(), indices::getIndex);
+      checkSorted(items.getMethods(), indices::getIndex);
+      assertFalse(indices.hasIndex(unreferenced));
+      assertFalse(indices.hasIndex(unreferencedType));
+      try {
+        indices.compare(referenced, unreferenced);
+        fail("Expected an error for an item without an index");
+      } catch (InternalCompilerError e) {
+        // Expected.
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void manyItemsAreSortedInParallel() throws Exception {
+    DexItemFactory factory = new DexItemFactory();
+    List<DexString> strings = new ArrayList<>();
+    List<DexType> types = new ArrayList<>();
+    // Enough items for several rounds of merging, in an order that is not already sorted.
+    for (int i = 0; i < 50000; i++) {
+      int number = (i * 7919) % 50000;
+      types.add(factory.createType("LClass" + number + ";"));
+      strings.add(factory.createString("string" + number));
+    }
+    strings.addAll(Lists.transform(types, type -> type.descriptor));
+    ExecutorService executor = ThreadUtils.getExecutorService(4);
+    try {
+      SortedIndices indices = factory.sort(NamingLens.getIdentityLens(), strings, types,
+          ImmutableList.of(), ImmutableList.of(), ImmutableList.of(), executor);
+      checkSorted(strings, indices::getIndex);
+      checkSorted(types, indices::getIndex);
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,56 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.android.tools.r8.graph.DexDebugEvent.AdvanceLine;
+import com.android.tools.r8.utils.ThreadUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class DexDebugEventTableTest {
+
+  @Test
+  public void canonicalizeEvents() {
+    DexItemFactory factory = new DexItemFactory();
+    for (int delta : new int[] {Integer.MIN_VALUE, -1, 0, 1, 4711, Integer.MAX_VALUE}) {
+      AdvanceLine line = factory.createAdvanceLine(delta);
+      assertEquals(delta, line.delta);
+      assertSame(line, factory.createAdvanceLine(delta));
+    }
+    assertSame(factory.createEndLocal(3), factory.createEndLocal(3));
+    assertSame(factory.createRestartLocal(3), factory.createRestartLocal(3));
+  }
+
+  @Test
+  public void canonicalizeConcurrently() throws Exception {
+    DexDebugEventTable<AdvanceLine> table = new DexDebugEventTable<>(AdvanceLine::new);
+    ExecutorService executor = ThreadUtils.getExecutorService(4);
+    try {
+      List<Future<AdvanceLine[]>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        futures.add(executor.submit(() -> {
+          AdvanceLine[] lines = new AdvanceLine[10000];
+          for (int i = 0; i < lines.length; i++) {
+            lines[i] = table.lookupOrAdd(i - lines.length / 2);
+          }
+          return lines;
+        }));
+      }
+      List<AdvanceLine[]> results = ThreadUtils.awaitFutures(futures);
+      for (AdvanceLine[] lines : results) {
+        for (int i = 0; i < lines.length; i++) {
+          assertSame(results.get(0)[i], lines[i]);
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
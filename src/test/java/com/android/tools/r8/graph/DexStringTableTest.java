@@ -0,0 +1,103 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.android.tools.r8.utils.ThreadUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class DexStringTableTest {
+
+  private static final String[] STRINGS = {
+      "", "a", "Ljava/lang/Object;", "\u0000", "a\u0000b", "\u00e6\u00f8\u00e5", "\u07ff",
+      "\u0800", "\u4e2d\u6587", "\uffff", "mixed \u0000 \u00e6 \u4e2d"
+  };
+
+  @Test
+  public void canonicalizeFromStringAndBytes() {
+    DexItemFactory factory = new DexItemFactory();
+    for (String value : STRINGS) {
+      DexString string = factory.createString(value);
+      assertEquals(value, string.toString());
+      assertSame(string, factory.createString(value));
+      assertSame(string, factory.createString(string.size, string.content.clone()));
+      byte[] buffer = new byte[string.content.length + 10];
+      System.arraycopy(string.content, 0, buffer, 3, string.content.length);
+      assertSame(
+          string, factory.createString(string.size, buffer, 3, string.content.length));
+      assertEquals(string.hashCode(), new DexString(value).hashCode());
+    }
+  }
+
+  @Test
+  public void prefixesAreDistinct() {
+    DexItemFactory factory = new DexItemFactory();
+    DexString ab = factory.createString("ab");
+    DexString a = factory.createString("a");
+    DexString abc = factory.createString("abc");
+    assertEquals("a", a.toString());
+    assertEquals("ab", ab.toString());
+    assertEquals("abc", abc.toString());
+  }
+
+  @Test
+  public void growTable() {
+    DexStringTable table = new DexStringTable();
+    List<DexString> strings = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      strings.add(table.lookupOrAdd("string" + i));
+    }
+    assertEquals(strings.size(), table.size());
+    assertEquals(strings.size(), table.values().size());
+    for (int i = 0; i < strings.size(); i++) {
+      assertSame(strings.get(i), table.lookupOrAdd("string" + i));
+      assertSame(strings.get(i), table.lookupOrAdd(new DexString("string" + i)));
+    }
+  }
+
+  @Test
+  public void concurrentCanonicalization() throws Exception {
+    DexItemFactory factory = new DexItemFactory();
+    int threads = 4;
+    int count = 20000;
+    ExecutorService executor = ThreadUtils.getExecutorService(threads);
+    List<Future<DexString[]>> futures = new ArrayList<>();
+    try {
+      for (int t = 0; t < threads; t++) {
+        int thread = t;
+        futures.add(executor.submit(() -> {
+          DexString[] result = new DexString[count];
+          for (int i = 0; i < count; i++) {
+            // Alternate between the two lookups and the order of insertion.
+            int index = thread % 2 == 0 ? i : count - i - 1;
+            String value = "s\u00e6" + index;
+            if (thread < 2) {
+              result[index] = factory.createString(value);
+            } else {
+              DexString string = new DexString(value);
+              result[index] = factory.createString(string.size, string.content);
+            }
+          }
+          return result;
+        }));
+      }
+      ThreadUtils.awaitFutures(futures);
+    } finally {
+      executor.shutdown();
+    }
+    DexString[] first = futures.get(0).get();
+    for (Future<DexString[]> future : futures) {
+      DexString[] result = future.get();
+      for (int i = 0; i < count; i++) {
+        assertSame(first[i], result[i]);
+      }
+    }
+  }
+}
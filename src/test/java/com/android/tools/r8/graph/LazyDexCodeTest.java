@@ -0,0 +1,93 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.code.ReturnVoid;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class LazyDexCodeTest {
+
+  private static final String APP = ToolHelper.EXAMPLES_BUILD_DIR + "regalloc/classes.dex";
+
+  private static List<DexEncodedMethod> methodsWithCode(DexApplication application) {
+    List<DexEncodedMethod> methods = new ArrayList<>();
+    for (DexProgramClass clazz : application.classes()) {
+      for (DexEncodedMethod method : clazz.allMethodsSorted()) {
+        if (!method.accessFlags.isAbstract() && !method.accessFlags.isNative()) {
+          methods.add(method);
+        }
+      }
+    }
+    return methods;
+  }
+
+  @Test
+  public void codeIsDecodedOnce() throws Exception {
+    List<DexEncodedMethod> methods =
+        methodsWithCode(ToolHelper.buildApplication(ImmutableList.of(APP)));
+    assertTrue(methods.size() > 0);
+    for (DexEncodedMethod method : methods) {
+      Code code = method.getCode();
+      assertTrue(code instanceof DexCode);
+      assertSame(code, method.getCode());
+    }
+  }
+
+  @Test
+  public void concurrentDecoding() throws Exception {
+    List<DexEncodedMethod> sequential =
+        methodsWithCode(ToolHelper.buildApplication(ImmutableList.of(APP)));
+    List<DexEncodedMethod> concurrent =
+        methodsWithCode(ToolHelper.buildApplication(ImmutableList.of(APP)));
+    assertEquals(sequential.size(), concurrent.size());
+    ExecutorService executor = ThreadUtils.getExecutorService(4);
+    try {
+      List<Future<String>> futures = new ArrayList<>();
+      for (DexEncodedMethod method : concurrent) {
+        futures.add(executor.submit(() -> method.getCode().toString()));
+      }
+      List<String> decoded = ThreadUtils.awaitFutures(futures);
+      Map<String, String> expected = new HashMap<>();
+      for (DexEncodedMethod method : sequential) {
+        expected.put(method.toSourceString(), method.getCode().toString());
+      }
+      for (int i = 0; i < concurrent.size(); i++) {
+        assertEquals(expected.get(concurrent.get(i).toSourceString()), decoded.get(i));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void equalsAndHashCodeMatchDecodedCode() {
+    DexCode code = new DexCode(1, 1, 0, new Instruction[] { new ReturnVoid() },
+        new DexCode.Try[0], new DexCode.TryHandler[0], null, null);
+    DexCode other = new DexCode(2, 1, 0, new Instruction[] { new ReturnVoid() },
+        new DexCode.Try[0], new DexCode.TryHandler[0], null, null);
+    LazyDexCode lazy = new LazyDexCode(() -> code);
+    LazyDexCode otherLazy = new LazyDexCode(() -> code);
+    assertEquals(code, lazy);
+    assertEquals(lazy, code);
+    assertEquals(lazy, otherLazy);
+    assertEquals(code.hashCode(), lazy.hashCode());
+    assertNotEquals(other, lazy);
+    assertNotEquals(lazy, other);
+  }
+}
@@ -0,0 +1,142 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.smali.SmaliTestBase;
+import com.android.tools.r8.utils.InternalOptions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+public class SubtypeIndexTest extends SmaliTestBase {
+
+  // The subtypes of all types, computed by walking up from every class.
+  private static Map<DexType, Set<DexType>> transitiveSubtypes(Map<DexType, DexClass> classes) {
+    Map<DexType, Set<DexType>> result = new IdentityHashMap<>();
+    for (DexClass clazz : classes.values()) {
+      Set<DexType> visited = Sets.newIdentityHashSet();
+      addToSupertypes(clazz.type, clazz.type, classes, visited, result);
+    }
+    return result;
+  }
+
+  private static void addToSupertypes(DexType type, DexType subtype,
+      Map<DexType, DexClass> classes, Set<DexType> visited, Map<DexType, Set<DexType>> result) {
+    DexClass clazz = classes.get(type);
+    if (clazz == null) {
+      return;
+    }
+    if (clazz.superType != null) {
+      addToSupertype(clazz.superType, subtype, classes, visited, result);
+    }
+    for (DexType inter : clazz.interfaces.values) {
+      addToSupertype(inter, subtype, classes, visited, result);
+    }
+  }
+
+  private static void addToSupertype(DexType type, DexType subtype,
+      Map<DexType, DexClass> classes, Set<DexType> visited, Map<DexType, Set<DexType>> result) {
+    if (visited.add(type)) {
+      result.computeIfAbsent(type, ignore -> new HashSet<>()).add(subtype);
+      addToSupertypes(type, subtype, classes, visited, result);
+    }
+  }
+
+  private static void checkSubtypes(Set<DexType> expected, Set<DexType> actual,
+      Iterable<DexType> allTypes) {
+    assertEquals(expected.size(), actual.size());
+    assertEquals(expected, ImmutableSet.copyOf(actual));
+    for (DexType type : allTypes) {
+      assertEquals(expected.contains(type), actual.contains(type));
+    }
+  }
+
+  @Test
+  public void matchesTransitiveClosure() {
+    SmaliBuilder builder = new SmaliBuilder();
+    builder.addInterface("Interface");
+    builder.addClass("Base", "java.util.AbstractList", ImmutableList.of("Interface"));
+    builder.addClass("Sub", "Base", ImmutableList.of("java.lang.Runnable"));
+    builder.addClass("Other", "java.lang.Object", ImmutableList.of("Interface"));
+    builder.addClass("Missing", "MissingSuperClass", ImmutableList.of("java.lang.Runnable"));
+    DexApplication application = buildApplicationWithAndroidJar(builder, new InternalOptions());
+    Map<DexType, DexClass> classes = application.getFullClassMap();
+    SubtypeIndex index = new SubtypeIndex(classes);
+    Map<DexType, Set<DexType>> expected = transitiveSubtypes(classes);
+    Set<DexType> allTypes = new HashSet<>(classes.keySet());
+    allTypes.addAll(expected.keySet());
+    for (DexType type : allTypes) {
+      Set<DexType> subtypes = expected.getOrDefault(type, ImmutableSet.of());
+      // Only check all pairs for the types of the test, as there are many library types.
+      checkSubtypes(subtypes, index.subtypes(type),
+          type.toSourceString().contains(".") ? ImmutableSet.of() : allTypes);
+    }
+  }
+
+  @Test
+  public void missingSuperClass() {
+    SmaliBuilder builder = new SmaliBuilder();
+    builder.addInterface("Interface");
+    builder.addClass("A", "MissingSuperClass");
+    builder.addClass("B", "A", ImmutableList.of("Interface"));
+    builder.addClass("C", "B");
+    builder.addClass("D");
+    DexApplication application = buildApplication(builder, new InternalOptions());
+    DexItemFactory factory = application.dexItemFactory;
+    SubtypeIndex index = new SubtypeIndex(application.getFullClassMap());
+    DexType missing = factory.createType("LMissingSuperClass;");
+    DexType a = factory.createType("LA;");
+    DexType b = factory.createType("LB;");
+    DexType c = factory.createType("LC;");
+    DexType d = factory.createType("LD;");
+    DexType inter = factory.createType("LInterface;");
+    assertEquals(ImmutableSet.of(a, b, c), index.subtypes(missing));
+    assertEquals(ImmutableSet.of(b, c), index.subtypes(a));
+    assertEquals(ImmutableSet.of(b, c), index.subtypes(inter));
+    assertEquals(ImmutableSet.of(c), index.subtypes(b));
+    assertTrue(index.subtypes(c).isEmpty());
+    assertTrue(index.isSubtype(c, a));
+    assertFalse(index.isSubtype(a, a));
+    assertFalse(index.isSubtype(a, c));
+    assertFalse(index.isSubtype(missing, factory.objectType));
+    // Classes with a missing super class are only subtypes of Object through their interfaces.
+    assertEquals(ImmutableSet.of(inter, b, c, d), index.subtypes(factory.objectType));
+    assertTrue(index.subtypes(factory.createType("LUnknown;")).isEmpty());
+  }
+
+  @Test
+  public void orderOfSubtypesDoesNotDependOnMapOrder() {
+    SmaliBuilder builder = new SmaliBuilder();
+    builder.addInterface("Interface");
+    for (String name : ImmutableList.of("A", "B", "C", "D", "E", "F")) {
+      builder.addClass(name, "java.lang.Object", ImmutableList.of("Interface"));
+      builder.addClass(name + "Sub", name);
+    }
+    DexApplication application = buildApplication(builder, new InternalOptions());
+    DexItemFactory factory = application.dexItemFactory;
+    List<DexClass> classes = new ArrayList<>(application.getFullClassMap().values());
+    Map<DexType, DexClass> forward = new LinkedHashMap<>();
+    classes.forEach(clazz -> forward.put(clazz.type, clazz));
+    Map<DexType, DexClass> backward = new LinkedHashMap<>();
+    Lists.reverse(classes).forEach(clazz -> backward.put(clazz.type, clazz));
+    for (DexType type : ImmutableList.of(factory.objectType, factory.createType("LInterface;"))) {
+      assertEquals(
+          ImmutableList.copyOf(new SubtypeIndex(forward).subtypes(type)),
+          ImmutableList.copyOf(new SubtypeIndex(backward).subtypes(type)));
+    }
+  }
+}
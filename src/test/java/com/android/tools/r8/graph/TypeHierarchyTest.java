@@ -0,0 +1,90 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.smali.SmaliTestBase;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class TypeHierarchyTest extends SmaliTestBase {
+
+  private static DexType type(DexItemFactory factory, String name) {
+    return factory.createType("L" + name + ";");
+  }
+
+  @Test
+  public void appInfosSharingFactory() {
+    InternalOptions options = new InternalOptions();
+    DexItemFactory factory = options.itemFactory;
+    SmaliBuilder first = new SmaliBuilder();
+    first.addInterface("I");
+    first.addClass("A");
+    first.addClass("B", "A", ImmutableList.of("I"));
+    AppInfoWithSubtyping firstAppInfo =
+        new AppInfoWithSubtyping(buildApplication(first, options));
+    SmaliBuilder second = new SmaliBuilder();
+    second.addInterface("I");
+    second.addClass("A", "java.lang.Object", ImmutableList.of("I"));
+    second.addClass("C", "A");
+    AppInfoWithSubtyping secondAppInfo =
+        new AppInfoWithSubtyping(buildApplication(second, options));
+    DexType i = type(factory, "I");
+    DexType a = type(factory, "A");
+    DexType b = type(factory, "B");
+    DexType c = type(factory, "C");
+    // Building the second hierarchy does not change the first.
+    assertSame(b, firstAppInfo.typeHierarchy.getSingleSubtype(a));
+    assertTrue(b.isSubtypeOf(a, firstAppInfo));
+    assertTrue(b.isSubtypeOf(i, firstAppInfo));
+    assertFalse(a.isSubtypeOf(i, firstAppInfo));
+    assertSame(c, secondAppInfo.typeHierarchy.getSingleSubtype(a));
+    assertTrue(c.isSubtypeOf(a, secondAppInfo));
+    assertTrue(a.isSubtypeOf(i, secondAppInfo));
+    assertTrue(c.isSubtypeOf(i, secondAppInfo));
+    assertFalse(b.isSubtypeOf(a, secondAppInfo));
+  }
+
+  @Test
+  public void concurrentAppInfos() throws Exception {
+    SmaliBuilder builder = new SmaliBuilder();
+    builder.addInterface("I");
+    builder.addClass("A", "java.lang.Object", ImmutableList.of("I"));
+    builder.addClass("B", "A");
+    builder.addClass("C", "B");
+    DexApplication application = buildApplicationWithAndroidJar(builder, new InternalOptions());
+    DexItemFactory factory = application.dexItemFactory;
+    DexType i = type(factory, "I");
+    DexType a = type(factory, "A");
+    DexType b = type(factory, "B");
+    DexType c = type(factory, "C");
+    ExecutorService executor = ThreadUtils.getExecutorService(4);
+    try {
+      List<Future<AppInfoWithSubtyping>> futures = new ArrayList<>();
+      for (int n = 0; n < 16; n++) {
+        futures.add(executor.submit(() -> new AppInfoWithSubtyping(application)));
+      }
+      for (Future<AppInfoWithSubtyping> future : futures) {
+        AppInfoWithSubtyping appInfo = future.get();
+        assertSame(b, appInfo.typeHierarchy.getSingleSubtype(a));
+        assertSame(c, appInfo.typeHierarchy.getSingleSubtype(b));
+        assertTrue(appInfo.typeHierarchy.isInterface(i));
+        assertTrue(c.isSubtypeOf(i, appInfo));
+        assertTrue(appInfo.typeHierarchy.isImmediateSubtypeOf(c, b));
+        assertFalse(appInfo.typeHierarchy.isImmediateSubtypeOf(c, a));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,78 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.android.tools.r8.smali.SmaliTestBase;
+import com.android.tools.r8.utils.InternalOptions;
+import com.google.common.collect.ImmutableSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class VirtualTargetCacheTest extends SmaliTestBase {
+
+  private static final String[] METHOD = {
+      "  .method public m()V",
+      "    .locals 0",
+      "    return-void",
+      "  .end method"
+  };
+
+  private DexApplication buildApplication() {
+    SmaliBuilder builder = new SmaliBuilder();
+    builder.addClass("A");
+    builder.addMethodRaw(METHOD);
+    builder.addClass("B", "A");
+    builder.addMethodRaw(METHOD);
+    return buildApplication(builder, new InternalOptions());
+  }
+
+  private static DexEncodedMethod method(DexApplication application, String holder) {
+    DexProgramClass clazz = application.programDefinitionFor(
+        application.dexItemFactory.createType("L" + holder + ";"));
+    return clazz.virtualMethods()[0];
+  }
+
+  @Test
+  public void lookupsAreCached() {
+    DexApplication application = buildApplication();
+    AppInfoWithSubtyping appInfo = new AppInfoWithSubtyping(application);
+    DexEncodedMethod a = method(application, "A");
+    DexEncodedMethod b = method(application, "B");
+    Set<DexEncodedMethod> targets = appInfo.lookupVirtualTargets(a.method);
+    assertEquals(ImmutableSet.of(a, b), targets);
+    assertSame(targets, appInfo.lookupVirtualTargets(a.method));
+    assertNull(appInfo.lookupSingleVirtualTarget(a.method));
+    assertNull(appInfo.lookupSingleVirtualTarget(a.method));
+    assertSame(b, appInfo.lookupSingleVirtualTarget(b.method));
+    // A copy with the same classes shares the cache.
+    AppInfoWithSubtyping copy = new AppInfoWithSubtyping(appInfo);
+    assertSame(targets, copy.lookupVirtualTargets(a.method));
+  }
+
+  @Test
+  public void pruningInvalidatesCache() {
+    DexApplication application = buildApplication();
+    AppInfoWithSubtyping appInfo = new AppInfoWithSubtyping(application);
+    DexEncodedMethod a = method(application, "A");
+    assertEquals(2, appInfo.lookupVirtualTargets(a.method).size());
+    assertNull(appInfo.lookupSingleVirtualTarget(a.method));
+    DexType b = method(application, "B").method.holder;
+    List<DexProgramClass> withoutB = application.classes().stream()
+        .filter(clazz -> clazz.type != b)
+        .collect(Collectors.toList());
+    DexApplication pruned =
+        new DexApplication.Builder(application).replaceProgramClasses(withoutB).build();
+    AppInfoWithSubtyping prunedAppInfo = new AppInfoWithSubtyping(appInfo, pruned);
+    assertEquals(ImmutableSet.of(a), prunedAppInfo.lookupVirtualTargets(a.method));
+    assertSame(a, prunedAppInfo.lookupSingleVirtualTarget(a.method));
+    // The lookups of the previous classes are not changed.
+    assertEquals(2, appInfo.lookupVirtualTargets(a.method).size());
+  }
+}
@@ -0,0 +1,155 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+package com.android.tools.r8.ir;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.IRCodeCopier;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.Phi;
+import com.android.tools.r8.ir.code.Value;
+import com.android.tools.r8.ir.code.ValueNumberGenerator;
+import com.android.tools.r8.smali.SmaliTestBase;
+import com.android.tools.r8.utils.InternalOptions;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class IRCodeCopierTest extends SmaliTestBase {
+
+  private static final int FIRST_VALUE_NUMBER = 7;
+
+  private final InternalOptions options = new InternalOptions();
+
+  private static ValueNumberGenerator generatorStartingAt(int number) {
+    ValueNumberGenerator generator = new ValueNumberGenerator();
+    generator.reserve(number);
+    return generator;
+  }
+
+  // The printed code without the identity hash codes of the blocks.
+  private static String print(IRCode code) {
+    return code.toString().replaceAll("block (\\d+) \\(\\d+\\)", "block $1");
+  }
+
+  // The users and the properties of all values, which are not part of the printed code.
+  private static String describeValues(IRCode code) {
+    Map<Instruction, Integer> index = new IdentityHashMap<>();
+    List<Value> values = new ArrayList<>();
+    for (BasicBlock block : code.blocks) {
+      values.addAll(block.getPhis());
+      for (Instruction instruction : block.getInstructions()) {
+        index.put(instruction, index.size());
+        if (instruction.outValue() != null) {
+          values.add(instruction.outValue());
+        }
+      }
+    }
+    StringBuilder builder = new StringBuilder();
+    for (Value value : values) {
+      builder.append(value).append(" users:");
+      for (Instruction user : value.uniqueUsers()) {
+        builder.append(' ').append(index.get(user));
+      }
+      builder.append(" phi users:");
+      for (Phi user : value.uniquePhiUsers()) {
+        builder.append(' ').append(user);
+      }
+      builder.append(value.isNeverNull() ? " never-null" : "");
+      builder.append(value.isArgument() ? " argument" : "");
+      builder.append(value.isThis() ? " this" : "");
+      builder.append('\n');
+    }
+    return builder.toString();
+  }
+
+  private void checkCopy(DexEncodedMethod method) {
+    IRCode expected = method.buildIR(generatorStartingAt(FIRST_VALUE_NUMBER), options);
+    IRCode template = method.buildIR(new ValueNumberGenerator(), options);
+    String templateString = print(template);
+    ValueNumberGenerator generator = generatorStartingAt(FIRST_VALUE_NUMBER);
+    IRCode copy = IRCodeCopier.copy(template, generator);
+    assertNotNull(copy);
+    assertTrue(copy.isConsistentSSA());
+    assertEquals(print(expected), print(copy));
+    assertEquals(describeValues(expected), describeValues(copy));
+    assertEquals(
+        expected.valueNumberGenerator.numberOfValues(), generator.numberOfValues());
+    // The template is not changed by copying it.
+    assertEquals(templateString, print(template));
+  }
+
+  @Test
+  public void copy() {
+    SmaliBuilder builder = new SmaliBuilder(DEFAULT_CLASS_NAME);
+    List<MethodSignature> signatures = new ArrayList<>();
+    signatures.add(builder.addStaticMethod("int", "add", ImmutableList.of("int", "int"), 0,
+        "    add-int             p0, p0, p1",
+        "    return              p0"));
+    signatures.add(builder.addStaticMethod("int", "max", ImmutableList.of("int", "int"), 0,
+        "    if-ge               p0, p1, :first",
+        "    move                p0, p1",
+        "    :first",
+        "    return              p0"));
+    signatures.add(builder.addStaticMethod("int", "sum", ImmutableList.of("int"), 1,
+        "    const/4             v0, 0",
+        "    :loop",
+        "    if-lez              p0, :done",
+        "    add-int/2addr       v0, p0",
+        "    add-int/lit8        p0, p0, -1",
+        "    goto                :loop",
+        "    :done",
+        "    return              v0"));
+    signatures.add(builder.addStaticMethod("java.lang.Object", "create", ImmutableList.of(), 1,
+        "    new-instance        v0, Ljava/lang/Object;",
+        "    invoke-direct       { v0 }, Ljava/lang/Object;-><init>()V",
+        "    return-object       v0"));
+    signatures.add(builder.addStaticMethod("void", "print", ImmutableList.of("long"), 1,
+        "    sget-object         v0, Ljava/lang/System;->out:Ljava/io/PrintStream;",
+        "    invoke-virtual      { v0, p0, p1 }, Ljava/io/PrintStream;->println(J)V",
+        "    return-void"));
+    builder.addMethodRaw(
+        "  .method public get()I",
+        "    .locals 1",
+        "    iget                v0, p0, LTest;->f:I",
+        "    return              v0",
+        "  .end method");
+    DexApplication application = buildApplication(builder, options);
+    for (MethodSignature signature : signatures) {
+      checkCopy(getMethod(application, signature));
+    }
+    checkCopy(getMethod(application, DEFAULT_CLASS_NAME, "int", "get", ImmutableList.of()));
+  }
+
+  @Test
+  public void catchHandlersAreNotCopied() {
+    SmaliBuilder builder = new SmaliBuilder(DEFAULT_CLASS_NAME);
+    MethodSignature signature = builder.addStaticMethod("int", "divide",
+        ImmutableList.of("int", "int"), 0,
+        "    :try_start",
+        "    div-int             p0, p0, p1",
+        "    :try_end",
+        "    .catch Ljava/lang/ArithmeticException; {:try_start .. :try_end} :catch",
+        "    return              p0",
+        "    :catch",
+        "    const/4             p0, 0",
+        "    return              p0");
+    DexApplication application = buildApplication(builder, options);
+    IRCode code = getMethod(application, signature).buildIR(new ValueNumberGenerator(), options);
+    ValueNumberGenerator generator = new ValueNumberGenerator();
+    assertNull(IRCodeCopier.copy(code, generator));
+    assertEquals(0, generator.numberOfValues());
+  }
+}
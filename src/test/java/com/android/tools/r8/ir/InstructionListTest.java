@@ -0,0 +1,137 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.android.tools.r8.ir.code.Goto;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionList;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+import org.junit.Test;
+
+public class InstructionListTest {
+
+  private static List<Instruction> fill(InstructionList list, int count) {
+    List<Instruction> instructions = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Instruction instruction = new Goto();
+      list.add(instruction);
+      instructions.add(instruction);
+    }
+    return instructions;
+  }
+
+  @Test
+  public void dequeOperations() {
+    InstructionList list = new InstructionList();
+    assertTrue(list.isEmpty());
+    Instruction first = new Goto();
+    Instruction second = new Goto();
+    Instruction third = new Goto();
+    list.addLast(second);
+    list.addFirst(first);
+    list.addLast(third);
+    assertEquals(3, list.size());
+    assertSame(first, list.getFirst());
+    assertSame(third, list.getLast());
+    assertSame(second, list.get(1));
+    assertEquals(1, list.indexOf(second));
+    assertTrue(list.contains(second));
+    assertSame(third, list.removeLast());
+    assertFalse(list.contains(third));
+    assertSame(first, list.removeFirst());
+    assertSame(second, list.getFirst());
+    assertSame(second, list.getLast());
+    // Removed instructions can be added again.
+    list.addFirst(first);
+    list.add(third);
+    assertEquals(3, list.size());
+    list.clear();
+    assertTrue(list.isEmpty());
+    list.add(first);
+    assertEquals(1, list.size());
+  }
+
+  @Test
+  public void instructionInTwoLists() {
+    InstructionList list = new InstructionList();
+    Instruction instruction = fill(list, 1).get(0);
+    boolean assertionsEnabled = false;
+    assert assertionsEnabled = true;
+    if (!assertionsEnabled) {
+      return;
+    }
+    try {
+      new InstructionList().add(instruction);
+      fail("Expected an assertion error");
+    } catch (AssertionError e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void randomListIteratorOperations() {
+    Random random = new Random(42);
+    for (int round = 0; round < 100; round++) {
+      InstructionList list = new InstructionList();
+      LinkedList<Instruction> expected = new LinkedList<>(fill(list, random.nextInt(10)));
+      for (int step = 0; step < 50; step++) {
+        int index = random.nextInt(expected.size() + 1);
+        ListIterator<Instruction> it = list.listIterator(index);
+        ListIterator<Instruction> expectedIt = expected.listIterator(index);
+        for (int i = 0; i < 10; i++) {
+          boolean forward = random.nextBoolean();
+          if (forward ? !expectedIt.hasNext() : !expectedIt.hasPrevious()) {
+            assertEquals(expectedIt.hasNext(), it.hasNext());
+            assertEquals(expectedIt.hasPrevious(), it.hasPrevious());
+            continue;
+          }
+          assertSame(
+              forward ? expectedIt.next() : expectedIt.previous(),
+              forward ? it.next() : it.previous());
+          switch (random.nextInt(4)) {
+            case 0:
+              it.remove();
+              expectedIt.remove();
+              break;
+            case 1:
+              Instruction replacement = new Goto();
+              it.set(replacement);
+              expectedIt.set(replacement);
+              break;
+            case 2:
+              Instruction added = new Goto();
+              it.add(added);
+              expectedIt.add(added);
+              break;
+            default:
+              break;
+          }
+          assertEquals(expectedIt.nextIndex(), it.nextIndex());
+        }
+        assertEquals(expected, list);
+        assertEquals(expected.size(), list.size());
+      }
+    }
+  }
+
+  @Test
+  public void removeInstructionWhileIterating() {
+    InstructionList list = new InstructionList();
+    List<Instruction> instructions = fill(list, 5);
+    list.removeIf(instruction -> instructions.indexOf(instruction) % 2 == 0);
+    assertEquals(2, list.size());
+    assertSame(instructions.get(1), list.getFirst());
+    assertSame(instructions.get(3), list.getLast());
+  }
+}
@@ -0,0 +1,153 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.conversion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.graph.AppInfoWithSubtyping;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexField;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexProgramClass;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.graph.GraphLense;
+import com.android.tools.r8.graph.UseRegistry;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class CallGraphTest {
+
+  private static final String APP = ToolHelper.EXAMPLES_BUILD_DIR + "inlining.jar";
+
+  private static class StaticInvokeCollector extends UseRegistry {
+
+    private final List<DexMethod> targets = new ArrayList<>();
+
+    @Override
+    public boolean registerInvokeVirtual(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInvokeDirect(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInvokeStatic(DexMethod method) {
+      targets.add(method);
+      return true;
+    }
+
+    @Override
+    public boolean registerInvokeInterface(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInvokeSuper(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInstanceFieldWrite(DexField field) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInstanceFieldRead(DexField field) {
+      return false;
+    }
+
+    @Override
+    public boolean registerNewInstance(DexType type) {
+      return false;
+    }
+
+    @Override
+    public boolean registerStaticFieldRead(DexField field) {
+      return false;
+    }
+
+    @Override
+    public boolean registerStaticFieldWrite(DexField field) {
+      return false;
+    }
+
+    @Override
+    public boolean registerTypeReference(DexType type) {
+      return false;
+    }
+  }
+
+  @Test
+  public void calleesAreProcessedFirst() throws Exception {
+    DexApplication application = ToolHelper.buildApplication(ImmutableList.of(APP));
+    AppInfoWithSubtyping appInfo = new AppInfoWithSubtyping(application);
+    CallGraph callGraph = CallGraph.build(
+        application, appInfo, GraphLense.getIdentityLense(), new InternalOptions());
+    Map<DexEncodedMethod, Integer> order = Collections.synchronizedMap(new IdentityHashMap<>());
+    AtomicInteger counter = new AtomicInteger();
+    ExecutorService executor = ThreadUtils.getExecutorService(4);
+    try {
+      callGraph.forEachMethod(method -> order.put(method, counter.getAndIncrement()), executor);
+    } finally {
+      executor.shutdown();
+    }
+    assertTrue(callGraph.isEmpty());
+    int methods = 0;
+    int checkedCalls = 0;
+    for (DexProgramClass clazz : application.classes()) {
+      for (DexEncodedMethod method : clazz.allMethodsSorted()) {
+        methods++;
+        StaticInvokeCollector collector = new StaticInvokeCollector();
+        method.registerReachableDefinitions(collector);
+        for (DexMethod target : collector.targets) {
+          DexEncodedMethod callee = appInfo.lookupStaticTarget(target);
+          if (callee == null || callee == method || callGraph.isBreaker(method, callee)) {
+            continue;
+          }
+          assertTrue(callee.method + " before " + method.method,
+              order.get(callee) < order.get(method));
+          checkedCalls++;
+        }
+      }
+    }
+    assertEquals(methods, order.size());
+    assertTrue(checkedCalls > 0);
+  }
+
+  @Test
+  public void failuresArePropagated() throws Exception {
+    DexApplication application = ToolHelper.buildApplication(ImmutableList.of(APP));
+    AppInfoWithSubtyping appInfo = new AppInfoWithSubtyping(application);
+    CallGraph callGraph = CallGraph.build(
+        application, appInfo, GraphLense.getIdentityLense(), new InternalOptions());
+    ExecutorService executor = ThreadUtils.getExecutorService(4);
+    try {
+      callGraph.forEachMethod(method -> {
+        throw new IllegalStateException("Failed on " + method.method);
+      }, executor);
+      fail("Expected an exception");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,63 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.conversion;
+
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.utils.AndroidApp;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DecodedDexCodeCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = ToolHelper.getTemporaryFolderForTest();
+
+  private static long sumOfCounter(Path trace, String counter) throws Exception {
+    JSONObject root;
+    try (Reader reader = Files.newBufferedReader(trace, StandardCharsets.UTF_8)) {
+      root = (JSONObject) new JSONParser().parse(reader);
+    }
+    long sum = 0;
+    for (Object event : (JSONArray) root.get("traceEvents")) {
+      JSONObject args = (JSONObject) ((JSONObject) event).get("args");
+      sum += (Long) args.getOrDefault(counter, 0L);
+    }
+    return sum;
+  }
+
+  @Test
+  public void sameOutputWithAndWithoutCache() throws Exception {
+    Path trace = temp.getRoot().toPath().resolve("r8.json");
+    AndroidApp withCache = ToolHelper.runR8OnExample("inlining", options -> {
+      options.decodedCodeCacheSize = 1024 * 1024;
+      options.timingsOutput = trace;
+    });
+    AndroidApp withoutCache =
+        ToolHelper.runR8OnExample("inlining", options -> options.decodedCodeCacheSize = 0);
+    ToolHelper.assertSameDexFiles(withoutCache, withCache);
+    // Inlined methods are built again for each caller.
+    assertTrue(sumOfCounter(trace, "Decoded code hits") > 0);
+    assertTrue(sumOfCounter(trace, "Decoded code misses") > 0);
+  }
+
+  @Test
+  public void sameOutputWithTinyCache() throws Exception {
+    // Entries are evicted all the time, but the output does not change.
+    AndroidApp withTinyCache =
+        ToolHelper.runR8OnExample("inlining", options -> options.decodedCodeCacheSize = 64);
+    AndroidApp withoutCache =
+        ToolHelper.runR8OnExample("inlining", options -> options.decodedCodeCacheSize = 0);
+    ToolHelper.assertSameDexFiles(withoutCache, withTinyCache);
+  }
+}
@@ -0,0 +1,81 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.conversion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.DexInspector;
+import com.android.tools.r8.utils.InternalOptions;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.junit.Test;
+
+public class MethodBudgetTest {
+
+  private static final String BIG_METHOD =
+      "void regalloc.RegAlloc.binaryOpUsingHighRegistersLocals()";
+  private static final String SMALL_METHOD =
+      "java.lang.Object regalloc.RegAlloc.identity(java.lang.Object)";
+
+  private static Map<String, String> compile(Consumer<InternalOptions> optionsConsumer)
+      throws Exception {
+    PrintStream originalOut = System.out;
+    // Drop the warnings.
+    System.setOut(new PrintStream(new OutputStream() {
+      public void write(int b) { /* ignore*/ }
+    }));
+    AndroidApp app;
+    try {
+      app = ToolHelper.runD8(
+          D8Command.builder()
+              .addProgramFiles(Paths.get(ToolHelper.EXAMPLES_BUILD_DIR, "regalloc.jar"))
+              .build(),
+          optionsConsumer);
+    } finally {
+      System.setOut(originalOut);
+    }
+    Map<String, String> code = new HashMap<>();
+    new DexInspector(app).forAllClasses(clazz -> clazz.forAllMethods(method -> code.put(
+        method.getMethod().method.toSourceString(), method.getMethod().codeToString())));
+    return code;
+  }
+
+  @Test
+  public void instructionBudget() throws Exception {
+    InternalOptions[] budgetOptions = new InternalOptions[1];
+    Map<String, String> withBudget = compile(options -> {
+      options.methodInstructionBudget = 100;
+      budgetOptions[0] = options;
+    });
+    Map<String, String> withoutBudget = compile(null);
+    assertTrue(budgetOptions[0].warningMethodsOverBudget.contains(BIG_METHOD));
+    assertFalse(budgetOptions[0].warningMethodsOverBudget.contains(SMALL_METHOD));
+    assertEquals(withoutBudget.keySet(), withBudget.keySet());
+    for (String method : withBudget.keySet()) {
+      if (!budgetOptions[0].warningMethodsOverBudget.contains(method)) {
+        assertEquals(method, withoutBudget.get(method), withBudget.get(method));
+      }
+    }
+  }
+
+  @Test
+  public void timeBudget() throws Exception {
+    InternalOptions[] budgetOptions = new InternalOptions[1];
+    Map<String, String> withBudget = compile(options -> {
+      options.methodTimeBudgetMillis = 0;
+      budgetOptions[0] = options;
+    });
+    // All methods take longer than no time at all.
+    assertEquals(withBudget.size(), budgetOptions[0].warningMethodsOverBudget.size());
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.conversion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.ToolHelper;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class PassMetricsTest {
+
+  private static List<String> runD8(boolean printPassMetrics) throws Exception {
+    PrintStream originalOut = System.out;
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8.name()));
+    try {
+      ToolHelper.runD8(
+          D8Command.builder()
+              .addProgramFiles(Paths.get(ToolHelper.EXAMPLES_BUILD_DIR, "inlining.jar"))
+              .build(),
+          options -> {
+            options.printPassMetrics = printPassMetrics;
+            options.passMetricsSlowestMethods = 3;
+          });
+    } finally {
+      System.setOut(originalOut);
+    }
+    return Arrays.stream(new String(output.toByteArray(), StandardCharsets.UTF_8).split("\n"))
+        .filter(line -> !line.isEmpty())
+        .collect(Collectors.toList());
+  }
+
+  private static String findLine(List<String> lines, String prefix) {
+    for (String line : lines) {
+      if (line.startsWith(prefix)) {
+        return line;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void reportPasses() throws Exception {
+    List<String> lines = runD8(true);
+    assertTrue(findLine(lines, "Pass metrics for ") != null);
+    String buildIR = findLine(lines, "Build IR ");
+    String registerAllocation = findLine(lines, "Register allocation ");
+    assertTrue(buildIR != null);
+    assertTrue(registerAllocation != null);
+    // Each method is built and allocated once.
+    String[] buildIRColumns = buildIR.split(" +");
+    String[] registerAllocationColumns = registerAllocation.split(" +");
+    assertEquals(buildIRColumns[2], registerAllocationColumns[2]);
+    // Passes run from several places are reported per place.
+    for (String pass : new String[] {
+        "Dead code removal before allocation", "Final collapse trivial gotos"}) {
+      String line = findLine(lines, pass + " ");
+      assertTrue(pass, line != null);
+      assertEquals(pass, registerAllocationColumns[2],
+          line.substring(pass.length()).trim().split(" +")[0]);
+    }
+    // No blocks or instructions exist before the IR is built.
+    assertEquals("0", buildIRColumns[4]);
+    assertEquals("0", buildIRColumns[7]);
+    int slowest = lines.indexOf("Slowest 3 methods:");
+    assertTrue(slowest >= 0);
+    assertEquals(slowest + 4, lines.size());
+    for (String line : lines.subList(slowest + 1, lines.size())) {
+      assertTrue(line, line.contains("instructions"));
+    }
+  }
+
+  @Test
+  public void noReportByDefault() throws Exception {
+    assertEquals(null, findLine(runD8(false), "Pass metrics for "));
+  }
+}
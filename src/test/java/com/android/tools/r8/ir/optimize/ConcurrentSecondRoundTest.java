@@ -0,0 +1,53 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.DexInspector;
+import com.android.tools.r8.utils.InternalOptions.OutlineOptions;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+/**
+ * The double inlining and the outlining after the first round of optimizations run over the
+ * executor. The output must not depend on the number of threads.
+ */
+public class ConcurrentSecondRoundTest {
+
+  private static AndroidApp compile(String example, int threads) throws Exception {
+    return ToolHelper.runR8OnExample(example, options -> {
+      options.numberOfThreads = threads;
+      options.inlineAccessors = true;
+      options.outline.threshold = 2;
+      options.outline.minSize = 2;
+    });
+  }
+
+  private static void checkSameOutputForAnyNumberOfThreads(AndroidApp reference, String example)
+      throws Exception {
+    for (int threads : new int[]{2, 4}) {
+      ToolHelper.assertSameDexFiles(reference, compile(example, threads));
+    }
+  }
+
+  @Test
+  public void doubleInlining() throws Exception {
+    AndroidApp reference = compile("inlining", 1);
+    // Only called twice, so inlined into both callers in the second round.
+    assertFalse(new DexInspector(reference).clazz("inlining.Inlining")
+        .method("int", "onlyCalledTwice", ImmutableList.of("int")).isPresent());
+    checkSameOutputForAnyNumberOfThreads(reference, "inlining");
+  }
+
+  @Test
+  public void outlining() throws Exception {
+    AndroidApp reference = compile("shaking2", 1);
+    assertTrue(new DexInspector(reference).clazz(OutlineOptions.className).isPresent());
+    checkSameOutputForAnyNumberOfThreads(reference, "shaking2");
+  }
+}
@@ -0,0 +1,145 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.Value;
+import com.android.tools.r8.ir.code.ValueNumberGenerator;
+import com.android.tools.r8.smali.SmaliTestBase;
+import com.android.tools.r8.utils.InternalOptions;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+public class SparseConditionalConstantPropagationTest extends SmaliTestBase {
+
+  private final InternalOptions options = new InternalOptions();
+
+  private IRCode buildAndPropagate(String... instructions) {
+    SmaliBuilder builder = new SmaliBuilder(DEFAULT_CLASS_NAME);
+    MethodSignature signature =
+        builder.addStaticMethod("int", DEFAULT_METHOD_NAME, ImmutableList.of("int"), 1,
+            instructions);
+    DexApplication application = buildApplication(builder, options);
+    IRCode code = getMethod(application, signature)
+        .buildIR(new ValueNumberGenerator(), options);
+    SparseConditionalConstantPropagation.run(code);
+    assertTrue(code.isConsistentSSA());
+    return code;
+  }
+
+  private static Value returnedValue(IRCode code) {
+    Value result = null;
+    for (BasicBlock block : code.blocks) {
+      if (block.exit().isReturn()) {
+        assertEquals(null, result);
+        result = block.exit().inValues().get(0);
+      }
+    }
+    return result;
+  }
+
+  private static boolean hasPhis(IRCode code) {
+    for (BasicBlock block : code.blocks) {
+      if (!block.getPhis().isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasConstant(IRCode code, long value) {
+    for (BasicBlock block : code.blocks) {
+      for (Instruction instruction : block.getInstructions()) {
+        if (instruction.isConstNumber() && instruction.asConstNumber().getRawValue() == value) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void constantThroughLoopPhi() {
+    // The value of v0 is one in every iteration.
+    IRCode code = buildAndPropagate(
+        "    const/4             v0, 1",
+        "    :loop",
+        "    if-lez              p0, :done",
+        "    mul-int/2addr       v0, v0",
+        "    add-int/lit8        p0, p0, -1",
+        "    goto                :loop",
+        "    :done",
+        "    return              v0");
+    Value returned = returnedValue(code);
+    assertTrue(returned.isConstNumber());
+    assertEquals(1, returned.getConstInstruction().asConstNumber().getIntValue());
+  }
+
+  @Test
+  public void unreachableBranchInLoop() {
+    // As v0 is zero on loop entry the assignment of one is never reached, so v0 is zero in every
+    // iteration. Propagating constants and removing unreachable blocks one after the other cannot
+    // find this, as each needs the result of the other first.
+    IRCode code = buildAndPropagate(
+        "    const/4             v0, 0",
+        "    :loop",
+        "    if-lez              p0, :done",
+        "    if-eqz              v0, :skip",
+        "    const/4             v0, 1",
+        "    :skip",
+        "    add-int/lit8        p0, p0, -1",
+        "    goto                :loop",
+        "    :done",
+        "    return              v0");
+    Value returned = returnedValue(code);
+    assertTrue(returned.isConstNumber());
+    assertEquals(0, returned.getConstInstruction().asConstNumber().getIntValue());
+    assertFalse(hasConstant(code, 1));
+    // The phi for p0 remains.
+    assertTrue(hasPhis(code));
+  }
+
+  @Test
+  public void constantSwitch() {
+    IRCode code = buildAndPropagate(
+        "    const/4             v0, 2",
+        "    packed-switch       v0, :switch_data",
+        "    const/4             v0, 3",
+        "    goto                :done",
+        "    :case_1",
+        "    const/4             v0, 4",
+        "    goto                :done",
+        "    :case_2",
+        "    const/4             v0, 5",
+        "    :done",
+        "    return              v0",
+        "    :switch_data",
+        "    .packed-switch 1",
+        "      :case_1",
+        "      :case_2",
+        "    .end packed-switch");
+    Value returned = returnedValue(code);
+    assertTrue(returned.isConstNumber());
+    assertEquals(5, returned.getConstInstruction().asConstNumber().getIntValue());
+    assertFalse(hasConstant(code, 3));
+    assertFalse(hasConstant(code, 4));
+    assertFalse(hasPhis(code));
+  }
+
+  @Test
+  public void divisionByZeroIsNotFolded() {
+    IRCode code = buildAndPropagate(
+        "    const/4             v0, 0",
+        "    div-int/2addr       v0, v0",
+        "    return              v0");
+    assertFalse(returnedValue(code).isConstant());
+  }
+}
@@ -0,0 +1,100 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.regalloc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.dex.Constants;
+import com.android.tools.r8.ir.code.MoveType;
+import com.android.tools.r8.ir.code.Value;
+import org.junit.Test;
+
+public class LiveIntervalsTest {
+
+  private static LiveIntervals intervals(int... ranges) {
+    LiveIntervals intervals = new LiveIntervals(new Value(0, MoveType.SINGLE, null));
+    for (int i = 0; i < ranges.length; i += 2) {
+      intervals.addRange(ranges[i], ranges[i + 1]);
+    }
+    return intervals;
+  }
+
+  @Test
+  public void adjacentRangesAreMerged() {
+    LiveIntervals intervals = intervals(0, 10, 10, 20, 31, 40);
+    assertEquals(2, intervals.numberOfRanges());
+    assertEquals(0, intervals.getStart());
+    assertEquals(20, intervals.getRangeEnd(0));
+    assertEquals(31, intervals.getRangeStart(1));
+    assertEquals(40, intervals.getEnd());
+  }
+
+  @Test
+  public void usesAreSortedAndUnique() {
+    LiveIntervals intervals = intervals(0, 40);
+    intervals.addUse(30, Constants.U16BIT_MAX);
+    intervals.addUse(10, Constants.U8BIT_MAX);
+    intervals.addUse(20, Constants.U4BIT_MAX);
+    intervals.addUse(10, Constants.U8BIT_MAX);
+    assertEquals(3, intervals.numberOfUses());
+    assertEquals(10, intervals.getFirstUse());
+    assertEquals(20, intervals.getUsePosition(1));
+    assertEquals(30, intervals.getUsePosition(2));
+    assertEquals(Constants.U4BIT_MAX, intervals.getRegisterLimit());
+    assertEquals(10, intervals.firstUseWithConstraint());
+    assertEquals(2, intervals.numberOfUsesWithConstraint());
+    assertEquals(20, intervals.firstUseAfter(12));
+    assertEquals(Integer.MAX_VALUE, intervals.firstUseAfter(32));
+    assertFalse(intervals.useHasConstraint(2));
+  }
+
+  @Test
+  public void overlaps() {
+    LiveIntervals intervals = intervals(0, 10, 20, 30, 40, 50);
+    assertTrue(intervals.overlapsPosition(0));
+    assertTrue(intervals.overlapsPosition(25));
+    assertFalse(intervals.overlapsPosition(10));
+    assertFalse(intervals.overlapsPosition(35));
+    assertFalse(intervals.overlapsPosition(50));
+    assertEquals(-1, intervals.nextOverlap(intervals(10, 20, 30, 40, 50, 60)));
+    assertEquals(45, intervals.nextOverlap(intervals(11, 19, 45, 46)));
+    // An overlap starting before the range returns the start of the other range.
+    assertEquals(15, intervals.nextOverlap(intervals(15, 25)));
+  }
+
+  @Test
+  public void splitInsideRange() {
+    LiveIntervals intervals = intervals(0, 10, 20, 30, 40, 50);
+    intervals.addUse(0, Constants.U16BIT_MAX);
+    intervals.addUse(24, Constants.U4BIT_MAX);
+    intervals.addUse(46, Constants.U8BIT_MAX);
+    LiveIntervals split = intervals.splitBefore(24);
+    assertEquals(2, intervals.numberOfRanges());
+    assertEquals(23, intervals.getEnd());
+    assertEquals(1, intervals.numberOfUses());
+    assertEquals(Constants.U16BIT_MAX, intervals.getRegisterLimit());
+    assertEquals(2, split.numberOfRanges());
+    assertEquals(23, split.getStart());
+    assertEquals(30, split.getRangeEnd(0));
+    assertEquals(50, split.getEnd());
+    assertEquals(2, split.numberOfUses());
+    assertEquals(Constants.U4BIT_MAX, split.getRegisterLimit());
+    assertEquals(1, intervals.getSplitChildren().size());
+  }
+
+  @Test
+  public void splitInHole() {
+    LiveIntervals intervals = intervals(0, 10, 20, 30);
+    intervals.addUse(26, Constants.U16BIT_MAX);
+    LiveIntervals split = intervals.splitBefore(16);
+    assertEquals(1, intervals.numberOfRanges());
+    assertEquals(10, intervals.getEnd());
+    assertEquals(0, intervals.numberOfUses());
+    assertEquals(1, split.numberOfRanges());
+    assertEquals(20, split.getStart());
+    assertEquals(1, split.numberOfUses());
+  }
+}
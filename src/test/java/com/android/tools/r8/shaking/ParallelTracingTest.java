@@ -0,0 +1,80 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.shaking;
+
+import static org.junit.Assert.assertEquals;
+
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.graph.AppInfoWithSubtyping;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
+import com.android.tools.r8.shaking.RootSetBuilder.RootSet;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.android.tools.r8.utils.Timing;
+import com.google.common.collect.ImmutableList;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@RunWith(Parameterized.class)
+public class ParallelTracingTest {
+
+  @Parameters(name = "{0}")
+  public static Collection<Object[]> data() {
+    return Arrays.asList(new Object[][]{{"shaking1"}, {"shaking2"}, {"shaking5"}, {"shaking9"}});
+  }
+
+  private final String test;
+
+  public ParallelTracingTest(String test) {
+    this.test = test;
+  }
+
+  private AppInfoWithLiveness trace(ExecutorService executor) throws Exception {
+    DexApplication application = ToolHelper.buildApplication(
+        ImmutableList.of(ToolHelper.EXAMPLES_BUILD_DIR + test + ".jar"));
+    AppInfoWithSubtyping appInfo = new AppInfoWithSubtyping(application);
+    ProguardConfiguration configuration = ToolHelper.loadProguardConfiguration(
+        application.dexItemFactory,
+        ImmutableList.of(Paths.get(ToolHelper.EXAMPLES_DIR, test, "keep-rules.txt")));
+    ExecutorService rootSetExecutor = ThreadUtils.getExecutorService(1);
+    try {
+      RootSet rootSet = new RootSetBuilder(application, appInfo, configuration.getRules())
+          .run(rootSetExecutor);
+      return new Enqueuer(appInfo).traceApplication(rootSet, executor, new Timing(test));
+    } finally {
+      rootSetExecutor.shutdown();
+    }
+  }
+
+  private static List<String> toStrings(Collection<?> items) {
+    return items.stream().map(Object::toString).collect(Collectors.toList());
+  }
+
+  @Test
+  public void sameResultAsSequentialTracing() throws Exception {
+    AppInfoWithLiveness sequential = trace(null);
+    ExecutorService executor = ThreadUtils.getExecutorService(4);
+    AppInfoWithLiveness parallel;
+    try {
+      parallel = trace(executor);
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(toStrings(sequential.liveTypes), toStrings(parallel.liveTypes));
+    assertEquals(toStrings(sequential.instantiatedTypes), toStrings(parallel.instantiatedTypes));
+    assertEquals(toStrings(sequential.targetedMethods), toStrings(parallel.targetedMethods));
+    assertEquals(toStrings(sequential.liveMethods), toStrings(parallel.liveMethods));
+    assertEquals(toStrings(sequential.liveFields), toStrings(parallel.liveFields));
+    assertEquals(toStrings(sequential.fieldsRead), toStrings(parallel.fieldsRead));
+    assertEquals(toStrings(sequential.fieldsWritten), toStrings(parallel.fieldsWritten));
+  }
+}
@@ -425,7 +425,6 @@ public class SmaliTestBase {
 
   protected DexApplication buildApplication(AndroidApp input, InternalOptions options) {
     try {
-      options.itemFactory.resetSortedIndices();
       return new ApplicationReader(input, options, new Timing("SmaliTest")).read();
     } catch (IOException | ExecutionException e) {
       throw new RuntimeException(e);
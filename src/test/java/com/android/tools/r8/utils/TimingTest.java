@@ -0,0 +1,127 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.D8;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.ToolHelper;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TimingTest {
+
+  @Rule
+  public TemporaryFolder temp = ToolHelper.getTemporaryFolderForTest();
+
+  private static JSONArray readTraceEvents(Path trace) throws Exception {
+    try (Reader reader = Files.newBufferedReader(trace, StandardCharsets.UTF_8)) {
+      JSONObject object = (JSONObject) new JSONParser().parse(reader);
+      return (JSONArray) object.get("traceEvents");
+    }
+  }
+
+  private static JSONObject findEvent(JSONArray events, String name) {
+    for (Object event : events) {
+      if (name.equals(((JSONObject) event).get("name"))) {
+        return (JSONObject) event;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void recordFromWorkerThreads() throws Exception {
+    Timing timing = new Timing("test");
+    timing.begin("Parallel phase");
+    ExecutorService executor = ThreadUtils.getExecutorService(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(() -> {
+          timing.scope("Task", () -> timing.count("Items", 2));
+          timing.count("Tasks", 1);
+        }));
+      }
+      ThreadUtils.awaitFutures(futures);
+    } finally {
+      executor.shutdown();
+    }
+    timing.end();
+    Path trace = temp.getRoot().toPath().resolve("trace.json");
+    timing.writeTrace(trace);
+    JSONArray events = readTraceEvents(trace);
+    // The root, the phase and one event per task.
+    assertEquals(10, events.size());
+    JSONObject phase = findEvent(events, "Parallel phase");
+    assertNotNull(phase);
+    assertEquals(8L, ((JSONObject) phase.get("args")).get("Tasks"));
+    int tasks = 0;
+    for (Object event : events) {
+      JSONObject object = (JSONObject) event;
+      if (object.get("name").equals("Task")) {
+        tasks++;
+        assertEquals(2L, ((JSONObject) object.get("args")).get("Items"));
+        assertTrue((Long) object.get("ts") >= (Long) phase.get("ts"));
+      }
+    }
+    assertEquals(8, tasks);
+  }
+
+  @Test
+  public void d8TimingsOutput() throws Exception {
+    Path trace = temp.getRoot().toPath().resolve("d8.json");
+    D8.run(
+        D8Command.parse(
+                new String[] {
+                  Paths.get(ToolHelper.EXAMPLES_BUILD_DIR, "arithmetic.jar").toString(),
+                  "--timings",
+                  trace.toString()
+                })
+            .build());
+    JSONArray events = readTraceEvents(trace);
+    JSONObject root = findEvent(events, "Recorded timings for DX timer");
+    assertNotNull(root);
+    long converted = 0;
+    long emitted = 0;
+    for (Object event : events) {
+      JSONObject args = (JSONObject) ((JSONObject) event).get("args");
+      converted += (Long) args.getOrDefault("Methods converted", 0L);
+      emitted += (Long) args.getOrDefault("Instructions emitted", 0L);
+    }
+    assertTrue(converted > 0);
+    assertTrue(emitted > 0);
+  }
+
+  @Test
+  public void failingToWriteTimingsDoesNotFailCompilation() throws Exception {
+    Path trace = temp.getRoot().toPath().resolve("missing").resolve("d8.json");
+    D8.run(
+        D8Command.parse(
+                new String[] {
+                  Paths.get(ToolHelper.EXAMPLES_BUILD_DIR, "arithmetic.jar").toString(),
+                  "--timings",
+                  trace.toString()
+                })
+            .build());
+    assertFalse(Files.exists(trace));
+  }
+}